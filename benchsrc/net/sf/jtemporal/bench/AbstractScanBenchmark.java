@@ -0,0 +1,104 @@
+/* This file is part of the JTemporal framework (http://jtemporal.sf.net).
+   Copyright (C) 2002 by the author(s).
+   Distributable under LGPL license version 2.1 or later,
+   with NO WARRANTIES given or implied.
+   See terms of license at gnu.org or www.opensource.org/licenses  */
+
+package net.sf.jtemporal.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import net.sf.jtemporal.Period;
+import net.sf.jtemporal.TemporalAttributeImpl;
+import net.sf.jtemporal.TimedObject;
+import net.sf.jtemporal.spi.TemporalAttributeStorage;
+import net.sf.jtemporal.util.CloseableIterator;
+
+/**
+ * Sequential scans over a TemporalAttribute, per history size;
+ * the subclasses give the storage and the instant type.
+ * @author Thomas A Beck
+ * @version $Id$
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public abstract class AbstractScanBenchmark {
+
+  /** The number of entries read by a window scan. */
+  private static final int WINDOW = 100;
+
+  @Param({"1000", "100000", "1000000"})
+  public int size;
+
+  private TemporalAttributeImpl<Integer> attribute;
+  private TemporalAttributeStorage<Integer> attributeStorage;
+  private Period window;
+
+  /**
+   * @return the storage, see {@linkplain Histories#newStorage(String, String)}
+   */
+  protected abstract String storage();
+
+  /**
+   * @return the instant type, see {@linkplain Histories#instant(String, long)}
+   */
+  protected abstract String instantType();
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    this.attribute = Histories.newAttribute(this.storage(), this.instantType(), this.size);
+    @SuppressWarnings("unchecked")
+    TemporalAttributeStorage<Integer> s =
+      (TemporalAttributeStorage<Integer>) this.attribute.getStorage();
+    this.attributeStorage = s;
+    int first = Math.max(0, this.size / 2 - WINDOW / 2);
+    this.window = new Period(
+      Histories.period(this.instantType(), first).getStart(),
+      Histories.period(this.instantType(), Math.min(this.size, first + WINDOW) - 1).getEnd()
+    );
+  }
+
+  @Benchmark
+  public void entrySet(Blackhole bh) {
+    for (TimedObject<Integer> to : this.attribute.entrySet()) {
+      bh.consume(to);
+    }
+  }
+
+  @Benchmark
+  public void storageEntryIterator(Blackhole bh) {
+    CloseableIterator<TimedObject<Integer>> i = this.attributeStorage.entryIterator();
+    while (i.hasNext()) {
+      bh.consume(i.next());
+    }
+  }
+
+  /**
+   * Reads {@linkplain #WINDOW} entries in the middle of the history.
+   */
+  @Benchmark
+  public void storageWindow(Blackhole bh) {
+    CloseableIterator<TimedObject<Integer>> i = this.attributeStorage.entryIterator(this.window);
+    while (i.hasNext()) {
+      bh.consume(i.next());
+    }
+  }
+}
@@ -0,0 +1,115 @@
+/* This file is part of the JTemporal framework (http://jtemporal.sf.net).
+   Copyright (C) 2002 by the author(s).
+   Distributable under LGPL license version 2.1 or later,
+   with NO WARRANTIES given or implied.
+   See terms of license at gnu.org or www.opensource.org/licenses  */
+
+package net.sf.jtemporal.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.sf.jtemporal.Instant;
+import net.sf.jtemporal.Period;
+import net.sf.jtemporal.TemporalAttributeImpl;
+import net.sf.jtemporal.spi.TemporalAttributeStorage;
+
+/**
+ * Point lookups and updates on a TemporalAttribute, per history size
+ * and access pattern; the subclasses give the storage and the instant type.
+ * @author Thomas A Beck
+ * @version $Id$
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public abstract class AbstractTemporalAttributeBenchmark {
+
+  @Param({"1000", "100000", "1000000"})
+  public int size;
+
+  @Param({"latest", "random", "sequential"})
+  public String pattern;
+
+  private TemporalAttributeImpl<Integer> attribute;
+  private TemporalAttributeStorage<Integer> attributeStorage;
+  private Instant[] lookups;
+  private Period[] periods;     // the period containing each lookup
+  private int cursor = 0;
+
+  /**
+   * @return the storage, see {@linkplain Histories#newStorage(String, String)}
+   */
+  protected abstract String storage();
+
+  /**
+   * @return the instant type, see {@linkplain Histories#instant(String, long)}
+   */
+  protected abstract String instantType();
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    this.attribute = Histories.newAttribute(this.storage(), this.instantType(), this.size);
+    @SuppressWarnings("unchecked")
+    TemporalAttributeStorage<Integer> s =
+      (TemporalAttributeStorage<Integer>) this.attribute.getStorage();
+    this.attributeStorage = s;
+    this.lookups = Histories.lookups(this.pattern, this.instantType(), this.size);
+    this.periods = new Period[this.lookups.length];
+    for (int i = 0; i < this.lookups.length; i++) {
+      this.periods[i] = this.attributeStorage.getPeriod(this.lookups[i]);
+    }
+  }
+
+  private int next() {
+    return this.cursor++ & (Histories.LOOKUPS - 1);
+  }
+
+  /**
+   * {@linkplain TemporalAttributeStorage#getPeriod(Instant)}, without
+   * the TemporalAttributeImpl layer.
+   */
+  @Benchmark
+  public Period storageGetPeriod() {
+    return this.attributeStorage.getPeriod(this.lookups[this.next()]);
+  }
+
+  @Benchmark
+  public Integer get() {
+    return this.attribute.get(this.lookups[this.next()]);
+  }
+
+  @Benchmark
+  public Period getPeriod() {
+    return this.attribute.getPeriod(this.lookups[this.next()]);
+  }
+
+  /**
+   * Overwrites a whole period with a new value: the remove, the neighbour
+   * lookups and the put of TemporalAttributeImpl.put(). <br>
+   * The value of the k-th period alternates between k and -k-1, that
+   * never equal the values of the neighbours: the size of the history does
+   * not change. Includes a getValue() on the storage.
+   */
+  @Benchmark
+  public boolean put() {
+    Period p = this.periods[this.next()];
+    int current = this.attributeStorage.getValue(p.getStart()).intValue();
+    return this.attribute.put(p, Integer.valueOf(-current - 1));
+  }
+}
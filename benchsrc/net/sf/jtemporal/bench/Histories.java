@@ -0,0 +1,124 @@
+/* This file is part of the JTemporal framework (http://jtemporal.sf.net).
+   Copyright (C) 2002 by the author(s).
+   Distributable under LGPL license version 2.1 or later,
+   with NO WARRANTIES given or implied.
+   See terms of license at gnu.org or www.opensource.org/licenses  */
+
+package net.sf.jtemporal.bench;
+
+import java.util.AbstractList;
+import java.util.Random;
+
+import net.sf.jtemporal.Instant;
+import net.sf.jtemporal.LongInstant;
+import net.sf.jtemporal.Period;
+import net.sf.jtemporal.SimpleTimedObject;
+import net.sf.jtemporal.TemporalAttributeImpl;
+import net.sf.jtemporal.TimedObject;
+import net.sf.jtemporal.spi.ArrayTemporalAttributeStorage;
+import net.sf.jtemporal.spi.LongTemporalAttributeStorage;
+import net.sf.jtemporal.spi.PersistentTemporalAttributeStorage;
+import net.sf.jtemporal.spi.TemporalAttributeStorage;
+import net.sf.jtemporal.spi.TreeTemporalAttributeStorage;
+
+/**
+ * Builds the histories and the access patterns shared by the benchmarks. <br>
+ * A history of size n is made of n contiguous periods of
+ * {@linkplain #STEP} units, the k-th period holding the value k.
+ * @author Thomas A Beck
+ * @version $Id$
+ */
+final class Histories {
+
+  /** The length of each period of a history. */
+  static final int STEP = 10;
+
+  /** The number of precomputed lookups, a power of two. */
+  static final int LOOKUPS = 1 << 16;
+
+  private Histories() {
+  }
+
+  /**
+   * @param instantType "long" for {@linkplain LongInstant},
+   * "object" for {@linkplain ObjectInstant}
+   */
+  static Instant instant(String instantType, long value) {
+    if ("long".equals(instantType))   return LongInstant.valueOf(value);
+    if ("object".equals(instantType)) return new ObjectInstant(value);
+    throw new IllegalArgumentException("Unknown instant type : " + instantType);
+  }
+
+  static Period period(String instantType, int k) {
+    return new Period(
+      instant(instantType, (long) k * STEP), instant(instantType, (long) (k + 1) * STEP)
+    );
+  }
+
+  /**
+   * @param storage "tree", "array", "long" or "persistent"
+   */
+  static TemporalAttributeStorage<Integer> newStorage(String storage, String instantType) {
+    if ("tree".equals(storage))       return new TreeTemporalAttributeStorage<Integer>();
+    if ("array".equals(storage))      return new ArrayTemporalAttributeStorage<Integer>();
+    if ("persistent".equals(storage)) return new PersistentTemporalAttributeStorage<Integer>();
+    if ("long".equals(storage)) {
+      if (!"long".equals(instantType)) {
+        throw new IllegalArgumentException("The long storage only accepts long instants");
+      }
+      return new LongTemporalAttributeStorage<Integer>();
+    }
+    throw new IllegalArgumentException("Unknown storage : " + storage);
+  }
+
+  /**
+   * Returns an attribute holding a history of the given size.
+   */
+  static TemporalAttributeImpl<Integer> newAttribute(
+    String storage, final String instantType, final int size
+  ) {
+    TemporalAttributeImpl<Integer> ta =
+      new TemporalAttributeImpl<Integer>(newStorage(storage, instantType));
+    // the values are all different, nothing is merged
+    ta.bulkLoad(new AbstractList<TimedObject<Integer>>() {
+      @Override
+      public TimedObject<Integer> get(int k) {
+        return new SimpleTimedObject<Integer>(period(instantType, k), Integer.valueOf(k));
+      }
+      @Override
+      public int size() {
+        return size;
+      }
+    }.iterator());
+    return ta;
+  }
+
+  /**
+   * Returns {@linkplain #LOOKUPS} instants within a history of the given size.
+   * @param pattern "latest" for the last period only, "random" for uniformly
+   * distributed instants, "sequential" for ascending instants covering the
+   * whole history
+   */
+  static Instant[] lookups(String pattern, String instantType, int size) {
+    long extent = (long) size * STEP;
+    Random random = new Random(42);
+    Instant[] instants = new Instant[LOOKUPS];
+    for (int i = 0; i < LOOKUPS; i++) {
+      long value;
+      if ("latest".equals(pattern)) {
+        value = extent - 1 - random.nextInt(STEP);
+      }
+      else if ("random".equals(pattern)) {
+        value = (long) (random.nextDouble() * extent);
+      }
+      else if ("sequential".equals(pattern)) {
+        value = i * extent / LOOKUPS;
+      }
+      else {
+        throw new IllegalArgumentException("Unknown access pattern : " + pattern);
+      }
+      instants[i] = instant(instantType, value);
+    }
+    return instants;
+  }
+}
@@ -0,0 +1,29 @@
+/* This file is part of the JTemporal framework (http://jtemporal.sf.net).
+   Copyright (C) 2002 by the author(s).
+   Distributable under LGPL license version 2.1 or later,
+   with NO WARRANTIES given or implied.
+   See terms of license at gnu.org or www.opensource.org/licenses  */
+
+package net.sf.jtemporal.bench;
+
+/**
+ * Sequential scans over a TemporalAttribute over a
+ * {@linkplain net.sf.jtemporal.spi.LongTemporalAttributeStorage}, per
+ * history size. <br>
+ * Apart from {@linkplain ScanBenchmark}, since this storage
+ * only accepts long instants.
+ * @author Thomas A Beck
+ * @version $Id$
+ */
+public class LongScanBenchmark extends AbstractScanBenchmark {
+
+  @Override
+  protected String storage() {
+    return "long";
+  }
+
+  @Override
+  protected String instantType() {
+    return "long";
+  }
+}
@@ -0,0 +1,54 @@
+/* This file is part of the JTemporal framework (http://jtemporal.sf.net).
+   Copyright (C) 2002 by the author(s).
+   Distributable under LGPL license version 2.1 or later,
+   with NO WARRANTIES given or implied.
+   See terms of license at gnu.org or www.opensource.org/licenses  */
+
+package net.sf.jtemporal.bench;
+
+import net.sf.jtemporal.Instant;
+
+/**
+ * Immutable.
+ * A plain application-defined Instant, compared through compareTo(),
+ * as opposed to {@linkplain net.sf.jtemporal.LongInstant} whose
+ * comparisons are inlined by the framework.
+ * @author Thomas A Beck
+ * @version $Id$
+ */
+final class ObjectInstant implements Instant {
+
+  private final long value;
+
+  ObjectInstant(long value) {
+    this.value = value;
+  }
+
+  public int compareTo(Object o) {
+    long other = ((ObjectInstant) o).value;
+    return (this.value < other ? -1 : (this.value == other ? 0 : 1));
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    return (o instanceof ObjectInstant) && ((ObjectInstant) o).value == this.value;
+  }
+
+  @Override
+  public int hashCode() {
+    return (int) (this.value ^ (this.value >>> 32));
+  }
+
+  @Override
+  public String toString() {
+    return String.valueOf(this.value);
+  }
+
+  public boolean isPositiveInfinity() {
+    return false;
+  }
+
+  public boolean isNegativeInfinity() {
+    return false;
+  }
+}
@@ -0,0 +1,35 @@
+/* This file is part of the JTemporal framework (http://jtemporal.sf.net).
+   Copyright (C) 2002 by the author(s).
+   Distributable under LGPL license version 2.1 or later,
+   with NO WARRANTIES given or implied.
+   See terms of license at gnu.org or www.opensource.org/licenses  */
+
+package net.sf.jtemporal.bench;
+
+import org.openjdk.jmh.annotations.Param;
+
+/**
+ * Point lookups and updates on a TemporalAttribute, per storage,
+ * history size, instant type and access pattern.
+ * @author Thomas A Beck
+ * @version $Id$
+ * @see LongTemporalAttributeBenchmark
+ */
+public class TemporalAttributeBenchmark extends AbstractTemporalAttributeBenchmark {
+
+  @Param({"tree", "array", "persistent"})
+  public String storage;
+
+  @Param({"long", "object"})
+  public String instantType;
+
+  @Override
+  protected String storage() {
+    return this.storage;
+  }
+
+  @Override
+  protected String instantType() {
+    return this.instantType;
+  }
+}
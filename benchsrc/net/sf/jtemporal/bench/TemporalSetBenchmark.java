@@ -0,0 +1,118 @@
+/* This file is part of the JTemporal framework (http://jtemporal.sf.net).
+   Copyright (C) 2002 by the author(s).
+   Distributable under LGPL license version 2.1 or later,
+   with NO WARRANTIES given or implied.
+   See terms of license at gnu.org or www.opensource.org/licenses  */
+
+package net.sf.jtemporal.bench;
+
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.sf.jtemporal.Instant;
+import net.sf.jtemporal.Period;
+import net.sf.jtemporal.TemporalSet;
+import net.sf.jtemporal.TemporalSetImpl;
+import net.sf.jtemporal.spi.CompactTemporalSetStorage;
+import net.sf.jtemporal.spi.IntervalTreeTemporalSetStorage;
+import net.sf.jtemporal.spi.TemporalSetStorage;
+
+/**
+ * Point-in-time queries on a TemporalSet, per storage, number of entries,
+ * instant type and access pattern. <br>
+ * The entries have random overlapping periods, of 1 to 50 steps,
+ * over <tt>size / 10</tt> distinct values.
+ * @author Thomas A Beck
+ * @version $Id$
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TemporalSetBenchmark {
+
+  @Param({"1000", "100000"})
+  public int size;
+
+  @Param({"compact", "intervaltree"})
+  public String storage;
+
+  @Param({"long", "object"})
+  public String instantType;
+
+  @Param({"latest", "random", "sequential"})
+  public String pattern;
+
+  private TemporalSetStorage<Integer> setStorage;
+  private TemporalSet<Integer> set;
+  private Instant[] lookups;
+  private int cursor = 0;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    if ("compact".equals(this.storage)) {
+      this.setStorage = new CompactTemporalSetStorage<Integer>();
+    }
+    else if ("intervaltree".equals(this.storage)) {
+      this.setStorage = new IntervalTreeTemporalSetStorage<Integer>();
+    }
+    else {
+      throw new IllegalArgumentException("Unknown storage : " + this.storage);
+    }
+    this.set = new TemporalSetImpl<Integer>(this.setStorage);
+
+    Random random = new Random(42);
+    int values = this.size / 10 + 1;
+    long extent = (long) this.size * Histories.STEP;
+    for (int k = 0; k < this.size; k++) {
+      long start = (long) (random.nextDouble() * extent);
+      long end = start + (1 + random.nextInt(50)) * Histories.STEP;
+      this.set.put(
+        new Period(
+          Histories.instant(this.instantType, start), Histories.instant(this.instantType, end)
+        ),
+        Integer.valueOf(random.nextInt(values))
+      );
+    }
+    this.lookups = Histories.lookups(this.pattern, this.instantType, this.size);
+  }
+
+  private Instant next() {
+    return this.lookups[this.cursor++ & (Histories.LOOKUPS - 1)];
+  }
+
+  /**
+   * {@linkplain TemporalSetStorage#sizeAt(Instant)}, without
+   * the TemporalSetImpl layer.
+   */
+  @Benchmark
+  public int storageSizeAt() {
+    return this.setStorage.sizeAt(this.next());
+  }
+
+  @Benchmark
+  public boolean isEmptyAt() {
+    return this.set.isEmpty(this.next());
+  }
+
+  @Benchmark
+  public Set<Integer> valueSet() {
+    return this.set.valueSet(this.next());
+  }
+}
@@ -10,7 +10,7 @@ package net.sf.jtemporal.demo;
 import java.sql.Date;
 
 import net.sf.jtemporal.Instant;
-import net.sf.jtemporal.util.LightLRUCache;
+import net.sf.jtemporal.util.ConcurrentLRUCache;
 
 /**
  * An example of simple Instant wrapper around java.sql.Date (which is a subtype of java.util.Date).<br>
@@ -29,7 +29,7 @@ public class FinalDate implements Instant {
 	
 	// given that FinalDates are immutable,
 	// we can cache the last 400 created FinalDates, to save memory
-	private static final LightLRUCache<Long, FinalDate> CACHE = new LightLRUCache<Long, FinalDate>(400);
+	private static final ConcurrentLRUCache<Long, FinalDate> CACHE = new ConcurrentLRUCache<Long, FinalDate>(400);
 	
 	/**
 	 * Uses the default timezone to build the date.
@@ -46,13 +46,11 @@ public class FinalDate implements Instant {
 	 * @return
 	 */	
 	public static FinalDate valueOf(Date date) {
-		FinalDate ret;
-		synchronized (CACHE) {
-			ret = (FinalDate) CACHE.get(date.getTime());
-			if (ret == null) {
-				ret = new FinalDate(date);
-				CACHE.put(date.getTime(), ret);			
-			}			
+		// two threads may create equal instances, never mind
+		FinalDate ret = CACHE.get(date.getTime());
+		if (ret == null) {
+			ret = new FinalDate(date);
+			CACHE.put(date.getTime(), ret);
 		}
 		return ret;
 	}
@@ -6,6 +6,9 @@
 
 package net.sf.jtemporal;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * Features common to the TemporalAttributes.
  * @author Thomas A Beck
@@ -23,6 +26,62 @@ abstract public class AbstractTemporalAttribute<V> implements TemporalAttribute<
     return ret;
   }
 
+  public TemporalAttributeBatch<V> edit() {
+    return new Batch();
+  }
+
+  /**
+   * Applies the operations recorded by a batch, in order. <br>
+   * This default implementation just calls put() and remove() for each
+   * operation; to be overridden to defragment only once.
+   * @param operations the operations, an entry whose value is null
+   * standing for a removal
+   * @return true if one or more previous values have been overwritten
+   * or removed
+   */
+  protected boolean applyBatch(List<TimedObject<V>> operations) {
+    boolean ret = false;
+    for (TimedObject<V> op : operations) {
+      if (op.getValue() == null) {
+        ret |= this.remove(op.getPeriod());
+      }
+      else {
+        ret |= this.put(op.getPeriod(), op.getValue());
+      }
+    }
+    return ret;
+  }
+
+  /**
+   * Records the operations, applied by {@linkplain AbstractTemporalAttribute#applyBatch(List)}.
+   */
+  private class Batch implements TemporalAttributeBatch<V> {
+    private List<TimedObject<V>> operations = new ArrayList<TimedObject<V>>();
+
+    public TemporalAttributeBatch<V> put(Period p, V value) {
+      if (value == null) throw new IllegalArgumentException("value == null");
+      if (p == null)     throw new IllegalArgumentException("p == null");
+      this.operations.add(new SimpleTimedObject<V>(p, value));
+      return this;
+    }
+
+    public TemporalAttributeBatch<V> remove(Period p) {
+      if (p == null) throw new IllegalArgumentException("p == null");
+      this.operations.add(new SimpleTimedObject<V>(p, null));
+      return this;
+    }
+
+    public int size() {
+      return this.operations.size();
+    }
+
+    public boolean apply() {
+      List<TimedObject<V>> pending = this.operations;
+      this.operations = new ArrayList<TimedObject<V>>();
+      return pending.isEmpty() ? false : AbstractTemporalAttribute.this.applyBatch(pending);
+    }
+  } // class Batch
+
   public Period extent() {
     Instant first = firstInstant(); // throws NoSuchElementException
     Instant last  = lastInstant();  // throws NoSuchElementException
@@ -6,6 +6,8 @@
 
 package net.sf.jtemporal;
 
+import java.util.Iterator;
+
 /**
  * Features common to the TemporalSets.
  * @author Thomas A Beck
@@ -24,6 +26,10 @@ abstract public class AbstractTemporalSet<V> implements TemporalSet<V> {
     throw new UnsupportedOperationException();
   }
 
+  public Iterator<ValueSetDelta<V>> valueSetDeltas(Iterator<? extends Instant> instants) {
+    return new ValueSetSweepIterator<V>(this.entrySet().iterator(), instants);
+  }
+
   public boolean putAll(TemporalSet<? extends V> temporalSet) {
     if (temporalSet == null) throw new IllegalArgumentException("null");
     boolean ret = false;
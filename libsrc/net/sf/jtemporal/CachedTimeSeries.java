@@ -7,6 +7,14 @@
 
 package net.sf.jtemporal;
 
+import java.util.Iterator;
+import java.util.SortedSet;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import net.sf.jtemporal.util.Cache;
+import net.sf.jtemporal.util.EvictionPolicy;
 import net.sf.jtemporal.util.LightLRUCache;
 
 /**
@@ -15,25 +23,62 @@ import net.sf.jtemporal.util.LightLRUCache;
  * the MissingInstantHandler is invoked.  Then, the handler has the choice whether 
  * to retrieve just the missing value, or other values, or other objects as well 
  * to reduce call granularity (prefetch). <br>
- * Internally a LightLRUCache is used to cache reads. Writes are not cached, if you
+ * Internally a LightLRUCache is used to cache reads, unless another 
+ * {@linkplain Cache} or {@linkplain EvictionPolicy} is passed to the constructor.
+ * When the accesses mix a few hot instants with long scans, a scan-resistant 
+ * policy like {@linkplain EvictionPolicy#TINY_LFU} or 
+ * {@linkplain EvictionPolicy#TWO_QUEUE} keeps the hot instants cached. Writes are not cached, if you
  * want to cache them, you should do it at the ChangeHandler level.<br>
+ * If the handler is a {@linkplain RangeElementHandler}, the ascending sequences
+ * of missing instants are detected, separately for each thread, and the following 
+ * entries are loaded by range, with a read-ahead growing as long as the access 
+ * stays sequential. <br>
+ * The cached instants are also kept in an ordered index, so that removing a 
+ * period only invalidates the instants within the period. <br>
  * If you already have a persistence framework, you will eventually use this class on 
  * top of that, in order to control and customize prefetching.<br>
- * This class is NOT thread-safe.
+ * This class is NOT thread-safe, unless it uses a thread-safe cache, like 
+ * {@linkplain net.sf.jtemporal.util.ConcurrentLRUCache}, and thread-safe handlers.
  * 
  * @author Thomas A Beck
  * @see net.sf.jtemporal.util.LightLRUCache
+ * @see net.sf.jtemporal.util.ConcurrentLRUCache
  * @version $Id: CachedTimeSeries.java,v 1.15 2008/12/14 19:33:42 tabeck Exp $
  * @param <V> the type of the value
  */
 public class CachedTimeSeries<V> implements TimeSeries<V> {
 
+	/**
+	 * The maximum read-ahead depth passed to a {@linkplain RangeElementHandler}.
+	 */
+	public static final int MAX_READ_AHEAD = 64;
+
 	//holds instances of V and NoElementObject.VALUE
-	private final LightLRUCache<Instant,Object> cache;
+	private final Cache<Instant,Object> cache;
 	
 	private final MissingElementHandler<V> reader;
 	
 	private final ChangeHandler<V> writer;
+
+	// the instant being populated by the current thread
+	private final ThreadLocal<Lookup> lookup = new ThreadLocal<Lookup>();
+
+	// the instants put in the cache, possibly evicted since
+	private final ConcurrentSkipListSet<Instant> index = new ConcurrentSkipListSet<Instant>();
+
+	// the size of the index, which the skip list does not count in constant time
+	private final AtomicInteger indexSize = new AtomicInteger();
+
+	// the last instant checked for eviction, the pruning resumes after it
+	private final AtomicReference<Instant> pruned = new AtomicReference<Instant>();
+
+	// detects the sequential misses of the current thread
+	private final ThreadLocal<Sequence> sequence = new ThreadLocal<Sequence>() {
+		@Override
+		protected Sequence initialValue() {
+			return new Sequence();
+		}
+	};
 	
 	/**
 	 * Creates a READ-ONLY CachedTimeSeries.
@@ -53,13 +98,79 @@ public class CachedTimeSeries<V> implements TimeSeries<V> {
 	 * @param reader handles physical read requests
 	 * @param writer handles write requests
 	 */
-	@SuppressWarnings("unchecked") // it is fine to pass handlers that handle generic Object
 	public CachedTimeSeries(
 		int size, 
 		MissingElementHandler<? super V> reader, 
 		ChangeHandler        <? super V> writer
 	) {
-		this.cache = new LightLRUCache<Instant,Object>(size);
+		this(new LightLRUCache<Instant,Object>(size), reader, writer);
+	}
+
+	/**
+	 * Creates a READ-ONLY CachedTimeSeries with the given eviction policy.
+	 * @param size the size of the cache (number of entries)
+	 * @param policy chooses the entries to be evicted when the cache is full
+	 * @param reader handles physical read requests
+	 */
+	public CachedTimeSeries(
+		int size, 
+		EvictionPolicy policy,
+		MissingElementHandler<? super V> reader
+	) {
+		this(size, policy, reader, NoChangeHandler.INSTANCE);
+	}
+
+	/**
+	 * Creates a CachedTimeSeries with the given eviction policy.
+	 * @param size the size of the cache (number of entries)
+	 * @param policy chooses the entries to be evicted when the cache is full
+	 * @param reader handles physical read requests
+	 * @param writer handles write requests
+	 */
+	public CachedTimeSeries(
+		int size, 
+		EvictionPolicy policy,
+		MissingElementHandler<? super V> reader, 
+		ChangeHandler        <? super V> writer
+	) {
+		this(newCache(size, policy), reader, writer);
+	}
+
+	private static Cache<Instant,Object> newCache(int size, EvictionPolicy policy) {
+		if (policy == null) {
+			throw new IllegalArgumentException("null");
+		}
+		return policy.<Instant,Object>newCache(size);
+	}
+
+	/**
+	 * Creates a READ-ONLY CachedTimeSeries using the given cache.
+	 * @param cache an empty cache, owned by this instance from now on
+	 * @param reader handles physical read requests
+	 */
+	public CachedTimeSeries(
+		Cache<Instant,Object> cache, 
+		MissingElementHandler<? super V> reader
+	) {
+		this(cache, reader, NoChangeHandler.INSTANCE);
+	}
+
+	/**
+	 * Creates a CachedTimeSeries using the given cache.
+	 * @param cache an empty cache, owned by this instance from now on
+	 * @param reader handles physical read requests
+	 * @param writer handles write requests
+	 */
+	@SuppressWarnings("unchecked") // it is fine to pass handlers that handle generic Object
+	public CachedTimeSeries(
+		Cache<Instant,Object> cache, 
+		MissingElementHandler<? super V> reader, 
+		ChangeHandler        <? super V> writer
+	) {
+		if (cache == null) {
+			throw new IllegalArgumentException("null");
+		}
+		this.cache = cache;
 		this.reader = (MissingElementHandler<V>) reader;	// unchecked cast
 		this.writer = (ChangeHandler<V>) writer;			// unchecked cast
 	}
@@ -74,7 +185,7 @@ public class CachedTimeSeries<V> implements TimeSeries<V> {
 		}
 		V previous = this.get(i);
 		this.writer.put(this, i, value); // RuntimeException possible here
-		this.cache.put(i, value);
+		this.cacheEntry(i, value);
 		return previous;
 	}
 	
@@ -93,12 +204,13 @@ public class CachedTimeSeries<V> implements TimeSeries<V> {
 		if (i == null) {
 			throw new IllegalArgumentException("null");
 		}
-		if (value == null) {
-			this.cache.put(i, NoElementObject.VALUE );
+		Object cached = (value == null) ? NoElementObject.VALUE : value;
+		this.cacheEntry(i, cached);
+		Lookup current = this.lookup.get();
+		if (current != null && current.instant.equals(i)) {
+			// even if the entry gets evicted by another thread
+			current.value = cached;
 		}
-		else
-			this.cache.put(i, value)
-		;
 	}
 	
 	/*
@@ -113,10 +225,24 @@ public class CachedTimeSeries<V> implements TimeSeries<V> {
 		Object value = this.cache.get(i);
 		
 		if (value == null) { 
-			this.reader.populateElement(this, i); // RuntimeException possible here
-			value = this.cache.get(i);
+			Lookup outer = this.lookup.get();
+			Lookup current = new Lookup(i);
+			this.lookup.set(current);
+			try {
+				this.populate(i); // RuntimeException possible here
+			}
+			finally {
+				if (outer == null) {
+					this.lookup.remove(); // no entry left behind in the thread
+				}
+				else {
+					this.lookup.set(outer);
+				}
+			}
+			value = current.value;
 			if (value == null) { //still?
-				this.cache.put(i, NoElementObject.VALUE); // remember for the next time
+				value = NoElementObject.VALUE;
+				this.cacheEntry(i, value); // remember for the next time
 			}
 		}
 		if (value == NoElementObject.VALUE) {
@@ -135,7 +261,7 @@ public class CachedTimeSeries<V> implements TimeSeries<V> {
 		}
 		V previous = this.get(i);
 		this.writer.remove(this, i); // RuntimeException possible here
-		this.cache.put(i, NoElementObject.VALUE);
+		this.cacheEntry(i, NoElementObject.VALUE);
 		return previous;
 	}
 	
@@ -147,7 +273,13 @@ public class CachedTimeSeries<V> implements TimeSeries<V> {
             throw new IllegalArgumentException("null period");
 		}
 		this.writer.remove(this, p);
-		this.cache.clear(); // good enough for the time being // TODO
+		// only the instants within the period are invalidated
+		SortedSet<Instant> removed = this.index.subSet(p.getStart(), p.getEnd());
+		for (Iterator<Instant> it = removed.iterator(); it.hasNext(); ) {
+			Instant i = it.next();
+			this.unindex(i);
+			this.cache.remove(i);
+		}
 	}
 	
 	/**
@@ -156,8 +288,90 @@ public class CachedTimeSeries<V> implements TimeSeries<V> {
 	 * and your cached imformation is not valid anymore.
 	 */
 	public void clearCache() {
+		for (Instant i = this.index.pollFirst(); i != null; i = this.index.pollFirst()) {
+			this.indexSize.decrementAndGet();
+		}
 		this.cache.clear();
 	}
+
+	/**
+	 * Loads the entries of the given period in the cache, at once.
+	 * @param p the period to be loaded
+	 * @throws UnsupportedOperationException if the handler is not a 
+	 * {@linkplain RangeElementHandler}
+	 */
+	public void prefetch(Period p) {
+		if (p == null) {
+			throw new IllegalArgumentException("null period");
+		}
+		if (!(this.reader instanceof RangeElementHandler)) {
+			throw new UnsupportedOperationException("not a RangeElementHandler");
+		}
+		((RangeElementHandler<V>) this.reader).populateRange(this, p);
+	}
+
+	/**
+	 * Invokes the handler for a missing instant, by range if the 
+	 * access is sequential.
+	 */
+	private void populate(Instant i) {
+		if (this.reader instanceof RangeElementHandler) {
+			RangeElementHandler<V> rangeReader = (RangeElementHandler<V>) this.reader;
+			int depth = this.sequence.get().miss(i);
+			Period p = (depth == 0) ? null : rangeReader.prefetchPeriod(i, depth);
+			if (p != null) {
+				rangeReader.populateRange(this, p);
+				return;
+			}
+		}
+		this.reader.populateElement(this, i);
+	}
+
+	/**
+	 * Puts in the cache, and indexes the instant.
+	 * The instant is indexed after being cached, so that the index 
+	 * always contains the cached instants.
+	 */
+	private void cacheEntry(Instant i, Object value) {
+		this.cache.put(i, value);
+		if (this.index.add(i) && this.indexSize.incrementAndGet() > this.cache.maxSize()) {
+			// forget two evicted instants for each new one, the index stays bounded
+			this.prune();
+			this.prune();
+		}
+	}
+
+	/**
+	 * Checks the indexed instant following the last one checked,
+	 * and forgets it if it has been evicted.
+	 */
+	private void prune() {
+		Instant last = this.pruned.get();
+		Instant i = (last == null) ? null : this.index.higher(last);
+		if (i == null) {
+			// start over
+			Iterator<Instant> it = this.index.iterator();
+			if (!it.hasNext()) {
+				return;
+			}
+			i = it.next();
+		}
+		this.pruned.compareAndSet(last, i);
+		if (!this.cache.containsKey(i) && this.unindex(i) && this.cache.containsKey(i)) {
+			// cached again meanwhile by another thread
+			if (this.index.add(i)) {
+				this.indexSize.incrementAndGet();
+			}
+		}
+	}
+
+	private boolean unindex(Instant i) {
+		if (this.index.remove(i)) {
+			this.indexSize.decrementAndGet();
+			return true;
+		}
+		return false;
+	}
 	
 	
 	/**
@@ -189,6 +403,42 @@ public class CachedTimeSeries<V> implements TimeSeries<V> {
 
 	} // MissingElementHandler
 
+	/**
+	 * Reacts on missing elements, loading whole ranges when the 
+	 * missing instants follow each other in ascending order. <br>
+	 * The CachedTimeSeries calls {@linkplain #populateElement} for isolated
+	 * misses, and {@linkplain #populateRange} for sequential misses.
+	 * @author Thomas A Beck
+	 * @version $Id$
+	 */
+	public interface RangeElementHandler<V> extends MissingElementHandler<V> {
+		/**
+		 * Returns the period to be loaded when a sequential access is 
+		 * detected at the given instant. <br>
+		 * The depth starts at 1 on the second ascending miss in a row,
+		 * then doubles on each following ascending miss, up to 
+		 * {@value net.sf.jtemporal.CachedTimeSeries#MAX_READ_AHEAD}: for ex. 
+		 * the period from i to i + depth days, for daily data.
+		 * @param i the missing instant, which should be the start of the period
+		 * @param depth how far the read-ahead should go 
+		 * @return the period to be loaded, or null to load only the missing instant
+		 */
+		Period prefetchPeriod(Instant i, int depth);
+
+		/**
+		 * Populates the timeseries with all the entries whose instant
+		 * is within the given period, by calling 
+		 * {@linkplain CachedTimeSeries#putInCache(Instant, Object)}. <br>
+		 * If the requested instant has no value, the CachedTimeSeries caches
+		 * that information by itself.
+		 * @param ts the CachedTimeSeries instance originating the call
+		 * @param p the period to be loaded
+		 * @see CachedTimeSeries#prefetch(Period)
+		 */
+		void populateRange(CachedTimeSeries<V> ts, Period p);
+
+	} // RangeElementHandler
+
 	
 	/**
 	 * Applies the changes on the underlying data source. <br>
@@ -257,6 +507,46 @@ public class CachedTimeSeries<V> implements TimeSeries<V> {
 		}		 
 	}
 
+	/**
+	 * The value put in cache by the MissingElementHandler for the 
+	 * requested instant, kept apart since another thread may evict it
+	 * from the cache before it is read.
+	 */
+	private static final class Lookup {
+		final Instant instant;
+		Object value = null;
+		Lookup(Instant instant) {
+			this.instant = instant;
+		}
+	}
+
+	/**
+	 * Detects the ascending sequences of missing instants,
+	 * and computes the read-ahead depth.  Confined to a single thread.
+	 */
+	private static final class Sequence {
+		private Instant lastMiss = null;
+		private int ascending = 0;
+		private int depth = 0;
+
+		/**
+		 * Records a miss, returns the read-ahead depth, 0 if the access
+		 * does not look sequential.
+		 */
+		@SuppressWarnings("unchecked")
+		int miss(Instant i) {
+			if (this.lastMiss == null || i.compareTo(this.lastMiss) <= 0) {
+				this.ascending = 0;
+				this.depth = 0;
+			}
+			else if (++this.ascending >= 2) {
+				this.depth = (this.depth == 0) ? 1 : Math.min(2 * this.depth, MAX_READ_AHEAD);
+			}
+			this.lastMiss = i;
+			return this.depth;
+		}
+	}
+
 	/**
 	 * Tells that this value is not existing in the underlying physical datasource.
 	 * The CachedTimeSeries needs to know it, to avoid to repeatedly query for this 
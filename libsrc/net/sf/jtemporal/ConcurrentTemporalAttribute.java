@@ -0,0 +1,378 @@
+/*
+   This file is part of the JTemporal framework (http://jtemporal.sf.net).
+   Copyright (C) 2002 by the author(s).
+   Distributable under LGPL license version 2.1 or later,
+   with no warranties given or implied.
+   See terms of license at gnu.org or www.opensource.org/licenses  */
+
+package net.sf.jtemporal;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import net.sf.jtemporal.spi.PersistentTemporalAttributeStorage;
+
+/**
+ * A thread-safe TemporalAttribute, whose read methods never block. <br>
+ * The mappings are held by an immutable snapshot (a
+ * {@linkplain TemporalAttributeImpl} over a
+ * {@linkplain PersistentTemporalAttributeStorage}), published through a
+ * volatile reference. <br>
+ * Readers just read the current snapshot, without any lock: a read
+ * always sees a consistent state, either before or after a given write,
+ * never the intermediate states of the remove-merge-put sequence
+ * performed by {@linkplain TemporalAttributeImpl#put(Period, Object)}. <br>
+ * Writers are serialized: each write copies the current snapshot
+ * (in constant time, the copy sharing the tree of the snapshot),
+ * applies the change to the copy, then publishes the copy.
+ * A write creates only O(log n) new nodes. <br>
+ * The sets returned by {@linkplain #periodSet()} and {@linkplain #entrySet()},
+ * and the sub maps returned by {@linkplain #subMap(Period)},
+ * are read-only views of the snapshot current when they are requested,
+ * and are not affected by the following writes.
+ * @author Thomas A Beck
+ * @version $Id$
+ * @param <V> the type of the value
+ */
+public class ConcurrentTemporalAttribute<V> extends AbstractTemporalAttribute<V>
+	implements Serializable
+{
+	private static final long serialVersionUID = -2290738611826358142L;
+
+	/**
+	 * The current snapshot, never modified after being published.
+	 */
+	private volatile Snapshot<V> snapshot;
+
+	private static final class Snapshot<V> implements Serializable {
+		private static final long serialVersionUID = 8613305582154316097L;
+
+		final PersistentTemporalAttributeStorage<V> storage;
+		final TemporalAttributeImpl<V> attribute;
+
+		Snapshot(PersistentTemporalAttributeStorage<V> storage) {
+			this.storage = storage;
+			this.attribute = new TemporalAttributeImpl<V>(storage);
+		}
+
+		/**
+		 * Returns a modifiable copy of this snapshot.
+		 */
+		Snapshot<V> copy() {
+			return new Snapshot<V>(this.storage.snapshot());
+		}
+	}
+
+	/**
+	 * Creates an empty ConcurrentTemporalAttribute.
+	 */
+	public ConcurrentTemporalAttribute() {
+		this.snapshot = new Snapshot<V>(new PersistentTemporalAttributeStorage<V>());
+	}
+
+	/**
+	 * Creates a ConcurrentTemporalAttribute containing the mappings of
+	 * the given TemporalAttribute.
+	 * @param ta the mappings to be copied
+	 */
+	public ConcurrentTemporalAttribute(TemporalAttribute<? extends V> ta) {
+		this();
+		this.putAll(ta);
+	}
+
+	private TemporalAttributeImpl<V> read() {
+		return this.snapshot.attribute;
+	}
+
+	/**
+	 * Returns a consistent point-in-time copy of this attribute,
+	 * in constant time. <br>
+	 * The copy is not thread-safe, it is not affected by the following
+	 * writes to this attribute, and can be modified without affecting
+	 * this attribute.
+	 * @return a modifiable copy of the current mappings
+	 */
+	public TemporalAttribute<V> snapshot() {
+		return this.snapshot.copy().attribute;
+	}
+
+	/* (non-Javadoc)
+	 * @see net.sf.jtemporal.TemporalAttribute#clear()
+	 */
+	public synchronized void clear() {
+		this.snapshot = new Snapshot<V>(new PersistentTemporalAttributeStorage<V>());
+	}
+
+	/* (non-Javadoc)
+	 * @see net.sf.jtemporal.TemporalAttribute#size()
+	 */
+	public int size() {
+		return this.read().size();
+	}
+
+	/* (non-Javadoc)
+	 * @see net.sf.jtemporal.TemporalAttribute#isEmpty()
+	 */
+	public boolean isEmpty() {
+		return this.read().isEmpty();
+	}
+
+	/* (non-Javadoc)
+	 * @see net.sf.jtemporal.ReadableTemporalAttribute#get(net.sf.jtemporal.Instant)
+	 */
+	public V get(Instant instant) {
+		return this.read().get(instant);
+	}
+
+	/* (non-Javadoc)
+	 * @see net.sf.jtemporal.TemporalAttribute#getPeriod(net.sf.jtemporal.Instant)
+	 */
+	public Period getPeriod(Instant instant) {
+		return this.read().getPeriod(instant);
+	}
+
+	/* (non-Javadoc)
+	 * @see net.sf.jtemporal.TemporalAttribute#getEntry(net.sf.jtemporal.Instant)
+	 */
+	@Override
+	public TimedObject<V> getEntry(Instant instant) {
+		return this.read().getEntry(instant);
+	}
+
+	/* (non-Javadoc)
+	 * @see net.sf.jtemporal.TemporalAttribute#containsInstant(net.sf.jtemporal.Instant)
+	 */
+	public boolean containsInstant(Instant instant) {
+		return this.read().containsInstant(instant);
+	}
+
+	/* (non-Javadoc)
+	 * @see net.sf.jtemporal.TemporalAttribute#containsValue(java.lang.Object)
+	 */
+	public boolean containsValue(Object value) {
+		return this.read().containsValue(value);
+	}
+
+	/* (non-Javadoc)
+	 * @see net.sf.jtemporal.TemporalAttribute#put(net.sf.jtemporal.Period, java.lang.Object)
+	 */
+	public synchronized boolean put(Period p, V value) {
+		Snapshot<V> current = this.snapshot;
+		TimedObject<V> prev = (p == null) ? null : current.attribute.getEntry(p.getStart());
+		if (prev != null && prev.getPeriod().contains(p) && prev.getValue().equals(value)) {
+			// already set, do not copy
+			return true;
+		}
+		Snapshot<V> next = current.copy();
+		boolean ret = next.attribute.put(p, value);
+		this.snapshot = next;
+		return ret;
+	}
+
+	/* (non-Javadoc)
+	 * @see net.sf.jtemporal.TemporalAttribute#remove(net.sf.jtemporal.Period)
+	 */
+	public synchronized boolean remove(Period p) {
+		Snapshot<V> current = this.snapshot;
+		if (p == null) throw new IllegalArgumentException("p == null");
+		if (current.storage.isEmpty(p)) {
+			// nothing to remove, do not copy
+			return false;
+		}
+		Snapshot<V> next = current.copy();
+		boolean ret = next.attribute.remove(p);
+		this.snapshot = next;
+		return ret;
+	}
+
+	/**
+	 * Copies all the mappings of the given TemporalAttribute, and publishes
+	 * them at once: the readers see either none or all of them.
+	 * @see net.sf.jtemporal.TemporalAttribute#putAll(net.sf.jtemporal.TemporalAttribute)
+	 */
+	@Override
+	public synchronized boolean putAll(TemporalAttribute<? extends V> tm) {
+		Snapshot<V> next = this.snapshot.copy();
+		boolean ret = false;
+		for (TimedObject<? extends V> to : tm.entrySet()) {
+			ret |= next.attribute.put(to.getPeriod(), to.getValue());
+		}
+		this.snapshot = next;
+		return ret;
+	}
+
+	/**
+	 * Applies the operations to a single copy, and publishes them at once:
+	 * the readers see either none or all of them.
+	 * @see net.sf.jtemporal.AbstractTemporalAttribute#applyBatch(java.util.List)
+	 */
+	@Override
+	protected synchronized boolean applyBatch(List<TimedObject<V>> operations) {
+		Snapshot<V> next = this.snapshot.copy();
+		boolean ret = next.attribute.applyBatch(operations);
+		this.snapshot = next;
+		return ret;
+	}
+
+	/**
+	 * Returns a read-only view of the periods of the current snapshot.
+	 * @see net.sf.jtemporal.TemporalAttribute#periodSet()
+	 */
+	public Set<Period> periodSet() {
+		return Collections.unmodifiableSet(this.read().periodSet());
+	}
+
+	/**
+	 * Returns a read-only view of the entries of the current snapshot.
+	 * @see net.sf.jtemporal.TemporalAttribute#entrySet()
+	 */
+	public Set<TimedObject<V>> entrySet() {
+		return Collections.unmodifiableSet(this.read().entrySet());
+	}
+
+	/* (non-Javadoc)
+	 * @see net.sf.jtemporal.TemporalAttribute#firstInstant()
+	 */
+	public Instant firstInstant() {
+		return this.read().firstInstant();
+	}
+
+	/* (non-Javadoc)
+	 * @see net.sf.jtemporal.TemporalAttribute#lastInstant()
+	 */
+	public Instant lastInstant() {
+		return this.read().lastInstant();
+	}
+
+	/* (non-Javadoc)
+	 * @see net.sf.jtemporal.TemporalAttribute#firstPeriod()
+	 */
+	public Period firstPeriod() {
+		return this.read().firstPeriod();
+	}
+
+	/* (non-Javadoc)
+	 * @see net.sf.jtemporal.TemporalAttribute#lastPeriod()
+	 */
+	public Period lastPeriod() {
+		return this.read().lastPeriod();
+	}
+
+	/**
+	 * Returns the extent of the current snapshot.
+	 * @see net.sf.jtemporal.TemporalAttribute#extent()
+	 */
+	@Override
+	public Period extent() {
+		return this.read().extent();
+	}
+
+	/**
+	 * Returns a read-only view of the current snapshot, restricted to the
+	 * given period, not affected by the following writes.
+	 * @see net.sf.jtemporal.TemporalAttribute#subMap(net.sf.jtemporal.Period)
+	 */
+	public TemporalAttribute<V> subMap(Period p) {
+		return new ReadOnlyView<V>(this.read().subMap(p));
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return this.read().toString();
+	}
+
+	/**
+	 * A read-only view of a sub map of a snapshot.
+	 */
+	private static final class ReadOnlyView<V> extends AbstractTemporalAttribute<V> {
+		private final TemporalAttribute<V> ta;
+
+		ReadOnlyView(TemporalAttribute<V> ta) {
+			this.ta = ta;
+		}
+
+		public void clear() {
+			throw new UnsupportedOperationException();
+		}
+
+		public boolean put(Period p, V value) {
+			throw new UnsupportedOperationException();
+		}
+
+		public boolean remove(Period p) {
+			throw new UnsupportedOperationException();
+		}
+
+		public int size() {
+			return this.ta.size();
+		}
+
+		public boolean isEmpty() {
+			return this.ta.isEmpty();
+		}
+
+		public V get(Instant instant) {
+			return this.ta.get(instant);
+		}
+
+		public Period getPeriod(Instant instant) {
+			return this.ta.getPeriod(instant);
+		}
+
+		@Override
+		public TimedObject<V> getEntry(Instant instant) {
+			return this.ta.getEntry(instant);
+		}
+
+		public boolean containsInstant(Instant instant) {
+			return this.ta.containsInstant(instant);
+		}
+
+		public boolean containsValue(Object value) {
+			return this.ta.containsValue(value);
+		}
+
+		public Set<Period> periodSet() {
+			return Collections.unmodifiableSet(this.ta.periodSet());
+		}
+
+		public Set<TimedObject<V>> entrySet() {
+			return Collections.unmodifiableSet(this.ta.entrySet());
+		}
+
+		public Instant firstInstant() {
+			return this.ta.firstInstant();
+		}
+
+		public Instant lastInstant() {
+			return this.ta.lastInstant();
+		}
+
+		public Period firstPeriod() {
+			return this.ta.firstPeriod();
+		}
+
+		public Period lastPeriod() {
+			return this.ta.lastPeriod();
+		}
+
+		@Override
+		public Period extent() {
+			return this.ta.extent();
+		}
+
+		public TemporalAttribute<V> subMap(Period p) {
+			return new ReadOnlyView<V>(this.ta.subMap(p));
+		}
+
+		@Override
+		public String toString() {
+			return this.ta.toString();
+		}
+	}
+}
@@ -0,0 +1,143 @@
+/* This file is part of the JTemporal framework (http://jtemporal.sf.net).
+   Copyright (C) 2002 by the author(s).
+   Distributable under LGPL license version 2.1 or later,
+   with NO WARRANTIES given or implied.
+   See terms of license at gnu.org or www.opensource.org/licenses  */
+
+package net.sf.jtemporal;
+
+import java.io.InvalidObjectException;
+import java.io.Serializable;
+
+/**
+ * A ready-to-use {@linkplain Instant} holding a primitive <tt>long</tt>,
+ * for example the number of milliseconds since the epoch. <br>
+ * The infinities are the unique instances {@linkplain #POSITIVE_INFINITY}
+ * (<tt>Long.MAX_VALUE</tt>) and {@linkplain #NEGATIVE_INFINITY}
+ * (<tt>Long.MIN_VALUE</tt>): {@linkplain #valueOf(long)} and deserialization
+ * always return them, so they can be tested by reference. <p>
+ * This class is final, so that {@linkplain Period} and
+ * {@linkplain net.sf.jtemporal.spi.StartComparator} can detect it with a
+ * cheap <tt>instanceof</tt> and compare the primitive values directly,
+ * through {@linkplain #compare(Instant, Instant)}, instead of calling
+ * {@linkplain Instant#compareTo(Object)} through the interface.
+ * @stereotype immutable
+ * @author Thomas A Beck
+ * @version $Id$
+ */
+public final class LongInstant implements Instant, Serializable
+{
+    private static final long serialVersionUID = 4719305638116045321L;
+
+    /**
+     * The positive infinity, holding <tt>Long.MAX_VALUE</tt>.
+     */
+    public static final LongInstant POSITIVE_INFINITY = new LongInstant(Long.MAX_VALUE);
+
+    /**
+     * The negative infinity, holding <tt>Long.MIN_VALUE</tt>.
+     */
+    public static final LongInstant NEGATIVE_INFINITY = new LongInstant(Long.MIN_VALUE);
+
+    /**
+     * Period(NEGATIVE_INFINITY, POSITIVE_INFINITY).
+     */
+    public static final Period ALWAYS = new Period(NEGATIVE_INFINITY, POSITIVE_INFINITY);
+
+    private final long value;
+
+    /**
+     * Returns the LongInstant holding the given value. <br>
+     * <tt>Long.MAX_VALUE</tt> and <tt>Long.MIN_VALUE</tt> are mapped
+     * to the shared infinities.
+     * @param value the value of the instant
+     * @return a LongInstant holding the given value
+     */
+    public static LongInstant valueOf(long value) {
+        if (value == Long.MAX_VALUE) return POSITIVE_INFINITY;
+        if (value == Long.MIN_VALUE) return NEGATIVE_INFINITY;
+        return new LongInstant(value);
+    }
+
+    private LongInstant(long value) {
+        this.value = value;
+    }
+
+    /**
+     * Compares two instants. <br>
+     * If both instants are instances of LongInstant, the primitive values
+     * are compared directly, otherwise <tt>i1.compareTo(i2)</tt> is returned.
+     * @param i1 the first instant
+     * @param i2 the second instant
+     * @return a negative integer, zero, or a positive integer as i1 is less
+     * than, equal to, or greater than i2.
+     */
+    public static int compare(Instant i1, Instant i2) {
+        if (i1 instanceof LongInstant && i2 instanceof LongInstant) {
+            return compare(((LongInstant) i1).value, ((LongInstant) i2).value);
+        }
+        return i1.compareTo(i2);
+    }
+
+    private static int compare(long v1, long v2) {
+        // subtraction leads to wrong result because of the overflow
+        return (v1 < v2 ? -1 : (v1 == v2 ? 0 : 1));
+    }
+
+    /**
+     * Returns the value of this instant.
+     * @return the value of this instant
+     */
+    public long longValue() {
+        return this.value;
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.jtemporal.Instant#compareTo(java.lang.Object)
+     */
+    public int compareTo(Object i) {
+        return compare(this.value, ((LongInstant) i).value);
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.jtemporal.Instant#isPositiveInfinity()
+     */
+    public boolean isPositiveInfinity() {
+        return this.value == Long.MAX_VALUE;
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.jtemporal.Instant#isNegativeInfinity()
+     */
+    public boolean isNegativeInfinity() {
+        return this.value == Long.MIN_VALUE;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (o == this) return true;
+        if (!(o instanceof LongInstant)) return false;
+        return this.value == ((LongInstant) o).value;
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) (this.value ^ (this.value >>> 32));
+    }
+
+    @Override
+    public String toString() {
+        if (this.isPositiveInfinity()) return "+INF";
+        if (this.isNegativeInfinity()) return "-INF";
+        return String.valueOf(this.value);
+    }
+
+    /**
+     * Resolves the infinities being deserialized to the shared instances.
+     */
+    private Object readResolve() throws InvalidObjectException {
+        if (this.value == Long.MAX_VALUE) return POSITIVE_INFINITY;
+        if (this.value == Long.MIN_VALUE) return NEGATIVE_INFINITY;
+        return this;
+    }
+}
@@ -16,6 +16,9 @@ import java.io.Serializable;
  * immutable object.
  * <p><b>Note:</b> if the period is [negativeInfinity, positiveInfinity[ , 
  * then <b>all</b> the instants are contained, including positive infinity.
+ * <p>Instants are compared through {@linkplain LongInstant#compare(Instant, Instant)},
+ * so that periods of {@linkplain LongInstant}s are compared without calling
+ * {@linkplain Instant#compareTo(Object)}.
  * @stereotype immutable
  * @invariant start < end
  * @version $Id: Period.java,v 1.13 2008/12/23 17:44:37 tabeck Exp $
@@ -33,7 +36,7 @@ public class Period implements Comparable<Period>, Serializable, IsTime
      * @throws IllegalArgumentException when start >= end
      */
     public Period(Instant start, Instant end) {
-    	if (start.compareTo(end) >= 0)
+    	if (LongInstant.compare(start, end) >= 0)
     		throw new IllegalArgumentException(
     			"start : " + start + " must be < than end : " + end
     		)
@@ -53,8 +56,8 @@ public class Period implements Comparable<Period>, Serializable, IsTime
      * @return 0 only when equals is true
      */
     public int	compareTo(Period p) {
-      int startComp = this.getStart().compareTo(p.getStart());
-      return startComp == 0 ? this.getEnd().compareTo(p.getEnd()) : startComp;
+      int startComp = LongInstant.compare(this.getStart(), p.getStart());
+      return startComp == 0 ? LongInstant.compare(this.getEnd(), p.getEnd()) : startComp;
     }
 
 
@@ -115,7 +118,7 @@ public class Period implements Comparable<Period>, Serializable, IsTime
      * @return this.getEnd() <= p.getStart()
      */
     public boolean precedes(Period p) {
-      return this.getEnd().compareTo(p.getStart()) <= 0;
+      return LongInstant.compare(this.getEnd(), p.getStart()) <= 0;
     }
 
     /**
@@ -125,7 +128,7 @@ public class Period implements Comparable<Period>, Serializable, IsTime
      * @return this.getEnd() <= i
      */
     public boolean precedes(Instant i) {
-      return this.getEnd().compareTo(i) <= 0;
+      return LongInstant.compare(this.getEnd(), i) <= 0;
     }
 
 
@@ -136,7 +139,7 @@ public class Period implements Comparable<Period>, Serializable, IsTime
      * @return this.getStart() >= p.getEnd()
      */
     public boolean succeeds(Period p) {
-      return this.getStart().compareTo(p.getEnd()) >= 0;
+      return LongInstant.compare(this.getStart(), p.getEnd()) >= 0;
     }
 
     /**
@@ -146,7 +149,7 @@ public class Period implements Comparable<Period>, Serializable, IsTime
      * @return this.getStart() > i
      */
     public boolean succeeds(Instant i) {
-      return this.getStart().compareTo(i) > 0;
+      return LongInstant.compare(this.getStart(), i) > 0;
     }
 
     /**
@@ -182,7 +185,7 @@ public class Period implements Comparable<Period>, Serializable, IsTime
      * @return this.getStart().compareTo(p.getStart()) <= 0 && this.getEnd().compareTo(p.getEnd()) >= 0
      */
     public boolean contains(Period p) {
-      return this.getStart().compareTo(p.getStart()) <= 0 && this.getEnd().compareTo(p.getEnd()) >= 0;
+      return LongInstant.compare(this.getStart(), p.getStart()) <= 0 && LongInstant.compare(this.getEnd(), p.getEnd()) >= 0;
     }
 
     /**
@@ -194,9 +197,9 @@ public class Period implements Comparable<Period>, Serializable, IsTime
      * @return this.getStart().compareTo(i) <= 0 && this.getEnd().compareTo(i) > 0
      */
     public boolean contains(Instant i) {
-    	if (this.getStart().compareTo(i) > 0)	return false;
+    	if (LongInstant.compare(this.getStart(), i) > 0)	return false;
     	if (this.getEnd().isPositiveInfinity())	return true;
-    	if (this.getEnd().compareTo(i) <= 0 )	return false;
+    	if (LongInstant.compare(this.getEnd(), i) <= 0 )	return false;
     	return true;
     }
 
@@ -206,7 +209,7 @@ public class Period implements Comparable<Period>, Serializable, IsTime
      * @return <code>true</code> when this.getStart() < p.getEnd() and this.getEnd() > p.getStart()
      */
     public boolean overlaps(Period p) {
-      return this.getStart().compareTo(p.getEnd()) < 0 && this.getEnd().compareTo(p.getStart()) > 0;
+      return LongInstant.compare(this.getStart(), p.getEnd()) < 0 && LongInstant.compare(this.getEnd(), p.getStart()) > 0;
     }
 
     /**
@@ -241,12 +244,12 @@ public class Period implements Comparable<Period>, Serializable, IsTime
 	  	return null;
 	  }
 
-      if (this.getStart().compareTo(p.getStart()) < 0  &&  this.getEnd().compareTo(p.getEnd()) > 0) {
+      if (LongInstant.compare(this.getStart(), p.getStart()) < 0  &&  LongInstant.compare(this.getEnd(), p.getEnd()) > 0) {
             throw new IllegalArgumentException("Cannot return two distinct periods from "
                                                + p + " and " + this);      }
 
-      if (this.getStart().compareTo(p.getStart()) < 0) return new Period(this.getStart(), p.getStart());
-      if (this.getEnd()  .compareTo(p.getEnd())   > 0) return new Period(p.getEnd(), this.getEnd());
+      if (LongInstant.compare(this.getStart(), p.getStart()) < 0) return new Period(this.getStart(), p.getStart());
+      if (LongInstant.compare(this.getEnd(), p.getEnd())   > 0) return new Period(p.getEnd(), this.getEnd());
       throw new Error(); // if that happens, it means that my logic is wrong
     }
 
@@ -257,10 +260,10 @@ public class Period implements Comparable<Period>, Serializable, IsTime
 	 * @param p the period that meetsAfter the result
 	 */
 	public Period precedingPeriod(Period p) {
-		if (this.getStart().compareTo(p.getStart()) >=0) {
+		if (LongInstant.compare(this.getStart(), p.getStart()) >=0) {
 			return null;
 		}
-		if (this.getEnd().compareTo(p.getStart()) <=0 ) {
+		if (LongInstant.compare(this.getEnd(), p.getStart()) <=0 ) {
 			// we assume Period is immutable
 			return this;
 		}
@@ -274,10 +277,10 @@ public class Period implements Comparable<Period>, Serializable, IsTime
 	 * @param p the period that meetsBefore the result
 	 */
 	public Period succedingPeriod(Period p) {
-		if (this.getEnd().compareTo(p.getEnd()) <= 0) {
+		if (LongInstant.compare(this.getEnd(), p.getEnd()) <= 0) {
 			return null;
 		}
-		if (this.getStart().compareTo(p.getEnd()) >= 0) {
+		if (LongInstant.compare(this.getStart(), p.getEnd()) >= 0) {
 			return this;
 		}
 		return new Period(p.getEnd(), this.getEnd());
@@ -294,8 +297,8 @@ public class Period implements Comparable<Period>, Serializable, IsTime
       if (this.contains(p))   return p;     // optimization: avoid to create a new instance in this case
       if (p.contains(this))   return this;  // optimization: avoid to create a new instance in this case
       return new Period(
-        this.getStart().compareTo(p.getStart()) < 0 ? p.getStart()  : this.getStart(),
-        this.getEnd().  compareTo(p.getEnd())   < 0 ? this.getEnd() : p.getEnd()
+        LongInstant.compare(this.getStart(), p.getStart()) < 0 ? p.getStart()  : this.getStart(),
+        LongInstant.compare(this.getEnd(), p.getEnd())   < 0 ? this.getEnd() : p.getEnd()
       );
     }
 
@@ -159,6 +159,19 @@ public interface TemporalAttribute<V> extends ReadableTemporalAttribute<V> {
    */
   boolean putAll(TemporalAttribute<? extends V> tm);
 
+  /**
+   * Returns a new batch, recording puts and removes to be applied to this
+   * map at once. <br>
+   * Applying many operations with a batch is faster than calling
+   * put() and remove() for each one, since the implementation may merge
+   * the adjacent periods having equal values only once, over the range
+   * touched by the batch.
+   *
+   * @return a new empty batch for this map
+   * @throws UnsupportedOperationException if this map is read-only.
+   */
+  TemporalAttributeBatch<V> edit();
+
 
   /**
    * Returns a set view of the periods contained in this map.  The set is
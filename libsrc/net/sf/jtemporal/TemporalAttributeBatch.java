@@ -0,0 +1,63 @@
+/* This file is part of the JTemporal framework (http://jtemporal.sf.net).
+   Copyright (C) 2002 by the author(s).
+   Distributable under LGPL license version 2.1 or later,
+   with NO WARRANTIES given or implied.
+   See terms of license at gnu.org or www.opensource.org/licenses  */
+
+package net.sf.jtemporal;
+
+/**
+ * Records puts and removes, to be applied later to a TemporalAttribute
+ * at once. <br>
+ * The operations are applied in the order they have been recorded, with
+ * the semantics of {@linkplain TemporalAttribute#put(Period, Object)} and
+ * {@linkplain TemporalAttribute#remove(Period)}, but the implementation
+ * may defragment the attribute only once, after the last operation.
+ * <pre>
+ *   ta.edit()
+ *     .put(p1, v1)
+ *     .put(p2, v2)
+ *     .remove(p3)
+ *     .apply();
+ * </pre>
+ * Not thread safe.
+ * @author Thomas A Beck
+ * @version $Id$
+ * @param <V> the type of the value
+ * @see TemporalAttribute#edit()
+ */
+public interface TemporalAttributeBatch<V> {
+
+  /**
+   * Records a put.
+   * @param p the period
+   * @param value the value to be associated with the period
+   * @return this batch
+   * @throws IllegalArgumentException if the period or the value is null
+   * @see TemporalAttribute#put(Period, Object)
+   */
+  TemporalAttributeBatch<V> put(Period p, V value);
+
+  /**
+   * Records a remove.
+   * @param p the period whose mappings are to be removed
+   * @return this batch
+   * @throws IllegalArgumentException if the period is null
+   * @see TemporalAttribute#remove(Period)
+   */
+  TemporalAttributeBatch<V> remove(Period p);
+
+  /**
+   * Returns the number of operations recorded since the last apply.
+   * @return the number of pending operations
+   */
+  int size();
+
+  /**
+   * Applies the recorded operations to the TemporalAttribute, in order,
+   * then forgets them: the batch can be reused.
+   * @return <tt>true</tt> if one or more previous values have been
+   *         overwritten or removed, partially or completely
+   */
+  boolean apply();
+}
@@ -10,10 +10,17 @@ package net.sf.jtemporal;
 import java.io.Serializable;
 import java.util.AbstractSet;
 
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
 
+import net.sf.jtemporal.spi.BulkLoadableStorage;
 import net.sf.jtemporal.spi.TemporalAttributeStorage;
+import net.sf.jtemporal.util.CloseableIterator;
 
 /**
  * Implements TemporalAttribute by using a TemporalAttributeStorage.
@@ -139,12 +146,7 @@ public class TemporalAttributeImpl<V> extends AbstractTemporalAttribute<V>
 		try {
 		    // optimisation : check first whether the put is actually needed, 
 		    // or whether by chance the correct value is already set
-		    TimedObject<V> prev = this.getEntry(_p.getStart());
-		    if (
-		        prev != null
-		        && (prev.getPeriod().contains(_p))
-		        && (prev.getValue().equals(_value))
-		    ) {
+		    if (this.isAlreadySet(_p, _value)) {
 		        // nothing to do, skip storage update, but
 		        // report that there was already a value
 		        ret = true;
@@ -190,6 +192,99 @@ public class TemporalAttributeImpl<V> extends AbstractTemporalAttribute<V>
 
 
 
+	/**
+	 * Returns true if the whole period is already mapped to the value.
+	 */
+	private boolean isAlreadySet(Period p, V value) {
+		TimedObject<V> prev = this.getEntry(p.getStart());
+		return prev != null
+			&& (prev.getPeriod().contains(p))
+			&& (prev.getValue().equals(value))
+		;
+	}
+
+	/**
+	 * Applies the operations without merging the adjacent periods
+	 * after each put, then merges them only at the bounds of the 
+	 * periods put, where equal values may meet.
+	 * @see net.sf.jtemporal.AbstractTemporalAttribute#applyBatch(java.util.List)
+	 */
+	@Override
+	protected boolean applyBatch(List<TimedObject<V>> operations) {
+		boolean ret = false;
+		// sorted, and without duplicates
+		SortedSet<Instant> bounds = new TreeSet<Instant>();
+
+		this.beginAtomic();
+		try {
+			for (TimedObject<V> op : operations) {
+				Period p = op.getPeriod();
+				V value = op.getValue();
+				if (value == null) {
+					// a removal does not make equal values meet
+					ret |= this.remove(p);
+				}
+				else if (this.isAlreadySet(p, value)) {
+					ret = true;
+				}
+				else {
+					ret |= this.remove(p);
+					this.storage.put(p, value);
+					bounds.add(p.getStart());
+					bounds.add(p.getEnd());
+				}
+			}
+			this.defragment(bounds);
+		}
+		finally {
+			this.endAtomic();
+		}
+		return ret;
+	}
+
+	/**
+	 * Merges the adjacent entries having equal values, meeting at the given 
+	 * instants: each run of such entries is replaced by a single put.
+	 */
+	private void defragment(SortedSet<Instant> bounds) {
+		List<TimedObject<V>> run = new ArrayList<TimedObject<V>>();
+		for (Instant i : bounds) {
+			TimedObject<V> before = this.storage.getEntryEndingAt(i);
+			if (before == null) {
+				continue;
+			}
+			TimedObject<V> after = this.storage.getEntryStartingAt(i);
+			if (after == null || !before.getValue().equals(after.getValue())) {
+				continue;
+			}
+			if (!run.isEmpty() && !run.get(run.size() - 1).getPeriod().equals(before.getPeriod())) {
+				this.merge(run);
+			}
+			if (run.isEmpty()) {
+				run.add(before);
+			}
+			run.add(after);
+		}
+		if (!run.isEmpty()) {
+			this.merge(run);
+		}
+	}
+
+	/**
+	 * Replaces the given run of entries by a single entry, and empties the run.
+	 */
+	private void merge(List<TimedObject<V>> run) {
+		for (TimedObject<V> entry : run) {
+			this.storage.removeEntry(entry.getPeriod());
+		}
+		TimedObject<V> first = run.get(0);
+		this.storage.put(
+			new Period(first.getPeriod().getStart(), run.get(run.size() - 1).getPeriod().getEnd()),
+			first.getValue() // I prefer the existing instance
+		);
+		run.clear();
+	}
+
 	/* (non-Javadoc)
 	 * @see net.sf.jtemporal.TemporalAttribute#remove(net.sf.jtemporal.Period)
 	 */
@@ -249,6 +344,163 @@ public class TemporalAttributeImpl<V> extends AbstractTemporalAttribute<V>
 		return removed; 
 	} // remove(Period p)
 
+	/**
+	 * Appends many entries at once, much faster than calling
+	 * {@linkplain #put(Period, Object)} for each entry. <br>
+	 * The entries must be sorted, must not overlap each other, and must
+	 * not start before the {@linkplain #lastInstant()} of this attribute.
+	 * The adjacent entries having equal values are merged on the fly,
+	 * including with the last entry of this attribute, so that the
+	 * storage receives the entries already defragmented. <br>
+	 * When the storage implements {@linkplain BulkLoadableStorage},
+	 * the entries are passed to it in a single call, letting it build its
+	 * structure in linear time; otherwise they are put one by one, without
+	 * the removals and the neighbour lookups performed by put().
+	 * @param entries the entries to be appended, in ascending order
+	 * @throws IllegalArgumentException if an entry, its period or its value
+	 * is null, or if the entries are not sorted or overlap;
+	 * in this case the appended entries are removed, and this attribute
+	 * is left unchanged whatever the storage.
+	 */
+	@SuppressWarnings("unchecked")
+	public void bulkLoad(Iterator<? extends TimedObject<? extends V>> entries) {
+		if (entries == null) throw new IllegalArgumentException("entries == null");
+
+		this.beginAtomic();
+		try {
+			Period last = this.storage.isEmpty() ? null : this.storage.lastPeriod();
+			V lastValue = last == null ? null : this.storage.getValue(last.getStart());
+			Coalescer<V> coalescer = new Coalescer<V>(entries, last == null ? null : last.getEnd());
+			boolean merged = last != null && coalescer.mergeAfter(last, lastValue);
+			try {
+				if (merged) {
+					// the first entry continues the last one
+					this.storage.removeEntry(last);
+				}
+				if (this.storage instanceof BulkLoadableStorage) {
+					((BulkLoadableStorage<V>) this.storage).bulkLoad(coalescer);
+				}
+				else {
+					while (coalescer.hasNext()) {
+						TimedObject<V> to = coalescer.next();
+						this.storage.put(to.getPeriod(), to.getValue());
+					}
+				}
+			}
+			catch (IllegalArgumentException e) {
+				// removes the entries appended, the merged one included
+				Instant from = last == null ? null : (merged ? last.getStart() : last.getEnd());
+				while (!this.storage.isEmpty()
+					&& (from == null || LongInstant.compare(this.storage.lastPeriod().getStart(), from) >= 0)
+				) {
+					this.storage.removeEntry(this.storage.lastPeriod());
+				}
+				if (merged) {
+					this.storage.put(last, lastValue);
+				}
+				throw e;
+			}
+		}
+		finally {
+			this.endAtomic();
+		}
+	}
+
+
+	/**
+	 * Merges all the adjacent entries having equal values, in a single
+	 * pass over the storage. <br>
+	 * {@linkplain #put(Period, Object)} keeps the entries merged, but a
+	 * storage filled by other means, such as an
+	 * {@linkplain net.sf.jtemporal.spi.ORMTemporalAttributeStorage} reading
+	 * rows or a {@linkplain net.sf.jtemporal.spi.LazyTemporalAttributeStorage}
+	 * loading ranges, may contain fragmented entries. <br>
+	 * Only the merged runs are kept in memory, and the storage is updated
+	 * once the iteration is closed, with a single removeRange() and put()
+	 * per run.
+	 * @return the number of entries removed by the merges
+	 * @see #coalescedEntrySet()
+	 */
+	public int coalesce() {
+		List<TimedObject<V>> runs = new ArrayList<TimedObject<V>>();
+		int removed = 0;
+
+		this.beginAtomic();
+		try {
+			CloseableIterator<TimedObject<V>> i = this.storage.entryIterator();
+			try {
+				TimedObject<V> first = null;
+				Period last = null;
+				int length = 0;
+				while (first != null || i.hasNext()) {
+					TimedObject<V> to = i.hasNext() ? i.next() : null;
+					if (to != null && first != null
+						&& last.meetsBefore(to.getPeriod())
+						&& first.getValue().equals(to.getValue())
+					) {
+						last = to.getPeriod();
+						length++;
+						continue;
+					}
+					if (length > 1) {
+						runs.add(new SimpleTimedObject<V>(
+							new Period(first.getPeriod().getStart(), last.getEnd()),
+							first.getValue() // I prefer the existing instance
+						));
+						removed += length - 1;
+					}
+					first = to;
+					last = to == null ? null : to.getPeriod();
+					length = 1;
+				}
+			}
+			finally {
+				i.close();
+			}
+
+			for (TimedObject<V> run : runs) {
+				this.storage.removeRange(run.getPeriod());
+				this.storage.put(run.getPeriod(), run.getValue());
+			}
+		}
+		finally {
+			this.endAtomic();
+		}
+		return removed;
+	}
+
+	/**
+	 * Returns a read-only view of the entries, the adjacent entries having
+	 * equal values being merged on the fly, without changing the storage. <br>
+	 * The view reflects the changes of this attribute; its size is
+	 * computed by iterating over the storage.
+	 * @return instances of {@linkplain TimedObject}, in ascending order
+	 * @see #coalesce()
+	 */
+	public Set<TimedObject<V>> coalescedEntrySet() {
+		return new AbstractSet<TimedObject<V>>() {
+			@Override
+			public Iterator<TimedObject<V>> iterator() {
+				return new Coalescer<V>(TemporalAttributeImpl.this.storage.entryIterator(), null);
+			}
+
+			@Override
+			public int size() {
+				int size = 0;
+				Coalescer<V> i = new Coalescer<V>(TemporalAttributeImpl.this.storage.entryIterator(), null);
+				try {
+					while (i.hasNext()) {
+						i.next();
+						size++;
+					}
+				}
+				finally {
+					i.close();
+				}
+				return size;
+			}
+		};
+	}
 
 	/* (non-Javadoc)
 	 * @see net.sf.jtemporal.TemporalAttribute#periodSet()
@@ -638,4 +890,103 @@ public class TemporalAttributeImpl<V> extends AbstractTemporalAttribute<V>
 
 	} // EntrySet
 
+
+	/**
+	 * Checks that the entries are sorted and merges the adjacent entries
+	 * having equal values, reading one entry ahead.
+	 * Closing it closes the source.
+	 */
+	private static final class Coalescer<V> implements CloseableIterator<TimedObject<V>> {
+
+		private final Iterator<? extends TimedObject<? extends V>> source;
+		private Instant previousEnd;
+		private TimedObject<? extends V> lookahead;
+		private TimedObject<V> next = null;
+		private boolean closed = false;
+
+		Coalescer(Iterator<? extends TimedObject<? extends V>> source, Instant after) {
+			this.source = source;
+			this.previousEnd = after;
+			this.lookahead = this.read();
+		}
+
+		private TimedObject<? extends V> read() {
+			if (!this.source.hasNext()) {
+				return null;
+			}
+			TimedObject<? extends V> to = this.source.next();
+			if (to == null || to.getPeriod() == null || to.getValue() == null) {
+				throw new IllegalArgumentException("null");
+			}
+			Period p = to.getPeriod();
+			if (this.previousEnd != null && LongInstant.compare(p.getStart(), this.previousEnd) < 0) {
+				throw new IllegalArgumentException(
+					"The entries are not sorted or overlap: " + p + " starts before " + this.previousEnd
+				);
+			}
+			this.previousEnd = p.getEnd();
+			return to;
+		}
+
+		/**
+		 * Merges the next entry with the given preceding one,
+		 * if they meet and have equal values.
+		 */
+		boolean mergeAfter(Period before, V value) {
+			if (this.hasNext()
+				&& before.meetsBefore(this.next.getPeriod())
+				&& this.next.getValue().equals(value)
+			) {
+				this.next = new SimpleTimedObject<V>(
+					new Period(before.getStart(), this.next.getPeriod().getEnd()), value
+				);
+				return true;
+			}
+			return false;
+		}
+
+		public boolean hasNext() {
+			if (this.next == null && this.lookahead != null) {
+				Period p = this.lookahead.getPeriod();
+				V value = this.lookahead.getValue();
+				this.lookahead = this.read();
+				while (this.lookahead != null
+					&& p.meetsBefore(this.lookahead.getPeriod())
+					&& this.lookahead.getValue().equals(value)
+				) {
+					p = new Period(p.getStart(), this.lookahead.getPeriod().getEnd());
+					this.lookahead = this.read();
+				}
+				this.next = new SimpleTimedObject<V>(p, value);
+			}
+			return this.next != null;
+		}
+
+		public TimedObject<V> next() {
+			if (!this.hasNext()) {
+				throw new NoSuchElementException();
+			}
+			TimedObject<V> to = this.next;
+			this.next = null;
+			return to;
+		}
+
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+
+		public void close() {
+			if (this.source instanceof CloseableIterator) {
+				((CloseableIterator<?>) this.source).close();
+			}
+			this.lookahead = null;
+			this.next = null;
+			this.closed = true;
+		}
+
+		public boolean isOpen() {
+			return !this.closed;
+		}
+	} // Coalescer
+
 }
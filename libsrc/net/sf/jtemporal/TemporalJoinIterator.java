@@ -0,0 +1,287 @@
+/* This file is part of the JTemporal framework (http://jtemporal.sf.net).
+   Copyright (C) 2002 by the author(s).
+   Distributable under LGPL license version 2.1 or later,
+   with NO WARRANTIES given or implied.
+   See terms of license at gnu.org or www.opensource.org/licenses  */
+
+package net.sf.jtemporal;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import net.sf.jtemporal.util.CloseableIterator;
+
+/**
+ * Joins two {@linkplain TemporalAttribute}s on time: returns, in ascending
+ * order, each maximal period during which both values are constant,
+ * with these values. <br>
+ * The entries of both attributes are walked in lockstep, like in a
+ * merge join, so that the join takes a time proportional to the number of
+ * entries, without any lookup by instant:
+ * <pre>
+ *   Iterator&lt;TimedPair&lt;Integer, String&gt;&gt; i =
+ *     new TemporalJoinIterator&lt;Integer, String&gt;(salary, department);
+ *   while (i.hasNext()) {
+ *     TimedPair&lt;Integer, String&gt; pair = i.next();
+ *     ... pair.getPeriod(), pair.getLeft(), pair.getRight()
+ *   }
+ * </pre>
+ * By default, only the periods where both attributes are defined are
+ * returned (inner join); an outer join also returns the periods where
+ * a single attribute is defined, the other value being null. <br>
+ * The adjacent periods having equal values are merged, even if an
+ * attribute contains fragmented entries. <br>
+ * The entries are read lazily; the result is undefined if an attribute is
+ * modified while iterating. Read-only, not thread safe.
+ * @author Thomas A Beck
+ * @version $Id$
+ * @param <L> the type of the left value
+ * @param <R> the type of the right value
+ * @see TemporalZipIterator
+ */
+public class TemporalJoinIterator<L, R> implements CloseableIterator<TimedPair<L, R>> {
+
+  private final Cursor<L> left;
+  private final Cursor<R> right;
+  private final boolean outer;
+
+  // the end of the last period computed
+  private Instant position = null;
+  private TimedPair<L, R> next = null;
+  private boolean closed = false;
+
+  /**
+   * Reads the sorted entries of an attribute, one at a time.
+   */
+  private static final class Cursor<V> {
+    private Iterator<? extends TimedObject<? extends V>> entries;
+    TimedObject<? extends V> current;
+
+    Cursor(Iterator<? extends TimedObject<? extends V>> entries) {
+      if (entries == null)
+        throw new IllegalArgumentException("null");
+      this.entries = entries;
+      this.read();
+    }
+
+    /**
+     * Skips the entries ending at or before the given instant.
+     */
+    void skipUntil(Instant instant) {
+      while (this.current != null
+        && LongInstant.compare(this.current.getPeriod().getEnd(), instant) <= 0
+      ) {
+        this.read();
+      }
+    }
+
+    private void read() {
+      Instant previousEnd = this.current == null ? null : this.current.getPeriod().getEnd();
+      if (this.entries == null || !this.entries.hasNext()) {
+        this.current = null;
+        return;
+      }
+      this.current = this.entries.next();
+      if (previousEnd != null
+        && LongInstant.compare(this.current.getPeriod().getStart(), previousEnd) < 0
+      ) {
+        throw new IllegalArgumentException(
+          "The entries are not sorted or overlap: "
+          + this.current.getPeriod() + " starts before " + previousEnd
+        );
+      }
+    }
+
+    void close() {
+      if (this.entries instanceof CloseableIterator) {
+        ((CloseableIterator<?>) this.entries).close();
+      }
+      this.entries = null;
+      this.current = null;
+    }
+  }
+
+  /**
+   * Creates an inner join.
+   * @param left the left attribute
+   * @param right the right attribute
+   */
+  public TemporalJoinIterator(TemporalAttribute<? extends L> left, TemporalAttribute<? extends R> right) {
+    this(left, right, false);
+  }
+
+  /**
+   * Creates a join.
+   * @param left the left attribute
+   * @param right the right attribute
+   * @param outer <tt>true</tt> to return also the periods where
+   * a single attribute is defined
+   */
+  public TemporalJoinIterator(
+    TemporalAttribute<? extends L> left, TemporalAttribute<? extends R> right, boolean outer
+  ) {
+    this(left.entrySet().iterator(), right.entrySet().iterator(), outer);
+  }
+
+  /**
+   * Creates a join on sequences of entries, such as the
+   * {@linkplain net.sf.jtemporal.spi.TemporalAttributeStorage#entryIterator()}
+   * of two storages.
+   * @param left the left entries, sorted and disjoint
+   * @param right the right entries, sorted and disjoint
+   * @param outer <tt>true</tt> to return also the periods where
+   * a single sequence has an entry
+   * @throws IllegalArgumentException if the entries are not sorted or overlap
+   * (also thrown by the iteration)
+   */
+  public TemporalJoinIterator(
+    Iterator<? extends TimedObject<? extends L>> left,
+    Iterator<? extends TimedObject<? extends R>> right,
+    boolean outer
+  ) {
+    this.left = new Cursor<L>(left);
+    this.right = new Cursor<R>(right);
+    this.outer = outer;
+  }
+
+  /**
+   * Computes the next period where both values are constant,
+   * not merged with the following ones.
+   * @return null at the end
+   */
+  private TimedPair<L, R> compute() {
+    while (true) {
+      if (this.position != null) {
+        this.left.skipUntil(this.position);
+        this.right.skipUntil(this.position);
+      }
+      TimedObject<? extends L> l = this.left.current;
+      TimedObject<? extends R> r = this.right.current;
+      if (l == null && r == null) {
+        return null;
+      }
+      if (!this.outer && (l == null || r == null)) {
+        return null;
+      }
+
+      Instant start = later(this.position, earlier(start(l), start(r)));
+      boolean leftValid = l != null && LongInstant.compare(l.getPeriod().getStart(), start) <= 0;
+      boolean rightValid = r != null && LongInstant.compare(r.getPeriod().getStart(), start) <= 0;
+      // the first boundary after start
+      Instant end = earlier(
+        l == null ? null : (leftValid ? l.getPeriod().getEnd() : l.getPeriod().getStart()),
+        r == null ? null : (rightValid ? r.getPeriod().getEnd() : r.getPeriod().getStart())
+      );
+      this.position = end;
+
+      if (leftValid && rightValid || this.outer) {
+        return new TimedPair<L, R>(
+          new Period(start, end),
+          leftValid ? l.getValue() : null,
+          rightValid ? r.getValue() : null
+        );
+      }
+    }
+  }
+
+  private static Instant start(TimedObject<?> to) {
+    return to == null ? null : to.getPeriod().getStart();
+  }
+
+  /**
+   * @return the earliest instant, null being ignored
+   */
+  private static Instant earlier(Instant i1, Instant i2) {
+    if (i1 == null) return i2;
+    if (i2 == null) return i1;
+    return LongInstant.compare(i1, i2) <= 0 ? i1 : i2;
+  }
+
+  /**
+   * @return the latest instant, null being ignored
+   */
+  private static Instant later(Instant i1, Instant i2) {
+    if (i1 == null) return i2;
+    if (i2 == null) return i1;
+    return LongInstant.compare(i1, i2) >= 0 ? i1 : i2;
+  }
+
+  /* (non-Javadoc)
+   * @see java.util.Iterator#hasNext()
+   */
+  public boolean hasNext() {
+    if (this.next == null && !this.closed) {
+      TimedPair<L, R> pair = this.compute();
+      // merges the following pairs having equal values
+      while (pair != null && this.position != null) {
+        this.left.skipUntil(this.position);
+        this.right.skipUntil(this.position);
+        if (!this.continues(pair)) {
+          break;
+        }
+        TimedPair<L, R> following = this.compute();
+        pair = new TimedPair<L, R>(
+          new Period(pair.getPeriod().getStart(), following.getPeriod().getEnd()),
+          pair.getLeft(), pair.getRight()
+        );
+      }
+      this.next = pair;
+      if (pair == null) {
+        this.close();
+      }
+    }
+    return this.next != null;
+  }
+
+  /**
+   * Tells whether the next computed pair meets the given one
+   * and has the same values.
+   */
+  private boolean continues(TimedPair<L, R> pair) {
+    TimedObject<? extends L> l = this.left.current;
+    TimedObject<? extends R> r = this.right.current;
+    Instant end = pair.getPeriod().getEnd();
+    L nextLeft = l != null && LongInstant.compare(l.getPeriod().getStart(), end) <= 0 ? l.getValue() : null;
+    R nextRight = r != null && LongInstant.compare(r.getPeriod().getStart(), end) <= 0 ? r.getValue() : null;
+    if (nextLeft == null && nextRight == null) {
+      return false;  // a gap
+    }
+    return TimedPair.equal(nextLeft, pair.getLeft()) && TimedPair.equal(nextRight, pair.getRight());
+  }
+
+  /* (non-Javadoc)
+   * @see java.util.Iterator#next()
+   */
+  public TimedPair<L, R> next() {
+    if (!this.hasNext()) {
+      throw new NoSuchElementException();
+    }
+    TimedPair<L, R> pair = this.next;
+    this.next = null;
+    return pair;
+  }
+
+  /**
+   * Not supported.
+   * @see java.util.Iterator#remove()
+   */
+  public void remove() {
+    throw new UnsupportedOperationException();
+  }
+
+  /* (non-Javadoc)
+   * @see net.sf.jtemporal.util.CloseableIterator#close()
+   */
+  public void close() {
+    this.left.close();
+    this.right.close();
+    this.closed = true;
+  }
+
+  /* (non-Javadoc)
+   * @see net.sf.jtemporal.util.CloseableIterator#isOpen()
+   */
+  public boolean isOpen() {
+    return !this.closed;
+  }
+}
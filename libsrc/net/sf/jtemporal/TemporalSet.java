@@ -6,6 +6,7 @@
 
 package net.sf.jtemporal;
 
+import java.util.Iterator;
 import java.util.NoSuchElementException;
 import java.util.Set;
 
@@ -93,6 +94,24 @@ public interface TemporalSet <V>
    */
   Set<V> valueSet(Instant instant);
 
+  /**
+   * Returns the changes of the value set, over a sequence of instants. <br>
+   * For each instant, the returned iterator provides the values valid at this
+   * instant and not at the previous one (added), and the values valid
+   * at the previous instant but not anymore at this one (removed). 
+   * The first delta contains all the values valid at the first instant. <br>
+   * This is equivalent to calling {@linkplain #valueSet(Instant)} for each
+   * instant, but the entries are swept only once. <br>
+   * The returned iterator is read-only; the result is undefined
+   * if this map is modified while iterating.
+   * @param instants the instants, sorted in ascending order.
+   * They are read lazily.
+   * @return instances of {@linkplain ValueSetDelta}, one per instant
+   * @throws IllegalArgumentException if the instants are not sorted
+   * (thrown by the returned iterator)
+   */
+  Iterator<ValueSetDelta<V>> valueSetDeltas(Iterator<? extends Instant> instants);
+
   /**
    * Returns a read-only Set containing the distinct values defined somewhen in this map.
    * Returns an empty set if the map contains no mapping at all.
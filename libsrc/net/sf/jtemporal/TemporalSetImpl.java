@@ -112,6 +112,14 @@ public class TemporalSetImpl<V> extends AbstractTemporalSet<V> {
 		};
 	}
 
+	/* (non-Javadoc)
+	 * @see net.sf.jtemporal.TemporalSet#valueSetDeltas(java.util.Iterator)
+	 */
+	@Override
+	public Iterator<ValueSetDelta<V>> valueSetDeltas(Iterator<? extends Instant> instants) {
+		return new ValueSetSweepIterator<V>(this.storage.entryIterator(), instants);
+	}
+
 	/* (non-Javadoc)
 	 * @see net.sf.jtemporal.TemporalSet#valueSet()
 	 */
@@ -0,0 +1,281 @@
+/* This file is part of the JTemporal framework (http://jtemporal.sf.net).
+   Copyright (C) 2002 by the author(s).
+   Distributable under LGPL license version 2.1 or later,
+   with NO WARRANTIES given or implied.
+   See terms of license at gnu.org or www.opensource.org/licenses  */
+
+package net.sf.jtemporal;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+import net.sf.jtemporal.util.CloseableIterator;
+
+/**
+ * Zips many {@linkplain TemporalAttribute}s on time: returns, in ascending
+ * order, each maximal period during which the values of all the
+ * attributes are constant, that is the history of the rows of an entity
+ * having many temporal fields. <br>
+ * The entries of the attributes are merged with a priority queue holding
+ * the next boundary (start or end) of each attribute, so that each
+ * boundary costs a time proportional to the logarithm of the number of
+ * attributes; only the attributes changing at a boundary are examined. <br>
+ * The same {@linkplain TimedRow} is returned at each step, updated in
+ * place, and is valid until the next call to {@linkplain #hasNext()}:
+ * the iteration does not allocate anything per row, apart from the
+ * entries read from the attributes.
+ * <pre>
+ *   TemporalZipIterator i = new TemporalZipIterator(salary, department, manager);
+ *   while (i.hasNext()) {
+ *     TimedRow row = i.next();
+ *     ... row.getStart(), row.getEnd(), row.get(0), row.get(1), row.get(2)
+ *   }
+ * </pre>
+ * The periods where an attribute is undefined are returned with a null
+ * value for it; the periods where no attribute is defined are skipped. <br>
+ * The adjacent periods having equal values are merged, even if an
+ * attribute contains fragmented entries. <br>
+ * The entries are read lazily; the result is undefined if an attribute is
+ * modified while iterating. Read-only, not thread safe.
+ * @author Thomas A Beck
+ * @version $Id$
+ * @see TemporalJoinIterator
+ */
+public class TemporalZipIterator implements CloseableIterator<TimedRow> {
+
+  private static final Comparator<Cursor> BOUNDARY_COMPARATOR =
+    new Comparator<Cursor>() {
+      public int compare(Cursor c1, Cursor c2) {
+        return LongInstant.compare(c1.boundary, c2.boundary);
+      }
+    }
+  ;
+
+  /**
+   * Reads the sorted entries of an attribute, one at a time.
+   */
+  private static final class Cursor {
+    final int index;
+    private Iterator<? extends TimedObject<?>> entries;
+    TimedObject<?> current;
+    // current is valid at the position, so boundary is its end
+    boolean active = false;
+    // the next instant where the value of the attribute changes
+    Instant boundary;
+
+    Cursor(int index, Iterator<? extends TimedObject<?>> entries) {
+      if (entries == null)
+        throw new IllegalArgumentException("null");
+      this.index = index;
+      this.entries = entries;
+      this.read();
+    }
+
+    /**
+     * Moves to the next entry, not active yet.
+     * @return false at the end
+     */
+    boolean read() {
+      Instant previousEnd = this.current == null ? null : this.current.getPeriod().getEnd();
+      this.active = false;
+      if (this.entries == null || !this.entries.hasNext()) {
+        this.current = null;
+        this.boundary = null;
+        return false;
+      }
+      this.current = this.entries.next();
+      Period p = this.current.getPeriod();
+      if (previousEnd != null && LongInstant.compare(p.getStart(), previousEnd) < 0) {
+        throw new IllegalArgumentException(
+          "The entries are not sorted or overlap: " + p + " starts before " + previousEnd
+        );
+      }
+      this.boundary = p.getStart();
+      return true;
+    }
+
+    void activate() {
+      this.active = true;
+      this.boundary = this.current.getPeriod().getEnd();
+    }
+
+    void close() {
+      if (this.entries instanceof CloseableIterator) {
+        ((CloseableIterator<?>) this.entries).close();
+      }
+      this.entries = null;
+      this.current = null;
+    }
+  }
+
+  private final Cursor[] cursors;
+  private final PriorityQueue<Cursor> boundaries;
+
+  // the values valid at the position, shared with the row
+  private final Object[] values;
+  private int defined = 0;
+  private final TimedRow row;
+
+  // the changes at the position, not yet applied to the values
+  private final int[] changed;
+  private final Object[] changedValues;
+  private int changeCount = 0;
+
+  private Instant position = null;
+  private boolean ready = false;
+  private boolean closed = false;
+
+  /**
+   * Creates a zip over the given attributes.
+   * @param attributes the attributes, their values being returned in this order
+   */
+  public TemporalZipIterator(TemporalAttribute<?>... attributes) {
+    this(entryIterators(attributes));
+  }
+
+  private static List<Iterator<? extends TimedObject<?>>> entryIterators(TemporalAttribute<?>[] attributes) {
+    List<Iterator<? extends TimedObject<?>>> entries = new ArrayList<Iterator<? extends TimedObject<?>>>();
+    for (TemporalAttribute<?> ta : attributes) {
+      entries.add(ta.entrySet().iterator());
+    }
+    return entries;
+  }
+
+  /**
+   * Creates a zip over sequences of entries, such as the
+   * {@linkplain net.sf.jtemporal.spi.TemporalAttributeStorage#entryIterator()}
+   * of several storages.
+   * @param entries the sequences of entries, each one sorted and disjoint
+   * @throws IllegalArgumentException if the entries are not sorted or overlap
+   * (also thrown by the iteration)
+   */
+  public TemporalZipIterator(List<? extends Iterator<? extends TimedObject<?>>> entries) {
+    int size = entries.size();
+    this.cursors = new Cursor[size];
+    this.boundaries = new PriorityQueue<Cursor>(Math.max(1, size), BOUNDARY_COMPARATOR);
+    this.values = new Object[size];
+    this.row = new TimedRow(this.values);
+    this.changed = new int[size];
+    this.changedValues = new Object[size];
+    for (int k = 0; k < size; k++) {
+      this.cursors[k] = new Cursor(k, entries.get(k));
+      if (this.cursors[k].current != null) {
+        this.boundaries.add(this.cursors[k]);
+      }
+    }
+  }
+
+  /**
+   * Moves the cursors having a boundary at the given instant, and records
+   * the values that change there.
+   */
+  private void moveTo(Instant instant) {
+    this.position = instant;
+    while (!this.boundaries.isEmpty()
+      && LongInstant.compare(this.boundaries.peek().boundary, instant) == 0
+    ) {
+      Cursor c = this.boundaries.poll();
+      if (!c.active) {
+        c.activate();
+      }
+      else if (c.read()
+        && LongInstant.compare(c.current.getPeriod().getStart(), instant) == 0
+      ) {
+        c.activate(); // the next entry meets the previous one
+      }
+      if (c.current != null) {
+        this.boundaries.add(c);
+      }
+
+      Object value = c.active ? c.current.getValue() : null;
+      if (!TimedPair.equal(value, this.values[c.index])) {
+        this.changed[this.changeCount] = c.index;
+        this.changedValues[this.changeCount] = value;
+        this.changeCount++;
+      }
+    }
+  }
+
+  private void applyChanges() {
+    for (int k = 0; k < this.changeCount; k++) {
+      int index = this.changed[k];
+      if (this.values[index] != null) this.defined--;
+      if (this.changedValues[k] != null) this.defined++;
+      this.values[index] = this.changedValues[k];
+      this.changedValues[k] = null;
+    }
+    this.changeCount = 0;
+  }
+
+  /* (non-Javadoc)
+   * @see java.util.Iterator#hasNext()
+   */
+  public boolean hasNext() {
+    if (this.ready || this.closed) {
+      return this.ready;
+    }
+    while (true) {
+      this.applyChanges();
+      if (this.boundaries.isEmpty()) {
+        this.close();
+        return false;
+      }
+      if (this.defined == 0) {
+        // a gap
+        this.moveTo(this.boundaries.peek().boundary);
+        continue;
+      }
+      Instant start = this.position;
+      do {
+        // a defined value has its end in the queue
+        this.moveTo(this.boundaries.peek().boundary);
+      } while (this.changeCount == 0 && !this.boundaries.isEmpty());
+      this.row.setPeriod(start, this.position);
+      this.ready = true;
+      return true;
+    }
+  }
+
+  /**
+   * Returns the next row, updated in place at each call.
+   * @see java.util.Iterator#next()
+   */
+  public TimedRow next() {
+    if (!this.hasNext()) {
+      throw new NoSuchElementException();
+    }
+    this.ready = false;
+    return this.row;
+  }
+
+  /**
+   * Not supported.
+   * @see java.util.Iterator#remove()
+   */
+  public void remove() {
+    throw new UnsupportedOperationException();
+  }
+
+  /* (non-Javadoc)
+   * @see net.sf.jtemporal.util.CloseableIterator#close()
+   */
+  public void close() {
+    for (Cursor c : this.cursors) {
+      c.close();
+    }
+    this.boundaries.clear();
+    this.ready = false;
+    this.closed = true;
+  }
+
+  /* (non-Javadoc)
+   * @see net.sf.jtemporal.util.CloseableIterator#isOpen()
+   */
+  public boolean isOpen() {
+    return !this.closed;
+  }
+}
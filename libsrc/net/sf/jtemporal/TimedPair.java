@@ -0,0 +1,89 @@
+/* This file is part of the JTemporal framework (http://jtemporal.sf.net).
+   Copyright (C) 2002 by the author(s).
+   Distributable under LGPL license version 2.1 or later,
+   with NO WARRANTIES given or implied.
+   See terms of license at gnu.org or www.opensource.org/licenses  */
+
+package net.sf.jtemporal;
+
+/**
+ * A period, during which two values are both constant. <br>
+ * Returned by {@linkplain TemporalJoinIterator}, joining two
+ * {@linkplain TemporalAttribute}s.
+ * @stereotype immutable
+ * @author Thomas A Beck
+ * @version $Id$
+ * @param <L> the type of the left value
+ * @param <R> the type of the right value
+ */
+public class TimedPair<L, R> {
+  private final Period period;
+  private final L left;
+  private final R right;
+
+  /**
+   * Unique constructor initializing the final fields.
+   * @param period the period where both values are valid
+   * @param left the left value, or null if undefined
+   * @param right the right value, or null if undefined
+   */
+  public TimedPair(Period period, L left, R right) {
+    if (period == null)
+      throw new IllegalArgumentException("null");
+    this.period = period;
+    this.left = left;
+    this.right = right;
+  }
+
+  /**
+   * @return the period where both values are valid
+   */
+  public Period getPeriod() {
+    return this.period;
+  }
+
+  /**
+   * @return the value of the left attribute during the period,
+   * or null if undefined
+   */
+  public L getLeft() {
+    return this.left;
+  }
+
+  /**
+   * @return the value of the right attribute during the period,
+   * or null if undefined
+   */
+  public R getRight() {
+    return this.right;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (!(o instanceof TimedPair)) {
+      return false;
+    }
+    TimedPair<?, ?> other = (TimedPair<?, ?>) o;
+    return this.period.equals(other.period)
+      && equal(this.left, other.left)
+      && equal(this.right, other.right)
+    ;
+  }
+
+  static boolean equal(Object o1, Object o2) {
+    return o1 == null ? o2 == null : o1.equals(o2);
+  }
+
+  @Override
+  public int hashCode() {
+    return this.period.hashCode()
+      ^ (this.left == null ? 0 : this.left.hashCode())
+      ^ (this.right == null ? 0 : 31 * this.right.hashCode())
+    ;
+  }
+
+  @Override
+  public String toString() {
+    return this.period + " " + this.left + " " + this.right;
+  }
+}
@@ -0,0 +1,104 @@
+/* This file is part of the JTemporal framework (http://jtemporal.sf.net).
+   Copyright (C) 2002 by the author(s).
+   Distributable under LGPL license version 2.1 or later,
+   with NO WARRANTIES given or implied.
+   See terms of license at gnu.org or www.opensource.org/licenses  */
+
+package net.sf.jtemporal;
+
+import java.util.Arrays;
+
+/**
+ * A period, during which the values of several attributes are all constant. <br>
+ * Returned by {@linkplain TemporalZipIterator}, which updates the same
+ * instance at each step: use {@linkplain #copy()} to keep a row.
+ * @author Thomas A Beck
+ * @version $Id$
+ */
+public class TimedRow {
+  private Instant start;
+  private Instant end;
+  private final Object[] values;
+
+  /**
+   * @param values the values of the row, shared
+   */
+  TimedRow(Object[] values) {
+    this.values = values;
+  }
+
+  void setPeriod(Instant start, Instant end) {
+    this.start = start;
+    this.end = end;
+  }
+
+  /**
+   * @return the first instant where the values are valid
+   */
+  public Instant getStart() {
+    return this.start;
+  }
+
+  /**
+   * @return the first instant where the values are not valid anymore
+   */
+  public Instant getEnd() {
+    return this.end;
+  }
+
+  /**
+   * Creates the period, use {@linkplain #getStart()} and
+   * {@linkplain #getEnd()} to avoid it.
+   * @return the period where the values are valid
+   */
+  public Period getPeriod() {
+    return new Period(this.start, this.end);
+  }
+
+  /**
+   * @return the number of values, one per attribute
+   */
+  public int size() {
+    return this.values.length;
+  }
+
+  /**
+   * @param index the index of the attribute
+   * @return the value of the attribute during the period, or null if undefined
+   * @throws IndexOutOfBoundsException if there is no such attribute
+   */
+  public Object get(int index) {
+    return this.values[index];
+  }
+
+  /**
+   * @return a copy of this row, not updated anymore by the iterator
+   */
+  public TimedRow copy() {
+    TimedRow copy = new TimedRow(this.values.clone());
+    copy.setPeriod(this.start, this.end);
+    return copy;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (!(o instanceof TimedRow)) {
+      return false;
+    }
+    TimedRow other = (TimedRow) o;
+    return this.start.equals(other.start)
+      && this.end.equals(other.end)
+      && Arrays.equals(this.values, other.values)
+    ;
+  }
+
+  @Override
+  public int hashCode() {
+    return this.start.hashCode() ^ Arrays.hashCode(this.values);
+  }
+
+  @Override
+  public String toString() {
+    return "[" + this.start + ", " + this.end + ") " + Arrays.asList(this.values);
+  }
+}
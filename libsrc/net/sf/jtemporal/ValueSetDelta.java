@@ -0,0 +1,88 @@
+/* This file is part of the JTemporal framework (http://jtemporal.sf.net).
+   Copyright (C) 2002 by the author(s).
+   Distributable under LGPL license version 2.1 or later, 
+   with NO WARRANTIES given or implied.
+   See terms of license at gnu.org or www.opensource.org/licenses  */
+
+package net.sf.jtemporal;
+
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * The change of the value set of a {@linkplain TemporalSet}
+ * between two instants. <br>
+ * Returned by {@linkplain TemporalSet#valueSetDeltas(java.util.Iterator)}:
+ * applying the added and removed values to the value set valid at the
+ * previous instant gives the value set valid at {@linkplain #getInstant()}.
+ * @stereotype immutable
+ * @author Thomas A Beck
+ * @version $Id$
+ * @param <V> the type of the value
+ */
+public class ValueSetDelta<V> {
+  private final Instant instant;
+  private final Set<V> added;
+  private final Set<V> removed;
+
+  /**
+   * Unique constructor initializing the final fields.
+   * @param instant the instant where the change is observed
+   * @param added the values valid at the given instant, 
+   * and not valid at the previous one
+   * @param removed the values valid at the previous instant, 
+   * and not valid at the given one
+   */
+  public ValueSetDelta(Instant instant, Set<V> added, Set<V> removed) {
+    if (instant == null || added == null || removed == null) 
+      throw new IllegalArgumentException("null");
+    this.instant = instant;
+    this.added = Collections.unmodifiableSet(added);
+    this.removed = Collections.unmodifiableSet(removed);
+  }
+
+  /**
+   * @return the instant where the change is observed
+   */
+  public Instant getInstant() {
+    return this.instant;
+  }
+
+  /**
+   * @return the read-only set of the values valid at {@linkplain #getInstant()}
+   * and not valid at the previous instant
+   */
+  public Set<V> getAdded() {
+    return this.added;
+  }
+
+  /**
+   * @return the read-only set of the values valid at the previous instant
+   * and not valid anymore at {@linkplain #getInstant()}
+   */
+  public Set<V> getRemoved() {
+    return this.removed;
+  }
+
+  /**
+   * @return <tt>true</tt> if the value set did not change
+   */
+  public boolean isEmpty() {
+    return this.added.isEmpty() && this.removed.isEmpty();
+  }
+
+  /**
+   * Applies this change to the given set.
+   * @param valueSet the value set valid at the previous instant, 
+   * to be updated
+   */
+  public void applyTo(Set<? super V> valueSet) {
+    valueSet.removeAll(this.removed);
+    valueSet.addAll(this.added);
+  }
+
+  @Override
+  public String toString() {
+    return this.instant + " +" + this.added + " -" + this.removed;
+  }
+}
@@ -0,0 +1,209 @@
+/* This file is part of the JTemporal framework (http://jtemporal.sf.net).
+   Copyright (C) 2002 by the author(s).
+   Distributable under LGPL license version 2.1 or later,
+   with NO WARRANTIES given or implied.
+   See terms of license at gnu.org or www.opensource.org/licenses  */
+
+package net.sf.jtemporal;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import net.sf.jtemporal.util.CloseableIterator;
+
+/**
+ * Computes the changes of the value set of a collection of entries,
+ * over a sorted sequence of instants, with a single sweep. <br>
+ * The entries are sorted once by start and once by end; then, for each
+ * instant, only the entries starting or ending since the previous
+ * instant are examined, instead of evaluating the whole value set
+ * again. <br>
+ * An entry starting and ending between two consecutive instants
+ * does not produce any change. An entry ending at positive infinity is
+ * still valid at positive infinity, as in {@linkplain Period#contains(Instant)}. <br>
+ * The first {@linkplain ValueSetDelta} contains the whole value set
+ * valid at the first instant, as added values. <br>
+ * The entries are read when this iterator is created, while the instants
+ * are read lazily. Read-only, not thread safe.
+ * @author Thomas A Beck
+ * @version $Id$
+ * @param <V> the type of the value
+ * @see TemporalSet#valueSetDeltas(Iterator)
+ */
+public class ValueSetSweepIterator<V> implements CloseableIterator<ValueSetDelta<V>> {
+
+  private static final Comparator<TimedObject<?>> START_COMPARATOR =
+    new Comparator<TimedObject<?>>() {
+      public int compare(TimedObject<?> to1, TimedObject<?> to2) {
+        return LongInstant.compare(to1.getPeriod().getStart(), to2.getPeriod().getStart());
+      }
+    }
+  ;
+
+  private static final Comparator<TimedObject<?>> END_COMPARATOR =
+    new Comparator<TimedObject<?>>() {
+      public int compare(TimedObject<?> to1, TimedObject<?> to2) {
+        return LongInstant.compare(to1.getPeriod().getEnd(), to2.getPeriod().getEnd());
+      }
+    }
+  ;
+
+  /**
+   * The number of active entries for a value,
+   * and its state at the previous instant.
+   */
+  private static final class Counter {
+    int count = 0;
+    boolean wasActive = false;
+    int step = 0;   // the last step where the count changed
+  }
+
+  private Iterator<? extends Instant> instants;
+  private final TimedObject<V>[] byStart;
+  private final TimedObject<V>[] byEnd;
+  private int startPos = 0;
+  private int endPos = 0;
+  private Instant previous = null;
+  private int step = 0;
+
+  // the values active at the previous instant
+  private final Map<V, Counter> active = new HashMap<V, Counter>();
+
+  /**
+   * Creates a new sweep iterator.
+   * @param entries the entries whose value set is to be evaluated,
+   * this iterator is fully read (and closed if closeable)
+   * @param instants the instants, sorted in ascending order
+   */
+  @SuppressWarnings("unchecked")
+  public ValueSetSweepIterator(
+    Iterator<? extends TimedObject<V>> entries, Iterator<? extends Instant> instants
+  ) {
+    if (entries == null || instants == null) throw new IllegalArgumentException("null");
+    List<TimedObject<V>> list = new ArrayList<TimedObject<V>>();
+    try {
+      while (entries.hasNext()) {
+        list.add(entries.next());
+      }
+    }
+    finally {
+      if (entries instanceof CloseableIterator) {
+        ((CloseableIterator<?>) entries).close();
+      }
+    }
+    this.byStart = (TimedObject<V>[]) list.toArray(new TimedObject<?>[list.size()]);
+    this.byEnd = this.byStart.clone();
+    Arrays.sort(this.byStart, START_COMPARATOR);
+    Arrays.sort(this.byEnd, END_COMPARATOR);
+    this.instants = instants;
+  }
+
+  private Counter touch(V value, List<V> touched) {
+    Counter counter = this.active.get(value);
+    if (counter == null) {
+      counter = new Counter();
+      this.active.put(value, counter);
+    }
+    if (counter.step != this.step) {
+      counter.step = this.step;
+      touched.add(value);
+    }
+    return counter;
+  }
+
+  /* (non-Javadoc)
+   * @see java.util.Iterator#hasNext()
+   */
+  public boolean hasNext() {
+    if (this.instants == null) return false;
+    boolean hasNext = this.instants.hasNext();
+    if (!hasNext) this.close();
+    return hasNext;
+  }
+
+  /**
+   * Returns the change of the value set between the previous instant
+   * and the next one.
+   * @throws IllegalArgumentException if the next instant is lower than
+   * the previous one
+   */
+  public ValueSetDelta<V> next() {
+    if (this.instants == null) throw new NoSuchElementException("Iterator is closed");
+    Instant instant = this.instants.next();
+    if (instant == null) throw new IllegalArgumentException("null");
+    if (this.previous != null && LongInstant.compare(instant, this.previous) < 0) {
+      throw new IllegalArgumentException(
+        "The instants are not sorted: " + instant + " follows " + this.previous
+      );
+    }
+    this.previous = instant;
+    this.step++;
+
+    List<V> touched = new ArrayList<V>();
+    while (this.startPos < this.byStart.length
+        && LongInstant.compare(this.byStart[this.startPos].getPeriod().getStart(), instant) <= 0) {
+      V value = this.byStart[this.startPos++].getValue();
+      this.touch(value, touched).count++;
+    }
+    // as in Period.contains(), the entries ending at +INF are never removed
+    while (this.endPos < this.byEnd.length
+        && !this.byEnd[this.endPos].getPeriod().getEnd().isPositiveInfinity()
+        && LongInstant.compare(this.byEnd[this.endPos].getPeriod().getEnd(), instant) <= 0) {
+      V value = this.byEnd[this.endPos++].getValue();
+      this.touch(value, touched).count--;
+    }
+
+    Set<V> added = new HashSet<V>();
+    Set<V> removed = new HashSet<V>();
+    for (V value : touched) {
+      Counter counter = this.active.get(value);
+      boolean isActive = counter.count > 0;
+      if (isActive && !counter.wasActive) {
+        added.add(value);
+      }
+      else if (!isActive && counter.wasActive) {
+        removed.add(value);
+      }
+      if (isActive) {
+        counter.wasActive = true;
+      }
+      else {
+        this.active.remove(value);
+      }
+    }
+    return new ValueSetDelta<V>(instant, added, removed);
+  }
+
+  /* (non-Javadoc)
+   * @see java.util.Iterator#remove()
+   */
+  public void remove() {
+    throw new UnsupportedOperationException();
+  }
+
+  /* (non-Javadoc)
+   * @see net.sf.jtemporal.util.CloseableIterator#close()
+   */
+  public void close() {
+    if (this.instants instanceof CloseableIterator) {
+      ((CloseableIterator<?>) this.instants).close();
+    }
+    this.instants = null;
+    this.active.clear();
+  }
+
+  /* (non-Javadoc)
+   * @see net.sf.jtemporal.util.CloseableIterator#isOpen()
+   */
+  public boolean isOpen() {
+    return this.instants != null;
+  }
+}
@@ -0,0 +1,346 @@
+/*
+   This file is part of the JTemporal framework (http://jtemporal.sf.net).
+   Copyright (C) 2002 by the author(s).
+   Distributable under LGPL license version 2.1 or later,
+   with no warranties given or implied.
+   See terms of license at gnu.org or www.opensource.org/licenses  */
+
+package net.sf.jtemporal.io;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import net.sf.jtemporal.TemporalAttribute;
+import net.sf.jtemporal.TemporalAttributeImpl;
+import net.sf.jtemporal.spi.TemporalAttributeStorage;
+
+/**
+ * Writes many {@linkplain TemporalAttribute}s, identified by a key, in a
+ * single snapshot, and loads them in parallel; immutable, so one instance
+ * can serve any number of snapshots. <br>
+ * Each attribute is written in the format of {@linkplain TemporalCodec},
+ * preceded by its key and its length in bytes.  The loading reads the
+ * snapshot sequentially, only slicing it into attributes, then builds the
+ * attributes on a {@linkplain ForkJoinPool}, splitting them into
+ * partitions until there are enough of them to keep all the threads
+ * busy.  Each attribute is bulk loaded into a new storage.
+ * The slices are kept in memory during the loading, in their compact form. <br>
+ * The progress and the throughput of the loading can be reported to a
+ * {@linkplain ProgressListener}.
+ * <pre>
+ *   AttributeSnapshot&lt;String, String&gt; snapshot = new AttributeSnapshot&lt;String, String&gt;(
+ *     LongInstantCodec.INSTANCE, new SerializedValueCodec&lt;String&gt;(), new SerializedValueCodec&lt;String&gt;()
+ *   );
+ *   snapshot.writeTo(attributes, out);
+ *   ...
+ *   Map&lt;String, TemporalAttribute&lt;String&gt;&gt; loaded = snapshot.readFrom(in, factory);
+ * </pre>
+ * @author Thomas A Beck
+ * @version $Id$
+ * @param <K> the type of the key of the attributes
+ * @param <V> the type of the value of the attributes
+ */
+public class AttributeSnapshot<K, V> {
+
+	private static final byte SNAPSHOT = 'M';
+
+	// partitions per thread, so that the threads stay busy with uneven attributes
+	private static final int PARTITIONS_PER_THREAD = 16;
+
+	private final ValueCodec<K> keys;
+	private final TemporalCodec<V> codec;
+
+	/**
+	 * Creates the storage of each loaded attribute.
+	 * Called by the loading threads, possibly concurrently.
+	 * @author Thomas A Beck
+	 * @version $Id$
+	 * @param <K> the type of the key of the attributes
+	 * @param <V> the type of the value of the attributes
+	 */
+	public interface StorageFactory<K, V> {
+		/**
+		 * Creates an empty storage.
+		 * @param key the key of the attribute to be loaded
+		 * @return an empty storage
+		 */
+		TemporalAttributeStorage<V> newStorage(K key);
+	}
+
+	/**
+	 * Receives the progress of a loading.
+	 * Called by the loading threads, one at a time, with a progress that never goes back.
+	 * @author Thomas A Beck
+	 * @version $Id$
+	 */
+	public interface ProgressListener {
+		/**
+		 * Some attributes have been loaded.
+		 * @param progress the progress of the loading
+		 */
+		void progress(Progress progress);
+	}
+
+	/**
+	 * The immutable progress of a loading, reported to a {@linkplain ProgressListener}.
+	 * @author Thomas A Beck
+	 * @version $Id$
+	 */
+	public static final class Progress {
+		private final int loaded;
+		private final int total;
+		private final long entries;
+		private final long elapsedNanos;
+
+		Progress(int loaded, int total, long entries, long elapsedNanos) {
+			this.loaded = loaded;
+			this.total = total;
+			this.entries = entries;
+			this.elapsedNanos = elapsedNanos;
+		}
+
+		/**
+		 * @return the number of attributes loaded
+		 */
+		public int getLoaded() {
+			return this.loaded;
+		}
+
+		/**
+		 * @return the number of attributes in the snapshot
+		 */
+		public int getTotal() {
+			return this.total;
+		}
+
+		/**
+		 * @return the number of entries in the attributes loaded
+		 */
+		public long getEntries() {
+			return this.entries;
+		}
+
+		/**
+		 * @return the time elapsed since the snapshot was sliced, in nanoseconds
+		 */
+		public long getElapsedNanos() {
+			return this.elapsedNanos;
+		}
+
+		/**
+		 * @return the throughput, in entries loaded per second
+		 */
+		public double getEntriesPerSecond() {
+			return this.elapsedNanos == 0 ? 0 : this.entries * 1e9 / this.elapsedNanos;
+		}
+
+		/**
+		 * @return true if all the attributes have been loaded
+		 */
+		public boolean isDone() {
+			return this.loaded == this.total;
+		}
+
+		/* (non-Javadoc)
+		 * @see java.lang.Object#toString()
+		 */
+		public String toString() {
+			return this.loaded + "/" + this.total + " attributes, " + this.entries + " entries, "
+				+ (long) this.getEntriesPerSecond() + " entries/s";
+		}
+	}
+
+	/**
+	 * @param instants the conversion of the instants
+	 * @param keys the format of the keys
+	 * @param values the format of the values
+	 */
+	public AttributeSnapshot(InstantCodec instants, ValueCodec<K> keys, ValueCodec<V> values) {
+		if (keys == null) {
+			throw new IllegalArgumentException("null");
+		}
+		this.keys = keys;
+		this.codec = new TemporalCodec<V>(instants, values);
+	}
+
+	/**
+	 * Writes all the attributes.
+	 * @param attributes the attributes, by key
+	 * @param out the output, flushed but not closed
+	 * @throws IOException
+	 */
+	public void writeTo(Map<K, ? extends TemporalAttribute<V>> attributes, OutputStream out) throws IOException {
+		if (attributes == null || out == null) {
+			throw new IllegalArgumentException("null");
+		}
+		DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+		TemporalCodec.writeHeader(data, SNAPSHOT);
+		TemporalCodec.writeVarLong(data, attributes.size());
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		for (Map.Entry<K, ? extends TemporalAttribute<V>> entry : attributes.entrySet()) {
+			bytes.reset();
+			this.codec.writeTo(entry.getValue(), bytes);
+			this.keys.write(data, entry.getKey());
+			TemporalCodec.writeVarLong(data, bytes.size());
+			bytes.writeTo(data);
+		}
+		data.flush();
+	}
+
+	/**
+	 * Loads all the attributes on the common pool.
+	 * @param in the input, not closed
+	 * @param storages creates the storage of each attribute
+	 * @return the attributes, by key, in the order they were written
+	 * @throws IOException if the input is not a snapshot in a known version
+	 * @see #readFrom(InputStream, StorageFactory, ForkJoinPool, ProgressListener)
+	 */
+	public Map<K, TemporalAttribute<V>> readFrom(InputStream in, StorageFactory<K, V> storages)
+	  throws IOException
+	{
+		return this.readFrom(in, storages, ForkJoinPool.commonPool(), null);
+	}
+
+	/**
+	 * Loads all the attributes, in parallel.
+	 * @param in the input, not closed
+	 * @param storages creates the storage of each attribute
+	 * @param pool the threads building the attributes
+	 * @param listener receives the progress, or null
+	 * @return the attributes, by key, in the order they were written
+	 * @throws IOException if the input is not a snapshot in a known version
+	 */
+	public Map<K, TemporalAttribute<V>> readFrom(
+		InputStream in, StorageFactory<K, V> storages, ForkJoinPool pool, ProgressListener listener
+	) throws IOException {
+		if (in == null || storages == null || pool == null) {
+			throw new IllegalArgumentException("null");
+		}
+		// slices the snapshot, sequentially
+		DataInputStream data = new DataInputStream(in);
+		TemporalCodec.readHeader(data, SNAPSHOT);
+		int total = TemporalCodec.readCount(data);
+		Loading loading = new Loading(total, storages, listener);
+		for (int k = 0; k < total; k++) {
+			loading.keys[k] = this.keys.read(data);
+			loading.slices[k] = new byte[TemporalCodec.readCount(data)];
+			data.readFully(loading.slices[k]);
+		}
+
+		loading.start = System.nanoTime();
+		int partitions = pool.getParallelism() * PARTITIONS_PER_THREAD;
+		pool.invoke(new Load(loading, 0, total, Math.max(1, total / partitions)));
+		if (loading.failure.get() != null) {
+			throw loading.failure.get();
+		}
+
+		Map<K, TemporalAttribute<V>> attributes = new LinkedHashMap<K, TemporalAttribute<V>>();
+		for (int k = 0; k < total; k++) {
+			attributes.put(loading.keys[k], loading.attributes[k]);
+		}
+		return attributes;
+	}
+
+	/**
+	 * The state of a loading, shared by its partitions.
+	 */
+	private final class Loading {
+		final K[] keys;
+		final byte[][] slices;
+		final TemporalAttribute<V>[] attributes;
+		final StorageFactory<K, V> storages;
+		final ProgressListener listener;
+
+		final AtomicInteger loaded = new AtomicInteger();
+		final AtomicLong entries = new AtomicLong();
+		final AtomicReference<IOException> failure = new AtomicReference<IOException>();
+		long start;
+
+		@SuppressWarnings("unchecked")
+		Loading(int total, StorageFactory<K, V> storages, ProgressListener listener) {
+			this.keys = (K[]) new Object[total];
+			this.slices = new byte[total][];
+			this.attributes = (TemporalAttribute<V>[]) new TemporalAttribute<?>[total];
+			this.storages = storages;
+			this.listener = listener;
+		}
+
+		// one at a time, so that the listener sees an increasing progress
+		synchronized void report() {
+			if (this.listener != null) {
+				this.listener.progress(new Progress(
+					this.loaded.get(), this.slices.length, this.entries.get(),
+					System.nanoTime() - this.start
+				));
+			}
+		}
+	}
+
+	/**
+	 * Loads the attributes from index <code>from</code> (inclusive)
+	 * to index <code>to</code> (exclusive), splitting them in halves
+	 * down to the given size.
+	 */
+	private final class Load extends RecursiveAction {
+		private static final long serialVersionUID = 4412708349851466371L;
+
+		private final Loading loading;
+		private final int from;
+		private final int to;
+		private final int partition;
+
+		Load(Loading loading, int from, int to, int partition) {
+			this.loading = loading;
+			this.from = from;
+			this.to = to;
+			this.partition = partition;
+		}
+
+		@Override
+		protected void compute() {
+			if (this.to - this.from > this.partition) {
+				int middle = (this.from + this.to) >>> 1;
+				invokeAll(
+					new Load(this.loading, this.from, middle, this.partition),
+					new Load(this.loading, middle, this.to, this.partition)
+				);
+				return;
+			}
+			if (this.loading.failure.get() != null) {
+				return;
+			}
+			long entries = 0;
+			try {
+				for (int k = this.from; k < this.to; k++) {
+					TemporalAttribute<V> ta = new TemporalAttributeImpl<V>(
+						this.loading.storages.newStorage(this.loading.keys[k])
+					);
+					codec.readFrom(new ByteArrayInputStream(this.loading.slices[k]), ta);
+					this.loading.slices[k] = null; // allows garbage collection
+					this.loading.attributes[k] = ta;
+					entries += ta.size();
+				}
+			}
+			catch (IOException e) {
+				this.loading.failure.compareAndSet(null, e);
+				return;
+			}
+			this.loading.entries.addAndGet(entries);
+			this.loading.loaded.addAndGet(this.to - this.from);
+			this.loading.report();
+		}
+	}
+}
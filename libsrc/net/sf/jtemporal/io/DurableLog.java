@@ -0,0 +1,440 @@
+/*
+   This file is part of the JTemporal framework (http://jtemporal.sf.net).
+   Copyright (C) 2002 by the author(s).
+   Distributable under LGPL license version 2.1 or later,
+   with no warranties given or implied.
+   See terms of license at gnu.org or www.opensource.org/licenses  */
+
+package net.sf.jtemporal.io;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.io.StreamCorruptedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.zip.CRC32;
+
+import net.sf.jtemporal.Instant;
+import net.sf.jtemporal.Period;
+
+/**
+ * The append-only log and the snapshot of a durable storage, kept in a
+ * directory. <br>
+ * The changes are recorded in a group, appended to the log with its
+ * length and its checksum when the outermost atomic operation ends.
+ * On startup, the snapshot is loaded, then the complete groups of the log
+ * are replayed: a group torn by a crash is discarded, so that the atomic
+ * operations are either entirely replayed or not at all. <br>
+ * A snapshot is written to a temporary file, then renamed, and carries a
+ * generation number, incremented at each snapshot: a log whose
+ * generation is older than the snapshot is already contained in it.
+ * @author Thomas A Beck
+ * @version $Id$
+ */
+abstract class DurableLog implements Closeable {
+
+	static final String SNAPSHOT = "snapshot";
+	static final String LOG = "log";
+
+	private static final byte KIND_SNAPSHOT = 'N';
+	private static final byte KIND_LOG = 'L';
+	private static final int VERSION = 1;
+	// kind, version and generation
+	private static final int HEADER = 4 + 8;
+
+	// the infinities of a period
+	private static final int NEGATIVE_START = 1;
+	private static final int POSITIVE_END = 2;
+
+	private final File directory;
+	private final InstantCodec instants;
+
+	private long generation = 0;
+	private RandomAccessFile log;
+	private long logSize;
+
+	// the changes of the current atomic operation
+	private final ByteArrayOutputStream group = new ByteArrayOutputStream();
+	private int depth = 0;
+
+	// the change being recorded
+	private final ByteArrayOutputStream change = new ByteArrayOutputStream();
+	private final DataOutputStream changeData = new DataOutputStream(this.change);
+
+	// the groups not yet written, because of a write failure
+	private final ByteArrayOutputStream unwritten = new ByteArrayOutputStream();
+	// the failure of the last commit made by end(), not yet reported
+	private IOException endFailure = null;
+
+	private long snapshotThreshold = 64L << 20;
+	private boolean forceOnCommit = false;
+
+	DurableLog(File directory, InstantCodec instants) {
+		if (directory == null || instants == null) {
+			throw new IllegalArgumentException("null");
+		}
+		this.directory = directory;
+		this.instants = instants;
+	}
+
+	/**
+	 * Loads the content of the snapshot in the storage.
+	 */
+	abstract void readSnapshot(InputStream in) throws IOException;
+
+	/**
+	 * Writes the content of the storage.
+	 */
+	abstract void writeSnapshot(OutputStream out) throws IOException;
+
+	/**
+	 * Applies to the storage a change read from the log.
+	 * @param operation the code of the change
+	 * @param in the data of the change
+	 */
+	abstract void replay(int operation, DataInput in) throws IOException;
+
+	/**
+	 * Loads the snapshot, replays the log, and opens it for appending.
+	 */
+	void open() throws IOException {
+		if (!this.directory.isDirectory() && !this.directory.mkdirs()) {
+			throw new IOException("Cannot create " + this.directory);
+		}
+		File snapshot = new File(this.directory, SNAPSHOT);
+		if (snapshot.exists()) {
+			DataInputStream in = new DataInputStream(
+				new BufferedInputStream(new FileInputStream(snapshot))
+			);
+			try {
+				readHeader(in, KIND_SNAPSHOT);
+				this.generation = in.readLong();
+				this.readSnapshot(in);
+			}
+			finally {
+				in.close();
+			}
+		}
+
+		this.log = new RandomAccessFile(new File(this.directory, LOG), "rw");
+		boolean opened = false;
+		try {
+			boolean replayed = false;
+			if (this.log.length() >= HEADER) { // else torn while being reset
+				DataInputStream in = new DataInputStream(
+					new BufferedInputStream(new FileInputStream(this.log.getFD()))
+				);
+				readHeader(in, KIND_LOG);
+				long logGeneration = in.readLong();
+				if (logGeneration > this.generation) {
+					throw new StreamCorruptedException("The log is newer than the snapshot");
+				}
+				if (logGeneration == this.generation) {
+					this.logSize = this.replayLog(in, HEADER);
+					this.log.setLength(this.logSize); // the torn group, if any
+					replayed = true;
+				}
+				// else the snapshot contains the log
+			}
+			if (!replayed) {
+				this.resetLog();
+			}
+			this.log.seek(this.logSize);
+			opened = true;
+		}
+		finally {
+			if (!opened) {
+				try {
+					this.log.close();
+				}
+				catch (IOException e) {
+					// the failure of the opening is thrown instead
+				}
+				this.log = null;
+			}
+		}
+	}
+
+	/**
+	 * Replays the complete groups.
+	 * @return the position after the last complete group
+	 */
+	private long replayLog(DataInputStream in, long position) throws IOException {
+		CRC32 crc = new CRC32();
+		while (true) {
+			byte[] bytes;
+			try {
+				long length = TemporalCodec.readVarLong(in);
+				if (length <= 0 || length > Integer.MAX_VALUE) {
+					return position;
+				}
+				bytes = new byte[(int) length];
+				in.readFully(bytes);
+				crc.reset();
+				crc.update(bytes, 0, bytes.length);
+				if (in.readInt() != (int) crc.getValue()) {
+					return position;
+				}
+				position += varLongSize(length) + length + 4;
+			}
+			catch (EOFException e) {
+				return position;
+			}
+			DataInputStream group = new DataInputStream(new ByteArrayInputStream(bytes));
+			while (group.available() > 0) {
+				this.replay(group.readByte(), group);
+			}
+		}
+	}
+
+	private static int varLongSize(long value) {
+		int size = 1;
+		while ((value & ~0x7FL) != 0) {
+			value >>>= 7;
+			size++;
+		}
+		return size;
+	}
+
+	private void resetLog() throws IOException {
+		this.log.setLength(0);
+		this.log.seek(0);
+		ByteArrayOutputStream header = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(header);
+		writeHeader(out, KIND_LOG);
+		out.writeLong(this.generation);
+		this.log.write(header.toByteArray());
+		this.logSize = header.size();
+		this.log.getFD().sync();
+	}
+
+	private static void writeHeader(DataOutput out, byte kind) throws IOException {
+		out.writeByte('J');
+		out.writeByte('T');
+		out.writeByte(kind);
+		out.writeByte(VERSION);
+	}
+
+	private static void readHeader(DataInput in, byte kind) throws IOException {
+		if (in.readByte() != 'J' || in.readByte() != 'T' || in.readByte() != kind) {
+			throw new StreamCorruptedException("Not a JTemporal " + (kind == KIND_LOG ? "log" : "snapshot"));
+		}
+		int version = in.readByte();
+		if (version < 1 || version > VERSION) {
+			throw new StreamCorruptedException("Unsupported version " + version);
+		}
+	}
+
+	/// Recording //////////////////////////////////////////////////////
+
+	/**
+	 * Starts recording a change, before it is applied to the storage, so
+	 * that a value that cannot be written does not change the storage.
+	 * @return the output where the data of the change is to be written
+	 * @throws IllegalStateException if the last atomic operation could not 
+	 * be written, the change being cancelled
+	 */
+	DataOutput record(int operation) {
+		IOException failure = this.endFailure;
+		if (failure != null) {
+			this.endFailure = null;
+			throw new IllegalStateException(
+				"The changes of a previous atomic operation could not be written,"
+				+ " they are pending", failure
+			);
+		}
+		this.change.reset();
+		try {
+			this.changeData.writeByte(operation);
+		}
+		catch (IOException e) {
+			throw new IllegalStateException(e); // not on a byte array
+		}
+		return this.changeData;
+	}
+
+	/**
+	 * Adds the recorded change to the group, once applied to the storage,
+	 * and commits it if outside any atomic operation.
+	 * @throws IllegalStateException if the group cannot be written
+	 */
+	void recorded() {
+		this.group.write(this.change.toByteArray(), 0, this.change.size());
+		this.change.reset();
+		if (this.depth == 0) {
+			try {
+				this.commit();
+			}
+			catch (IOException e) {
+				throw new IllegalStateException("The change is not durable", e);
+			}
+		}
+	}
+
+	void begin() {
+		this.depth++;
+	}
+
+	/**
+	 * Ends an atomic operation, committing the group if outermost.
+	 * A write failure is not thrown, the group being kept: the failure is
+	 * thrown by the next change, see {@linkplain #record(int)}, or by 
+	 * {@linkplain #force()}.
+	 */
+	void end() {
+		if (this.depth > 0 && --this.depth == 0) {
+			try {
+				this.commit();
+			}
+			catch (IOException e) {
+				// kept unwritten, reported by the next change
+				this.endFailure = e;
+			}
+		}
+	}
+
+	/**
+	 * Appends the current group to the log, with the groups not yet written.
+	 */
+	private void commit() throws IOException {
+		if (this.group.size() > 0) {
+			byte[] bytes = this.group.toByteArray();
+			this.group.reset();
+			CRC32 crc = new CRC32();
+			crc.update(bytes, 0, bytes.length);
+			DataOutputStream out = new DataOutputStream(this.unwritten);
+			TemporalCodec.writeVarLong(out, bytes.length);
+			out.write(bytes);
+			out.writeInt((int) crc.getValue());
+		}
+		if (this.unwritten.size() == 0) {
+			return;
+		}
+		if (this.log == null) {
+			throw new IOException("closed");
+		}
+		this.log.seek(this.logSize); // after a failure
+		this.log.write(this.unwritten.toByteArray());
+		this.logSize += this.unwritten.size();
+		this.unwritten.reset();
+		if (this.forceOnCommit) {
+			this.log.getFD().sync();
+		}
+		if (this.logSize > this.snapshotThreshold) {
+			this.snapshot();
+		}
+	}
+
+	/**
+	 * Writes the groups not yet written, and forces the log to the disk.
+	 */
+	void force() throws IOException {
+		this.endFailure = null; // written again, or thrown here
+		this.commit();
+		this.log.getFD().sync();
+	}
+
+	/**
+	 * Writes a snapshot of the storage, then empties the log. <br>
+	 * The groups not yet written are contained in the snapshot.
+	 */
+	void snapshot() throws IOException {
+		if (this.depth > 0) {
+			throw new IllegalStateException("Within an atomic operation");
+		}
+		File temp = new File(this.directory, SNAPSHOT + ".tmp");
+		FileOutputStream file = new FileOutputStream(temp);
+		try {
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file));
+			writeHeader(out, KIND_SNAPSHOT);
+			out.writeLong(this.generation + 1);
+			this.writeSnapshot(out);
+			out.flush();
+			file.getFD().sync();
+		}
+		finally {
+			file.close();
+		}
+		Files.move(
+			temp.toPath(), new File(this.directory, SNAPSHOT).toPath(),
+			StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE
+		);
+		// from now on, the log is contained in the snapshot
+		this.generation++;
+		this.unwritten.reset();
+		this.resetLog();
+	}
+
+	/* (non-Javadoc)
+	 * @see java.io.Closeable#close()
+	 */
+	public void close() throws IOException {
+		if (this.log == null) {
+			return;
+		}
+		try {
+			this.force();
+		}
+		finally {
+			this.log.close();
+			this.log = null;
+		}
+	}
+
+	long logSize() {
+		return this.logSize;
+	}
+
+	void setSnapshotThreshold(long bytes) {
+		if (bytes <= 0) {
+			throw new IllegalArgumentException("bytes <= 0");
+		}
+		this.snapshotThreshold = bytes;
+	}
+
+	void setForceOnCommit(boolean force) {
+		this.forceOnCommit = force;
+	}
+
+	/// Periods ////////////////////////////////////////////////////////
+
+	void writePeriod(DataOutput out, Period p) throws IOException {
+		Instant start = p.getStart();
+		Instant end = p.getEnd();
+		out.writeByte(
+			(start.isNegativeInfinity() ? NEGATIVE_START : 0)
+			| (end.isPositiveInfinity() ? POSITIVE_END : 0)
+		);
+		if (!start.isNegativeInfinity()) {
+			TemporalCodec.writeSignedVarLong(out, this.instants.encode(start));
+		}
+		if (!end.isPositiveInfinity()) {
+			TemporalCodec.writeSignedVarLong(out, this.instants.encode(end));
+		}
+	}
+
+	Period readPeriod(DataInput in) throws IOException {
+		int flags = in.readByte();
+		Period always = this.instants.getAlwaysPeriod();
+		Instant start = (flags & NEGATIVE_START) != 0
+			? always.getStart() : this.instants.decode(TemporalCodec.readSignedVarLong(in));
+		Instant end = (flags & POSITIVE_END) != 0
+			? always.getEnd() : this.instants.decode(TemporalCodec.readSignedVarLong(in));
+		return new Period(start, end);
+	}
+}
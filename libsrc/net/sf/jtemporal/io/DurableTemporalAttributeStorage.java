@@ -0,0 +1,331 @@
+/*
+   This file is part of the JTemporal framework (http://jtemporal.sf.net).
+   Copyright (C) 2002 by the author(s).
+   Distributable under LGPL license version 2.1 or later,
+   with no warranties given or implied.
+   See terms of license at gnu.org or www.opensource.org/licenses  */
+
+package net.sf.jtemporal.io;
+
+import java.io.Closeable;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StreamCorruptedException;
+
+import net.sf.jtemporal.Period;
+import net.sf.jtemporal.TimedObject;
+import net.sf.jtemporal.spi.TemporalAttributeStorage;
+import net.sf.jtemporal.spi.TemporalAttributeStorageProxy;
+import net.sf.jtemporal.util.CloseableIterator;
+import net.sf.jtemporal.util.SimpleCloseableIterator;
+
+/**
+ * Makes an in-memory TemporalAttributeStorage durable, such as
+ * {@linkplain net.sf.jtemporal.spi.TreeTemporalAttributeStorage}. <br>
+ * Every put, removeEntry, removeRange and clear is recorded in an
+ * append-only log, kept in a directory with a snapshot of the storage.
+ * The changes made within an atomic operation are appended at once when
+ * the outermost operation ends, the other changes immediately.  When the
+ * log grows beyond a threshold, a compacted snapshot is written and the
+ * log is emptied. <br>
+ * On creation, the storage is rebuilt by loading the snapshot, then
+ * replaying the log: an atomic operation torn by a crash is discarded as
+ * a whole. <br>
+ * The log is written to the operating system, which survives a crash
+ * of the application; call {@linkplain #force()}, or enable
+ * {@linkplain #setForceOnCommit(boolean)}, to survive a crash of the system. <br>
+ * endAtomicOperation() must not throw any exception: when the log cannot be
+ * written there, the changes are kept in memory and appended with the next
+ * ones, and the failure is thrown, as the cause of an IllegalStateException,
+ * by the next change, which is cancelled, or by {@linkplain #force()}.
+ * The changes made outside of any atomic operation throw an 
+ * IllegalStateException. <br>
+ * <b>Note: this implementation is not synchronized.</b>
+ * @author Thomas A Beck
+ * @version $Id$
+ * @param <T> the type of the value that is stored
+ * @see DurableTemporalSetStorage
+ */
+public class DurableTemporalAttributeStorage<T>
+  extends TemporalAttributeStorageProxy<T> implements Closeable
+{
+	private static final int PUT = 1;
+	private static final int REMOVE_ENTRY = 2;
+	private static final int REMOVE_RANGE = 3;
+	private static final int CLEAR = 4;
+
+	private final TemporalAttributeStorage<T> storage;
+	private final ValueCodec<T> values;
+	private final Log log;
+
+	/**
+	 * Opens the storage kept in the given directory, or creates it.
+	 * @param directory the directory of the snapshot and of the log
+	 * @param storage the storage to be made durable, empty.
+	 * It should not be accessed directly anymore.
+	 * @param instants the conversion of the instants
+	 * @param values the format of the values
+	 * @throws IOException if the snapshot or the log cannot be read
+	 */
+	public DurableTemporalAttributeStorage(
+		File directory, TemporalAttributeStorage<T> storage,
+		InstantCodec instants, ValueCodec<T> values
+	) throws IOException {
+		super(storage);
+		if (storage == null || values == null) {
+			throw new IllegalArgumentException("null");
+		}
+		if (!storage.isEmpty()) {
+			throw new IllegalArgumentException("The storage is not empty");
+		}
+		this.storage = storage;
+		this.values = values;
+		this.log = new Log(directory, instants, new TemporalCodec<T>(instants, values));
+		this.log.open();
+	}
+
+	private final class Log extends DurableLog {
+		private final TemporalCodec<T> codec;
+
+		Log(File directory, InstantCodec instants, TemporalCodec<T> codec) {
+			super(directory, instants);
+			this.codec = codec;
+		}
+
+		@Override
+		void readSnapshot(InputStream in) throws IOException {
+			this.codec.readFrom(in, storage);
+		}
+
+		@Override
+		void writeSnapshot(OutputStream out) throws IOException {
+			this.codec.writeTo(storage, out);
+		}
+
+		@Override
+		void replay(int operation, DataInput in) throws IOException {
+			switch (operation) {
+			case PUT:
+				Period p = this.readPeriod(in);
+				storage.put(p, values.read(in));
+				break;
+			case REMOVE_ENTRY:
+				storage.removeEntry(this.readPeriod(in));
+				break;
+			case REMOVE_RANGE:
+				storage.removeRange(this.readPeriod(in));
+				break;
+			case CLEAR:
+				storage.clear();
+				break;
+			default:
+				throw new StreamCorruptedException("Unknown operation " + operation);
+			}
+		}
+	}
+
+	/**
+	 * Records a change on a period, before applying it.
+	 */
+	private void record(int operation, Period p) {
+		DataOutput out = this.log.record(operation);
+		try {
+			this.log.writePeriod(out, p);
+		}
+		catch (IOException e) {
+			throw new IllegalStateException(e); // not on a byte array
+		}
+	}
+
+	/**
+	 * Writes a snapshot of the storage, and empties the log.
+	 * This is done automatically when the log grows beyond the threshold.
+	 * @throws IOException
+	 * @throws IllegalStateException within an atomic operation
+	 * @see #setSnapshotThreshold(long)
+	 */
+	public void snapshot() throws IOException {
+		this.log.snapshot();
+	}
+
+	/**
+	 * Writes the changes not written yet, and forces the log to the disk.
+	 * @throws IOException
+	 */
+	public void force() throws IOException {
+		this.log.force();
+	}
+
+	/**
+	 * Writes the changes not written yet, and closes the log.
+	 * This storage cannot be updated any more.
+	 * @see java.io.Closeable#close()
+	 */
+	public void close() throws IOException {
+		this.log.close();
+	}
+
+	/**
+	 * Sets the size of the log beyond which a snapshot is written, 64 MB by default.
+	 * @param bytes the size of the log
+	 */
+	public void setSnapshotThreshold(long bytes) {
+		this.log.setSnapshotThreshold(bytes);
+	}
+
+	/**
+	 * Tells whether the log is forced to the disk at each change or atomic
+	 * operation, false by default.
+	 * @param force true to force the log
+	 */
+	public void setForceOnCommit(boolean force) {
+		this.log.setForceOnCommit(force);
+	}
+
+	/**
+	 * The size of the log, in bytes.
+	 * @return the size of the log
+	 */
+	public long logSize() {
+		return this.log.logSize();
+	}
+
+	/* (non-Javadoc)
+	 * @see net.sf.jtemporal.spi.TemporalAttributeStorage#beginAtomicOperation()
+	 */
+	@Override
+	public void beginAtomicOperation() {
+		super.beginAtomicOperation();
+		this.log.begin();
+	}
+
+	/* (non-Javadoc)
+	 * @see net.sf.jtemporal.spi.TemporalAttributeStorage#endAtomicOperation()
+	 */
+	@Override
+	public void endAtomicOperation() {
+		try {
+			this.log.end();
+		}
+		finally {
+			super.endAtomicOperation();
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see net.sf.jtemporal.spi.TemporalAttributeStorage#put(net.sf.jtemporal.Period, java.lang.Object)
+	 */
+	@Override
+	public void put(Period p, T value) {
+		if (p == null || value == null) {
+			throw new IllegalArgumentException("null");
+		}
+		DataOutput out = this.log.record(PUT);
+		try {
+			this.log.writePeriod(out, p);
+			this.values.write(out, value);
+		}
+		catch (IOException e) {
+			throw new IllegalArgumentException("Cannot write the value " + value, e);
+		}
+		super.put(p, value);
+		this.log.recorded();
+	}
+
+	/* (non-Javadoc)
+	 * @see net.sf.jtemporal.spi.TemporalAttributeStorage#removeEntry(net.sf.jtemporal.Period)
+	 */
+	@Override
+	public void removeEntry(Period p) {
+		if (p == null) {
+			throw new IllegalArgumentException("null");
+		}
+		this.record(REMOVE_ENTRY, p);
+		super.removeEntry(p);
+		this.log.recorded();
+	}
+
+	/* (non-Javadoc)
+	 * @see net.sf.jtemporal.spi.TemporalAttributeStorage#removeRange(net.sf.jtemporal.Period)
+	 */
+	@Override
+	public int removeRange(Period range) {
+		if (range == null) {
+			throw new IllegalArgumentException("null");
+		}
+		this.record(REMOVE_RANGE, range);
+		int count = super.removeRange(range);
+		if (count > 0) {
+			this.log.recorded();
+		}
+		return count;
+	}
+
+	/* (non-Javadoc)
+	 * @see net.sf.jtemporal.spi.TemporalAttributeStorage#clear()
+	 */
+	@Override
+	public void clear() {
+		this.log.record(CLEAR);
+		super.clear();
+		this.log.recorded();
+	}
+
+	private CloseableIterator<TimedObject<T>> logging(CloseableIterator<TimedObject<T>> entries) {
+		return new SimpleCloseableIterator<TimedObject<T>>(entries) {
+			@Override
+			public void remove() {
+				record(REMOVE_ENTRY, this.getLastFetched().getPeriod());
+				super.remove();
+				log.recorded();
+			}
+		};
+	}
+
+	private CloseableIterator<Period> loggingPeriods(CloseableIterator<Period> periods) {
+		return new SimpleCloseableIterator<Period>(periods) {
+			@Override
+			public void remove() {
+				record(REMOVE_ENTRY, this.getLastFetched());
+				super.remove();
+				log.recorded();
+			}
+		};
+	}
+
+	/* (non-Javadoc)
+	 * @see net.sf.jtemporal.spi.TemporalAttributeStorage#entryIterator()
+	 */
+	@Override
+	public CloseableIterator<TimedObject<T>> entryIterator() {
+		return this.logging(super.entryIterator());
+	}
+
+	/* (non-Javadoc)
+	 * @see net.sf.jtemporal.spi.TemporalAttributeStorage#entryIterator(net.sf.jtemporal.Period)
+	 */
+	@Override
+	public CloseableIterator<TimedObject<T>> entryIterator(Period p) {
+		return this.logging(super.entryIterator(p));
+	}
+
+	/* (non-Javadoc)
+	 * @see net.sf.jtemporal.spi.TemporalAttributeStorage#periodIterator()
+	 */
+	@Override
+	public CloseableIterator<Period> periodIterator() {
+		return this.loggingPeriods(super.periodIterator());
+	}
+
+	/* (non-Javadoc)
+	 * @see net.sf.jtemporal.spi.TemporalAttributeStorage#periodIterator(net.sf.jtemporal.Period)
+	 */
+	@Override
+	public CloseableIterator<Period> periodIterator(Period p) {
+		return this.loggingPeriods(super.periodIterator(p));
+	}
+}
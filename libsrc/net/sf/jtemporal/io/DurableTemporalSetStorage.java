@@ -0,0 +1,427 @@
+/*
+   This file is part of the JTemporal framework (http://jtemporal.sf.net).
+   Copyright (C) 2002 by the author(s).
+   Distributable under LGPL license version 2.1 or later,
+   with no warranties given or implied.
+   See terms of license at gnu.org or www.opensource.org/licenses  */
+
+package net.sf.jtemporal.io;
+
+import java.io.Closeable;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StreamCorruptedException;
+
+import net.sf.jtemporal.Instant;
+import net.sf.jtemporal.Period;
+import net.sf.jtemporal.TimedObject;
+import net.sf.jtemporal.spi.TemporalSetStorage;
+import net.sf.jtemporal.util.CloseableIterator;
+import net.sf.jtemporal.util.SimpleCloseableIterator;
+
+/**
+ * Makes an in-memory TemporalSetStorage durable, such as
+ * {@linkplain net.sf.jtemporal.spi.CompactTemporalSetStorage}. <br>
+ * Every put, remove, removeValue and clear is recorded in an append-only
+ * log, like {@linkplain DurableTemporalAttributeStorage} does:
+ * see there for the atomic operations, the snapshots and the failures. <br>
+ * <b>Note: this implementation is not synchronized.</b>
+ * @author Thomas A Beck
+ * @version $Id$
+ * @param <T> the type of the value that is stored
+ */
+public class DurableTemporalSetStorage<T> implements TemporalSetStorage<T>, Closeable {
+
+	private static final int PUT = 1;
+	private static final int REMOVE = 2;
+	private static final int REMOVE_VALUE = 3;
+	private static final int CLEAR = 4;
+
+	private final TemporalSetStorage<T> storage;
+	private final ValueCodec<T> values;
+	private final Log log;
+
+	/**
+	 * Opens the storage kept in the given directory, or creates it.
+	 * @param directory the directory of the snapshot and of the log
+	 * @param storage the storage to be made durable, empty.
+	 * It should not be accessed directly anymore.
+	 * @param instants the conversion of the instants
+	 * @param values the format of the values
+	 * @throws IOException if the snapshot or the log cannot be read
+	 */
+	public DurableTemporalSetStorage(
+		File directory, TemporalSetStorage<T> storage,
+		InstantCodec instants, ValueCodec<T> values
+	) throws IOException {
+		if (storage == null || values == null) {
+			throw new IllegalArgumentException("null");
+		}
+		if (!storage.isEmpty()) {
+			throw new IllegalArgumentException("The storage is not empty");
+		}
+		this.storage = storage;
+		this.values = values;
+		this.log = new Log(directory, instants, new TemporalCodec<T>(instants, values));
+		this.log.open();
+	}
+
+	private final class Log extends DurableLog {
+		private final TemporalCodec<T> codec;
+
+		Log(File directory, InstantCodec instants, TemporalCodec<T> codec) {
+			super(directory, instants);
+			this.codec = codec;
+		}
+
+		@Override
+		void readSnapshot(InputStream in) throws IOException {
+			this.codec.readFrom(in, storage);
+		}
+
+		@Override
+		void writeSnapshot(OutputStream out) throws IOException {
+			this.codec.writeTo(storage, out);
+		}
+
+		@Override
+		void replay(int operation, DataInput in) throws IOException {
+			switch (operation) {
+			case PUT:
+				Period p = this.readPeriod(in);
+				storage.put(p, values.read(in));
+				break;
+			case REMOVE:
+				Period removed = this.readPeriod(in);
+				storage.remove(removed, values.read(in));
+				break;
+			case REMOVE_VALUE:
+				storage.removeValue(values.read(in));
+				break;
+			case CLEAR:
+				storage.clear();
+				break;
+			default:
+				throw new StreamCorruptedException("Unknown operation " + operation);
+			}
+		}
+	}
+
+	/**
+	 * Records a change, before applying it.
+	 * @param p the period of the change, or null
+	 */
+	private void record(int operation, Period p, T value) {
+		DataOutput out = this.log.record(operation);
+		try {
+			if (p != null) {
+				this.log.writePeriod(out, p);
+			}
+			this.values.write(out, value);
+		}
+		catch (IOException e) {
+			throw new IllegalArgumentException("Cannot write the value " + value, e);
+		}
+	}
+
+	/**
+	 * Writes a snapshot of the storage, and empties the log.
+	 * This is done automatically when the log grows beyond the threshold.
+	 * @throws IOException
+	 * @throws IllegalStateException within an atomic operation
+	 * @see #setSnapshotThreshold(long)
+	 */
+	public void snapshot() throws IOException {
+		this.log.snapshot();
+	}
+
+	/**
+	 * Writes the changes not written yet, and forces the log to the disk.
+	 * @throws IOException
+	 */
+	public void force() throws IOException {
+		this.log.force();
+	}
+
+	/**
+	 * Writes the changes not written yet, and closes the log.
+	 * This storage cannot be updated any more.
+	 * @see java.io.Closeable#close()
+	 */
+	public void close() throws IOException {
+		this.log.close();
+	}
+
+	/**
+	 * Sets the size of the log beyond which a snapshot is written, 64 MB by default.
+	 * @param bytes the size of the log
+	 */
+	public void setSnapshotThreshold(long bytes) {
+		this.log.setSnapshotThreshold(bytes);
+	}
+
+	/**
+	 * Tells whether the log is forced to the disk at each change or atomic
+	 * operation, false by default.
+	 * @param force true to force the log
+	 */
+	public void setForceOnCommit(boolean force) {
+		this.log.setForceOnCommit(force);
+	}
+
+	/**
+	 * The size of the log, in bytes.
+	 * @return the size of the log
+	 */
+	public long logSize() {
+		return this.log.logSize();
+	}
+
+	/// Updates ///////////////////////////////////////////////////////
+
+	/* (non-Javadoc)
+	 * @see net.sf.jtemporal.spi.TemporalSetStorage#beginAtomicOperation()
+	 */
+	public void beginAtomicOperation() {
+		this.storage.beginAtomicOperation();
+		this.log.begin();
+	}
+
+	/* (non-Javadoc)
+	 * @see net.sf.jtemporal.spi.TemporalSetStorage#endAtomicOperation()
+	 */
+	public void endAtomicOperation() {
+		try {
+			this.log.end();
+		}
+		finally {
+			this.storage.endAtomicOperation();
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see net.sf.jtemporal.spi.TemporalSetStorage#put(net.sf.jtemporal.Period, java.lang.Object)
+	 */
+	public void put(Period p, T value) {
+		if (p == null || value == null) {
+			throw new IllegalArgumentException("null");
+		}
+		this.record(PUT, p, value);
+		this.storage.put(p, value);
+		this.log.recorded();
+	}
+
+	/* (non-Javadoc)
+	 * @see net.sf.jtemporal.spi.TemporalSetStorage#remove(net.sf.jtemporal.Period, java.lang.Object)
+	 */
+	public void remove(Period p, T value) {
+		if (p == null || value == null) {
+			throw new IllegalArgumentException("null");
+		}
+		this.record(REMOVE, p, value);
+		this.storage.remove(p, value);
+		this.log.recorded();
+	}
+
+	/* (non-Javadoc)
+	 * @see net.sf.jtemporal.spi.TemporalSetStorage#removeValue(java.lang.Object)
+	 */
+	public boolean removeValue(T value) {
+		if (value == null) {
+			throw new IllegalArgumentException("null");
+		}
+		this.record(REMOVE_VALUE, null, value);
+		boolean removed = this.storage.removeValue(value);
+		if (removed) {
+			this.log.recorded();
+		}
+		return removed;
+	}
+
+	/* (non-Javadoc)
+	 * @see net.sf.jtemporal.spi.TemporalSetStorage#clear()
+	 */
+	public void clear() {
+		this.log.record(CLEAR);
+		this.storage.clear();
+		this.log.recorded();
+	}
+
+	/// Queries ///////////////////////////////////////////////////////
+
+	/* (non-Javadoc)
+	 * @see net.sf.jtemporal.spi.TemporalSetStorage#lastPeriod(java.lang.Object)
+	 */
+	public Period lastPeriod(T value) {
+		return this.storage.lastPeriod(value);
+	}
+
+	/* (non-Javadoc)
+	 * @see net.sf.jtemporal.spi.TemporalSetStorage#firstPeriod(java.lang.Object)
+	 */
+	public Period firstPeriod(T value) {
+		return this.storage.firstPeriod(value);
+	}
+
+	/* (non-Javadoc)
+	 * @see net.sf.jtemporal.spi.TemporalSetStorage#isEmpty()
+	 */
+	public boolean isEmpty() {
+		return this.storage.isEmpty();
+	}
+
+	/* (non-Javadoc)
+	 * @see net.sf.jtemporal.spi.TemporalSetStorage#isEmpty(net.sf.jtemporal.Instant)
+	 */
+	public boolean isEmpty(Instant i) {
+		return this.storage.isEmpty(i);
+	}
+
+	/* (non-Javadoc)
+	 * @see net.sf.jtemporal.spi.TemporalSetStorage#containsValue(java.lang.Object)
+	 */
+	public boolean containsValue(Object value) {
+		return this.storage.containsValue(value);
+	}
+
+	/* (non-Javadoc)
+	 * @see net.sf.jtemporal.spi.TemporalSetStorage#containsValue(net.sf.jtemporal.Instant, java.lang.Object)
+	 */
+	public boolean containsValue(Instant i, Object value) {
+		return this.storage.containsValue(i, value);
+	}
+
+	/* (non-Javadoc)
+	 * @see net.sf.jtemporal.spi.TemporalSetStorage#getPeriod(net.sf.jtemporal.Instant, java.lang.Object)
+	 */
+	public Period getPeriod(Instant instant, T value) {
+		return this.storage.getPeriod(instant, value);
+	}
+
+	/* (non-Javadoc)
+	 * @see net.sf.jtemporal.spi.TemporalSetStorage#getPeriodEndingAt(net.sf.jtemporal.Instant, java.lang.Object)
+	 */
+	public Period getPeriodEndingAt(Instant instant, T value) {
+		return this.storage.getPeriodEndingAt(instant, value);
+	}
+
+	/* (non-Javadoc)
+	 * @see net.sf.jtemporal.spi.TemporalSetStorage#getPeriodStartingAt(net.sf.jtemporal.Instant, java.lang.Object)
+	 */
+	public Period getPeriodStartingAt(Instant instant, T value) {
+		return this.storage.getPeriodStartingAt(instant, value);
+	}
+
+	/* (non-Javadoc)
+	 * @see net.sf.jtemporal.spi.TemporalSetStorage#size()
+	 */
+	public int size() {
+		return this.storage.size();
+	}
+
+	/* (non-Javadoc)
+	 * @see net.sf.jtemporal.spi.TemporalSetStorage#sizeFor(java.lang.Object)
+	 */
+	public int sizeFor(T value) {
+		return this.storage.sizeFor(value);
+	}
+
+	/* (non-Javadoc)
+	 * @see net.sf.jtemporal.spi.TemporalSetStorage#sizeValues()
+	 */
+	public int sizeValues() {
+		return this.storage.sizeValues();
+	}
+
+	/* (non-Javadoc)
+	 * @see net.sf.jtemporal.spi.TemporalSetStorage#sizeAt(net.sf.jtemporal.Instant)
+	 */
+	public int sizeAt(Instant i) {
+		return this.storage.sizeAt(i);
+	}
+
+	/// Iterators /////////////////////////////////////////////////////
+
+	private CloseableIterator<TimedObject<T>> logging(CloseableIterator<TimedObject<T>> entries) {
+		return new SimpleCloseableIterator<TimedObject<T>>(entries) {
+			@Override
+			public void remove() {
+				TimedObject<T> removed = this.getLastFetched();
+				record(REMOVE, removed.getPeriod(), removed.getValue());
+				super.remove();
+				log.recorded();
+			}
+		};
+	}
+
+	private CloseableIterator<Period> logging(CloseableIterator<Period> periods, final T value) {
+		return new SimpleCloseableIterator<Period>(periods) {
+			@Override
+			public void remove() {
+				record(REMOVE, this.getLastFetched(), value);
+				super.remove();
+				log.recorded();
+			}
+		};
+	}
+
+	/* (non-Javadoc)
+	 * @see net.sf.jtemporal.spi.TemporalSetStorage#entryIterator()
+	 */
+	public CloseableIterator<TimedObject<T>> entryIterator() {
+		return this.logging(this.storage.entryIterator());
+	}
+
+	/* (non-Javadoc)
+	 * @see net.sf.jtemporal.spi.TemporalSetStorage#entryIterator(net.sf.jtemporal.Instant)
+	 */
+	public CloseableIterator<TimedObject<T>> entryIterator(Instant instant) {
+		return this.logging(this.storage.entryIterator(instant));
+	}
+
+	/* (non-Javadoc)
+	 * @see net.sf.jtemporal.spi.TemporalSetStorage#entryIterator(net.sf.jtemporal.Period)
+	 */
+	public CloseableIterator<TimedObject<T>> entryIterator(Period period) {
+		return this.logging(this.storage.entryIterator(period));
+	}
+
+	/* (non-Javadoc)
+	 * @see net.sf.jtemporal.spi.TemporalSetStorage#periodIterator(net.sf.jtemporal.Period, java.lang.Object)
+	 */
+	public CloseableIterator<Period> periodIterator(Period period, T value) {
+		return this.logging(this.storage.periodIterator(period, value), value);
+	}
+
+	/* (non-Javadoc)
+	 * @see net.sf.jtemporal.spi.TemporalSetStorage#periodIterator(java.lang.Object)
+	 */
+	public CloseableIterator<Period> periodIterator(T value) {
+		return this.logging(this.storage.periodIterator(value), value);
+	}
+
+	/* (non-Javadoc)
+	 * @see net.sf.jtemporal.spi.TemporalSetStorage#valueIterator()
+	 */
+	public CloseableIterator<T> valueIterator() {
+		return new SimpleCloseableIterator<T>(this.storage.valueIterator()) {
+			@Override
+			public void remove() {
+				record(REMOVE_VALUE, null, this.getLastFetched());
+				super.remove();
+				log.recorded();
+			}
+		};
+	}
+
+	/* (non-Javadoc)
+	 * @see net.sf.jtemporal.spi.TemporalSetStorage#valueIterator(net.sf.jtemporal.Instant)
+	 */
+	public CloseableIterator<T> valueIterator(Instant instant) {
+		return this.storage.valueIterator(instant); // read-only
+	}
+}
@@ -0,0 +1,43 @@
+/*
+   This file is part of the JTemporal framework (http://jtemporal.sf.net).
+   Copyright (C) 2002 by the author(s).
+   Distributable under LGPL license version 2.1 or later,
+   with no warranties given or implied.
+   See terms of license at gnu.org or www.opensource.org/licenses  */
+
+package net.sf.jtemporal.io;
+
+import net.sf.jtemporal.Instant;
+import net.sf.jtemporal.Period;
+
+/**
+ * Converts the finite instants of an application to <tt>long</tt>s and back,
+ * for the binary format of {@linkplain TemporalCodec}. <br>
+ * The conversion should preserve the order, and consecutive instants
+ * should get close numbers (days, seconds...): the format stores the
+ * differences between the numbers, the smaller the more compact.
+ * @author Thomas A Beck
+ * @version $Id$
+ * @see LongInstantCodec
+ */
+public interface InstantCodec {
+
+	/**
+	 * @param i a finite instant
+	 * @return the number representing the instant
+	 */
+	long encode(Instant i);
+
+	/**
+	 * @param value a number returned by {@linkplain #encode(Instant)}
+	 * @return the instant represented by the number
+	 */
+	Instant decode(long value);
+
+	/**
+	 * JTemporal does not know what your implementation of Instant is.
+	 * The infinite instants are not encoded, but taken from this period.
+	 * @return a constant containing a Period(NEGATIVE_INFINITY,POSITIVE_INFINITY)
+	 */
+	Period getAlwaysPeriod();
+}
@@ -0,0 +1,53 @@
+/*
+   This file is part of the JTemporal framework (http://jtemporal.sf.net).
+   Copyright (C) 2002 by the author(s).
+   Distributable under LGPL license version 2.1 or later,
+   with no warranties given or implied.
+   See terms of license at gnu.org or www.opensource.org/licenses  */
+
+package net.sf.jtemporal.io;
+
+import net.sf.jtemporal.Instant;
+import net.sf.jtemporal.LongInstant;
+import net.sf.jtemporal.Period;
+
+/**
+ * The immutable {@linkplain InstantCodec} of {@linkplain LongInstant}s.
+ * @author Thomas A Beck
+ * @version $Id$
+ */
+public final class LongInstantCodec implements InstantCodec {
+
+	/** The unique instance. */
+	public static final LongInstantCodec INSTANCE = new LongInstantCodec();
+
+	private LongInstantCodec() {
+	}
+
+	/* (non-Javadoc)
+	 * @see net.sf.jtemporal.io.InstantCodec#encode(net.sf.jtemporal.Instant)
+	 */
+	public long encode(Instant i) {
+		if (i instanceof LongInstant) {
+			return ((LongInstant) i).longValue();
+		}
+		if (i == null) {
+			throw new IllegalArgumentException("null");
+		}
+		throw new IllegalArgumentException("Not a LongInstant : " + i);
+	}
+
+	/* (non-Javadoc)
+	 * @see net.sf.jtemporal.io.InstantCodec#decode(long)
+	 */
+	public Instant decode(long value) {
+		return LongInstant.valueOf(value);
+	}
+
+	/* (non-Javadoc)
+	 * @see net.sf.jtemporal.io.InstantCodec#getAlwaysPeriod()
+	 */
+	public Period getAlwaysPeriod() {
+		return LongInstant.ALWAYS;
+	}
+}
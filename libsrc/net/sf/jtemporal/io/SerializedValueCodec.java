@@ -0,0 +1,56 @@
+/*
+   This file is part of the JTemporal framework (http://jtemporal.sf.net).
+   Copyright (C) 2002 by the author(s).
+   Distributable under LGPL license version 2.1 or later,
+   with no warranties given or implied.
+   See terms of license at gnu.org or www.opensource.org/licenses  */
+
+package net.sf.jtemporal.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+/**
+ * An immutable {@linkplain ValueCodec} using the Java serialization of each value,
+ * prefixed by its length. <br>
+ * Convenient, but verbose: write a specific ValueCodec for the values
+ * that are numbers or strings.
+ * @author Thomas A Beck
+ * @version $Id$
+ * @param <V> the type of the value, that must be serializable
+ */
+public class SerializedValueCodec<V> implements ValueCodec<V> {
+
+	/* (non-Javadoc)
+	 * @see net.sf.jtemporal.io.ValueCodec#write(java.io.DataOutput, java.lang.Object)
+	 */
+	public void write(DataOutput out, V value) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream oos = new ObjectOutputStream(bytes);
+		oos.writeObject(value);
+		oos.close();
+		out.writeInt(bytes.size());
+		out.write(bytes.toByteArray());
+	}
+
+	/* (non-Javadoc)
+	 * @see net.sf.jtemporal.io.ValueCodec#read(java.io.DataInput)
+	 */
+	@SuppressWarnings("unchecked")
+	public V read(DataInput in) throws IOException {
+		byte[] bytes = new byte[in.readInt()];
+		in.readFully(bytes);
+		try {
+			return (V) new ObjectInputStream(new ByteArrayInputStream(bytes)).readObject();
+		}
+		catch (ClassNotFoundException e) {
+			throw new InvalidClassException(e.getMessage());
+		}
+	}
+}
@@ -0,0 +1,564 @@
+/*
+   This file is part of the JTemporal framework (http://jtemporal.sf.net).
+   Copyright (C) 2002 by the author(s).
+   Distributable under LGPL license version 2.1 or later,
+   with no warranties given or implied.
+   See terms of license at gnu.org or www.opensource.org/licenses  */
+
+package net.sf.jtemporal.io;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StreamCorruptedException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import net.sf.jtemporal.Instant;
+import net.sf.jtemporal.Period;
+import net.sf.jtemporal.SimpleTimedObject;
+import net.sf.jtemporal.TemporalAttribute;
+import net.sf.jtemporal.TemporalAttributeImpl;
+import net.sf.jtemporal.TemporalSet;
+import net.sf.jtemporal.TimedObject;
+import net.sf.jtemporal.spi.BulkLoadableStorage;
+import net.sf.jtemporal.spi.TemporalAttributeStorage;
+import net.sf.jtemporal.spi.TemporalSetStorage;
+
+/**
+ * An immutable, compact binary format for {@linkplain TemporalAttribute}s and
+ * {@linkplain TemporalSet}s, or their storages, much smaller and faster than the Java
+ * serialization of their storages. <br>
+ * The format starts with a header (the bytes 'J', 'T', the kind 'A' or 'S',
+ * and the version).  Each distinct value is written once, by the
+ * {@linkplain ValueCodec}.  The instants are converted to numbers by the
+ * {@linkplain InstantCodec}, and each period is written as the distance
+ * from the end of the previous period, and its length, both as variable
+ * length integers: a history of daily periods takes a few bytes per entry.
+ * An attribute is written as its dictionary of values, followed by its entries,
+ * each one referring to its value by its rank in the dictionary; a set is
+ * written as each value followed by its periods. <br>
+ * The streams are neither buffered nor closed by the reading methods: they
+ * never read beyond the end of the written data, so that several
+ * attributes can be written in the same stream.
+ * <pre>
+ *   TemporalCodec&lt;String&gt; codec = new TemporalCodec&lt;String&gt;(
+ *     LongInstantCodec.INSTANCE, new SerializedValueCodec&lt;String&gt;()
+ *   );
+ *   codec.writeTo(ta, out);
+ *   ...
+ *   codec.readFrom(in, new TemporalAttributeImpl&lt;String&gt;(new TreeTemporalAttributeStorage&lt;String&gt;()));
+ * </pre>
+ * @author Thomas A Beck
+ * @version $Id$
+ * @param <V> the type of the value
+ */
+public class TemporalCodec<V> {
+
+	/** The version of the format written by this class. */
+	public static final int VERSION = 1;
+
+	private static final byte ATTRIBUTE = 'A';
+	private static final byte SET = 'S';
+
+	// the first period starts at the negative infinity
+	private static final int STARTS_AT_INFINITY = 1;
+	// the last period ends at the positive infinity
+	private static final int ENDS_AT_INFINITY = 2;
+
+	private final InstantCodec instants;
+	private final ValueCodec<V> values;
+
+	/**
+	 * @param instants the conversion of the instants
+	 * @param values the format of the values
+	 */
+	public TemporalCodec(InstantCodec instants, ValueCodec<V> values) {
+		if (instants == null || values == null) {
+			throw new IllegalArgumentException("null");
+		}
+		this.instants = instants;
+		this.values = values;
+	}
+
+	/**
+	 * Writes all the entries of the attribute.
+	 * @param ta the attribute
+	 * @param out the output, flushed but not closed
+	 * @throws IOException
+	 */
+	public void writeTo(TemporalAttribute<V> ta, OutputStream out) throws IOException {
+		if (ta == null || out == null) {
+			throw new IllegalArgumentException("null");
+		}
+		this.writeEntries(ta.entrySet(), ta.size(), ta.isEmpty() ? null : ta.lastPeriod(), out);
+	}
+
+	/**
+	 * Writes all the entries of the storage, as they are.
+	 * @param storage the storage
+	 * @param out the output, flushed but not closed
+	 * @throws IOException
+	 */
+	public void writeTo(final TemporalAttributeStorage<V> storage, OutputStream out) throws IOException {
+		if (storage == null || out == null) {
+			throw new IllegalArgumentException("null");
+		}
+		Iterable<TimedObject<V>> entries = new Iterable<TimedObject<V>>() {
+			public Iterator<TimedObject<V>> iterator() {
+				return storage.entryIterator();
+			}
+		};
+		this.writeEntries(entries, storage.size(), storage.isEmpty() ? null : storage.lastPeriod(), out);
+	}
+
+	/**
+	 * Writes the header, the dictionary and the entries, iterated twice.
+	 */
+	private void writeEntries(
+		Iterable<TimedObject<V>> entries, int size, Period last, OutputStream out
+	) throws IOException {
+		DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+		writeHeader(data, ATTRIBUTE);
+
+		// the dictionary
+		Map<V,Integer> ranks = new HashMap<V,Integer>();
+		List<V> dictionary = new ArrayList<V>();
+		for (TimedObject<V> to : entries) {
+			if (!ranks.containsKey(to.getValue())) {
+				ranks.put(to.getValue(), Integer.valueOf(dictionary.size()));
+				dictionary.add(to.getValue());
+			}
+		}
+		writeVarLong(data, dictionary.size());
+		for (V value : dictionary) {
+			this.values.write(data, value);
+		}
+
+		PeriodWriter periods = new PeriodWriter(data, size, last);
+		for (TimedObject<V> to : entries) {
+			periods.write(to.getPeriod());
+			writeVarLong(data, ranks.get(to.getValue()).intValue());
+		}
+		periods.close();
+		data.flush();
+	}
+
+	/**
+	 * Reads the entries of an attribute, and adds them to the given attribute,
+	 * usually empty, as by {@linkplain TemporalAttribute#put(Period, Object)}.
+	 * The entries are bulk loaded when the attribute is a
+	 * {@linkplain TemporalAttributeImpl}, without keeping them all in memory.
+	 * @param in the input, not closed
+	 * @param ta the attribute receiving the entries
+	 * @throws IOException if the input is not an attribute in a known version
+	 */
+	public void readFrom(InputStream in, TemporalAttribute<V> ta) throws IOException {
+		if (in == null || ta == null) {
+			throw new IllegalArgumentException("null");
+		}
+		EntryReader entries = this.readEntries(in);
+		try {
+			if (ta instanceof TemporalAttributeImpl) {
+				((TemporalAttributeImpl<V>) ta).bulkLoad(entries);
+			}
+			else {
+				while (entries.hasNext()) {
+					TimedObject<V> to = entries.next();
+					ta.put(to.getPeriod(), to.getValue());
+				}
+			}
+		}
+		catch (ReadFailure e) {
+			throw e.failure;
+		}
+	}
+
+	/**
+	 * Reads the entries of an attribute, and adds them as they are to the
+	 * given storage, usually empty: the adjacent entries having the same value
+	 * are not merged.  The entries are bulk loaded when the storage is a
+	 * {@linkplain BulkLoadableStorage}.
+	 * @param in the input, not closed
+	 * @param storage the storage receiving the entries
+	 * @throws IOException if the input is not an attribute in a known version
+	 */
+	public void readFrom(InputStream in, TemporalAttributeStorage<V> storage) throws IOException {
+		if (in == null || storage == null) {
+			throw new IllegalArgumentException("null");
+		}
+		EntryReader entries = this.readEntries(in);
+		try {
+			if (storage instanceof BulkLoadableStorage) {
+				@SuppressWarnings("unchecked")
+				BulkLoadableStorage<V> bulk = (BulkLoadableStorage<V>) storage;
+				bulk.bulkLoad(entries);
+			}
+			else {
+				while (entries.hasNext()) {
+					TimedObject<V> to = entries.next();
+					storage.put(to.getPeriod(), to.getValue());
+				}
+			}
+		}
+		catch (ReadFailure e) {
+			throw e.failure;
+		}
+	}
+
+	/**
+	 * Reads the header and the dictionary.
+	 * @return the entries, read lazily
+	 */
+	private EntryReader readEntries(InputStream in) throws IOException {
+		DataInputStream data = new DataInputStream(in);
+		readHeader(data, ATTRIBUTE);
+
+		int size = readCount(data);
+		List<V> dictionary = new ArrayList<V>(size);
+		for (int k = 0; k < size; k++) {
+			dictionary.add(this.values.read(data));
+		}
+		return new EntryReader(data, dictionary);
+	}
+
+	/**
+	 * Writes all the entries of the set.
+	 * @param ts the set
+	 * @param out the output, flushed but not closed
+	 * @throws IOException
+	 */
+	public void writeTo(TemporalSet<V> ts, OutputStream out) throws IOException {
+		if (ts == null || out == null) {
+			throw new IllegalArgumentException("null");
+		}
+		DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+		writeHeader(data, SET);
+		writeVarLong(data, ts.sizeValues());
+		for (V value : ts.valueSet()) {
+			this.writeValue(
+				data, value, ts.sizeFor(value), ts.lastPeriod(value), ts.periodSet(value).iterator()
+			);
+		}
+		data.flush();
+	}
+
+	/**
+	 * Writes all the entries of the storage.
+	 * @param storage the storage
+	 * @param out the output, flushed but not closed
+	 * @throws IOException
+	 */
+	public void writeTo(TemporalSetStorage<V> storage, OutputStream out) throws IOException {
+		if (storage == null || out == null) {
+			throw new IllegalArgumentException("null");
+		}
+		DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+		writeHeader(data, SET);
+		writeVarLong(data, storage.sizeValues());
+		for (Iterator<V> it = storage.valueIterator(); it.hasNext(); ) {
+			V value = it.next();
+			this.writeValue(
+				data, value, storage.sizeFor(value), storage.lastPeriod(value), storage.periodIterator(value)
+			);
+		}
+		data.flush();
+	}
+
+	/**
+	 * Writes a value of a set, followed by its periods.
+	 */
+	private void writeValue(
+		DataOutput out, V value, int count, Period last, Iterator<Period> periods
+	) throws IOException {
+		this.values.write(out, value);
+		PeriodWriter writer = new PeriodWriter(out, count, last);
+		while (periods.hasNext()) {
+			writer.write(periods.next());
+		}
+		writer.close();
+	}
+
+	/**
+	 * Reads the entries of a set, and adds them to the given set,
+	 * usually empty, as by {@linkplain TemporalSet#put(Period, Object)}.
+	 * @param in the input, not closed
+	 * @param ts the set receiving the entries
+	 * @throws IOException if the input is not a set in a known version
+	 */
+	public void readFrom(InputStream in, TemporalSet<V> ts) throws IOException {
+		if (in == null || ts == null) {
+			throw new IllegalArgumentException("null");
+		}
+		DataInputStream data = new DataInputStream(in);
+		readHeader(data, SET);
+		int valueCount = readCount(data);
+		for (int k = 0; k < valueCount; k++) {
+			V value = this.values.read(data);
+			PeriodReader periods = new PeriodReader(data);
+			while (periods.hasNext()) {
+				ts.put(periods.nextPeriod(), value);
+			}
+		}
+	}
+
+	/**
+	 * Reads the entries of a set, and adds them to the given storage, usually empty.
+	 * @param in the input, not closed
+	 * @param storage the storage receiving the entries
+	 * @throws IOException if the input is not a set in a known version
+	 */
+	public void readFrom(InputStream in, TemporalSetStorage<V> storage) throws IOException {
+		if (in == null || storage == null) {
+			throw new IllegalArgumentException("null");
+		}
+		DataInputStream data = new DataInputStream(in);
+		readHeader(data, SET);
+		int valueCount = readCount(data);
+		for (int k = 0; k < valueCount; k++) {
+			V value = this.values.read(data);
+			PeriodReader periods = new PeriodReader(data);
+			while (periods.hasNext()) {
+				storage.put(periods.nextPeriod(), value);
+			}
+		}
+	}
+
+	/// Format ////////////////////////////////////////////////////////
+
+	static void writeHeader(DataOutput out, byte kind) throws IOException {
+		out.writeByte('J');
+		out.writeByte('T');
+		out.writeByte(kind);
+		writeVarLong(out, VERSION);
+	}
+
+	static void readHeader(DataInput in, byte kind) throws IOException {
+		if (in.readByte() != 'J' || in.readByte() != 'T') {
+			throw new StreamCorruptedException("Not a JTemporal stream");
+		}
+		byte actual = in.readByte();
+		if (actual != kind) {
+			throw new StreamCorruptedException(
+				"Expected kind " + (char) kind + " instead of " + (char) actual
+			);
+		}
+		long version = readVarLong(in);
+		if (version < 1 || version > VERSION) {
+			throw new StreamCorruptedException("Unsupported version " + version);
+		}
+	}
+
+	/**
+	 * Writes an unsigned variable length integer, 7 bits per byte.
+	 */
+	static void writeVarLong(DataOutput out, long value) throws IOException {
+		while ((value & ~0x7FL) != 0) {
+			out.writeByte((int) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		out.writeByte((int) value);
+	}
+
+	static long readVarLong(DataInput in) throws IOException {
+		long value = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			byte b = in.readByte();
+			value |= (long) (b & 0x7F) << shift;
+			if (b >= 0) {
+				return value;
+			}
+		}
+		throw new StreamCorruptedException("Malformed variable length integer");
+	}
+
+	/**
+	 * Writes a signed variable length integer, small in absolute value.
+	 */
+	static void writeSignedVarLong(DataOutput out, long value) throws IOException {
+		writeVarLong(out, (value << 1) ^ (value >> 63)); // zigzag
+	}
+
+	static long readSignedVarLong(DataInput in) throws IOException {
+		long zigzag = readVarLong(in);
+		return (zigzag >>> 1) ^ -(zigzag & 1);
+	}
+
+	static int readCount(DataInput in) throws IOException {
+		long count = readVarLong(in);
+		if (count < 0 || count > Integer.MAX_VALUE) {
+			throw new StreamCorruptedException("Invalid count " + count);
+		}
+		return (int) count;
+	}
+
+	/**
+	 * Writes a sequence of sorted and disjoint periods: the count, the
+	 * infinity flags, then the distance from the end of the previous period
+	 * (signed, the first period being relative to zero) and the length
+	 * of each period.  The infinite boundaries are not written.
+	 * The arithmetic wraps around, so that any number is supported.
+	 */
+	private final class PeriodWriter {
+		private final DataOutput out;
+		private final int count;
+		private final Period last;
+		private int written = 0;
+		private long previousEnd = 0;
+
+		PeriodWriter(DataOutput out, int count, Period last) {
+			this.out = out;
+			this.count = count;
+			this.last = last;
+		}
+
+		void write(Period p) throws IOException {
+			if (this.written == this.count) {
+				throw new IllegalStateException("More periods than announced");
+			}
+			boolean first = this.written == 0;
+			boolean last = this.written == this.count - 1;
+			Instant start = p.getStart();
+			Instant end = p.getEnd();
+			if (first) {
+				writeVarLong(this.out, this.count);
+				int flags = (start.isNegativeInfinity() ? STARTS_AT_INFINITY : 0)
+					| (this.last.getEnd().isPositiveInfinity() ? ENDS_AT_INFINITY : 0);
+				this.out.writeByte(flags);
+			}
+			if ((start.isNegativeInfinity() && !first) || (end.isPositiveInfinity() && !last)) {
+				throw new IllegalStateException("The periods are not sorted: " + p);
+			}
+
+			long previous = this.previousEnd;
+			if (!start.isNegativeInfinity()) {
+				previous = instants.encode(start);
+				writeSignedVarLong(this.out, previous - this.previousEnd);
+			}
+			if (!end.isPositiveInfinity()) {
+				this.previousEnd = instants.encode(end);
+				if (start.isNegativeInfinity()) {
+					writeSignedVarLong(this.out, this.previousEnd);
+				}
+				else {
+					writeVarLong(this.out, this.previousEnd - previous);
+				}
+			}
+			this.written++;
+		}
+
+		void close() throws IOException {
+			if (this.count == 0) {
+				writeVarLong(this.out, 0);
+			}
+			else if (this.written != this.count) {
+				throw new IllegalStateException("Less periods than announced");
+			}
+		}
+	}
+
+	/**
+	 * Reads the periods written by a {@linkplain PeriodWriter}.
+	 */
+	private class PeriodReader {
+		final DataInput in;
+		private final int count;
+		private final int flags;
+		private int read = 0;
+		private long previousEnd = 0;
+
+		PeriodReader(DataInput in) throws IOException {
+			this.in = in;
+			this.count = readCount(in);
+			this.flags = this.count == 0 ? 0 : in.readByte();
+		}
+
+		public boolean hasNext() {
+			return this.read < this.count;
+		}
+
+		Period nextPeriod() throws IOException {
+			if (this.read >= this.count) {
+				throw new NoSuchElementException();
+			}
+			boolean first = this.read == 0;
+			boolean last = this.read == this.count - 1;
+			Period always = instants.getAlwaysPeriod();
+
+			Instant start;
+			Instant end;
+			if (first && (this.flags & STARTS_AT_INFINITY) != 0) {
+				start = always.getStart();
+				if (!(last && (this.flags & ENDS_AT_INFINITY) != 0)) {
+					this.previousEnd = readSignedVarLong(this.in);
+				}
+			}
+			else {
+				long s = this.previousEnd + readSignedVarLong(this.in);
+				start = instants.decode(s);
+				if (!(last && (this.flags & ENDS_AT_INFINITY) != 0)) {
+					this.previousEnd = s + readVarLong(this.in);
+				}
+			}
+			if (last && (this.flags & ENDS_AT_INFINITY) != 0) {
+				end = always.getEnd();
+			}
+			else {
+				end = instants.decode(this.previousEnd);
+			}
+			this.read++;
+			return new Period(start, end);
+		}
+	}
+
+	/**
+	 * Reads the entries of an attribute, lazily.
+	 */
+	private final class EntryReader extends PeriodReader implements Iterator<TimedObject<V>> {
+		private final List<V> dictionary;
+
+		EntryReader(DataInput in, List<V> dictionary) throws IOException {
+			super(in);
+			this.dictionary = dictionary;
+		}
+
+		public TimedObject<V> next() {
+			try {
+				Period p = this.nextPeriod();
+				long rank = readVarLong(this.in);
+				if (rank < 0 || rank >= this.dictionary.size()) {
+					throw new StreamCorruptedException("Invalid value reference " + rank);
+				}
+				return new SimpleTimedObject<V>(p, this.dictionary.get((int) rank));
+			}
+			catch (IOException e) {
+				throw new ReadFailure(e);
+			}
+		}
+
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+	}
+
+	/**
+	 * Carries an IOException through Iterator.next().
+	 */
+	private static final class ReadFailure extends RuntimeException {
+		private static final long serialVersionUID = -2361788212478145713L;
+		final IOException failure;
+		ReadFailure(IOException failure) {
+			super(failure);
+			this.failure = failure;
+		}
+	}
+}
@@ -0,0 +1,40 @@
+/*
+   This file is part of the JTemporal framework (http://jtemporal.sf.net).
+   Copyright (C) 2002 by the author(s).
+   Distributable under LGPL license version 2.1 or later,
+   with no warranties given or implied.
+   See terms of license at gnu.org or www.opensource.org/licenses  */
+
+package net.sf.jtemporal.io;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Writes and reads the values for {@linkplain TemporalCodec}. <br>
+ * Each distinct value is written once.
+ * @author Thomas A Beck
+ * @version $Id$
+ * @param <V> the type of the value
+ * @see SerializedValueCodec
+ */
+public interface ValueCodec<V> {
+
+	/**
+	 * Writes a value, so that {@linkplain #read(DataInput)} reads exactly
+	 * the same bytes.
+	 * @param out the output
+	 * @param value the value, never null
+	 * @throws IOException
+	 */
+	void write(DataOutput out, V value) throws IOException;
+
+	/**
+	 * Reads a value written by {@linkplain #write(DataOutput, Object)}.
+	 * @param in the input
+	 * @return the value, not null
+	 * @throws IOException
+	 */
+	V read(DataInput in) throws IOException;
+}
@@ -0,0 +1,176 @@
+/*
+   This file is part of the JTemporal framework (http://jtemporal.sf.net).
+   Copyright (C) 2002 by the author(s).
+   Distributable under LGPL license version 2.1 or later,
+   with no warranties given or implied.
+   See terms of license at gnu.org or www.opensource.org/licenses  */
+
+package net.sf.jtemporal.spi;
+
+import java.io.Serializable;
+
+import net.sf.jtemporal.Instant;
+import net.sf.jtemporal.LongInstant;
+import net.sf.jtemporal.Period;
+
+/**
+ * A transient implementation of TemporalAttributeStorage, based on
+ * two parallel arrays (periods and values) sorted by period start. <br>
+ * Lookups are binary searches over the array, and do not allocate
+ * any object except the returned {@linkplain TimedObject}s. <br>
+ * This storage is intended for histories growing at the end, which
+ * is the case of most applications: appending an entry after the
+ * last one is done in amortized constant time, while inserting
+ * or removing an entry in the middle moves all the following entries. <br>
+ * Compared to {@linkplain TreeTemporalAttributeStorage}, it saves
+ * the memory of the TreeMap entries: two references per entry (plus the
+ * spare capacity, see {@linkplain #trimToSize()}) instead of a full
+ * TreeMap.Entry. <br>
+ * <b>Note: this implementation is not synchronized.</b>
+ * @author Thomas A Beck
+ * @version $Id$
+ * @param <T> the type of the value that is stored
+ */
+public class ArrayTemporalAttributeStorage<T> extends IndexedTemporalAttributeStorage<T>
+  implements Serializable
+{
+	private static final long serialVersionUID = 6051488297713720734L;
+
+	private static final int DEFAULT_CAPACITY = 4;
+
+	// sorted by start, periods[i] is associated to values[i]
+	private Period[] periods;
+	private Object[] values;
+	private int size = 0;
+
+	/**
+	 * Creates an empty TemporalAttributeStorage.
+	 */
+	public ArrayTemporalAttributeStorage() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Creates an empty TemporalAttributeStorage, able to hold the
+	 * given number of entries without growing.
+	 * @param initialCapacity the initial capacity of the arrays
+	 * @throws IllegalArgumentException if initialCapacity is negative
+	 */
+	public ArrayTemporalAttributeStorage(int initialCapacity) {
+		if (initialCapacity < 0) {
+			throw new IllegalArgumentException("initialCapacity < 0");
+		}
+		this.periods = new Period[initialCapacity];
+		this.values  = new Object[initialCapacity];
+	}
+
+	/**
+	 * Creates a TemporalAttributeStorage containing the same entries as the
+	 * given one. <br>
+	 * Only the arrays are copied, in linear time, the periods and the values
+	 * are shared.
+	 * @param storage the storage to be copied
+	 */
+	public ArrayTemporalAttributeStorage(ArrayTemporalAttributeStorage<? extends T> storage) {
+		this.size = storage.size;
+		this.periods = new Period[this.size];
+		this.values  = new Object[this.size];
+		System.arraycopy(storage.periods, 0, this.periods, 0, this.size);
+		System.arraycopy(storage.values,  0, this.values,  0, this.size);
+	}
+
+	@Override
+	int compareStart(int index, Instant instant) {
+		return LongInstant.compare(this.periods[index].getStart(), instant);
+	}
+
+	@Override
+	boolean contains(int index, Instant instant) {
+		return this.periods[index].contains(instant);
+	}
+
+	@Override
+	boolean endsAt(int index, Instant instant) {
+		return this.periods[index].getEnd().equals(instant);
+	}
+
+	@Override
+	boolean precedes(int index, Period p) {
+		return this.periods[index].precedes(p);
+	}
+
+	@Override
+	Period periodAt(int index) {
+		return this.periods[index];
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	T valueAt(int index) {
+		return (T) this.values[index];
+	}
+
+	@Override
+	void insert(int index, Period p, T value) {
+		this.ensureCapacity(this.size + 1);
+		int moved = this.size - index;
+		if (moved > 0) {
+			// make a gap
+			System.arraycopy(this.periods, index, this.periods, index + 1, moved);
+			System.arraycopy(this.values,  index, this.values,  index + 1, moved);
+		}
+		this.periods[index] = p;
+		this.values[index]  = value;
+		this.size++;
+	}
+
+	@Override
+	void delete(int from, int to) {
+		int count = to - from;
+		int moved = this.size - to;
+		System.arraycopy(this.periods, to, this.periods, from, moved);
+		System.arraycopy(this.values,  to, this.values,  from, moved);
+		for (int i = this.size - count; i < this.size; i++) {
+			// allows gc
+			this.periods[i] = null;
+			this.values[i]  = null;
+		}
+		this.size -= count;
+	}
+
+	private void ensureCapacity(int minCapacity) {
+		int oldCapacity = this.periods.length;
+		if (minCapacity <= oldCapacity) {
+			return;
+		}
+		int newCapacity = newCapacity(oldCapacity, minCapacity);
+		Period[] newPeriods = new Period[newCapacity];
+		Object[] newValues  = new Object[newCapacity];
+		System.arraycopy(this.periods, 0, newPeriods, 0, this.size);
+		System.arraycopy(this.values,  0, newValues,  0, this.size);
+		this.periods = newPeriods;
+		this.values  = newValues;
+	}
+
+	/* (non-Javadoc)
+	 * @see net.sf.jtemporal.spi.TemporalAttributeStorage#size()
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Trims the capacity of the internal arrays to the current size.
+	 * @see java.util.ArrayList#trimToSize()
+	 */
+	public void trimToSize() {
+		if (this.size < this.periods.length) {
+			Period[] newPeriods = new Period[this.size];
+			Object[] newValues  = new Object[this.size];
+			System.arraycopy(this.periods, 0, newPeriods, 0, this.size);
+			System.arraycopy(this.values,  0, newValues,  0, this.size);
+			this.periods = newPeriods;
+			this.values  = newValues;
+		}
+	}
+}
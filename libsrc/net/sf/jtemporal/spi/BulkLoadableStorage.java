@@ -0,0 +1,40 @@
+/*
+   This file is part of the JTemporal framework (http://jtemporal.sf.net).
+   Copyright (C) 2002 by the author(s).
+   Distributable under LGPL license version 2.1 or later,
+   with no warranties given or implied.
+   See terms of license at gnu.org or www.opensource.org/licenses  */
+
+package net.sf.jtemporal.spi;
+
+import java.util.Iterator;
+
+import net.sf.jtemporal.TimedObject;
+
+/**
+ * Optional interface of a {@linkplain TemporalAttributeStorage} able to
+ * append many sorted entries at once, faster than by calling
+ * {@linkplain TemporalAttributeStorage#put(net.sf.jtemporal.Period, Object)}
+ * for each entry.
+ * <br> {@linkplain net.sf.jtemporal.TemporalAttributeImpl#bulkLoad(Iterator)}
+ * uses this interface when the storage implements it.
+ * @author Thomas A Beck
+ * @version $Id$
+ * @param <T> the type of the value that is stored
+ */
+public interface BulkLoadableStorage<T> {
+
+	/**
+	 * Appends the given entries to this storage. <br>
+	 * The entries must be sorted, must not overlap each other, and must not
+	 * overlap or precede the last entry of this storage.
+	 * Like {@linkplain TemporalAttributeStorage#put(net.sf.jtemporal.Period, Object)},
+	 * this method does not merge the adjacent entries having the same value.
+	 * <br> The given Period instances are stored as they are.
+	 * @param entries the entries to be appended, in ascending order
+	 * @throws IllegalArgumentException if an entry, its period or its value
+	 * is null, or if the entries are not sorted or overlap;
+	 * in this case the entries preceding the faulty one may have been appended.
+	 */
+	void bulkLoad(Iterator<? extends TimedObject<? extends T>> entries);
+}
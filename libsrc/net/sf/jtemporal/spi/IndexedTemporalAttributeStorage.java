@@ -0,0 +1,576 @@
+/*
+   This file is part of the JTemporal framework (http://jtemporal.sf.net).
+   Copyright (C) 2002 by the author(s).
+   Distributable under LGPL license version 2.1 or later,
+   with no warranties given or implied.
+   See terms of license at gnu.org or www.opensource.org/licenses  */
+
+package net.sf.jtemporal.spi;
+
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import net.sf.jtemporal.Instant;
+import net.sf.jtemporal.LongInstant;
+import net.sf.jtemporal.Period;
+import net.sf.jtemporal.SimpleTimedObject;
+import net.sf.jtemporal.TimedObject;
+import net.sf.jtemporal.util.CloseableIterator;
+
+/**
+ * The skeleton of the storages keeping their entries at consecutive
+ * indexes, sorted by period start. <br>
+ * The lookups are binary searches over the indexes, and the iterators
+ * walk them; a subclass only tells how the entry at a given index is read,
+ * compared, inserted and removed, whether it is held in arrays of objects,
+ * in arrays of primitives, or in a mapped file. <br>
+ * Appending an entry after the last one does not move any entry, while
+ * inserting or removing an entry in the middle moves all the following ones.
+ * @author Thomas A Beck
+ * @version $Id$
+ * @param <T> the type of the value that is stored
+ * @see ArrayTemporalAttributeStorage
+ * @see LongTemporalAttributeStorage
+ * @see MappedTemporalAttributeStorage
+ */
+abstract class IndexedTemporalAttributeStorage<T>
+  implements TemporalAttributeStorage<T>, BulkLoadableStorage<T>
+{
+	// the number of structural changes, needed by iterators to fail fast
+	private transient int modCount = 0;
+
+	/**
+	 * Compares the start of the entry at the given index to the instant.
+	 * @return a negative integer, zero, or a positive integer as the start
+	 * is less than, equal to, or greater than the instant
+	 */
+	abstract int compareStart(int index, Instant instant);
+
+	/**
+	 * Tells whether the period of the entry at the given index contains the instant.
+	 */
+	abstract boolean contains(int index, Instant instant);
+
+	/**
+	 * Tells whether the period of the entry at the given index ends at the instant.
+	 */
+	abstract boolean endsAt(int index, Instant instant);
+
+	/**
+	 * Tells whether the period of the entry at the given index ends
+	 * before the start of the given period, or meets it.
+	 */
+	abstract boolean precedes(int index, Period p);
+
+	abstract Period periodAt(int index);
+
+	abstract T valueAt(int index);
+
+	/**
+	 * Inserts an entry at the given index, moving the following ones.
+	 */
+	abstract void insert(int index, Period p, T value);
+
+	/**
+	 * Removes the entries from index <tt>from</tt> (inclusive)
+	 * to <tt>to</tt> (exclusive), moving the following ones.
+	 */
+	abstract void delete(int from, int to);
+
+	/**
+	 * Returns the capacity the arrays should grow to: one and a half the
+	 * old capacity, at least the minimum capacity.
+	 */
+	static int newCapacity(int oldCapacity, int minCapacity) {
+		int newCapacity = oldCapacity + (oldCapacity >> 1) + 1;
+		return newCapacity < minCapacity ? minCapacity : newCapacity;
+	}
+
+	static long toLong(Instant instant) {
+		if (instant instanceof LongInstant) {
+			return ((LongInstant) instant).longValue();
+		}
+		if (instant == null) {
+			throw new IllegalArgumentException("null");
+		}
+		throw new IllegalArgumentException("Not a LongInstant : " + instant);
+	}
+
+	/**
+	 * Tells whether a period with the given end contains the given instant,
+	 * as {@linkplain Period#contains(Instant)} does: a period ending at
+	 * positive infinity contains positive infinity.
+	 */
+	static boolean endsAfter(long end, long instant) {
+		return end == Long.MAX_VALUE || instant < end;
+	}
+
+	/**
+	 * Returns the index of the entry starting at the given instant, otherwise
+	 * (-(insertion point) - 1)
+	 */
+	final int search(Instant instant) {
+		int low = 0;
+		int high = this.size() - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			int cmp = this.compareStart(mid, instant);
+			if (cmp < 0) {
+				low = mid + 1;
+			}
+			else if (cmp > 0) {
+				high = mid - 1;
+			}
+			else {
+				return mid;
+			}
+		}
+		return -(low + 1);
+	}
+
+	/**
+	 * Returns the index of the first entry whose start is >= instant.
+	 */
+	private int lowerBound(Instant instant) {
+		int pos = this.search(instant);
+		return pos >= 0 ? pos : -(pos + 1);
+	}
+
+	/**
+	 * Returns the index of the entry containing the given instant, or -1.
+	 */
+	private int indexOf(Instant instant) {
+		int size = this.size();
+		if (size == 0) {
+			return -1;
+		}
+
+		// the last entry is the one requested most often
+		if (this.contains(size - 1, instant)) {
+			return size - 1;
+		}
+
+		int pos = this.search(instant);
+		if (pos >= 0) {
+			return pos;
+		}
+		pos = -(pos + 1);
+		if (pos > 0 && this.contains(pos - 1, instant)) {
+			return pos - 1;
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the index of the first entry intersecting the given range.
+	 * Entries from this index up to {@linkplain #rangeEnd(Period)}
+	 * (exclusive) intersect the range.
+	 */
+	private int rangeStart(Period range) {
+		if (range == null) {
+			throw new IllegalArgumentException("range == null");
+		}
+		int pos = this.indexOf(range.getStart());
+		return pos >= 0 ? pos : this.lowerBound(range.getStart());
+	}
+
+	/**
+	 * Returns the index following the last entry intersecting the given range.
+	 */
+	private int rangeEnd(Period range) {
+		return this.lowerBound(range.getEnd());
+	}
+
+	private TimedObject<T> entryAt(int index) {
+		return new SimpleTimedObject<T>(this.periodAt(index), this.valueAt(index));
+	}
+
+	/**
+	 * Removes the entries from index <tt>from</tt> (inclusive)
+	 * to <tt>to</tt> (exclusive).
+	 */
+	final void removeIndexes(int from, int to) {
+		if (to - from <= 0) {
+			return;
+		}
+		this.delete(from, to);
+		this.modCount++;
+	}
+
+	/* (non-Javadoc)
+	 * @see net.sf.jtemporal.spi.TemporalAttributeStorage#lastPeriod()
+	 */
+	public Period lastPeriod() {
+		if (this.size() == 0) {
+			throw new NoSuchElementException();
+		}
+		return this.periodAt(this.size() - 1);
+	}
+
+	/* (non-Javadoc)
+	 * @see net.sf.jtemporal.spi.TemporalAttributeStorage#lastPeriod(net.sf.jtemporal.Period)
+	 */
+	public Period lastPeriod(Period range) {
+		int from = this.rangeStart(range);
+		int to = this.rangeEnd(range);
+		if (from >= to) {
+			throw new NoSuchElementException();
+		}
+		return this.periodAt(to - 1);
+	}
+
+	/* (non-Javadoc)
+	 * @see net.sf.jtemporal.spi.TemporalAttributeStorage#firstPeriod()
+	 */
+	public Period firstPeriod() {
+		if (this.size() == 0) {
+			throw new NoSuchElementException();
+		}
+		return this.periodAt(0);
+	}
+
+	/* (non-Javadoc)
+	 * @see net.sf.jtemporal.spi.TemporalAttributeStorage#firstPeriod(net.sf.jtemporal.Period)
+	 */
+	public Period firstPeriod(Period range) {
+		int from = this.rangeStart(range);
+		int to = this.rangeEnd(range);
+		if (from >= to) {
+			throw new NoSuchElementException();
+		}
+		return this.periodAt(from);
+	}
+
+	/* (non-Javadoc)
+	 * @see net.sf.jtemporal.spi.TemporalAttributeStorage#isEmpty()
+	 */
+	public boolean isEmpty() {
+		return this.size() == 0;
+	}
+
+	/* (non-Javadoc)
+	 * @see net.sf.jtemporal.spi.TemporalAttributeStorage#isEmpty(net.sf.jtemporal.Period)
+	 */
+	public boolean isEmpty(Period range) {
+		return this.rangeStart(range) >= this.rangeEnd(range);
+	}
+
+	/* (non-Javadoc)
+	 * @see net.sf.jtemporal.spi.TemporalAttributeStorage#containsValue(java.lang.Object)
+	 */
+	public boolean containsValue(Object value) {
+		return this.containsValue(value, 0, this.size());
+	}
+
+	/* (non-Javadoc)
+	 * @see net.sf.jtemporal.spi.TemporalAttributeStorage#containsValue(java.lang.Object, net.sf.jtemporal.Period)
+	 */
+	public boolean containsValue(Object value, Period range) {
+		int to = this.rangeEnd(range);
+		return this.containsValue(value, this.rangeStart(range), to);
+	}
+
+	/**
+	 * Tells whether one of the entries from index <tt>from</tt> (inclusive)
+	 * to <tt>to</tt> (exclusive) holds the value.
+	 */
+	boolean containsValue(Object value, int from, int to) {
+		for (int i = from; i < to; i++) {
+			if (this.valueAt(i).equals(value)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/* (non-Javadoc)
+	 * @see net.sf.jtemporal.spi.TemporalAttributeStorage#getValue(net.sf.jtemporal.Instant)
+	 */
+	public T getValue(Instant instant) {
+		int pos = this.indexOf(instant);
+		return pos < 0 ? null : this.valueAt(pos);
+	}
+
+	/* (non-Javadoc)
+	 * @see net.sf.jtemporal.spi.TemporalAttributeStorage#getPeriod(net.sf.jtemporal.Instant)
+	 */
+	public Period getPeriod(Instant instant) {
+		int pos = this.indexOf(instant);
+		return pos < 0 ? null : this.periodAt(pos);
+	}
+
+	/* (non-Javadoc)
+	 * @see net.sf.jtemporal.spi.TemporalAttributeStorage#getEntry(net.sf.jtemporal.Instant)
+	 */
+	public TimedObject<T> getEntry(Instant instant) {
+		int pos = this.indexOf(instant);
+		return pos < 0 ? null : this.entryAt(pos);
+	}
+
+	/* (non-Javadoc)
+	 * @see net.sf.jtemporal.spi.TemporalAttributeStorage#getEntryEndingAt(net.sf.jtemporal.Instant)
+	 */
+	public TimedObject<T> getEntryEndingAt(Instant instant) {
+		int pos = this.lowerBound(instant) - 1;  // start < instant
+		if (pos >= 0 && this.endsAt(pos, instant)) {
+			return this.entryAt(pos);
+		}
+		return null;
+	}
+
+	/* (non-Javadoc)
+	 * @see net.sf.jtemporal.spi.TemporalAttributeStorage#getEntryStartingAt(net.sf.jtemporal.Instant)
+	 */
+	public TimedObject<T> getEntryStartingAt(Instant instant) {
+		int pos = this.search(instant);
+		return pos < 0 ? null : this.entryAt(pos);
+	}
+
+	/* (non-Javadoc)
+	 * @see net.sf.jtemporal.spi.TemporalAttributeStorage#beginAtomicOperation()
+	 */
+	public void beginAtomicOperation() {
+		// the changes are applied at once
+	}
+
+	/* (non-Javadoc)
+	 * @see net.sf.jtemporal.spi.TemporalAttributeStorage#endAtomicOperation()
+	 */
+	public void endAtomicOperation() {
+		// the changes are applied at once
+	}
+
+	/* (non-Javadoc)
+	 * @see net.sf.jtemporal.spi.TemporalAttributeStorage#clear()
+	 */
+	public void clear() {
+		this.removeIndexes(0, this.size());
+	}
+
+	/* (non-Javadoc)
+	 * @see net.sf.jtemporal.spi.TemporalAttributeStorage#size(net.sf.jtemporal.Period)
+	 */
+	public int size(Period range) {
+		int count = this.rangeEnd(range) - this.rangeStart(range);
+		return count < 0 ? 0 : count;
+	}
+
+	/* (non-Javadoc)
+	 * @see net.sf.jtemporal.spi.TemporalAttributeStorage#put(net.sf.jtemporal.Period, java.lang.Object)
+	 */
+	public void put(Period p, T value) {
+		if (p == null || value == null) {
+			throw new IllegalArgumentException("null");
+		}
+
+		int size = this.size();
+		int pos;
+		if (size == 0 || this.precedes(size - 1, p)) {
+			// quick win: appending at the end
+			pos = size;
+		}
+		else {
+			pos = this.search(p.getStart());
+			if (pos >= 0) {
+				// Invariant broken
+				throw new IllegalStateException(
+					"Period " + p + " already contained " + this.valueAt(pos)
+					+ " instead of " + value
+				);
+			}
+			pos = -(pos + 1);
+		}
+		this.insert(pos, p, value);
+		this.modCount++;
+	}
+
+	/**
+	 * Appends the entries after the last one, in amortized
+	 * constant time per entry.
+	 * @see net.sf.jtemporal.spi.BulkLoadableStorage#bulkLoad(java.util.Iterator)
+	 */
+	public void bulkLoad(Iterator<? extends TimedObject<? extends T>> entries) {
+		if (entries == null) {
+			throw new IllegalArgumentException("null");
+		}
+		try {
+			while (entries.hasNext()) {
+				TimedObject<? extends T> to = entries.next();
+				if (to == null || to.getPeriod() == null || to.getValue() == null) {
+					throw new IllegalArgumentException("null");
+				}
+				Period p = to.getPeriod();
+				int size = this.size();
+				if (size > 0 && !this.precedes(size - 1, p)) {
+					throw new IllegalArgumentException(
+						"Period " + p + " does not follow " + this.periodAt(size - 1)
+					);
+				}
+				this.insert(size, p, to.getValue());
+			}
+		}
+		finally {
+			this.modCount++;
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see net.sf.jtemporal.spi.TemporalAttributeStorage#removeEntry(net.sf.jtemporal.Period)
+	 */
+	public void removeEntry(Period p) {
+		if (p == null) {
+			throw new IllegalArgumentException("null");
+		}
+		int pos = this.search(p.getStart());
+		if (pos < 0 || !this.endsAt(pos, p.getEnd())) {
+			throw new NoSuchElementException("Period not found : " + p);
+		}
+		this.removeIndexes(pos, pos + 1);
+	}
+
+	/* (non-Javadoc)
+	 * @see net.sf.jtemporal.spi.TemporalAttributeStorage#removeRange(net.sf.jtemporal.Period)
+	 */
+	public int removeRange(Period range) {
+		int from = this.rangeStart(range);
+		int to = this.rangeEnd(range);
+		if (from >= to) {
+			return 0;
+		}
+		this.removeIndexes(from, to);
+		return to - from;
+	}
+
+	/**
+	 * Iterates over the entries between two indexes.
+	 * Supports removal.
+	 */
+	private abstract class IndexIterator<E> implements CloseableIterator<E> {
+
+		private int cursor;
+		private int end;
+		private int lastReturned = -1;
+		private int expectedModCount = modCount;
+		private boolean isOpen = true;
+
+		IndexIterator(int from, int to) {
+			this.cursor = from;
+			this.end = to;
+		}
+
+		abstract E get(int index);
+
+		private void checkForComodification() {
+			if (modCount != this.expectedModCount) {
+				throw new ConcurrentModificationException();
+			}
+		}
+
+		public boolean hasNext() {
+			if (!this.isOpen) {
+				return false;
+			}
+			boolean hasNext = this.cursor < this.end;
+			if (!hasNext) {
+				this.close();
+			}
+			return hasNext;
+		}
+
+		public E next() {
+			if (!this.isOpen || this.cursor >= this.end) {
+				throw new NoSuchElementException();
+			}
+			this.checkForComodification();
+			this.lastReturned = this.cursor++;
+			return this.get(this.lastReturned);
+		}
+
+		public void remove() {
+			if (this.lastReturned < 0) {
+				throw new IllegalStateException();
+			}
+			this.checkForComodification();
+			IndexedTemporalAttributeStorage.this.removeIndexes(
+				this.lastReturned, this.lastReturned + 1
+			);
+			this.cursor = this.lastReturned;
+			this.end--;
+			this.lastReturned = -1;
+			this.expectedModCount = modCount;
+		}
+
+		public void close() {
+			this.isOpen = false;
+			this.lastReturned = -1;
+		}
+
+		public boolean isOpen() {
+			return this.isOpen;
+		}
+	} // class IndexIterator
+
+	private class EntryIterator extends IndexIterator<TimedObject<T>> {
+		EntryIterator(int from, int to) {
+			super(from, to);
+		}
+		@Override
+		TimedObject<T> get(int index) {
+			return entryAt(index);
+		}
+	}
+
+	private class PeriodIterator extends IndexIterator<Period> {
+		PeriodIterator(int from, int to) {
+			super(from, to);
+		}
+		@Override
+		Period get(int index) {
+			return periodAt(index);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see net.sf.jtemporal.spi.TemporalAttributeStorage#entryIterator()
+	 */
+	public CloseableIterator<TimedObject<T>> entryIterator() {
+		return new EntryIterator(0, this.size());
+	}
+
+	/* (non-Javadoc)
+	 * @see net.sf.jtemporal.spi.TemporalAttributeStorage#entryIterator(net.sf.jtemporal.Period)
+	 */
+	public CloseableIterator<TimedObject<T>> entryIterator(Period range) {
+		return new EntryIterator(this.rangeStart(range), this.rangeEnd(range));
+	}
+
+	/* (non-Javadoc)
+	 * @see net.sf.jtemporal.spi.TemporalAttributeStorage#periodIterator()
+	 */
+	public CloseableIterator<Period> periodIterator() {
+		return new PeriodIterator(0, this.size());
+	}
+
+	/* (non-Javadoc)
+	 * @see net.sf.jtemporal.spi.TemporalAttributeStorage#periodIterator(net.sf.jtemporal.Period)
+	 */
+	public CloseableIterator<Period> periodIterator(Period range) {
+		return new PeriodIterator(this.rangeStart(range), this.rangeEnd(range));
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder("{");
+		for (int i = 0; i < this.size(); i++) {
+			if (i > 0) {
+				sb.append(", ");
+			}
+			sb.append(this.periodAt(i)).append('=').append(this.valueAt(i));
+		}
+		return sb.append('}').toString();
+	}
+}
@@ -0,0 +1,300 @@
+/*
+   This file is part of the JTemporal framework (http://jtemporal.sf.net).
+   Copyright (C) 2002 by the author(s).
+   Distributable under LGPL license version 2.1 or later,
+   with no warranties given or implied.
+   See terms of license at gnu.org or www.opensource.org/licenses  */
+
+package net.sf.jtemporal.spi;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import net.sf.jtemporal.Instant;
+import net.sf.jtemporal.Period;
+import net.sf.jtemporal.TimedObject;
+import net.sf.jtemporal.util.CloseableIterator;
+import net.sf.jtemporal.util.SimpleCloseableIterator;
+
+/**
+ * A {@linkplain CompactTemporalSetStorage} that also maintains an
+ * interval tree over all the (period, value) entries. <br>
+ * The queries for a given value are answered by the
+ * CompactTemporalSetStorage, while the queries at a given instant
+ * ({@linkplain #sizeAt(Instant)}, {@linkplain #isEmpty(Instant)},
+ * {@linkplain #entryIterator(Instant)}, {@linkplain #valueIterator(Instant)})
+ * and {@linkplain #entryIterator(Period)} use the interval tree,
+ * and cost O(log n + k) instead of checking every value. <br>
+ * This is the storage of choice for sets holding many distinct values.
+ * Each update costs an additional O(log n) to maintain the tree. <br>
+ * The iterators returned by the instant and period queries iterate
+ * over a copy, their remove() method removes the entry from this storage. <br>
+ * <b>Note: this implementation is not synchronized.</b> If multiple
+ * threads access the map concurrently, and at least one of the threads modifies
+ * the map structurally, it <i>must</i> be synchronized externally.
+ * @author Thomas A Beck
+ * @version $Id$
+ */
+public class IntervalTreeTemporalSetStorage<T> implements TemporalSetStorage<T> {
+
+    private final CompactTemporalSetStorage<T> byValue = new CompactTemporalSetStorage<T>();
+    private final PeriodIntervalTree<T> index = new PeriodIntervalTree<T>();
+
+    /* (non-Javadoc)
+     * @see net.sf.jtemporal.spi.TemporalSetStorage#lastPeriod(java.lang.Object)
+     */
+    public Period lastPeriod(T value) {
+        return this.byValue.lastPeriod(value);
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.jtemporal.spi.TemporalSetStorage#firstPeriod(java.lang.Object)
+     */
+    public Period firstPeriod(T value) {
+        return this.byValue.firstPeriod(value);
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.jtemporal.spi.TemporalSetStorage#isEmpty()
+     */
+    public boolean isEmpty() {
+        return this.index.size() == 0;
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.jtemporal.spi.TemporalSetStorage#isEmpty(net.sf.jtemporal.Instant)
+     */
+    public boolean isEmpty(Instant instant) {
+        return this.index.isEmpty(instant);
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.jtemporal.spi.TemporalSetStorage#containsValue(java.lang.Object)
+     */
+    public boolean containsValue(Object value) {
+        return this.byValue.containsValue(value);
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.jtemporal.spi.TemporalSetStorage#containsValue(net.sf.jtemporal.Instant, java.lang.Object)
+     */
+    public boolean containsValue(Instant i, Object value) {
+        return this.byValue.containsValue(i, value);
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.jtemporal.spi.TemporalSetStorage#getPeriod(net.sf.jtemporal.Instant, java.lang.Object)
+     */
+    public Period getPeriod(Instant instant, T value) {
+        return this.byValue.getPeriod(instant, value);
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.jtemporal.spi.TemporalSetStorage#getPeriodEndingAt(net.sf.jtemporal.Instant, java.lang.Object)
+     */
+    public Period getPeriodEndingAt(Instant instant, T value) {
+        return this.byValue.getPeriodEndingAt(instant, value);
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.jtemporal.spi.TemporalSetStorage#getPeriodStartingAt(net.sf.jtemporal.Instant, java.lang.Object)
+     */
+    public Period getPeriodStartingAt(Instant instant, T value) {
+        return this.byValue.getPeriodStartingAt(instant, value);
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.jtemporal.spi.TemporalSetStorage#beginAtomicOperation()
+     */
+    public void beginAtomicOperation() {
+        // nothing to do for in-memory operations
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.jtemporal.spi.TemporalSetStorage#endAtomicOperation()
+     */
+    public void endAtomicOperation() {
+        // nothing to do for in-memory operations
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.jtemporal.spi.TemporalSetStorage#clear()
+     */
+    public void clear() {
+        this.byValue.clear();
+        this.index.clear();
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.jtemporal.spi.TemporalSetStorage#size()
+     */
+    public int size() {
+        return this.index.size();
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.jtemporal.spi.TemporalSetStorage#sizeFor(java.lang.Object)
+     */
+    public int sizeFor(T value) {
+        return this.byValue.sizeFor(value);
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.jtemporal.spi.TemporalSetStorage#sizeValues()
+     */
+    public int sizeValues() {
+        return this.byValue.sizeValues();
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.jtemporal.spi.TemporalSetStorage#sizeAt(net.sf.jtemporal.Instant)
+     */
+    public int sizeAt(Instant instant) {
+        return this.index.sizeAt(instant);
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.jtemporal.spi.TemporalSetStorage#put(net.sf.jtemporal.Period, java.lang.Object)
+     */
+    public void put(Period p, T value) {
+        this.byValue.put(p, value);  // checks the conflicts
+        this.index.put(p, value);
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.jtemporal.spi.TemporalSetStorage#remove(net.sf.jtemporal.Period, java.lang.Object)
+     */
+    public void remove(Period p, T value) {
+        this.byValue.remove(p, value);  // throws NoSuchElementException
+        this.index.remove(p, value);
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.jtemporal.spi.TemporalSetStorage#removeValue(java.lang.Object)
+     */
+    public boolean removeValue(T value) {
+        this.unindex(value);
+        return this.byValue.removeValue(value);
+    }
+
+    /**
+     * Removes from the index all the entries having the given value.
+     */
+    private void unindex(T value) {
+        CloseableIterator<Period> i = this.byValue.periodIterator(value);
+        try {
+            while (i.hasNext()) {
+                this.index.remove(i.next(), value);
+            }
+        }
+        finally {
+            i.close();
+        }
+    }
+
+    /**
+     * Iterates over a list of entries, removing the entries from this
+     * storage on {@linkplain #remove()}.
+     */
+    private class EntryListIterator extends SimpleCloseableIterator<TimedObject<T>> {
+        EntryListIterator(List<TimedObject<T>> list) {
+            super(list.iterator());
+        }
+        @Override
+        public void remove() {
+            TimedObject<T> entry = this.getLastFetched();
+            super.remove();
+            IntervalTreeTemporalSetStorage.this.remove(entry.getPeriod(), entry.getValue());
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.jtemporal.spi.TemporalSetStorage#entryIterator()
+     */
+    public CloseableIterator<TimedObject<T>> entryIterator() {
+        return new SimpleCloseableIterator<TimedObject<T>>(this.byValue.entryIterator()) {
+            @Override
+            public void remove() {
+                TimedObject<T> entry = this.getLastFetched();
+                super.remove();
+                index.remove(entry.getPeriod(), entry.getValue());
+            }
+        };
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.jtemporal.spi.TemporalSetStorage#entryIterator(net.sf.jtemporal.Instant)
+     */
+    public CloseableIterator<TimedObject<T>> entryIterator(Instant instant) {
+        return new EntryListIterator(this.index.entriesAt(instant));
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.jtemporal.spi.TemporalSetStorage#entryIterator(net.sf.jtemporal.Period)
+     */
+    public CloseableIterator<TimedObject<T>> entryIterator(Period period) {
+        if (period == null) {
+            throw new IllegalArgumentException("period == null");
+        }
+        return new EntryListIterator(this.index.entriesIn(period));
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.jtemporal.spi.TemporalSetStorage#entryIterator(net.sf.jtemporal.Period, java.lang.Object)
+     */
+    public CloseableIterator<Period> periodIterator(Period period, final T value) {
+        return new SimpleCloseableIterator<Period>(this.byValue.periodIterator(period, value)) {
+            @Override
+            public void remove() {
+                Period p = this.getLastFetched();
+                super.remove();
+                index.remove(p, value);
+            }
+        };
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.jtemporal.spi.TemporalSetStorage#periodIterator(java.lang.Object)
+     */
+    public CloseableIterator<Period> periodIterator(T value) {
+        return this.byValue.periodIterator(value);
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.jtemporal.spi.TemporalSetStorage#valueIterator()
+     */
+    public CloseableIterator<T> valueIterator() {
+        return new SimpleCloseableIterator<T>(this.byValue.valueIterator()) {
+            @Override
+            public void remove() {
+                unindex(this.getLastFetched());
+                super.remove();
+            }
+        };
+    }
+
+    /* (non-Javadoc)
+     * @see net.sf.jtemporal.spi.TemporalSetStorage#valueIterator(net.sf.jtemporal.Instant)
+     */
+    public CloseableIterator<T> valueIterator(Instant instant) {
+        List<TimedObject<T>> entries = this.index.entriesAt(instant);
+        List<T> values = new ArrayList<T>(entries.size());
+        for (TimedObject<T> entry : entries) {
+            values.add(entry.getValue());
+        }
+        return new SimpleCloseableIterator<T>(values.iterator()) {
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    /* (non-Javadoc)
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return this.byValue.toString();
+    }
+}
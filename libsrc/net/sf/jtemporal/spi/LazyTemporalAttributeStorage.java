@@ -7,11 +7,24 @@
 
 package net.sf.jtemporal.spi;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
 
 import net.sf.jtemporal.Instant;
 import net.sf.jtemporal.Period;
+import net.sf.jtemporal.SimpleTimedObject;
 import net.sf.jtemporal.TimedObject;
 import net.sf.jtemporal.util.CloseableIterator;
 import net.sf.jtemporal.util.SimpleCloseableIterator;
@@ -22,10 +35,13 @@ import net.sf.jtemporal.util.SimpleCloseableIterator;
  * This caching strategy is appropriate for applications
  * handling primarily recent data, which is the case of most applications<p>
  *
- * It loads lazily the data between the positive infinity and the requested
- * instant.  If subsequently you ask an instant that precedes the previous request,
- * it loads then the gap between both requested instants.  This continues until
- * the whole history is in cache. <br>
+ * It keeps track of the ranges already loaded, and requests only the missing
+ * gaps from the {@linkplain MissingRangeHandler}: the part of a requested period
+ * not loaded yet, or for a requested instant, the gap between the instant and 
+ * the next range already loaded (or the positive infinity), that the handler 
+ * may load only partially.  This continues until the whole history is in cache, 
+ * unless a maximum number of cached entries is given: then the least recently 
+ * used ranges are evicted, and loaded again when requested. <br>
  * 
  * Unlike usual caching APIs, these methods intentionally return void, in
  * order to give you full freedom in implementing prefetching strategies,
@@ -34,7 +50,22 @@ import net.sf.jtemporal.util.SimpleCloseableIterator;
  *
  * Warning: the methods with no instant or period as a parameter
  * usually cause the entire underlying data to be loaded.  For example,
- * {@linkplain #isEmpty()} will load all the underlying data.
+ * {@linkplain #isEmpty()} will load all the underlying data. <br>
+ *
+ * If the loader is an {@linkplain AsyncRangeHandler}, the data can also be 
+ * loaded without blocking the caller, through {@linkplain #loadAsync(Instant)},
+ * {@linkplain #getValueAsync(Instant)} and {@linkplain #getEntryAsync(Instant)}. 
+ * Concurrent requests for overlapping ranges share a single load. <br>
+ * This storage is guarded by its own monitor, the loaded entries being
+ * added from the thread completing the load.  The iterators are not
+ * guarded: do not iterate while asynchronous loads are pending. <br>
+ *
+ * If the writer is a {@linkplain BatchChangeHandler}, the changes made within
+ * an atomic operation are buffered, and applied at once when the outermost
+ * operation ends.  If the batch fails, its changes are kept pending (see
+ * {@linkplain #hasPendingChanges()}), and the failure is thrown by the next
+ * change, or by {@linkplain #flush()}; a change made outside of an atomic
+ * operation applies the pending changes first. <br>
  * 
  * @author Thomas A Beck
  * @version $Id: LazyTemporalAttributeStorage.java,v 1.18 2008/12/28 21:24:12 tabeck Exp $
@@ -66,7 +97,13 @@ public class LazyTemporalAttributeStorage<V> implements TemporalAttributeStorage
          *
          * 2- Call the method {@linkplain LazyTemporalAttributeStorage#populated(Period)} 
          * to tell which range you have actually populated (maybe you have populated more 
-         * than requested to improve future caching. <br> 
+         * than requested to improve future caching), which must include at least 
+         * the start of the requested range. <br> 
+         * The range is a gap between the ranges already loaded.  When a single 
+         * instant is requested, the range goes from this instant up to the next 
+         * loaded range, possibly years later: you may then populate only the 
+         * beginning of the range, for ex. a day or a month, and tell it 
+         * through populated(). The rest of the range is requested later if needed. <br>
          * This is needed, because LazyTemporalAttributeStorage must differentiate 
          * holes in cache from holes in the underlying storage.
          * 
@@ -109,6 +146,30 @@ public class LazyTemporalAttributeStorage<V> implements TemporalAttributeStorage
         Period getAlwaysPeriod(); // Not passed through the constructor, to save some memory.        
     }
 
+    /**
+     * A {@linkplain MissingRangeHandler} that can also load a range without
+     * blocking. <br>
+     * The blocking methods of the LazyTemporalAttributeStorage still use 
+     * {@linkplain MissingRangeHandler#populateRange(LazyTemporalAttributeStorage, Period)}.
+     * @author Thomas A Beck
+     * @version $Id$
+     * @param <V> the value held in the related {@linkplain LazyTemporalAttributeStorage}
+     * @see LazyTemporalAttributeStorage#loadAsync(Instant)
+     */
+    public interface AsyncRangeHandler<V> extends MissingRangeHandler<V> {
+        /**
+         * Starts loading all the entries intersecting the given range,
+         * and returns immediately. <br>
+         * Unlike populateRange(), the entries are not put in cache by the 
+         * handler: the returned future completes with them, in any thread,
+         * and the LazyTemporalAttributeStorage considers the whole range
+         * as populated.
+         * @param range the range that must be loaded
+         * @return the entries intersecting the range, in any order
+         */
+        CompletableFuture<? extends Collection<? extends TimedObject<V>>> loadRange(Period range);
+    }
+
 	/**
 	 * Applies the changes on the underlying data source. <br>
 	 * There is only a single ChangeHandler for each LazyTemporalAttribute. <br>
@@ -157,32 +218,85 @@ public class LazyTemporalAttributeStorage<V> implements TemporalAttributeStorage
 
 	} // ChangeHandler
 
+	/**
+	 * A {@linkplain ChangeHandler} receiving the changes made within an atomic
+	 * operation as a single batch (write-behind). <br>
+	 * Between {@linkplain LazyTemporalAttributeStorage#beginAtomicOperation()} 
+	 * and the matching {@linkplain LazyTemporalAttributeStorage#endAtomicOperation()},
+	 * the puts and removes are only applied to the cache, and recorded.  An entry 
+	 * put then removed within the same operation is never written. <br>
+	 * The changes made outside of any atomic operation, and clear(), are still 
+	 * applied immediately through the methods of ChangeHandler.
+	 * @author Thomas A Beck
+	 * @version $Id$
+	 * @param <V> the value held in the related {@linkplain LazyTemporalAttributeStorage}
+	 */
+	public interface BatchChangeHandler<V> extends ChangeHandler<V> {
+		/**
+		 * Invoked when the outermost atomic operation ends, if it made changes. <br>
+		 * The removals are to be applied before the puts: a period may 
+		 * be both removed (the previous entry) and put (the new one). <br>
+		 * Throwing any exception keeps the changes pending: they are
+		 * applied again with the changes of the next atomic operation,
+		 * and the exception is thrown, as a cause, by the next change.
+		 * @param source the LazyTemporalAttributeStorage where the changes have been made
+		 * @param removed the periods of the entries removed from the underlying storage
+		 * @param put the entries put in the underlying storage, in order
+		 * @see LazyTemporalAttributeStorage#flush()
+		 * @throws UnsupportedOperationException if the LazyTemporalAttributeStorage is read-only
+		 */
+		void apply(
+			LazyTemporalAttributeStorage<V> source, 
+			Collection<Period> removed, 
+			Collection<TimedObject<V>> put
+		);
+	}
+
     
-    // counts the number of times the method populated(Period) has been called.
-    // this is used to check whether the client respect the contract
-    // of the MissingPeriodHandler
-    //private int loadCount = Integer.MIN_VALUE;
+    // the ranges completely loaded in cache: the cache contains all the entries 
+    // intersecting them.  Disjoint, possibly meeting each other.
+    private final CompactPeriodStorage loadedRanges = new CompactPeriodStorage();
     
-	// when this is null, this means the Storage is physically empty
-    // otherwise, it means the cache contains all the entries whose start instant
-    // is > = cachingLimit
-    private Instant cachingLimit = null;
-    // tells whether we are caching also the entry whose endInstant==cachingLimit
-    private boolean includesEndsWithLimit = false;
+    // the same ranges, from the least recently used
+    private final LinkedHashMap<Period,Period> rangeUsage = 
+        new LinkedHashMap<Period,Period>(16, 0.75f, true);
+    
+    // the instants known not to be the end of an entry, 
+    // even if not at the end of a loaded range: only starts of loaded ranges, 
+    // forgotten with the range
+    private final Set<Instant> noEntryEndingAt = new HashSet<Instant>();
     
     private TemporalAttributeStorage<V> cache = new TreeTemporalAttributeStorage<V>();
     
     private final MissingRangeHandler<V> loader;
 
 	private ChangeHandler<V> writer;
+	
+	// the number of entries beyond which the least recently used ranges are evicted
+	private final int maxCachedEntries;
+
+    // the pending asynchronous loads, by start of the loaded range
+    private final TreeMap<Instant,PendingLoad> pendingLoads = new TreeMap<Instant,PendingLoad>();
+
+    // incremented by clearCache(), the loads started before are ignored
+    private int generation = 0;
+    
+    // the nesting level of the atomic operations
+    private int atomicLevel = 0;
+    
+    // the changes not yet applied by the BatchChangeHandler
+    private final Set<Period> pendingRemoves = new LinkedHashSet<Period>();
+    private final LinkedHashMap<Period,TimedObject<V>> pendingPuts = 
+        new LinkedHashMap<Period,TimedObject<V>>();
+    // the failure of the last batch applied by endAtomicOperation(), not yet reported
+    private RuntimeException batchFailure = null;
     
     /**
      * Instantiates a read only LazyTemporalAttributeStorage.
      * @param loader
      */
     public LazyTemporalAttributeStorage(MissingRangeHandler<V> loader) {
-        this.loader = loader;
-        //this.clearCache();
+        this(loader, null, Integer.MAX_VALUE);
     }
     
     /**
@@ -190,15 +304,46 @@ public class LazyTemporalAttributeStorage<V> implements TemporalAttributeStorage
      * @param loader
      */
     public LazyTemporalAttributeStorage(MissingRangeHandler<V> loader, ChangeHandler<V> writer) {
+        this(loader, writer, Integer.MAX_VALUE);
+    }
+    
+    /**
+     * Instantiates a LazyTemporalAttributeStorage keeping a bounded 
+     * number of entries in cache. <br>
+     * When a load makes the cache exceed this number, the least recently 
+     * used loaded ranges are evicted, and will be loaded again if needed.
+     * The ranges used by the current operation are never evicted: the 
+     * budget may be exceeded by the ranges used by a single operation,
+     * for example by {@linkplain #size()} which loads everything. <br>
+     * Nothing is evicted either while changes buffered for a 
+     * {@linkplain BatchChangeHandler} are pending, since they could not be 
+     * loaded again: if a batch fails, the budget is exceeded until the 
+     * changes are applied (see {@linkplain #hasPendingChanges()}).
+     * @param loader
+     * @param writer the writer, or null for a read only storage
+     * @param maxCachedEntries the number of entries beyond which ranges are evicted
+     */
+    public LazyTemporalAttributeStorage(
+        MissingRangeHandler<V> loader, ChangeHandler<V> writer, int maxCachedEntries
+    ) {
+        if (loader == null) {
+            throw new IllegalArgumentException("null");
+        }
+        if (maxCachedEntries < 0) {
+            throw new IllegalArgumentException("maxCachedEntries < 0");
+        }
         this.loader = loader;
         this.writer = writer;
-        //this.clearCache();
+        this.maxCachedEntries = maxCachedEntries;
     }
     
-    public void clearCache() {
-        cachingLimit = null;
-        includesEndsWithLimit = false;
+    public synchronized void clearCache() {
+        loadedRanges.clear();
+        rangeUsage.clear();
+        noEntryEndingAt.clear();
         cache.clear(); 
+        generation++;
+        pendingLoads.clear();
     }
     
     /**
@@ -206,24 +351,24 @@ public class LazyTemporalAttributeStorage<V> implements TemporalAttributeStorage
      * {@linkplain MissingRangeHandler#populateRange(LazyTemporalAttributeStorage, Period)}
      * to add entries in the cache. <br>
      * The semantics is the same as {@linkplain #put(Period, Object)}, except that 
-     * the entries are loaded in the cache only.
+     * the entries are loaded in the cache only.  Reloading an entry already 
+     * in cache has no effect.
      * @param p period with which the specified value is associated.  Cannot be null.
      * @param o value to be associated with the specified key.  Cannot be null. 
      * @see #put(Period, Object)
      */
-    public void putInCache(Period p, V o) {
-        cache.put(p, o);
-        
-        if ( this.cachingLimit == null ||
-                // optimization: this block is not necessarily required
-             (     p.getStart().compareTo(this.cachingLimit) < 0
-                   // only if we are sure we are not missing a gap
-                && p.getEnd().compareTo(this.cachingLimit) >= 0
-             )
-        ) {
-            this.cachingLimit = p.getStart();
-            this.includesEndsWithLimit = false;
+    public synchronized void putInCache(Period p, V o) {
+        if (p == null || o == null) {
+            throw new IllegalArgumentException("null");
         }
+        TimedObject<V> cached = cache.getEntryStartingAt(p.getStart());
+        if (cached != null && cached.getPeriod().equals(p)) {
+            return; // already loaded with a neighbour range
+        }
+        if (pendingRemoves.contains(p)) {
+            return; // removed, but not yet in the underlying storage
+        }
+        cache.put(p, o);
     }
     
     /**
@@ -231,127 +376,516 @@ public class LazyTemporalAttributeStorage<V> implements TemporalAttributeStorage
      * {@linkplain MissingRangeHandler#populateRange(LazyTemporalAttributeStorage, Period)}
      * to to tell which Period (or additional Period) can now considered as complete 
      * in the cache. <br>
+     * The period may overlap the ranges already loaded, and must not 
+     * necessarily meet them.
      */
-    public void populated(Period p) {
-        if (cachingLimit == null) {
-            // this was the first load
-            if (!p.getEnd().isPositiveInfinity()) {
-                throw new IllegalStateException(
-                    "The populated period must end by positive infinity"
-                );
-            }
-            this.cachingLimit = p.getStart();
-            this.includesEndsWithLimit = false;
+    public synchronized void populated(Period p) {
+        if (p == null) {
+            throw new IllegalArgumentException("null");
         }
-        else {
-            // this was not the first load
-            if (p.getEnd().compareTo(cachingLimit) < 0) {
-                throw new IllegalStateException(
-                    "There is a gap between "+p.getEnd()+" and "+cachingLimit
-                );
+        // keep the loaded ranges disjoint
+        for (Iterator<Period> it = loadedRanges.periodIterator(p); it.hasNext(); ) {
+            Period loaded = it.next();
+            if (p.contains(loaded)) {
+                it.remove();
+                rangeUsage.remove(loaded);
+                noEntryEndingAt.remove(loaded.getStart());
             }
-            /*if (p.getStart().compareTo(cachingLimit) >= 0) {
-                throw new IllegalStateException(
-                    "The period "+p+" is useless: the cache was already populated from "
-                    +cachingLimit
-                );                    
-            }*/
-            if (p.getStart().compareTo(cachingLimit) < 0) {
-                cachingLimit = p.getStart();
-                this.includesEndsWithLimit = false;
+        }
+        for (Iterator<Period> it = loadedRanges.periodIterator(p); p != null && it.hasNext(); ) {
+            Period loaded = it.next();
+            if (p.overlaps(loaded)) {
+                rangeUsage.get(loaded); // touched
+                p = p.except(loaded);   // at one side, or null if contained
             }
         }
+        if (p != null) {
+            loadedRanges.put(p);
+            rangeUsage.put(p, p);
+        }
     }
- 
-    private void loadAll() {
-        loadToInstant(loader.getAlwaysPeriod().getStart());
+    
+    /**
+     * Returns the first part of the period not loaded yet, or null.
+     */
+    private Period firstGap(Period p) {
+        Instant from = p.getStart();
+        for (Iterator<Period> it = loadedRanges.periodIterator(p); it.hasNext(); ) {
+            Period loaded = it.next();
+            if (loaded.getStart().compareTo(from) > 0) {
+                return new Period(from, loaded.getStart());
+            }
+            if (loaded.getEnd().compareTo(p.getEnd()) >= 0) {
+                return null;
+            }
+            if (loaded.getEnd().compareTo(from) > 0) {
+                from = loaded.getEnd();
+            }
+        }
+        return new Period(from, p.getEnd());
     }
     
-    private void loadToInstant(Instant i) {
-        if (cachingLimit == null) {
-            loader.populateRange(
-                this, 
-                new Period(i, loader.getAlwaysPeriod().getEnd()) 
-            );            
+    /**
+     * Returns the start of the first loaded range after the instant,
+     * or the positive infinity.
+     */
+    private Instant nextLoadedStart(Instant i) {
+        Instant end = loader.getAlwaysPeriod().getEnd();
+        if (i.compareTo(end) >= 0) {
+            return end;
         }
-        else {
-            loader.populateRange(
-                this, 
-                new Period(i, cachingLimit) 
-            );            
+        for (Iterator<Period> it = loadedRanges.periodIterator(new Period(i, end)); it.hasNext(); ) {
+            Period loaded = it.next();
+            if (loaded.getStart().compareTo(i) > 0) {
+                return loaded.getStart();
+            }
         }
+        return end;
+    }
+ 
+    /**
+     * Requests a gap between the loaded ranges from the loader.
+     */
+    private void load(Period gap) {
+        loader.populateRange(this, gap);
         
         // postconditions
-        if (cachingLimit == null) {
-            throw new IllegalStateException("The cache is not populated");
-        }
-        if (cachingLimit.compareTo(i) > 0) {
+        if (loadedRanges.getPeriod(gap.getStart()) == null) {
             throw new IllegalStateException(
-                "The cache is not populated since "+cachingLimit
-                +" but the instant "+i+" is requested"
+                "The cache is not populated at the requested instant "+gap.getStart()
             );            
         }
     }
     
-    private void ensureCachingSince(Instant i) {
-        if (cachingLimit == null  ||  i.compareTo(cachingLimit) < 0) {
-            this.loadToInstant(i);
+    /**
+     * Loads the instant, requesting the gap up to the next loaded range.
+     * The loader may populate only the beginning of the gap.
+     */
+    private void ensureCached(Instant i) {
+        if (loadedRanges.getPeriod(i) == null) {
+            this.load(new Period(i, this.nextLoadedStart(i)));
+        }
+        this.used(i);
+    }
+    
+    /**
+     * Loads the period, requesting only the gaps between the loaded ranges.
+     */
+    private void ensureCached(Period p) {
+        Period gap;
+        while ((gap = this.firstGap(p)) != null) {
+            this.load(gap);
         }
+        this.used(p);
     }
     
     private void ensureFullCaching() {
-        if (cachingLimit == null  ||  !cachingLimit.isNegativeInfinity()) {
-            this.loadAll();
+        this.ensureCached(loader.getAlwaysPeriod());
+    }
+    
+    /**
+     * Marks the range containing the instant as recently used, 
+     * then evicts other ranges if the cache is too large.
+     */
+    private void used(Instant i) {
+        Period loaded = loadedRanges.getPeriod(i);
+        if (loaded != null) {
+            rangeUsage.get(loaded);
+        }
+        this.evictUnused(loaded);
+    }
+    
+    /**
+     * Marks the ranges intersecting the period as recently used, 
+     * then evicts other ranges if the cache is too large.
+     */
+    private void used(Period p) {
+        for (Iterator<Period> it = loadedRanges.periodIterator(p); it.hasNext(); ) {
+            rangeUsage.get(it.next());
+        }
+        this.evictUnused(p);
+    }
+    
+    /**
+     * Evicts the least recently used ranges, except those intersecting 
+     * the period in use, until the cache size fits the budget.
+     */
+    private void evictUnused(Period inUse) {
+        if (this.hasPendingChanges()) {
+            return; // the pending puts would not be reloaded
+        }
+        Iterator<Period> lru = rangeUsage.keySet().iterator();
+        while (cache.size() > maxCachedEntries && lru.hasNext()) {
+            Period loaded = lru.next();
+            if (inUse != null && loaded.overlaps(inUse)) {
+                continue;
+            }
+            lru.remove();
+            this.evict(loaded);
+        }
+    }
+    
+    /**
+     * Forgets a loaded range, and the entries intersecting no other range.
+     */
+    private void evict(Period range) {
+        loadedRanges.remove(range);
+        noEntryEndingAt.remove(range.getStart());
+        for (Iterator<Period> it = cache.periodIterator(range); it.hasNext(); ) {
+            if (!loadedRanges.periodIterator(it.next()).hasNext()) {
+                it.remove();
+            }
         }
     }
     
+    /**
+     * Tells whether the entry ending at the given instant, if any, is in cache.
+     */
+    private boolean isEntryEndingAtCached(Instant i) {
+        if (noEntryEndingAt.contains(i) || loadedRanges.getPeriodEndingAt(i) != null) {
+            return true;
+        }
+        Period loaded = loadedRanges.getPeriod(i);
+        return loaded != null && loaded.getStart().compareTo(i) < 0;
+    }
+
+    /**
+     * The loaded ranges, for testing purposes.
+     */
+    synchronized CloseableIterator<Period> loadedRangeIterator() {
+        return loadedRanges.periodIterator();
+    }
+
+    /**
+     * The number of entries in cache, for testing purposes.
+     */
+    synchronized int cachedEntryCount() {
+        return cache.size();
+    }
+
+    /// Write-behind //////////////////////////////////////////////////
+
+    private boolean isWriteBehind() {
+        return atomicLevel > 0 && writer instanceof BatchChangeHandler;
+    }
+    
+    /**
+     * Tells whether changes buffered for the {@linkplain BatchChangeHandler}
+     * have not been applied yet, because an atomic operation is running or
+     * because the last batch failed. <br>
+     * While changes are pending, no loaded range is evicted.
+     * @return <tt>true</tt> if there are changes to be applied by {@linkplain #flush()}
+     */
+    public synchronized boolean hasPendingChanges() {
+        return !pendingRemoves.isEmpty() || !pendingPuts.isEmpty();
+    }
+
+    /**
+     * Throws the failure of the last batch, if not yet reported. <br>
+     * Outside of an atomic operation, applies the pending changes before
+     * the new one, which is written immediately: the writer receives the
+     * changes in order.
+     */
+    private void beforeChange() {
+        RuntimeException failure = this.batchFailure;
+        if (failure != null) {
+            this.batchFailure = null;
+            throw new IllegalStateException(
+                "The changes of a previous atomic operation could not be applied,"
+                + " they are pending", failure
+            );
+        }
+        if (!this.isWriteBehind() && this.hasPendingChanges()) {
+            this.flush(); // the change is cancelled if it fails again
+        }
+    }
+    
+    private void write(Period p, V value) {
+        if (this.isWriteBehind()) {
+            pendingPuts.put(p, new SimpleTimedObject<V>(p, value));
+        }
+        else {
+            writer.put(this, p, value);
+        }
+    }
+    
+    private void writeRemove(Period p) {
+        if (this.isWriteBehind()) {
+            // put then removed: never written
+            if (pendingPuts.remove(p) == null) {
+                pendingRemoves.add(p);
+            }
+        }
+        else {
+            writer.remove(this, p);
+        }
+    }
+    
+    /**
+     * Applies the changes buffered for the {@linkplain BatchChangeHandler},
+     * if any. <br>
+     * This is done automatically at the end of the outermost atomic operation,
+     * except that a failure is not thrown there (endAtomicOperation() must not 
+     * throw any exception): the changes are kept, to be applied with the next 
+     * batch, and the failure is thrown by the next put or removal. 
+     * Call this method to apply them explicitly and get the failure.
+     * @throws RuntimeException thrown by the BatchChangeHandler, the changes being kept
+     */
+    public synchronized void flush() {
+        this.batchFailure = null; // thrown again below, if still failing
+        if (!this.hasPendingChanges()) {
+            return;
+        }
+        ((BatchChangeHandler<V>) writer).apply(
+            this, 
+            new ArrayList<Period>(pendingRemoves), 
+            new ArrayList<TimedObject<V>>(pendingPuts.values())
+        );
+        pendingRemoves.clear();
+        pendingPuts.clear();
+    }
+
+    /// Asynchronous loading //////////////////////////////////////////
+
+    /**
+     * Ensures, without blocking, that the cache contains the data at 
+     * the given instant. <br>
+     * If a pending load already covers the instant, the returned future
+     * completes with it, otherwise the range from the instant up to the next 
+     * range loaded or being loaded is requested from the 
+     * {@linkplain AsyncRangeHandler}, outside of the monitor of this storage.
+     * If the loader is not asynchronous, the data is loaded in the caller's thread.
+     * @param i the instant that must be in cache
+     * @return a future completing when the data is in cache, 
+     * exceptionally if the load failed
+     */
+    public CompletableFuture<Void> loadAsync(Instant i) {
+        return this.readAsync(i, new Function<Instant,Void>() {
+            public Void apply(Instant instant) {
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Returns, without blocking, the value at the given instant.
+     * @param instant
+     * @return a future completing with the value, or with null if 
+     * no value is valid at this instant
+     * @see #getValue(Instant)
+     * @see #loadAsync(Instant)
+     */
+    public CompletableFuture<V> getValueAsync(Instant instant) {
+        return this.readAsync(instant, new Function<Instant,V>() {
+            public V apply(Instant i) {
+                return cache.getValue(i);
+            }
+        });
+    }
+
+    /**
+     * Returns, without blocking, the entry valid at the given instant.
+     * @param instant
+     * @return a future completing with the entry, or with null if 
+     * no value is valid at this instant
+     * @see #getEntry(Instant)
+     * @see #loadAsync(Instant)
+     */
+    public CompletableFuture<TimedObject<V>> getEntryAsync(Instant instant) {
+        return this.readAsync(instant, new Function<Instant,TimedObject<V>>() {
+            public TimedObject<V> apply(Instant i) {
+                return cache.getEntry(i);
+            }
+        });
+    }
+
+    /**
+     * Loads the instant asynchronously, then reads the cache at this instant
+     * under the monitor, and completes the returned future outside of it.
+     */
+    private <R> CompletableFuture<R> readAsync(Instant i, Function<Instant,R> read) {
+        if (i == null) {
+            throw new IllegalArgumentException("null");
+        }
+        PendingRead<R> reader = new PendingRead<R>(i, read);
+        final PendingLoad pending;
+        synchronized (this) {
+            if (loadedRanges.getPeriod(i) != null || !(loader instanceof AsyncRangeHandler)) {
+                this.ensureCached(i); // blocking, if the loader is not asynchronous
+                return CompletableFuture.completedFuture(read.apply(i));
+            }
+
+            Map.Entry<Instant,PendingLoad> covering = pendingLoads.floorEntry(i);
+            if (covering != null && covering.getValue().range.contains(i)) {
+                // coalesced; the caller gets its own future, and cannot cancel the shared load
+                covering.getValue().readers.add(reader);
+                return reader.future;
+            }
+
+            // the range up to the next pending load, or up to the next loaded range
+            Instant end = this.nextLoadedStart(i);
+            Instant nextPending = pendingLoads.higherKey(i);
+            if (nextPending != null && nextPending.compareTo(end) < 0) {
+                end = nextPending;
+            }
+            pending = new PendingLoad(new Period(i, end), this.generation);
+            pending.readers.add(reader);
+            pendingLoads.put(i, pending);
+        }
+
+        // not holding the monitor, the loader may take its time
+        CompletableFuture<? extends Collection<? extends TimedObject<V>>> load;
+        try {
+            load = ((AsyncRangeHandler<V>) loader).loadRange(pending.range);
+        }
+        catch (RuntimeException e) {
+            this.loaded(pending, null, e);
+            return reader.future;
+        }
+        load.whenComplete(new BiConsumer<Collection<? extends TimedObject<V>>,Throwable>() {
+            public void accept(Collection<? extends TimedObject<V>> entries, Throwable failure) {
+                loaded(pending, entries, failure);
+            }
+        });
+        return reader.future;
+    }
+
+    /**
+     * Ends an asynchronous load: puts the entries in cache and reads them
+     * for the waiting callers, then completes their futures outside of
+     * the monitor, so that their callbacks do not hold it.
+     */
+    private void loaded(
+        PendingLoad pending, Collection<? extends TimedObject<V>> entries, Throwable failure
+    ) {
+        boolean stale;
+        synchronized (this) {
+            if (pendingLoads.get(pending.range.getStart()) == pending) {
+                pendingLoads.remove(pending.range.getStart());
+            }
+            stale = pending.generation != this.generation;
+            if (failure == null && !stale) {
+                try {
+                    this.applyLoad(pending.range, entries);
+                    for (PendingRead<?> reader : pending.readers) {
+                        reader.read();
+                    }
+                }
+                catch (RuntimeException e) {
+                    failure = e;
+                }
+            }
+        }
+        for (PendingRead<?> reader : pending.readers) {
+            if (failure != null) {
+                reader.future.completeExceptionally(failure);
+            }
+            else if (stale) {
+                // the cache has been cleared meanwhile, loaded again
+                reader.retry();
+            }
+            else {
+                reader.complete();
+            }
+        }
+    }
+
+    /**
+     * Puts the entries of an asynchronous load in the cache, 
+     * except those intersecting a range loaded meanwhile.
+     */
+    private void applyLoad(Period range, Collection<? extends TimedObject<V>> entries) {
+        for (TimedObject<V> to : entries) {
+            // loaded synchronously meanwhile, possibly modified since
+            if (!loadedRanges.periodIterator(to.getPeriod()).hasNext()) {
+                this.putInCache(to.getPeriod(), to.getValue());
+            }
+        }
+        this.populated(range);
+        this.used(range);
+    }
+
+    /**
+     * An asynchronous load in progress.  Guarded by the storage monitor.
+     */
+    private final class PendingLoad {
+        final Period range;
+        final int generation;
+        // the callers waiting for this load
+        final List<PendingRead<?>> readers = new ArrayList<PendingRead<?>>();
+        PendingLoad(Period range, int generation) {
+            this.range = range;
+            this.generation = generation;
+        }
+    }
+
+    /**
+     * A caller waiting for an asynchronous load, and what it reads then.
+     */
+    private final class PendingRead<R> {
+        final Instant instant;
+        final Function<Instant,R> read;
+        final CompletableFuture<R> future = new CompletableFuture<R>();
+        // read under the monitor, then completed outside of it
+        private R result = null;
+        PendingRead(Instant instant, Function<Instant,R> read) {
+            this.instant = instant;
+            this.read = read;
+        }
+        void read() {
+            this.result = this.read.apply(this.instant);
+        }
+        void complete() {
+            this.future.complete(this.result);
+        }
+        void retry() {
+            readAsync(this.instant, this.read).whenComplete(new BiConsumer<R,Throwable>() {
+                public void accept(R result, Throwable failure) {
+                    if (failure != null) {
+                        future.completeExceptionally(failure);
+                    }
+                    else {
+                        future.complete(result);
+                    }
+                }
+            });
+        }
+    }
+
     /// TemporalAttributeStorage //////////////////////////////////////
     
 	/* (non-Javadoc)
 	 * @see net.sf.jtemporal.spi.TemporalAttributeStorage#lastPeriod()
 	 */
-	public Period lastPeriod() {
-        if (cachingLimit == null) {
-            loadAll();
-        }
-        // try quick-win
-        if (!cache.isEmpty()) {
+	public synchronized Period lastPeriod() {
+        // try quick-win: the last entry of the range ending at the infinity
+        Period top = loadedRanges.lastPeriod();
+        if (top != null && top.getEnd().equals(loader.getAlwaysPeriod().getEnd())
+            && !cache.isEmpty(top)
+        ) {
+            this.used(top);
             return cache.lastPeriod();
         }
-        
-        if (cachingLimit.isNegativeInfinity()) {
-            // we know the cache is empty
+        // our cache is potentially insufficient
+        this.ensureFullCaching();
+        if (cache.isEmpty()) {
             throw new NoSuchElementException();
         }
-        // our cache is potentially insufficient
-        loadAll();
         return cache.lastPeriod();        
 	}
 
 	/* (non-Javadoc)
 	 * @see net.sf.jtemporal.spi.TemporalAttributeStorage#lastPeriod(net.sf.jtemporal.Period)
 	 */
-	public Period lastPeriod(Period p) {
-        if (cachingLimit == null) {
-            loadToInstant(p.getStart());
-        }
-
-        if (p.getStart().compareTo(cachingLimit) < 0) {
-            // TODO : to be tuned later, maybe we do not need to load something
-            loadToInstant(p.getStart());
-            
-            if (p.getStart().compareTo(cachingLimit) < 0) {
-                throw new IllegalStateException();
-            }
-        }
-        
+	public synchronized Period lastPeriod(Period p) {
+	    this.ensureCached(p);
 		return cache.lastPeriod(p);
 	}
 
 	/* (non-Javadoc)
 	 * @see net.sf.jtemporal.spi.TemporalAttributeStorage#firstPeriod()
 	 */
-	public Period firstPeriod() {
+	public synchronized Period firstPeriod() {
 	    this.ensureFullCaching();
 	    return cache.firstPeriod();
 	}
@@ -359,15 +893,15 @@ public class LazyTemporalAttributeStorage<V> implements TemporalAttributeStorage
 	/* (non-Javadoc)
 	 * @see net.sf.jtemporal.spi.TemporalAttributeStorage#firstPeriod(net.sf.jtemporal.Period)
 	 */
-	public Period firstPeriod(Period p) {
-	    this.ensureCachingSince(p.getStart());
+	public synchronized Period firstPeriod(Period p) {
+	    this.ensureCached(p);
 	    return cache.firstPeriod(p);
 	}
 
 	/* (non-Javadoc)
 	 * @see net.sf.jtemporal.spi.TemporalAttributeStorage#isEmpty()
 	 */
-	public boolean isEmpty() {
+	public synchronized boolean isEmpty() {
 	    this.ensureFullCaching();
 	    return cache.isEmpty();
 	}
@@ -375,15 +909,15 @@ public class LazyTemporalAttributeStorage<V> implements TemporalAttributeStorage
 	/* (non-Javadoc)
 	 * @see net.sf.jtemporal.spi.TemporalAttributeStorage#isEmpty(net.sf.jtemporal.Period)
 	 */
-	public boolean isEmpty(Period p) {
-	    this.ensureFullCaching();
+	public synchronized boolean isEmpty(Period p) {
+	    this.ensureCached(p);
 	    return cache.isEmpty(p);
 	}
 
 	/* (non-Javadoc)
 	 * @see net.sf.jtemporal.spi.TemporalAttributeStorage#containsValue(java.lang.Object)
 	 */
-	public boolean containsValue(Object value) {
+	public synchronized boolean containsValue(Object value) {
 	    this.ensureFullCaching();
 	    return cache.containsValue(value);
 	}
@@ -391,108 +925,116 @@ public class LazyTemporalAttributeStorage<V> implements TemporalAttributeStorage
 	/* (non-Javadoc)
 	 * @see net.sf.jtemporal.spi.TemporalAttributeStorage#containsValue(java.lang.Object, net.sf.jtemporal.Period)
 	 */
-	public boolean containsValue(Object value, Period range) {
-	    this.ensureCachingSince(range.getStart());
+	public synchronized boolean containsValue(Object value, Period range) {
+	    this.ensureCached(range);
 	    return cache.containsValue(value, range);
 	}
 
 	/* (non-Javadoc)
 	 * @see net.sf.jtemporal.spi.TemporalAttributeStorage#getValue(net.sf.jtemporal.Instant)
 	 */
-	public V getValue(Instant instant) {
-	    this.ensureCachingSince(instant);
+	public synchronized V getValue(Instant instant) {
+	    this.ensureCached(instant);
 	    return cache.getValue(instant);
 	}
 
 	/* (non-Javadoc)
 	 * @see net.sf.jtemporal.spi.TemporalAttributeStorage#getPeriod(net.sf.jtemporal.Instant)
 	 */
-	public Period getPeriod(Instant instant) {
-	    this.ensureCachingSince(instant);
+	public synchronized Period getPeriod(Instant instant) {
+	    this.ensureCached(instant);
 	    return cache.getPeriod(instant);
 	}
 
 	/* (non-Javadoc)
 	 * @see net.sf.jtemporal.spi.TemporalAttributeStorage#getEntry(net.sf.jtemporal.Instant)
 	 */
-	public TimedObject<V> getEntry(Instant instant) {
-	    this.ensureCachingSince(instant);
+	public synchronized TimedObject<V> getEntry(Instant instant) {
+	    this.ensureCached(instant);
 	    return cache.getEntry(instant);
 	}
 
 	/* (non-Javadoc)
 	 * @see net.sf.jtemporal.spi.TemporalAttributeStorage#getEntryEndingAt(net.sf.jtemporal.Instant)
 	 */
-	public TimedObject<V> getEntryEndingAt(Instant instant) {
-	    
-	    this.ensureCachingSince(instant);
-	    
-	    if (this.cachingLimit.compareTo(instant) < 0
-	       || this.includesEndsWithLimit
-	    ) {
+	public synchronized TimedObject<V> getEntryEndingAt(Instant instant) {
+	    if (this.isEntryEndingAtCached(instant)) {
 	        // fine, the query is already covered by the cache
 	        return cache.getEntryEndingAt(instant);
 	    }
 
-	    // now we know that cachingLimit == 0 && includesEndsWithLimit == false 
-	    if (! cachingLimit.equals(instant)) {
-	        throw new IllegalStateException("! cachingLimit.equals(instant)");
-	    }
-
-	    if (includesEndsWithLimit) {
-	        throw new IllegalStateException("includesEndsWithLimit");
-	    }
-	    
-	    // we have to load the little part missed by ensureCachingSince(instant)
+	    // we have to load the little part not covered by the loaded ranges
 	    loader.populateEntryEndingAt(this, instant);
 	    
-	    if (cachingLimit.equals(instant)) {
-	        // nothing has been loaded, but we have to cache this knowledge
-	        this.includesEndsWithLimit = true;
+	    TimedObject<V> entry = cache.getEntryEndingAt(instant);
+	    if (entry == null) {
+	        // nothing has been loaded, but we have to cache this knowledge,
+	        // as long as the range starting here is loaded
+	        if (loadedRanges.getPeriod(instant) != null) {
+	            this.noEntryEndingAt.add(instant);
+	        }
 	    }
-	    
-        // fine, the query is now covered by the cache
-        return cache.getEntryEndingAt(instant);
+	    else {
+	        // the whole period of the entry is known
+	        this.populated(entry.getPeriod());
+	    }
+	    this.used(instant);
+	    return entry;
 	}
 
 	/* (non-Javadoc)
 	 * @see net.sf.jtemporal.spi.TemporalAttributeStorage#getEntryStartingAt(net.sf.jtemporal.Instant)
 	 */
-	public TimedObject<V> getEntryStartingAt(Instant instant) {
-	    this.ensureCachingSince(instant);
+	public synchronized TimedObject<V> getEntryStartingAt(Instant instant) {
+	    this.ensureCached(instant);
 	    return cache.getEntryStartingAt(instant);
 	}
 
 	/* (non-Javadoc)
 	 * @see net.sf.jtemporal.spi.TemporalAttributeStorage#beginAtomicOperation()
 	 */
-	public void beginAtomicOperation() {
+	public synchronized void beginAtomicOperation() {
+	    atomicLevel++;
 	    cache.beginAtomicOperation();
 	}
 
 	/* (non-Javadoc)
 	 * @see net.sf.jtemporal.spi.TemporalAttributeStorage#endAtomicOperation()
 	 */
-	public void endAtomicOperation() {
+	public synchronized void endAtomicOperation() {
 	    cache.endAtomicOperation();
+	    if (atomicLevel > 0 && --atomicLevel == 0) {
+	        try {
+	            this.flush();
+	        }
+	        catch (RuntimeException e) {
+	            // kept pending, see flush(), and reported by the next change
+	            this.batchFailure = e;
+	        }
+	    }
 	}
 
 	/* (non-Javadoc)
 	 * @see net.sf.jtemporal.spi.TemporalAttributeStorage#clear()
 	 */
-	public void clear() {
+	public synchronized void clear() {
 		if (this.writer == null ) 
 			throw new UnsupportedOperationException("Not implemented yet.")
 	    ;
 		this.writer.clear(this);
-		this.cache.clear();
-		this.cachingLimit = this.loader.getAlwaysPeriod().getStart();
+		// whatever was pending has been cleared as well
+		pendingRemoves.clear();
+		pendingPuts.clear();
+		this.batchFailure = null;
+		this.clearCache();
+		// we know the whole storage is empty
+		this.populated(this.loader.getAlwaysPeriod());
 	}
 
 	/* (non-Javadoc)
 	 * @see net.sf.jtemporal.spi.TemporalAttributeStorage#size()
 	 */
-	public int size() {
+	public synchronized int size() {
 	    this.ensureFullCaching();
 	    return cache.size();
 	}
@@ -500,51 +1042,55 @@ public class LazyTemporalAttributeStorage<V> implements TemporalAttributeStorage
 	/* (non-Javadoc)
 	 * @see net.sf.jtemporal.spi.TemporalAttributeStorage#size(net.sf.jtemporal.Period)
 	 */
-	public int size(Period p) {
-	    this.ensureCachingSince(p.getStart());
+	public synchronized int size(Period p) {
+	    this.ensureCached(p);
 	    return cache.size(p);
 	}
 
 	/* (non-Javadoc)
 	 * @see net.sf.jtemporal.spi.TemporalAttributeStorage#put(net.sf.jtemporal.Period, java.lang.Object)
 	 */
-	public void put(Period p, V value) {
+	public synchronized void put(Period p, V value) {
 		if (p == null || value == null) {
 			throw new IllegalArgumentException("null");
 		}
-		this.ensureCachingSince(p.getStart());
-		this.writer.put(this, p, value); // RuntimeException possible here
+		this.beforeChange();
+		this.ensureCached(p);
+		this.write(p, value); // RuntimeException possible here
 		this.cache.put(p, value);
+		this.noEntryEndingAt.remove(p.getEnd());
 	}
 
 	/* (non-Javadoc)
 	 * @see net.sf.jtemporal.spi.TemporalAttributeStorage#removeEntry(net.sf.jtemporal.Period)
 	 */
-	public void removeEntry(Period p) {
+	public synchronized void removeEntry(Period p) {
 		if (p == null) {
 			throw new IllegalArgumentException("null");
 		}
-		this.ensureCachingSince(p.getStart());
-		this.writer.remove(this, p);
+		this.beforeChange();
+		this.ensureCached(p);
+		this.writeRemove(p);
 		this.cache.removeEntry(p);
 	}
 
 	/* (non-Javadoc)
 	 * @see net.sf.jtemporal.spi.TemporalAttributeStorage#removeRange(net.sf.jtemporal.Period)
 	 */
-	public int removeRange(Period range) {
+	public synchronized int removeRange(Period range) {
 		if (range == null) {
 			throw new IllegalArgumentException("null");
 		}
+		this.beforeChange();
 	    
-	    this.ensureCachingSince(range.getStart());
+	    this.ensureCached(range);
 	    
 		Iterator<Period> it = cache.periodIterator(range);
 		int count = 0;
 		while (it.hasNext()) {
 		    Period p = it.next();
 			it.remove();
-			writer.remove(this, p);
+			this.writeRemove(p);
 			count++;
 		}
 		return count;
@@ -553,17 +1099,14 @@ public class LazyTemporalAttributeStorage<V> implements TemporalAttributeStorage
 	/* (non-Javadoc)
 	 * @see net.sf.jtemporal.spi.TemporalAttributeStorage#entryIterator()
 	 */
-	public CloseableIterator<TimedObject<V>> entryIterator() {
+	public synchronized CloseableIterator<TimedObject<V>> entryIterator() {
 	    this.ensureFullCaching();
 	    
 	    return new SimpleCloseableIterator<TimedObject<V>>(cache.entryIterator()) {
 
             @Override
             public void remove() {
-                writer.remove(
-                    LazyTemporalAttributeStorage.this, 
-                    getLastFetched().getPeriod()
-                );
+                writeRemove(getLastFetched().getPeriod());
                 super.remove();
             }
 	    };
@@ -572,20 +1115,17 @@ public class LazyTemporalAttributeStorage<V> implements TemporalAttributeStorage
 	/* (non-Javadoc)
 	 * @see net.sf.jtemporal.spi.TemporalAttributeStorage#entryIterator(net.sf.jtemporal.Period)
 	 */
-	public CloseableIterator<TimedObject<V>> entryIterator(Period p) {
+	public synchronized CloseableIterator<TimedObject<V>> entryIterator(Period p) {
 		if (p == null) {
 			throw new IllegalArgumentException("null");
 		}
-	    this.ensureCachingSince(p.getStart());
+	    this.ensureCached(p);
 	    
 	    return new SimpleCloseableIterator<TimedObject<V>>(cache.entryIterator(p)) {
 
             @Override
             public void remove() {
-                writer.remove(
-                    LazyTemporalAttributeStorage.this, 
-                    getLastFetched().getPeriod()
-                );
+                writeRemove(getLastFetched().getPeriod());
                 super.remove();
             }
 	    };
@@ -594,17 +1134,14 @@ public class LazyTemporalAttributeStorage<V> implements TemporalAttributeStorage
 	/* (non-Javadoc)
 	 * @see net.sf.jtemporal.spi.TemporalAttributeStorage#periodIterator()
 	 */
-	public CloseableIterator<Period> periodIterator() {
+	public synchronized CloseableIterator<Period> periodIterator() {
 	    this.ensureFullCaching();
 	    
 	    return new SimpleCloseableIterator<Period>(cache.periodIterator()) {
 
             @Override
             public void remove() {
-                writer.remove(
-                    LazyTemporalAttributeStorage.this, 
-                    ((Period)getLastFetched())
-                );
+                writeRemove(getLastFetched());
                 super.remove();
             }
 	    };
@@ -613,36 +1150,29 @@ public class LazyTemporalAttributeStorage<V> implements TemporalAttributeStorage
 	/* (non-Javadoc)
 	 * @see net.sf.jtemporal.spi.TemporalAttributeStorage#periodIterator(net.sf.jtemporal.Period)
 	 */
-	public CloseableIterator<Period> periodIterator(Period p) {
+	public synchronized CloseableIterator<Period> periodIterator(Period p) {
 		if (p == null) {
 			throw new IllegalArgumentException("null");
 		}
-	    this.ensureCachingSince(p.getStart());
+	    this.ensureCached(p);
 
 	    return new SimpleCloseableIterator<Period>(cache.periodIterator(p)) {
 
             @Override
             public void remove() {
-                writer.remove(
-                    LazyTemporalAttributeStorage.this, 
-                    getLastFetched()
-                );
+                writeRemove(getLastFetched());
                 super.remove();
             }
 	    };
 	}
 
-	Instant getCachingLimit() {
-		return cachingLimit;
-	}
-
 	/* (non-Javadoc)
      * @see java.lang.Object#toString()
      */
     @Override
-    public String toString() {
-        return "{LazyTepomralAttributeStorage: caching limit:"
-        	+ cachingLimit+", cache content:"+cache.toString()+"}"
+    public synchronized String toString() {
+        return "{LazyTepomralAttributeStorage: loaded ranges:"
+        	+ rangeUsage.keySet()+", cache content:"+cache.toString()+"}"
         ;
     }
 }
@@ -0,0 +1,529 @@
+/*
+   This file is part of the JTemporal framework (http://jtemporal.sf.net).
+   Copyright (C) 2002 by the author(s).
+   Distributable under LGPL license version 2.1 or later,
+   with no warranties given or implied.
+   See terms of license at gnu.org or www.opensource.org/licenses  */
+
+package net.sf.jtemporal.spi;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.StampedLock;
+
+import net.sf.jtemporal.Instant;
+import net.sf.jtemporal.Period;
+import net.sf.jtemporal.TimedObject;
+import net.sf.jtemporal.util.CloseableIterator;
+import net.sf.jtemporal.util.SimpleCloseableIterator;
+
+/**
+ * A thread-safe proxy over a non synchronized TemporalAttributeStorage,
+ * based on a {@linkplain StampedLock}. <br>
+ * The write lock is taken by {@linkplain #beginAtomicOperation()} and
+ * released by {@linkplain #endAtomicOperation()}, so that the whole
+ * remove-merge-put sequence performed by
+ * {@linkplain net.sf.jtemporal.TemporalAttributeImpl#put(Period, Object)}
+ * is atomic to the readers. The updates performed outside an atomic
+ * operation take the write lock for the single update. <br>
+ * When the delegate is a {@linkplain PersistentTemporalAttributeStorage},
+ * whose writes only publish new immutable nodes, {@linkplain #getValue(Instant)},
+ * {@linkplain #getPeriod(Instant)} and {@linkplain #getEntry(Instant)}
+ * use optimistic reads: they do not write any shared state, and only fall
+ * back to the read lock when a write happened meanwhile. With any other
+ * delegate, such as a {@linkplain TreeTemporalAttributeStorage}, a read
+ * concurrent to a write may see an inconsistent structure, so these methods
+ * take the read lock. <br>
+ * The other read methods take the read lock. The iterators iterate over
+ * a copy taken under the read lock, their remove() method removes the entry
+ * from this storage. <br>
+ * The lock is reentrant for the writing thread. Note that
+ * {@linkplain net.sf.jtemporal.TemporalAttributeImpl} counts the nested
+ * atomic operations per instance: concurrent writers should each use their
+ * own TemporalAttributeImpl on top of the shared storage, while readers
+ * can share any of them.
+ * @author Thomas A Beck
+ * @version $Id$
+ * @param <T> the type of the value that is stored
+ */
+public class LockingTemporalAttributeStorage<T> extends TemporalAttributeStorageProxy<T> {
+
+	private final StampedLock lock = new StampedLock();
+	// the delegate tolerates unlocked reads concurrent to a write
+	private final boolean optimistic;
+
+	// the thread holding the write lock, if any
+	private volatile Thread writer = null;
+	// written only by the writer
+	private int writeDepth = 0;
+	private long writeStamp = 0L;
+
+	/**
+	 * Creates a new instance on top of an existing storage.
+	 * @param storage the storage to be protected, not thread-safe.
+	 * It should not be accessed directly anymore.
+	 */
+	public LockingTemporalAttributeStorage(TemporalAttributeStorage<T> storage) {
+		super(storage);
+		this.optimistic = storage instanceof PersistentTemporalAttributeStorage;
+	}
+
+	private boolean isWriter() {
+		return this.writer == Thread.currentThread();
+	}
+
+	private void lockWrite() {
+		if (this.isWriter()) {
+			this.writeDepth++;
+			return;
+		}
+		long stamp = this.lock.writeLock();
+		this.writer = Thread.currentThread();
+		this.writeStamp = stamp;
+		this.writeDepth = 1;
+	}
+
+	private void unlockWrite() {
+		if (!this.isWriter()) {
+			throw new IllegalMonitorStateException("The write lock is not held");
+		}
+		this.writeDepth--;
+		if (this.writeDepth == 0) {
+			this.writer = null;
+			this.lock.unlockWrite(this.writeStamp);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see net.sf.jtemporal.spi.TemporalAttributeStorage#getValue(net.sf.jtemporal.Instant)
+	 */
+	@Override
+	public T getValue(Instant instant) {
+		if (this.isWriter()) {
+			return super.getValue(instant);
+		}
+		long stamp = this.optimistic ? this.lock.tryOptimisticRead() : 0L;
+		if (stamp != 0L) {
+			T value = super.getValue(instant);
+			if (this.lock.validate(stamp)) {
+				return value;
+			}
+		}
+		stamp = this.lock.readLock();
+		try {
+			return super.getValue(instant);
+		}
+		finally {
+			this.lock.unlockRead(stamp);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see net.sf.jtemporal.spi.TemporalAttributeStorage#getPeriod(net.sf.jtemporal.Instant)
+	 */
+	@Override
+	public Period getPeriod(Instant instant) {
+		if (this.isWriter()) {
+			return super.getPeriod(instant);
+		}
+		long stamp = this.optimistic ? this.lock.tryOptimisticRead() : 0L;
+		if (stamp != 0L) {
+			Period period = super.getPeriod(instant);
+			if (this.lock.validate(stamp)) {
+				return period;
+			}
+		}
+		stamp = this.lock.readLock();
+		try {
+			return super.getPeriod(instant);
+		}
+		finally {
+			this.lock.unlockRead(stamp);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see net.sf.jtemporal.spi.TemporalAttributeStorage#getEntry(net.sf.jtemporal.Instant)
+	 */
+	@Override
+	public TimedObject<T> getEntry(Instant instant) {
+		if (this.isWriter()) {
+			return super.getEntry(instant);
+		}
+		long stamp = this.optimistic ? this.lock.tryOptimisticRead() : 0L;
+		if (stamp != 0L) {
+			TimedObject<T> entry = super.getEntry(instant);
+			if (this.lock.validate(stamp)) {
+				return entry;
+			}
+		}
+		stamp = this.lock.readLock();
+		try {
+			return super.getEntry(instant);
+		}
+		finally {
+			this.lock.unlockRead(stamp);
+		}
+	}
+
+	/**
+	 * Takes the read lock, unless the current thread is the writer.
+	 * @return the stamp to be passed to {@linkplain #unlockRead(long)}
+	 */
+	private long lockRead() {
+		return this.isWriter() ? 0L : this.lock.readLock();
+	}
+
+	private void unlockRead(long stamp) {
+		if (stamp != 0L) {
+			this.lock.unlockRead(stamp);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see net.sf.jtemporal.spi.TemporalAttributeStorage#lastPeriod()
+	 */
+	@Override
+	public Period lastPeriod() {
+		long stamp = this.lockRead();
+		try {
+			return super.lastPeriod();
+		}
+		finally {
+			this.unlockRead(stamp);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see net.sf.jtemporal.spi.TemporalAttributeStorage#lastPeriod(net.sf.jtemporal.Period)
+	 */
+	@Override
+	public Period lastPeriod(Period p) {
+		long stamp = this.lockRead();
+		try {
+			return super.lastPeriod(p);
+		}
+		finally {
+			this.unlockRead(stamp);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see net.sf.jtemporal.spi.TemporalAttributeStorage#firstPeriod()
+	 */
+	@Override
+	public Period firstPeriod() {
+		long stamp = this.lockRead();
+		try {
+			return super.firstPeriod();
+		}
+		finally {
+			this.unlockRead(stamp);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see net.sf.jtemporal.spi.TemporalAttributeStorage#firstPeriod(net.sf.jtemporal.Period)
+	 */
+	@Override
+	public Period firstPeriod(Period p) {
+		long stamp = this.lockRead();
+		try {
+			return super.firstPeriod(p);
+		}
+		finally {
+			this.unlockRead(stamp);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see net.sf.jtemporal.spi.TemporalAttributeStorage#isEmpty()
+	 */
+	@Override
+	public boolean isEmpty() {
+		long stamp = this.lockRead();
+		try {
+			return super.isEmpty();
+		}
+		finally {
+			this.unlockRead(stamp);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see net.sf.jtemporal.spi.TemporalAttributeStorage#isEmpty(net.sf.jtemporal.Period)
+	 */
+	@Override
+	public boolean isEmpty(Period p) {
+		long stamp = this.lockRead();
+		try {
+			return super.isEmpty(p);
+		}
+		finally {
+			this.unlockRead(stamp);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see net.sf.jtemporal.spi.TemporalAttributeStorage#containsValue(java.lang.Object)
+	 */
+	@Override
+	public boolean containsValue(Object value) {
+		long stamp = this.lockRead();
+		try {
+			return super.containsValue(value);
+		}
+		finally {
+			this.unlockRead(stamp);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see net.sf.jtemporal.spi.TemporalAttributeStorage#containsValue(java.lang.Object, net.sf.jtemporal.Period)
+	 */
+	@Override
+	public boolean containsValue(Object value, Period range) {
+		long stamp = this.lockRead();
+		try {
+			return super.containsValue(value, range);
+		}
+		finally {
+			this.unlockRead(stamp);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see net.sf.jtemporal.spi.TemporalAttributeStorage#getEntryEndingAt(net.sf.jtemporal.Instant)
+	 */
+	@Override
+	public TimedObject<T> getEntryEndingAt(Instant instant) {
+		long stamp = this.lockRead();
+		try {
+			return super.getEntryEndingAt(instant);
+		}
+		finally {
+			this.unlockRead(stamp);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see net.sf.jtemporal.spi.TemporalAttributeStorage#getEntryStartingAt(net.sf.jtemporal.Instant)
+	 */
+	@Override
+	public TimedObject<T> getEntryStartingAt(Instant instant) {
+		long stamp = this.lockRead();
+		try {
+			return super.getEntryStartingAt(instant);
+		}
+		finally {
+			this.unlockRead(stamp);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see net.sf.jtemporal.spi.TemporalAttributeStorage#size()
+	 */
+	@Override
+	public int size() {
+		long stamp = this.lockRead();
+		try {
+			return super.size();
+		}
+		finally {
+			this.unlockRead(stamp);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see net.sf.jtemporal.spi.TemporalAttributeStorage#size(net.sf.jtemporal.Period)
+	 */
+	@Override
+	public int size(Period p) {
+		long stamp = this.lockRead();
+		try {
+			return super.size(p);
+		}
+		finally {
+			this.unlockRead(stamp);
+		}
+	}
+
+	/////////////////////////////////////////////////////////////
+
+	/**
+	 * Takes the write lock, and keeps it until
+	 * {@linkplain #endAtomicOperation()} is called.
+	 * @see net.sf.jtemporal.spi.TemporalAttributeStorage#beginAtomicOperation()
+	 */
+	@Override
+	public void beginAtomicOperation() {
+		this.lockWrite();
+		super.beginAtomicOperation();
+	}
+
+	/**
+	 * Releases the write lock taken by {@linkplain #beginAtomicOperation()}.
+	 * @see net.sf.jtemporal.spi.TemporalAttributeStorage#endAtomicOperation()
+	 */
+	@Override
+	public void endAtomicOperation() {
+		try {
+			super.endAtomicOperation();
+		}
+		finally {
+			if (this.isWriter()) {  // must not throw
+				this.unlockWrite();
+			}
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see net.sf.jtemporal.spi.TemporalAttributeStorage#clear()
+	 */
+	@Override
+	public void clear() {
+		this.lockWrite();
+		try {
+			super.clear();
+		}
+		finally {
+			this.unlockWrite();
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see net.sf.jtemporal.spi.TemporalAttributeStorage#put(net.sf.jtemporal.Period, java.lang.Object)
+	 */
+	@Override
+	public void put(Period p, T value) {
+		this.lockWrite();
+		try {
+			super.put(p, value);
+		}
+		finally {
+			this.unlockWrite();
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see net.sf.jtemporal.spi.TemporalAttributeStorage#removeEntry(net.sf.jtemporal.Period)
+	 */
+	@Override
+	public void removeEntry(Period p) {
+		this.lockWrite();
+		try {
+			super.removeEntry(p);
+		}
+		finally {
+			this.unlockWrite();
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see net.sf.jtemporal.spi.TemporalAttributeStorage#removeRange(net.sf.jtemporal.Period)
+	 */
+	@Override
+	public int removeRange(Period range) {
+		this.lockWrite();
+		try {
+			return super.removeRange(range);
+		}
+		finally {
+			this.unlockWrite();
+		}
+	}
+
+	/**
+	 * Copies the content of the given iterator, the read lock must be held.
+	 */
+	private static <E> List<E> copy(CloseableIterator<E> i) {
+		List<E> list = new ArrayList<E>();
+		try {
+			while (i.hasNext()) {
+				list.add(i.next());
+			}
+		}
+		finally {
+			i.close();
+		}
+		return list;
+	}
+
+	private CloseableIterator<TimedObject<T>> entryIterator(List<TimedObject<T>> list) {
+		return new SimpleCloseableIterator<TimedObject<T>>(list.iterator()) {
+			@Override
+			public void remove() {
+				TimedObject<T> entry = this.getLastFetched();
+				super.remove();
+				LockingTemporalAttributeStorage.this.removeEntry(entry.getPeriod());
+			}
+		};
+	}
+
+	private CloseableIterator<Period> periodIterator(List<Period> list) {
+		return new SimpleCloseableIterator<Period>(list.iterator()) {
+			@Override
+			public void remove() {
+				Period period = this.getLastFetched();
+				super.remove();
+				LockingTemporalAttributeStorage.this.removeEntry(period);
+			}
+		};
+	}
+
+	/* (non-Javadoc)
+	 * @see net.sf.jtemporal.spi.TemporalAttributeStorage#entryIterator()
+	 */
+	@Override
+	public CloseableIterator<TimedObject<T>> entryIterator() {
+		long stamp = this.lockRead();
+		try {
+			return this.entryIterator(copy(super.entryIterator()));
+		}
+		finally {
+			this.unlockRead(stamp);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see net.sf.jtemporal.spi.TemporalAttributeStorage#entryIterator(net.sf.jtemporal.Period)
+	 */
+	@Override
+	public CloseableIterator<TimedObject<T>> entryIterator(Period p) {
+		long stamp = this.lockRead();
+		try {
+			return this.entryIterator(copy(super.entryIterator(p)));
+		}
+		finally {
+			this.unlockRead(stamp);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see net.sf.jtemporal.spi.TemporalAttributeStorage#periodIterator()
+	 */
+	@Override
+	public CloseableIterator<Period> periodIterator() {
+		long stamp = this.lockRead();
+		try {
+			return this.periodIterator(copy(super.periodIterator()));
+		}
+		finally {
+			this.unlockRead(stamp);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see net.sf.jtemporal.spi.TemporalAttributeStorage#periodIterator(net.sf.jtemporal.Period)
+	 */
+	@Override
+	public CloseableIterator<Period> periodIterator(Period p) {
+		long stamp = this.lockRead();
+		try {
+			return this.periodIterator(copy(super.periodIterator(p)));
+		}
+		finally {
+			this.unlockRead(stamp);
+		}
+	}
+}
@@ -0,0 +1,176 @@
+/*
+   This file is part of the JTemporal framework (http://jtemporal.sf.net).
+   Copyright (C) 2002 by the author(s).
+   Distributable under LGPL license version 2.1 or later,
+   with no warranties given or implied.
+   See terms of license at gnu.org or www.opensource.org/licenses  */
+
+package net.sf.jtemporal.spi;
+
+import java.io.Serializable;
+
+import net.sf.jtemporal.Instant;
+import net.sf.jtemporal.LongInstant;
+import net.sf.jtemporal.Period;
+
+/**
+ * A transient implementation of TemporalAttributeStorage dedicated to
+ * periods of {@linkplain LongInstant}s. <br>
+ * The period boundaries are stored as primitive <tt>long</tt>s in two
+ * parallel arrays (starts and ends), sorted by start, beside the array of
+ * the values. The {@linkplain Instant} and {@linkplain Period} objects are
+ * only created when they are returned to the caller. <br>
+ * As a result, {@linkplain #getValue(Instant)} never allocates any object.
+ * {@linkplain #getEntryStartingAt(Instant)} and {@linkplain #getEntryEndingAt(Instant)}
+ * allocate only when an entry is found: its two LongInstants, its Period
+ * and the entry itself.  When no entry is found, which is the common case of
+ * the defragmentation performed by {@linkplain net.sf.jtemporal.TemporalAttributeImpl#put(Period, Object)},
+ * they allocate nothing. <br>
+ * Only periods made of LongInstants can be stored, and the returned periods
+ * are equal, but not identical, to the stored ones. <br>
+ * <b>Note: this implementation is not synchronized.</b>
+ * @author Thomas A Beck
+ * @version $Id$
+ * @param <T> the type of the value that is stored
+ * @see ArrayTemporalAttributeStorage
+ */
+public class LongTemporalAttributeStorage<T> extends IndexedTemporalAttributeStorage<T>
+  implements Serializable
+{
+	private static final long serialVersionUID = -3178021977440357326L;
+
+	private static final int DEFAULT_CAPACITY = 4;
+
+	// sorted by start, [starts[i], ends[i]) is associated to values[i]
+	private long[] starts;
+	private long[] ends;
+	private Object[] values;
+	private int size = 0;
+
+	/**
+	 * Creates an empty TemporalAttributeStorage.
+	 */
+	public LongTemporalAttributeStorage() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Creates an empty TemporalAttributeStorage, able to hold the
+	 * given number of entries without growing.
+	 * @param initialCapacity the initial capacity of the arrays
+	 * @throws IllegalArgumentException if initialCapacity is negative
+	 */
+	public LongTemporalAttributeStorage(int initialCapacity) {
+		if (initialCapacity < 0) {
+			throw new IllegalArgumentException("initialCapacity < 0");
+		}
+		this.starts = new long[initialCapacity];
+		this.ends   = new long[initialCapacity];
+		this.values = new Object[initialCapacity];
+	}
+
+	@Override
+	int compareStart(int index, Instant instant) {
+		long start = this.starts[index];
+		long value = toLong(instant);
+		return start < value ? -1 : (start == value ? 0 : 1);
+	}
+
+	@Override
+	boolean contains(int index, Instant instant) {
+		long value = toLong(instant);
+		return this.starts[index] <= value && endsAfter(this.ends[index], value);
+	}
+
+	@Override
+	boolean endsAt(int index, Instant instant) {
+		return this.ends[index] == toLong(instant);
+	}
+
+	@Override
+	boolean precedes(int index, Period p) {
+		return this.ends[index] <= toLong(p.getStart());
+	}
+
+	@Override
+	Period periodAt(int index) {
+		return new Period(
+			LongInstant.valueOf(this.starts[index]),
+			LongInstant.valueOf(this.ends[index])
+		);
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	T valueAt(int index) {
+		return (T) this.values[index];
+	}
+
+	@Override
+	void insert(int index, Period p, T value) {
+		long start = toLong(p.getStart());
+		long end = toLong(p.getEnd());
+		this.ensureCapacity(this.size + 1);
+		int moved = this.size - index;
+		if (moved > 0) {
+			// make a gap
+			System.arraycopy(this.starts, index, this.starts, index + 1, moved);
+			System.arraycopy(this.ends,   index, this.ends,   index + 1, moved);
+			System.arraycopy(this.values, index, this.values, index + 1, moved);
+		}
+		this.starts[index] = start;
+		this.ends[index]   = end;
+		this.values[index] = value;
+		this.size++;
+	}
+
+	@Override
+	void delete(int from, int to) {
+		int count = to - from;
+		int moved = this.size - to;
+		System.arraycopy(this.starts, to, this.starts, from, moved);
+		System.arraycopy(this.ends,   to, this.ends,   from, moved);
+		System.arraycopy(this.values, to, this.values, from, moved);
+		for (int i = this.size - count; i < this.size; i++) {
+			this.values[i] = null;  // allows gc
+		}
+		this.size -= count;
+	}
+
+	private void ensureCapacity(int minCapacity) {
+		int oldCapacity = this.starts.length;
+		if (minCapacity <= oldCapacity) {
+			return;
+		}
+		this.resize(newCapacity(oldCapacity, minCapacity));
+	}
+
+	private void resize(int newCapacity) {
+		long[] newStarts = new long[newCapacity];
+		long[] newEnds   = new long[newCapacity];
+		Object[] newValues = new Object[newCapacity];
+		System.arraycopy(this.starts, 0, newStarts, 0, this.size);
+		System.arraycopy(this.ends,   0, newEnds,   0, this.size);
+		System.arraycopy(this.values, 0, newValues, 0, this.size);
+		this.starts = newStarts;
+		this.ends   = newEnds;
+		this.values = newValues;
+	}
+
+	/* (non-Javadoc)
+	 * @see net.sf.jtemporal.spi.TemporalAttributeStorage#size()
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Trims the capacity of the internal arrays to the current size.
+	 * @see java.util.ArrayList#trimToSize()
+	 */
+	public void trimToSize() {
+		if (this.size < this.starts.length) {
+			this.resize(this.size);
+		}
+	}
+}
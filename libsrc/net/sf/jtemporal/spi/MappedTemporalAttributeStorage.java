@@ -0,0 +1,429 @@
+/*
+   This file is part of the JTemporal framework (http://jtemporal.sf.net).
+   Copyright (C) 2002 by the author(s).
+   Distributable under LGPL license version 2.1 or later,
+   with no warranties given or implied.
+   See terms of license at gnu.org or www.opensource.org/licenses  */
+
+package net.sf.jtemporal.spi;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.sf.jtemporal.Instant;
+import net.sf.jtemporal.LongInstant;
+import net.sf.jtemporal.Period;
+
+/**
+ * An implementation of TemporalAttributeStorage dedicated to periods of
+ * {@linkplain LongInstant}s, kept in a memory-mapped file. <br>
+ * The entries are fixed-width records (start, end, value reference),
+ * sorted by start, and binary-searched in place: the history is not
+ * loaded on the heap, and survives restarts without deserialization.
+ * Reopening a file only maps it. <br>
+ * The values are stored once each in a side dictionary, a second file
+ * named after the first one with the suffix <tt>.values</tt>, where they
+ * are appended using the Java serialization: the values must be
+ * {@linkplain Serializable}, and should be few compared to the entries
+ * (rates, states, codes...).  The dictionary is read on the heap when the
+ * file is opened, and is never compacted, except by {@linkplain #clear()}. <br>
+ * Like {@linkplain LongTemporalAttributeStorage}, {@linkplain #getValue(Instant)}
+ * never allocates any object.  The changes are written in the mapped memory,
+ * and left to the operating system unless {@linkplain #force()} is called. <br>
+ * A file holds at most about 100 millions entries (a single mapping).
+ * Since a growth maps the whole file again, the file grows by doubling, 
+ * and by at least 65536 entries. <br>
+ * The I/O failures are thrown as IllegalStateException. <br>
+ * <b>Note: this implementation is not synchronized.</b>
+ * @author Thomas A Beck
+ * @version $Id$
+ * @param <T> the type of the value that is stored
+ * @see LongTemporalAttributeStorage
+ */
+public class MappedTemporalAttributeStorage<T> extends IndexedTemporalAttributeStorage<T>
+  implements Closeable
+{
+	/** The suffix of the dictionary file. */
+	public static final String VALUES_SUFFIX = ".values";
+
+	private static final int MAGIC = 0x4A544D46; // "JTMF"
+	private static final int VERSION = 1;
+
+	// header: magic, version, size, reserved
+	private static final int SIZE_OFFSET = 8;
+	private static final int HEADER = 16;
+	// record: start, end, value reference
+	private static final int END_OFFSET = 8;
+	private static final int REF_OFFSET = 16;
+	private static final int RECORD = 20;
+
+	private static final int DEFAULT_CAPACITY = 1024;
+	// the minimum number of records added by a growth of the file
+	private static final int GROWTH = 64 * 1024;
+	private static final int MAX_CAPACITY = (Integer.MAX_VALUE - HEADER) / RECORD;
+
+	private final File file;
+	private final RandomAccessFile recordFile;
+	private final RandomAccessFile valueFile;
+	private MappedByteBuffer records;
+	private int capacity;
+	private int size;
+
+	// the dictionary: the value of each reference, and the reverse
+	private final List<Object> values = new ArrayList<Object>();
+	private final Map<Object,Integer> references = new HashMap<Object,Integer>();
+
+	// used to move the records
+	private final byte[] moveBuffer = new byte[RECORD * 512];
+
+	/**
+	 * Opens the storage kept in the given file, or creates it.
+	 * @param file the file of the records, the dictionary being kept
+	 * beside it, see {@linkplain #VALUES_SUFFIX}
+	 * @throws IOException if the files cannot be opened, or are not
+	 * a storage written by this class
+	 */
+	public MappedTemporalAttributeStorage(File file) throws IOException {
+		if (file == null) {
+			throw new IllegalArgumentException("null");
+		}
+		this.file = file;
+		this.recordFile = new RandomAccessFile(file, "rw");
+		this.valueFile = new RandomAccessFile(file.getPath() + VALUES_SUFFIX, "rw");
+		try {
+			if (this.recordFile.length() == 0) {
+				this.map(DEFAULT_CAPACITY);
+				this.records.putInt(0, MAGIC);
+				this.records.putInt(4, VERSION);
+				this.setSize(0);
+			}
+			else {
+				this.open();
+			}
+			this.readValues();
+		}
+		catch (IOException e) {
+			this.closeFiles();
+			throw e;
+		}
+	}
+
+	private void open() throws IOException {
+		long length = this.recordFile.length();
+		if (length < HEADER || (length - HEADER) % RECORD != 0
+			|| length > HEADER + (long) MAX_CAPACITY * RECORD
+		) {
+			throw new IOException("Not a temporal attribute storage : " + this.file);
+		}
+		this.map((int) ((length - HEADER) / RECORD));
+		if (this.records.getInt(0) != MAGIC) {
+			throw new IOException("Not a temporal attribute storage : " + this.file);
+		}
+		if (this.records.getInt(4) != VERSION) {
+			throw new IOException("Unsupported version " + this.records.getInt(4) + " : " + this.file);
+		}
+		this.size = this.records.getInt(SIZE_OFFSET);
+		if (this.size < 0 || this.size > this.capacity) {
+			throw new IOException("Corrupted size " + this.size + " : " + this.file);
+		}
+	}
+
+	/**
+	 * Maps the file, growing it if needed.
+	 */
+	private void map(int newCapacity) throws IOException {
+		this.records = this.recordFile.getChannel().map(
+			FileChannel.MapMode.READ_WRITE, 0, HEADER + (long) newCapacity * RECORD
+		);
+		this.capacity = newCapacity;
+	}
+
+	/**
+	 * Reads the dictionary: each value is a length followed by its serialized form.
+	 */
+	private void readValues() throws IOException {
+		byte[] all = new byte[(int) this.valueFile.length()];
+		this.valueFile.seek(0);
+		this.valueFile.readFully(all);
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(all));
+		try {
+			while (in.available() > 0) {
+				byte[] bytes = new byte[in.readInt()];
+				in.readFully(bytes);
+				this.addValue(new ObjectInputStream(new ByteArrayInputStream(bytes)).readObject());
+			}
+		}
+		catch (EOFException e) {
+			throw new IOException("Truncated dictionary : " + this.file + VALUES_SUFFIX);
+		}
+		catch (ClassNotFoundException e) {
+			throw new IOException("Unknown value class " + e.getMessage() + " : " + this.file + VALUES_SUFFIX);
+		}
+	}
+
+	private int addValue(Object value) {
+		int ref = this.values.size();
+		this.values.add(value);
+		this.references.put(value, Integer.valueOf(ref));
+		return ref;
+	}
+
+	/**
+	 * Returns the reference of the value, appending it to the dictionary if needed.
+	 */
+	private int referenceOf(Object value) {
+		Integer ref = this.references.get(value);
+		if (ref != null) {
+			return ref.intValue();
+		}
+		if (!(value instanceof Serializable)) {
+			throw new IllegalArgumentException("Not Serializable : " + value);
+		}
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			ObjectOutputStream out = new ObjectOutputStream(bytes);
+			out.writeObject(value);
+			out.close();
+			// appended before any record refers to it
+			this.valueFile.seek(this.valueFile.length());
+			this.valueFile.writeInt(bytes.size());
+			this.valueFile.write(bytes.toByteArray());
+		}
+		catch (IOException e) {
+			throw new IllegalStateException("Cannot write the value " + value, e);
+		}
+		return this.addValue(value);
+	}
+
+	private MappedByteBuffer records() {
+		if (this.records == null) {
+			throw new IllegalStateException("closed");
+		}
+		return this.records;
+	}
+
+	private long startAt(int index) {
+		return this.records().getLong(HEADER + index * RECORD);
+	}
+
+	private long endAt(int index) {
+		return this.records().getLong(HEADER + index * RECORD + END_OFFSET);
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	T valueAt(int index) {
+		return (T) this.values.get(this.records().getInt(HEADER + index * RECORD + REF_OFFSET));
+	}
+
+	private void setRecord(int index, long start, long end, int ref) {
+		int offset = HEADER + index * RECORD;
+		MappedByteBuffer records = this.records();
+		records.putLong(offset, start);
+		records.putLong(offset + END_OFFSET, end);
+		records.putInt(offset + REF_OFFSET, ref);
+	}
+
+	private void setSize(int size) {
+		this.size = size;
+		this.records().putInt(SIZE_OFFSET, size);
+	}
+
+	@Override
+	Period periodAt(int index) {
+		return new Period(
+			LongInstant.valueOf(this.startAt(index)),
+			LongInstant.valueOf(this.endAt(index))
+		);
+	}
+
+	@Override
+	int compareStart(int index, Instant instant) {
+		long start = this.startAt(index);
+		long value = toLong(instant);
+		return start < value ? -1 : (start == value ? 0 : 1);
+	}
+
+	@Override
+	boolean contains(int index, Instant instant) {
+		long value = toLong(instant);
+		return this.startAt(index) <= value && endsAfter(this.endAt(index), value);
+	}
+
+	@Override
+	boolean endsAt(int index, Instant instant) {
+		return this.endAt(index) == toLong(instant);
+	}
+
+	@Override
+	boolean precedes(int index, Period p) {
+		return this.endAt(index) <= toLong(p.getStart());
+	}
+
+	@Override
+	void insert(int index, Period p, T value) {
+		long start = toLong(p.getStart());
+		long end = toLong(p.getEnd());
+		int ref = this.referenceOf(value);
+		this.ensureCapacity(this.size + 1);
+		// make a gap
+		this.moveRecords(index, this.size, 1);
+		this.setRecord(index, start, end, ref);
+		this.setSize(this.size + 1);
+	}
+
+	@Override
+	void delete(int from, int to) {
+		int count = to - from;
+		this.moveRecords(to, this.size, -count);
+		this.setSize(this.size - count);
+	}
+
+	private void ensureCapacity(int minCapacity) {
+		if (minCapacity <= this.capacity) {
+			return;
+		}
+		if (minCapacity > MAX_CAPACITY) {
+			throw new IllegalStateException("Storage full : " + this.file);
+		}
+		long newCapacity = Math.max(2L * this.capacity, (long) this.capacity + GROWTH);
+		newCapacity = Math.max(minCapacity, Math.min(MAX_CAPACITY, newCapacity));
+		try {
+			this.map((int) newCapacity);
+		}
+		catch (IOException e) {
+			throw new IllegalStateException("Cannot grow " + this.file, e);
+		}
+	}
+
+	/**
+	 * Moves the records from index <tt>from</tt> (inclusive) to <tt>to</tt>
+	 * (exclusive) by <tt>shift</tt> records, chunk by chunk, starting from
+	 * the side that is not overwritten.
+	 */
+	private void moveRecords(int from, int to, int shift) {
+		int chunk = this.moveBuffer.length / RECORD;
+		ByteBuffer buffer = this.records().duplicate();
+		if (shift > 0) {
+			for (int end = to; end > from; end -= chunk) {
+				int start = Math.max(from, end - chunk);
+				this.moveChunk(buffer, start, end, shift);
+			}
+		}
+		else {
+			for (int start = from; start < to; start += chunk) {
+				this.moveChunk(buffer, start, Math.min(to, start + chunk), shift);
+			}
+		}
+	}
+
+	private void moveChunk(ByteBuffer buffer, int from, int to, int shift) {
+		int length = (to - from) * RECORD;
+		buffer.position(HEADER + from * RECORD);
+		buffer.get(this.moveBuffer, 0, length);
+		buffer.position(HEADER + (from + shift) * RECORD);
+		buffer.put(this.moveBuffer, 0, length);
+	}
+
+	/**
+	 * Writes the changes to the disk, including the dictionary.
+	 * @throws IOException
+	 */
+	public void force() throws IOException {
+		this.records().force();
+		this.valueFile.getChannel().force(false);
+	}
+
+	/**
+	 * Writes the changes to the disk, and closes the files. <br>
+	 * This storage cannot be used any more.
+	 * @see java.io.Closeable#close()
+	 */
+	public void close() throws IOException {
+		if (this.records == null) {
+			return;
+		}
+		try {
+			this.force();
+		}
+		finally {
+			// the mapping is released by the garbage collector
+			this.records = null;
+			this.closeFiles();
+		}
+	}
+
+	private void closeFiles() throws IOException {
+		try {
+			this.recordFile.close();
+		}
+		finally {
+			this.valueFile.close();
+		}
+	}
+
+	/**
+	 * The number of values in the dictionary, including those no longer used.
+	 * @return the number of values in the dictionary
+	 */
+	public int valueCount() {
+		return this.values.size();
+	}
+
+	/**
+	 * Compares the value references, without reading the values.
+	 */
+	@Override
+	boolean containsValue(Object value, int from, int to) {
+		Integer ref = this.references.get(value);
+		if (ref == null) {
+			return false;
+		}
+		for (int i = from; i < to; i++) {
+			if (this.records().getInt(HEADER + i * RECORD + REF_OFFSET) == ref.intValue()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Removes all the entries, and empties the dictionary.
+	 * @see net.sf.jtemporal.spi.TemporalAttributeStorage#clear()
+	 */
+	@Override
+	public void clear() {
+		super.clear();
+		try {
+			this.valueFile.setLength(0);
+		}
+		catch (IOException e) {
+			throw new IllegalStateException("Cannot clear " + this.file + VALUES_SUFFIX, e);
+		}
+		this.values.clear();
+		this.references.clear();
+	}
+
+	/* (non-Javadoc)
+	 * @see net.sf.jtemporal.spi.TemporalAttributeStorage#size()
+	 */
+	public int size() {
+		return this.size;
+	}
+}
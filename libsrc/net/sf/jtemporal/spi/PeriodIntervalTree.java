@@ -0,0 +1,315 @@
+/*
+   This file is part of the JTemporal framework (http://jtemporal.sf.net).
+   Copyright (C) 2002 by the author(s).
+   Distributable under LGPL license version 2.1 or later,
+   with no warranties given or implied.
+   See terms of license at gnu.org or www.opensource.org/licenses  */
+
+package net.sf.jtemporal.spi;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import net.sf.jtemporal.Instant;
+import net.sf.jtemporal.LongInstant;
+import net.sf.jtemporal.Period;
+import net.sf.jtemporal.SimpleTimedObject;
+import net.sf.jtemporal.TimedObject;
+
+/**
+ * An augmented interval tree indexing (period, value) pairs. <br>
+ * The tree is an AVL tree sorted by period start (then end),
+ * each node holding all the values sharing the same period, and the
+ * highest end of its subtree. <br>
+ * This allows to find the entries containing an instant,
+ * or intersecting a period, in O(log n + k), where k is the number
+ * of entries found, instead of checking all the entries. <br>
+ * Does not check for duplicate entries, this is left to the caller. <br>
+ * <b>Note: this implementation is not synchronized.</b>
+ * @author Thomas A Beck
+ * @version $Id$
+ * @param <T> the type of the indexed values
+ */
+final class PeriodIntervalTree<T> {
+
+    private static final class Node<T> {
+        final Period period;
+        final List<T> values = new ArrayList<T>(1);
+        Node<T> left;
+        Node<T> right;
+        Instant maxEnd;   // the highest end in this subtree
+        int height = 1;
+
+        Node(Period period, T value) {
+            this.period = period;
+            this.maxEnd = period.getEnd();
+            this.values.add(value);
+        }
+    }
+
+    private Node<T> root = null;
+    private int size = 0;
+
+    // set by delete(), avoids to allocate a holder
+    private boolean removed;
+
+    private static int compare(Period p1, Period p2) {
+        int cmp = LongInstant.compare(p1.getStart(), p2.getStart());
+        if (cmp != 0) return cmp;
+        return LongInstant.compare(p1.getEnd(), p2.getEnd());
+    }
+
+    private static Instant max(Instant i1, Instant i2) {
+        return LongInstant.compare(i1, i2) >= 0 ? i1 : i2;
+    }
+
+    /**
+     * Tells whether a period with the given end contains the given instant,
+     * provided it starts before: as {@linkplain Period#contains(Instant)},
+     * a period ending at positive infinity contains positive infinity.
+     */
+    private static boolean endsAfter(Instant end, Instant instant) {
+        return end.isPositiveInfinity() || LongInstant.compare(end, instant) > 0;
+    }
+
+    private static <T> int height(Node<T> n) {
+        return n == null ? 0 : n.height;
+    }
+
+    private static <T> void update(Node<T> n) {
+        n.height = Math.max(height(n.left), height(n.right)) + 1;
+        Instant maxEnd = n.period.getEnd();
+        if (n.left != null)  maxEnd = max(maxEnd, n.left.maxEnd);
+        if (n.right != null) maxEnd = max(maxEnd, n.right.maxEnd);
+        n.maxEnd = maxEnd;
+    }
+
+    private static <T> Node<T> rotateRight(Node<T> n) {
+        Node<T> l = n.left;
+        n.left = l.right;
+        l.right = n;
+        update(n);
+        update(l);
+        return l;
+    }
+
+    private static <T> Node<T> rotateLeft(Node<T> n) {
+        Node<T> r = n.right;
+        n.right = r.left;
+        r.left = n;
+        update(n);
+        update(r);
+        return r;
+    }
+
+    private static <T> Node<T> balance(Node<T> n) {
+        update(n);
+        int bf = height(n.left) - height(n.right);
+        if (bf > 1) {
+            if (height(n.left.left) < height(n.left.right)) {
+                n.left = rotateLeft(n.left);
+            }
+            return rotateRight(n);
+        }
+        if (bf < -1) {
+            if (height(n.right.right) < height(n.right.left)) {
+                n.right = rotateRight(n.right);
+            }
+            return rotateLeft(n);
+        }
+        return n;
+    }
+
+    /**
+     * Adds an entry to the index.
+     * @param p the period of the entry
+     * @param value the value of the entry
+     */
+    void put(Period p, T value) {
+        this.root = this.insert(this.root, p, value);
+        this.size++;
+    }
+
+    private Node<T> insert(Node<T> n, Period p, T value) {
+        if (n == null) {
+            return new Node<T>(p, value);
+        }
+        int cmp = compare(p, n.period);
+        if (cmp < 0) {
+            n.left = this.insert(n.left, p, value);
+        }
+        else if (cmp > 0) {
+            n.right = this.insert(n.right, p, value);
+        }
+        else {
+            n.values.add(value);  // same period, the shape does not change
+            return n;
+        }
+        return balance(n);
+    }
+
+    /**
+     * Removes an entry from the index.
+     * @param p the period of the entry
+     * @param value the value of the entry
+     * @return <tt>true</tt> if the entry has been found
+     */
+    boolean remove(Period p, Object value) {
+        this.removed = false;
+        this.root = this.delete(this.root, p, value);
+        if (this.removed) {
+            this.size--;
+        }
+        return this.removed;
+    }
+
+    private Node<T> delete(Node<T> n, Period p, Object value) {
+        if (n == null) {
+            return null;
+        }
+        int cmp = compare(p, n.period);
+        if (cmp < 0) {
+            n.left = this.delete(n.left, p, value);
+        }
+        else if (cmp > 0) {
+            n.right = this.delete(n.right, p, value);
+        }
+        else {
+            this.removed = n.values.remove(value);
+            if (!n.values.isEmpty()) {
+                return n;
+            }
+            if (n.left == null) return n.right;
+            if (n.right == null) return n.left;
+
+            // replace n by its successor
+            Node<T> successor = n.right;
+            while (successor.left != null) {
+                successor = successor.left;
+            }
+            successor.right = deleteMin(n.right);
+            successor.left = n.left;
+            n = successor;
+        }
+        return balance(n);
+    }
+
+    private static <T> Node<T> deleteMin(Node<T> n) {
+        if (n.left == null) {
+            return n.right;
+        }
+        n.left = deleteMin(n.left);
+        return balance(n);
+    }
+
+    /**
+     * Removes all the entries.
+     */
+    void clear() {
+        this.root = null;
+        this.size = 0;
+    }
+
+    /**
+     * Returns the number of entries.
+     * @return the number of entries.
+     */
+    int size() {
+        return this.size;
+    }
+
+    /**
+     * Returns <tt>true</tt> if no entry contains the given instant.
+     * @param instant the instant to be checked
+     * @return <tt>true</tt> if no entry contains the given instant.
+     */
+    boolean isEmpty(Instant instant) {
+        Node<T> n = this.root;
+        while (n != null && endsAfter(n.maxEnd, instant)) {
+            if (n.left != null && endsAfter(n.left.maxEnd, instant)) {
+                // if the left subtree does not contain it, the right one cannot
+                n = n.left;
+                continue;
+            }
+            if (LongInstant.compare(n.period.getStart(), instant) > 0) {
+                return true;
+            }
+            if (endsAfter(n.period.getEnd(), instant)) {
+                return false;
+            }
+            n = n.right;
+        }
+        return true;
+    }
+
+    /**
+     * Returns the number of entries containing the given instant.
+     * @param instant the instant to be checked
+     * @return the number of entries containing the given instant.
+     */
+    int sizeAt(Instant instant) {
+        return count(this.root, instant);
+    }
+
+    private static <T> int count(Node<T> n, Instant instant) {
+        int count = 0;
+        while (n != null && endsAfter(n.maxEnd, instant)) {
+            count += count(n.left, instant);
+            if (LongInstant.compare(n.period.getStart(), instant) > 0) {
+                break;
+            }
+            if (endsAfter(n.period.getEnd(), instant)) {
+                count += n.values.size();
+            }
+            n = n.right;
+        }
+        return count;
+    }
+
+    /**
+     * Returns the entries containing the given instant,
+     * sorted by period.
+     * @param instant the instant to be checked
+     * @return instances of {@linkplain TimedObject}
+     */
+    List<TimedObject<T>> entriesAt(Instant instant) {
+        List<TimedObject<T>> result = new ArrayList<TimedObject<T>>();
+        collect(this.root, instant, instant, result);
+        return result;
+    }
+
+    /**
+     * Returns the entries intersecting the given period,
+     * sorted by period.
+     * @param range the period to be checked
+     * @return instances of {@linkplain TimedObject}
+     */
+    List<TimedObject<T>> entriesIn(Period range) {
+        List<TimedObject<T>> result = new ArrayList<TimedObject<T>>();
+        collect(this.root, range.getStart(), range.getEnd(), result);
+        return result;
+    }
+
+    /**
+     * Collects the entries having start < to (or start <= to if from == to),
+     * and end > from, using an in-order visit.
+     */
+    private static <T> void collect(
+        Node<T> n, Instant from, Instant to, List<TimedObject<T>> result
+    ) {
+        boolean atInstant = (from == to);
+        while (n != null && endsAfter(n.maxEnd, from)) {
+            collect(n.left, from, to, result);
+            int cmp = LongInstant.compare(n.period.getStart(), to);
+            if (cmp > 0 || (cmp == 0 && !atInstant)) {
+                return;
+            }
+            if (endsAfter(n.period.getEnd(), from)) {
+                for (T value : n.values) {
+                    result.add(new SimpleTimedObject<T>(n.period, value));
+                }
+            }
+            n = n.right;
+        }
+    }
+}
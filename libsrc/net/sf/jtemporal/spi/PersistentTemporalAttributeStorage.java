@@ -0,0 +1,689 @@
+/*
+   This file is part of the JTemporal framework (http://jtemporal.sf.net).
+   Copyright (C) 2002 by the author(s).
+   Distributable under LGPL license version 2.1 or later,
+   with no warranties given or implied.
+   See terms of license at gnu.org or www.opensource.org/licenses  */
+
+package net.sf.jtemporal.spi;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import net.sf.jtemporal.Instant;
+import net.sf.jtemporal.IsTime;
+import net.sf.jtemporal.Period;
+import net.sf.jtemporal.SimpleTimedObject;
+import net.sf.jtemporal.TimedObject;
+import net.sf.jtemporal.util.CloseableIterator;
+
+/**
+ * A transient implementation of TemporalAttributeStorage based on a
+ * persistent (immutable, structurally shared) AVL tree, sorted by
+ * period start with {@linkplain StartComparator}. <br>
+ * The nodes are never modified: each update creates only the O(log n)
+ * nodes on the path from the root to the updated entry, and shares
+ * all the other nodes with the previous version of the tree. <br>
+ * Therefore {@linkplain #snapshot()} costs O(1): it returns a new
+ * storage sharing the current tree, that is not affected by the
+ * following updates of this storage (and vice versa). Snapshots can be
+ * read by other threads without any synchronization, provided they are
+ * safely published, and can be used behind a
+ * {@linkplain net.sf.jtemporal.TemporalAttributeImpl}. <br>
+ * For the same reason, the iterators iterate over the version of the
+ * tree current when they have been created, and never throw
+ * ConcurrentModificationException. <br>
+ * <b>Note: this implementation is not synchronized.</b> Updating the same
+ * storage from several threads needs external synchronization.
+ * @author Thomas A Beck
+ * @version $Id$
+ * @param <T> the type of the value that is stored
+ */
+public class PersistentTemporalAttributeStorage<T>
+  implements TemporalAttributeStorage<T>, BulkLoadableStorage<T>, Serializable
+{
+	private static final long serialVersionUID = -5839267407612851407L;
+
+	/**
+	 * Immutable node of the tree.
+	 */
+	private static final class Node implements Serializable {
+		private static final long serialVersionUID = 3326081796574021853L;
+
+		final Period period;
+		final Object value;
+		final Node left;
+		final Node right;
+		final int height;
+		final int count;  // the number of nodes in this subtree
+
+		Node(Period period, Object value, Node left, Node right) {
+			this.period = period;
+			this.value = value;
+			this.left = left;
+			this.right = right;
+			this.height = Math.max(height(left), height(right)) + 1;
+			this.count = count(left) + count(right) + 1;
+		}
+
+		Node withChildren(Node newLeft, Node newRight) {
+			if (newLeft == this.left && newRight == this.right) {
+				return this;
+			}
+			return balance(this.period, this.value, newLeft, newRight);
+		}
+	}
+
+	private Node root;
+
+	/**
+	 * Creates an empty TemporalAttributeStorage.
+	 */
+	public PersistentTemporalAttributeStorage() {
+		this.root = null;
+	}
+
+	private PersistentTemporalAttributeStorage(Node root) {
+		this.root = root;
+	}
+
+	/**
+	 * Returns a storage containing the current entries of this storage,
+	 * in constant time. <br>
+	 * The returned storage and this storage share their current tree:
+	 * they can be updated independently, the updates of either are not
+	 * visible from the other.
+	 * @return a new storage sharing the content of this storage
+	 */
+	public PersistentTemporalAttributeStorage<T> snapshot() {
+		return new PersistentTemporalAttributeStorage<T>(this.root);
+	}
+
+	////////////////////////////////////////////////////////////// tree
+
+	private static int height(Node n) {
+		return n == null ? 0 : n.height;
+	}
+
+	private static int count(Node n) {
+		return n == null ? 0 : n.count;
+	}
+
+	private static int compare(IsTime t1, IsTime t2) {
+		return StartComparator.COMPARATOR.compare(t1, t2);
+	}
+
+	/**
+	 * Creates a balanced node from a node whose subtrees heights differ
+	 * by at most two.
+	 */
+	private static Node balance(Period period, Object value, Node left, Node right) {
+		int bf = height(left) - height(right);
+		if (bf > 1) {
+			if (height(left.left) < height(left.right)) {
+				// left-right case
+				Node lr = left.right;
+				return new Node(lr.period, lr.value,
+					new Node(left.period, left.value, left.left, lr.left),
+					new Node(period, value, lr.right, right)
+				);
+			}
+			return new Node(left.period, left.value,
+				left.left,
+				new Node(period, value, left.right, right)
+			);
+		}
+		if (bf < -1) {
+			if (height(right.right) < height(right.left)) {
+				// right-left case
+				Node rl = right.left;
+				return new Node(rl.period, rl.value,
+					new Node(period, value, left, rl.left),
+					new Node(right.period, right.value, rl.right, right.right)
+				);
+			}
+			return new Node(right.period, right.value,
+				new Node(period, value, left, right.left),
+				right.right
+			);
+		}
+		return new Node(period, value, left, right);
+	}
+
+	private static Node insert(Node n, Period p, Object value) {
+		if (n == null) {
+			return new Node(p, value, null, null);
+		}
+		int cmp = compare(p, n.period);
+		if (cmp < 0) {
+			return n.withChildren(insert(n.left, p, value), n.right);
+		}
+		if (cmp > 0) {
+			return n.withChildren(n.left, insert(n.right, p, value));
+		}
+		// Invariant broken
+		throw new IllegalStateException(
+			"Period " + p + " already contained " + n.value + " instead of " + value
+		);
+	}
+
+	private static Node delete(Node n, Period p) {
+		if (n == null) {
+			throw new NoSuchElementException("Period not found : " + p);
+		}
+		int cmp = compare(p, n.period);
+		if (cmp < 0) {
+			return n.withChildren(delete(n.left, p), n.right);
+		}
+		if (cmp > 0) {
+			return n.withChildren(n.left, delete(n.right, p));
+		}
+		if (!n.period.equals(p)) {
+			throw new NoSuchElementException("Period not found : " + p);
+		}
+		if (n.left == null) return n.right;
+		if (n.right == null) return n.left;
+		Node successor = n.right;
+		while (successor.left != null) {
+			successor = successor.left;
+		}
+		return balance(successor.period, successor.value, n.left, deleteMin(n.right));
+	}
+
+	private static Node deleteMin(Node n) {
+		if (n.left == null) {
+			return n.right;
+		}
+		return n.withChildren(deleteMin(n.left), n.right);
+	}
+
+	/**
+	 * Returns the node with the highest start <= instant.
+	 */
+	private Node floor(Instant instant) {
+		Node n = this.root;
+		Node found = null;
+		while (n != null) {
+			if (compare(n.period, instant) <= 0) {
+				found = n;
+				n = n.right;
+			}
+			else {
+				n = n.left;
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * Returns the node with the highest start < instant.
+	 */
+	private Node lower(Instant instant) {
+		Node n = this.root;
+		Node found = null;
+		while (n != null) {
+			if (compare(n.period, instant) < 0) {
+				found = n;
+				n = n.right;
+			}
+			else {
+				n = n.left;
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * Returns the node containing the instant, or null.
+	 */
+	private Node nodeAt(Instant instant) {
+		Node n = this.floor(instant);
+		if (n != null && n.period.contains(instant)) {
+			return n;
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the number of nodes whose start < instant.
+	 */
+	private int rank(IsTime instant) {
+		Node n = this.root;
+		int rank = 0;
+		while (n != null) {
+			if (compare(n.period, instant) < 0) {
+				rank += count(n.left) + 1;
+				n = n.right;
+			}
+			else {
+				n = n.left;
+			}
+		}
+		return rank;
+	}
+
+	/**
+	 * Returns the lowest start of the entries intersecting the range,
+	 * mimics the sub maps of {@linkplain TreeTemporalAttributeStorage}.
+	 */
+	private IsTime rangeStart(Period range) {
+		if (range == null) {
+			throw new IllegalArgumentException("range == null");
+		}
+		Node first = this.nodeAt(range.getStart());
+		return first == null ? range.getStart() : first.period;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T> TimedObject<T> entry(Node n) {
+		return new SimpleTimedObject<T>(n.period, (T) n.value);
+	}
+
+	//////////////////////////////////////////////////////////// storage
+
+	/* (non-Javadoc)
+	 * @see net.sf.jtemporal.spi.TemporalAttributeStorage#lastPeriod()
+	 */
+	public Period lastPeriod() {
+		Node n = this.root;
+		if (n == null) {
+			throw new NoSuchElementException();
+		}
+		while (n.right != null) {
+			n = n.right;
+		}
+		return n.period;
+	}
+
+	/* (non-Javadoc)
+	 * @see net.sf.jtemporal.spi.TemporalAttributeStorage#lastPeriod(net.sf.jtemporal.Period)
+	 */
+	public Period lastPeriod(Period range) {
+		IsTime from = this.rangeStart(range);
+		Node last = this.lower(range.getEnd());
+		if (last == null || compare(last.period, from) < 0) {
+			throw new NoSuchElementException();
+		}
+		return last.period;
+	}
+
+	/* (non-Javadoc)
+	 * @see net.sf.jtemporal.spi.TemporalAttributeStorage#firstPeriod()
+	 */
+	public Period firstPeriod() {
+		Node n = this.root;
+		if (n == null) {
+			throw new NoSuchElementException();
+		}
+		while (n.left != null) {
+			n = n.left;
+		}
+		return n.period;
+	}
+
+	/* (non-Javadoc)
+	 * @see net.sf.jtemporal.spi.TemporalAttributeStorage#firstPeriod(net.sf.jtemporal.Period)
+	 */
+	public Period firstPeriod(Period range) {
+		CloseableIterator<Period> i = this.periodIterator(range);
+		if (!i.hasNext()) {
+			throw new NoSuchElementException();
+		}
+		Period first = i.next();
+		i.close();
+		return first;
+	}
+
+	/* (non-Javadoc)
+	 * @see net.sf.jtemporal.spi.TemporalAttributeStorage#isEmpty()
+	 */
+	public boolean isEmpty() {
+		return this.root == null;
+	}
+
+	/* (non-Javadoc)
+	 * @see net.sf.jtemporal.spi.TemporalAttributeStorage#isEmpty(net.sf.jtemporal.Period)
+	 */
+	public boolean isEmpty(Period range) {
+		return this.size(range) == 0;
+	}
+
+	/* (non-Javadoc)
+	 * @see net.sf.jtemporal.spi.TemporalAttributeStorage#containsValue(java.lang.Object)
+	 */
+	public boolean containsValue(Object value) {
+		CloseableIterator<TimedObject<T>> i = this.entryIterator();
+		while (i.hasNext()) {
+			if (i.next().getValue().equals(value)) {
+				i.close();
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/* (non-Javadoc)
+	 * @see net.sf.jtemporal.spi.TemporalAttributeStorage#containsValue(java.lang.Object, net.sf.jtemporal.Period)
+	 */
+	public boolean containsValue(Object value, Period range) {
+		CloseableIterator<TimedObject<T>> i = this.entryIterator(range);
+		while (i.hasNext()) {
+			if (i.next().getValue().equals(value)) {
+				i.close();
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/* (non-Javadoc)
+	 * @see net.sf.jtemporal.spi.TemporalAttributeStorage#getValue(net.sf.jtemporal.Instant)
+	 */
+	@SuppressWarnings("unchecked")
+	public T getValue(Instant instant) {
+		Node n = this.nodeAt(instant);
+		return n == null ? null : (T) n.value;
+	}
+
+	/* (non-Javadoc)
+	 * @see net.sf.jtemporal.spi.TemporalAttributeStorage#getPeriod(net.sf.jtemporal.Instant)
+	 */
+	public Period getPeriod(Instant instant) {
+		Node n = this.nodeAt(instant);
+		return n == null ? null : n.period;
+	}
+
+	/* (non-Javadoc)
+	 * @see net.sf.jtemporal.spi.TemporalAttributeStorage#getEntry(net.sf.jtemporal.Instant)
+	 */
+	public TimedObject<T> getEntry(Instant instant) {
+		Node n = this.nodeAt(instant);
+		return n == null ? null : PersistentTemporalAttributeStorage.<T>entry(n);
+	}
+
+	/* (non-Javadoc)
+	 * @see net.sf.jtemporal.spi.TemporalAttributeStorage#getEntryEndingAt(net.sf.jtemporal.Instant)
+	 */
+	public TimedObject<T> getEntryEndingAt(Instant instant) {
+		Node n = this.lower(instant);
+		if (n != null && n.period.getEnd().equals(instant)) {
+			return PersistentTemporalAttributeStorage.<T>entry(n);
+		}
+		return null;
+	}
+
+	/* (non-Javadoc)
+	 * @see net.sf.jtemporal.spi.TemporalAttributeStorage#getEntryStartingAt(net.sf.jtemporal.Instant)
+	 */
+	public TimedObject<T> getEntryStartingAt(Instant instant) {
+		Node n = this.floor(instant);
+		if (n != null && compare(n.period, instant) == 0) {
+			return PersistentTemporalAttributeStorage.<T>entry(n);
+		}
+		return null;
+	}
+
+	/* (non-Javadoc)
+	 * @see net.sf.jtemporal.spi.TemporalAttributeStorage#beginAtomicOperation()
+	 */
+	public void beginAtomicOperation() {
+		// this storage is not persistent
+	}
+
+	/* (non-Javadoc)
+	 * @see net.sf.jtemporal.spi.TemporalAttributeStorage#endAtomicOperation()
+	 */
+	public void endAtomicOperation() {
+		// this storage is not persistent
+	}
+
+	/* (non-Javadoc)
+	 * @see net.sf.jtemporal.spi.TemporalAttributeStorage#clear()
+	 */
+	public void clear() {
+		this.root = null;
+	}
+
+	/* (non-Javadoc)
+	 * @see net.sf.jtemporal.spi.TemporalAttributeStorage#size()
+	 */
+	public int size() {
+		return count(this.root);
+	}
+
+	/* (non-Javadoc)
+	 * @see net.sf.jtemporal.spi.TemporalAttributeStorage#size(net.sf.jtemporal.Period)
+	 */
+	public int size(Period range) {
+		int size = this.rank(range.getEnd()) - this.rank(this.rangeStart(range));
+		return size < 0 ? 0 : size;
+	}
+
+	/* (non-Javadoc)
+	 * @see net.sf.jtemporal.spi.TemporalAttributeStorage#put(net.sf.jtemporal.Period, java.lang.Object)
+	 */
+	public void put(Period p, T value) {
+		if (p == null || value == null) {
+			throw new IllegalArgumentException("null");
+		}
+		this.root = insert(this.root, p, value);
+	}
+
+	/**
+	 * Builds a new perfectly balanced tree from the current entries followed
+	 * by the given ones, in O(n) time. <br>
+	 * No entry is appended if one of them is faulty.
+	 * @see net.sf.jtemporal.spi.BulkLoadableStorage#bulkLoad(java.util.Iterator)
+	 */
+	public void bulkLoad(Iterator<? extends TimedObject<? extends T>> entries) {
+		if (entries == null) {
+			throw new IllegalArgumentException("null");
+		}
+		List<Period> periods = new ArrayList<Period>();
+		List<Object> values = new ArrayList<Object>();
+		CloseableIterator<TimedObject<T>> existing = this.entryIterator();
+		while (existing.hasNext()) {
+			TimedObject<T> to = existing.next();
+			periods.add(to.getPeriod());
+			values.add(to.getValue());
+		}
+		int size = periods.size();
+		Period last = size == 0 ? null : periods.get(size - 1);
+		while (entries.hasNext()) {
+			TimedObject<? extends T> to = entries.next();
+			if (to == null || to.getPeriod() == null || to.getValue() == null) {
+				throw new IllegalArgumentException("null");
+			}
+			Period p = to.getPeriod();
+			if (last != null && !last.precedes(p)) {
+				throw new IllegalArgumentException("Period " + p + " does not follow " + last);
+			}
+			periods.add(p);
+			values.add(to.getValue());
+			last = p;
+		}
+		if (periods.size() > size) {
+			this.root = build(periods, values, 0, periods.size());
+		}
+	}
+
+	/**
+	 * Builds a balanced tree from the sorted entries between
+	 * <tt>from</tt> (inclusive) and <tt>to</tt> (exclusive).
+	 */
+	private static Node build(List<Period> periods, List<Object> values, int from, int to) {
+		if (from >= to) {
+			return null;
+		}
+		int mid = (from + to) >>> 1;
+		return new Node(periods.get(mid), values.get(mid),
+			build(periods, values, from, mid),
+			build(periods, values, mid + 1, to)
+		);
+	}
+
+	/* (non-Javadoc)
+	 * @see net.sf.jtemporal.spi.TemporalAttributeStorage#removeEntry(net.sf.jtemporal.Period)
+	 */
+	public void removeEntry(Period p) {
+		if (p == null) {
+			throw new IllegalArgumentException("null");
+		}
+		this.root = delete(this.root, p);
+	}
+
+	/* (non-Javadoc)
+	 * @see net.sf.jtemporal.spi.TemporalAttributeStorage#removeRange(net.sf.jtemporal.Period)
+	 */
+	public int removeRange(Period range) {
+		// the iterator is not affected by the removals
+		CloseableIterator<Period> i = this.periodIterator(range);
+		int count = 0;
+		while (i.hasNext()) {
+			this.root = delete(this.root, i.next());
+			count++;
+		}
+		return count;
+	}
+
+	/**
+	 * Iterates in order over a version of the tree, from a given start
+	 * (inclusive) to a given end (exclusive).
+	 * The removal is performed on the storage, not on the iterated version.
+	 */
+	private abstract class TreeIterator<E> implements CloseableIterator<E> {
+
+		// the path to the next node, a node being pushed before its left child
+		private Node[] stack;
+		private int depth = 0;
+		private final Instant end;
+		private Node lastReturned = null;
+
+		TreeIterator(IsTime from, Instant end) {
+			Node n = PersistentTemporalAttributeStorage.this.root;
+			this.stack = new Node[height(n)];
+			this.end = end;
+			while (n != null) {
+				if (from == null || compare(n.period, from) >= 0) {
+					this.stack[this.depth++] = n;
+					n = n.left;
+				}
+				else {
+					n = n.right;
+				}
+			}
+		}
+
+		abstract E get(Node n);
+
+		public boolean hasNext() {
+			if (this.stack == null) {
+				return false;
+			}
+			boolean hasNext = this.depth > 0
+				&& (this.end == null || compare(this.stack[this.depth - 1].period, this.end) < 0)
+			;
+			if (!hasNext) {
+				this.close();
+			}
+			return hasNext;
+		}
+
+		public E next() {
+			if (!this.hasNext()) {
+				throw new NoSuchElementException();
+			}
+			Node n = this.stack[--this.depth];
+			for (Node child = n.right; child != null; child = child.left) {
+				this.stack[this.depth++] = child;
+			}
+			this.lastReturned = n;
+			return this.get(n);
+		}
+
+		public void remove() {
+			if (this.lastReturned == null) {
+				throw new IllegalStateException();
+			}
+			PersistentTemporalAttributeStorage.this.removeEntry(this.lastReturned.period);
+			this.lastReturned = null;
+		}
+
+		public void close() {
+			this.stack = null;
+			this.depth = 0;
+		}
+
+		public boolean isOpen() {
+			return this.stack != null;
+		}
+	} // class TreeIterator
+
+	private class EntryIterator extends TreeIterator<TimedObject<T>> {
+		EntryIterator(IsTime from, Instant end) {
+			super(from, end);
+		}
+		@Override
+		TimedObject<T> get(Node n) {
+			return PersistentTemporalAttributeStorage.<T>entry(n);
+		}
+	}
+
+	private class PeriodIterator extends TreeIterator<Period> {
+		PeriodIterator(IsTime from, Instant end) {
+			super(from, end);
+		}
+		@Override
+		Period get(Node n) {
+			return n.period;
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see net.sf.jtemporal.spi.TemporalAttributeStorage#entryIterator()
+	 */
+	public CloseableIterator<TimedObject<T>> entryIterator() {
+		return new EntryIterator(null, null);
+	}
+
+	/* (non-Javadoc)
+	 * @see net.sf.jtemporal.spi.TemporalAttributeStorage#entryIterator(net.sf.jtemporal.Period)
+	 */
+	public CloseableIterator<TimedObject<T>> entryIterator(Period range) {
+		return new EntryIterator(this.rangeStart(range), range.getEnd());
+	}
+
+	/* (non-Javadoc)
+	 * @see net.sf.jtemporal.spi.TemporalAttributeStorage#periodIterator()
+	 */
+	public CloseableIterator<Period> periodIterator() {
+		return new PeriodIterator(null, null);
+	}
+
+	/* (non-Javadoc)
+	 * @see net.sf.jtemporal.spi.TemporalAttributeStorage#periodIterator(net.sf.jtemporal.Period)
+	 */
+	public CloseableIterator<Period> periodIterator(Period range) {
+		return new PeriodIterator(this.rangeStart(range), range.getEnd());
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder("{");
+		CloseableIterator<TimedObject<T>> i = this.entryIterator();
+		while (i.hasNext()) {
+			TimedObject<T> to = i.next();
+			sb.append(to.getPeriod()).append('=').append(to.getValue());
+			if (i.hasNext()) {
+				sb.append(", ");
+			}
+		}
+		return sb.append('}').toString();
+	}
+}
@@ -11,6 +11,7 @@ import java.util.Comparator;
 
 import net.sf.jtemporal.Instant;
 import net.sf.jtemporal.IsTime;
+import net.sf.jtemporal.LongInstant;
 import net.sf.jtemporal.Period;
 
 
@@ -24,7 +25,9 @@ import net.sf.jtemporal.Period;
  * and {@linkplain net.sf.jtemporal.Instant}, but this is required by the duality
  * of the map key: Periods when we write, Instants when we read. Given that 
  * all the objects in the key of the map are of the same class, it does not 
- * break Comparator's contract.
+ * break Comparator's contract. <br>
+ * Instances of {@linkplain LongInstant} are compared by value, without 
+ * calling {@linkplain Instant#compareTo(Object)}.
  */
 public class StartComparator implements Comparator<IsTime>
 {
@@ -53,7 +56,7 @@ public class StartComparator implements Comparator<IsTime>
 		
 		if (o1 instanceof Period) {
 			if (o2 instanceof Period)
-				return ( (Period) o1).getStart().compareTo(((Period) o2).getStart() )
+				return LongInstant.compare(( (Period) o1).getStart(), ((Period) o2).getStart() )
 			;
 			i1 = ((Period) o1).getStart();
 		} else { // o1 instanceof Instant
@@ -64,7 +67,7 @@ public class StartComparator implements Comparator<IsTime>
 		} // if
 		
 		i2 = (Instant) o2;
-		return i1.compareTo(i2);
+		return LongInstant.compare(i1, i2);
 		
 		/*      if (o1 instanceof Period && o2 instanceof Period)
 		 return ((Period) o1).compareTo(o2);
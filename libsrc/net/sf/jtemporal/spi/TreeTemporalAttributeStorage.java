@@ -8,8 +8,15 @@
 package net.sf.jtemporal.spi;
 
 import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Iterator;
+import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.Set;
 import java.util.SortedMap;
 import java.util.TreeMap;
 import java.util.Map;
@@ -29,7 +36,7 @@ import net.sf.jtemporal.util.SimpleCloseableIterator;
  * @version $Id: TreeTemporalAttributeStorage.java,v 1.13 2008/12/23 21:07:46 tabeck Exp $
  */
 public class TreeTemporalAttributeStorage<T>
-  implements TemporalAttributeStorage<T>, Serializable
+  implements TemporalAttributeStorage<T>, BulkLoadableStorage<T>, Serializable
 {
     private static final long serialVersionUID = 207260923072748398L;
 
@@ -266,6 +273,180 @@ public class TreeTemporalAttributeStorage<T>
 		}
 	}
 	
+	/**
+	 * Appends the entries. <br>
+	 * When this storage is empty and uses a TreeMap, the tree is built in
+	 * linear time by {@linkplain TreeMap#putAll(Map)}, instead of
+	 * O(n log n) for the successive puts; in this case no entry is
+	 * appended if one of them is faulty.
+	 * @see net.sf.jtemporal.spi.BulkLoadableStorage#bulkLoad(java.util.Iterator)
+	 */
+	public void bulkLoad(Iterator<? extends TimedObject<? extends T>> entries) {
+		if (entries == null) {
+			throw new IllegalArgumentException("null");
+		}
+		if (this.sortedMap.isEmpty() && this.sortedMap instanceof TreeMap) {
+			SortedEntries<T> sorted = new SortedEntries<T>(this.sortedMap.comparator());
+			Period last = null;
+			while (entries.hasNext()) {
+				TimedObject<? extends T> to = entries.next();
+				last = checkFollows(to, last);
+				sorted.add(last, to.getValue());
+			}
+			this.sortedMap.putAll(sorted);
+		}
+		else {
+			Period last = this.sortedMap.isEmpty() ? null : this.lastPeriod();
+			while (entries.hasNext()) {
+				TimedObject<? extends T> to = entries.next();
+				last = checkFollows(to, last);
+				this.put(last, to.getValue());
+			}
+		}
+	}
+
+	/**
+	 * Checks that the entry follows the last period, and returns its period.
+	 */
+	private static Period checkFollows(TimedObject<?> to, Period last) {
+		if (to == null || to.getPeriod() == null || to.getValue() == null) {
+			throw new IllegalArgumentException("null");
+		}
+		Period p = to.getPeriod();
+		if (last != null && !last.precedes(p)) {
+			throw new IllegalArgumentException("Period " + p + " does not follow " + last);
+		}
+		return p;
+	}
+
+	/**
+	 * A read-only SortedMap over a list of sorted entries, that a
+	 * TreeMap using the same comparator copies in linear time. <br>
+	 * Its views are read-only as well, and share the list.
+	 */
+	static final class SortedEntries<V>
+	  extends AbstractMap<IsTime, V> implements SortedMap<IsTime, V>
+	{
+		private final Comparator<? super IsTime> comparator;
+		private final List<Map.Entry<IsTime, V>> entries;
+		// the bounds of a view, null if unbounded
+		private final IsTime fromKey;
+		private final IsTime toKey;
+
+		SortedEntries(Comparator<? super IsTime> comparator) {
+			this(comparator, new ArrayList<Map.Entry<IsTime, V>>(), null, null);
+		}
+
+		private SortedEntries(
+			Comparator<? super IsTime> comparator, List<Map.Entry<IsTime, V>> entries,
+			IsTime fromKey, IsTime toKey
+		) {
+			this.comparator = comparator;
+			this.entries = entries;
+			this.fromKey = fromKey;
+			this.toKey = toKey;
+		}
+
+		void add(Period p, V value) {
+			this.entries.add(new AbstractMap.SimpleImmutableEntry<IsTime, V>(p, value));
+		}
+
+		@Override
+		public Set<Map.Entry<IsTime, V>> entrySet() {
+			return new AbstractSet<Map.Entry<IsTime, V>>() {
+				@Override
+				public Iterator<Map.Entry<IsTime, V>> iterator() {
+					return Collections.unmodifiableList(SortedEntries.this.entries).iterator();
+				}
+				@Override
+				public int size() {
+					return SortedEntries.this.entries.size();
+				}
+			};
+		}
+
+		public Comparator<? super IsTime> comparator() {
+			return this.comparator;
+		}
+
+		public IsTime firstKey() {
+			if (this.entries.isEmpty()) {
+				throw new NoSuchElementException();
+			}
+			return this.entries.get(0).getKey();
+		}
+
+		public IsTime lastKey() {
+			if (this.entries.isEmpty()) {
+				throw new NoSuchElementException();
+			}
+			return this.entries.get(this.entries.size() - 1).getKey();
+		}
+
+		public SortedMap<IsTime, V> subMap(IsTime fromKey, IsTime toKey) {
+			if (this.comparator.compare(fromKey, toKey) > 0) {
+				throw new IllegalArgumentException("fromKey > toKey");
+			}
+			return this.view(fromKey, toKey);
+		}
+
+		public SortedMap<IsTime, V> headMap(IsTime toKey) {
+			return this.view(null, toKey);
+		}
+
+		public SortedMap<IsTime, V> tailMap(IsTime fromKey) {
+			return this.view(fromKey, null);
+		}
+
+		/**
+		 * Returns the entries from fromKey (inclusive) to toKey (exclusive),
+		 * a null key keeping the bound of this map.
+		 */
+		private SortedEntries<V> view(IsTime fromKey, IsTime toKey) {
+			int from = 0;
+			int to = this.entries.size();
+			if (fromKey != null) {
+				this.checkInRange(fromKey);
+				from = this.lowerBound(fromKey);
+			}
+			if (toKey != null) {
+				this.checkInRange(toKey);
+				to = this.lowerBound(toKey);
+			}
+			return new SortedEntries<V>(
+				this.comparator, this.entries.subList(from, to), 
+				fromKey == null ? this.fromKey : fromKey,
+				toKey == null ? this.toKey : toKey
+			);
+		}
+
+		private void checkInRange(IsTime key) {
+			if (this.fromKey != null && this.comparator.compare(key, this.fromKey) < 0
+				|| this.toKey != null && this.comparator.compare(key, this.toKey) > 0
+			) {
+				throw new IllegalArgumentException("key out of range");
+			}
+		}
+
+		/**
+		 * Returns the index of the first entry whose key is >= key.
+		 */
+		private int lowerBound(IsTime key) {
+			int low = 0;
+			int high = this.entries.size();
+			while (low < high) {
+				int mid = (low + high) >>> 1;
+				if (this.comparator.compare(this.entries.get(mid).getKey(), key) < 0) {
+					low = mid + 1;
+				}
+				else {
+					high = mid;
+				}
+			}
+			return low;
+		}
+	} // class SortedEntries
+
 	/**
 	 * Translates instances of Map.Entry into instances of TimedObject
 	 */
@@ -0,0 +1,73 @@
+/*
+   This file is part of the JTemporal framework (http://jtemporal.sf.net).
+   Copyright (C) 2002 by the author(s).
+   Distributable under LGPL license version 2.1 or later,
+   with no warranties given or implied.
+   See terms of license at gnu.org or www.opensource.org/licenses  */
+
+package net.sf.jtemporal.util;
+
+/**
+ * A bounded cache: when the maximum size is reached, adding a new entry
+ * evicts another one, chosen by the implementation. <br>
+ * Keys and values cannot be null.
+ * @author Thomas A Beck
+ * @version $Id$
+ * @param <K> the type of the key
+ * @param <V> the type of the value
+ * @see LightLRUCache
+ * @see ConcurrentLRUCache
+ */
+public interface Cache<K,V> {
+
+	/**
+	 * Adds an new entry to this cache.  If the cache has already reached
+	 * its maximum size, an entry is evicted.
+	 * @param key
+	 * @param value
+	 * @return the previous value associated to this key, or null
+	 * @throws IllegalArgumentException if the key or the value is null
+	 */
+	V put(K key, V value);
+
+	/**
+	 * Retrieves an entry.
+	 * @param key
+	 * @return the value currently associated to this key, or null if not found.
+	 * @throws IllegalArgumentException if the key is null
+	 */
+	V get(Object key);
+
+	/**
+	 * Tells whether an entry exists, without updating the eviction order.
+	 * @param key
+	 * @return true if a value is currently associated to this key
+	 * @throws IllegalArgumentException if the key is null
+	 */
+	boolean containsKey(Object key);
+
+	/**
+	 * Removes an entry.
+	 * @param key
+	 * @return the value currently associated to this key, or null if not found.
+	 * @throws IllegalArgumentException if the key is null
+	 */
+	V remove(Object key);
+
+	/**
+	 * Empties the cache.
+	 */
+	void clear();
+
+	/**
+	 * The number of entries currently in the cache.
+	 * @return The number of entries currently in the cache.
+	 */
+	int currentSize();
+
+	/**
+	 * The maximum number of entries.
+	 * @return The maximum number of entries.
+	 */
+	int maxSize();
+}
@@ -0,0 +1,265 @@
+/*
+   This file is part of the JTemporal framework (http://jtemporal.sf.net).
+   Copyright (C) 2002 by the author(s).
+   Distributable under LGPL license version 2.1 or later,
+   with no warranties given or implied.
+   See terms of license at gnu.org or www.opensource.org/licenses  */
+
+package net.sf.jtemporal.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A thread-safe LRU cache, striped into independent segments. <br>
+ * Each key is assigned to a segment by its hashcode; each segment is an
+ * access-ordered LinkedHashMap guarded by its own lock, so that threads
+ * working on different segments do not contend. <br>
+ * The LRU order is kept per segment: when a segment is full, its least
+ * recently used entry is evicted, which is not necessarily the least
+ * recently used entry of the whole cache. <br>
+ * The hits, misses and evictions are counted per segment, under the
+ * segment lock, so that counting does not add contention.
+ * @author Thomas A Beck
+ * @version $Id$
+ * @param <K> the type of the key
+ * @param <V> the type of the value
+ * @see LightLRUCache
+ */
+public class ConcurrentLRUCache<K,V> implements Cache<K,V> {
+
+	private static final int DEFAULT_CONCURRENCY_LEVEL = 16;
+
+	private final Segment<K,V>[] segments;
+	private final int segmentMask;
+	private final int maxSize;
+
+	/**
+	 * Creates a new cache of the given size, with 16 segments at most.
+	 * @param size the maximum number of entries kept in this cache
+	 */
+	public ConcurrentLRUCache(int size) {
+		this(size, DEFAULT_CONCURRENCY_LEVEL);
+	}
+
+	/**
+	 * Creates a new cache of the given size.
+	 * @param size the maximum number of entries kept in this cache
+	 * @param concurrencyLevel the expected number of threads using this
+	 * cache concurrently, rounded to the next power of two to get the
+	 * number of segments.  There are never more segments than entries.
+	 */
+	@SuppressWarnings("unchecked")
+	public ConcurrentLRUCache(int size, int concurrencyLevel) {
+		if (size < 1) {
+			throw new IllegalArgumentException("size < 1");
+		}
+		if (concurrencyLevel < 1) {
+			throw new IllegalArgumentException("concurrencyLevel < 1");
+		}
+		int count = 1;
+		while (count < concurrencyLevel && count * 2 <= size) {
+			count *= 2;
+		}
+		this.maxSize = size;
+		this.segmentMask = count - 1;
+		this.segments = (Segment<K,V>[]) new Segment<?,?>[count];
+		for (int i = 0; i < count; i++) {
+			// spread the remainder over the first segments
+			int capacity = size / count + (i < size % count ? 1 : 0);
+			this.segments[i] = new Segment<K,V>(capacity);
+		}
+	}
+
+	private Segment<K,V> segmentFor(Object key) {
+		if (key == null) {
+			throw new IllegalArgumentException("null key");
+		}
+		// uses other bits than the HashMap of the segment
+		int h = key.hashCode() * 0x9E3779B9;
+		return this.segments[(h >>> 16) & this.segmentMask];
+	}
+
+	/**
+	 * Adds an new entry to this cache.  If the segment of the key is full,
+	 * its Least Recently Used entry is evicted.
+	 * @see net.sf.jtemporal.util.Cache#put(java.lang.Object, java.lang.Object)
+	 */
+	public V put(K key, V value) {
+		Segment<K,V> segment = this.segmentFor(key);
+		if (value == null) {
+			throw new IllegalArgumentException("null value");
+		}
+		synchronized (segment) {
+			return segment.put(key, value);
+		}
+	}
+
+	/**
+	 * Retrieves an entry.  Additionally, the retrieved entry becomes the
+	 * mru of its segment.
+	 * @see net.sf.jtemporal.util.Cache#get(java.lang.Object)
+	 */
+	public V get(Object key) {
+		Segment<K,V> segment = this.segmentFor(key);
+		synchronized (segment) {
+			V value = segment.get(key);
+			if (value == null) {
+				segment.misses++;
+			}
+			else {
+				segment.hits++;
+			}
+			return value;
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see net.sf.jtemporal.util.Cache#containsKey(java.lang.Object)
+	 */
+	public boolean containsKey(Object key) {
+		Segment<K,V> segment = this.segmentFor(key);
+		synchronized (segment) {
+			return segment.containsKey(key);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see net.sf.jtemporal.util.Cache#remove(java.lang.Object)
+	 */
+	public V remove(Object key) {
+		Segment<K,V> segment = this.segmentFor(key);
+		synchronized (segment) {
+			return segment.remove(key);
+		}
+	}
+
+	/**
+	 * Empties the cache, the counters are not reset.
+	 * @see net.sf.jtemporal.util.Cache#clear()
+	 */
+	public void clear() {
+		for (Segment<K,V> segment : this.segments) {
+			synchronized (segment) {
+				segment.clear();
+			}
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see net.sf.jtemporal.util.Cache#currentSize()
+	 */
+	public int currentSize() {
+		int size = 0;
+		for (Segment<K,V> segment : this.segments) {
+			synchronized (segment) {
+				size += segment.size();
+			}
+		}
+		return size;
+	}
+
+	/* (non-Javadoc)
+	 * @see net.sf.jtemporal.util.Cache#maxSize()
+	 */
+	public int maxSize() {
+		return this.maxSize;
+	}
+
+	/**
+	 * The number of segments.
+	 * @return The number of segments.
+	 */
+	public int segmentCount() {
+		return this.segments.length;
+	}
+
+	/**
+	 * The number of calls to get() that returned a value.
+	 * @return The number of hits since the creation of this cache.
+	 */
+	public long hitCount() {
+		long count = 0;
+		for (Segment<K,V> segment : this.segments) {
+			synchronized (segment) {
+				count += segment.hits;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * The number of calls to get() that returned null.
+	 * @return The number of misses since the creation of this cache.
+	 */
+	public long missCount() {
+		long count = 0;
+		for (Segment<K,V> segment : this.segments) {
+			synchronized (segment) {
+				count += segment.misses;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * The number of entries evicted to make room for new entries.
+	 * The explicit removals are not counted.
+	 * @return The number of evictions since the creation of this cache.
+	 */
+	public long evictionCount() {
+		long count = 0;
+		for (Segment<K,V> segment : this.segments) {
+			synchronized (segment) {
+				count += segment.evictions;
+			}
+		}
+		return count;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder("{");
+		for (Segment<K,V> segment : this.segments) {
+			synchronized (segment) {
+				for (Map.Entry<K,V> e : segment.entrySet()) {
+					if (sb.length() > 1) {
+						sb.append(", ");
+					}
+					sb.append(e.getKey()).append('=').append(e.getValue());
+				}
+			}
+		}
+		return sb.append('}').toString();
+	}
+
+	/**
+	 * An access-ordered LinkedHashMap evicting its eldest entry
+	 * beyond its capacity.  Guarded by its own monitor.
+	 */
+	private static final class Segment<KK,VV> extends LinkedHashMap<KK,VV> {
+		private static final long serialVersionUID = 4719204630520476161L;
+
+		private final int capacity;
+		long hits = 0;
+		long misses = 0;
+		long evictions = 0;
+
+		Segment(int capacity) {
+			super(capacity * 4 / 3 + 1, 0.75f, true);
+			this.capacity = capacity;
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<KK,VV> eldest) {
+			if (this.size() > this.capacity) {
+				this.evictions++;
+				return true;
+			}
+			return false;
+		}
+	}
+}
@@ -0,0 +1,66 @@
+/*
+   This file is part of the JTemporal framework (http://jtemporal.sf.net).
+   Copyright (C) 2002 by the author(s).
+   Distributable under LGPL license version 2.1 or later,
+   with no warranties given or implied.
+   See terms of license at gnu.org or www.opensource.org/licenses  */
+
+package net.sf.jtemporal.util;
+
+/**
+ * The eviction policies of the bundled {@linkplain Cache} implementations,
+ * each acting as a factory of caches.
+ * @author Thomas A Beck
+ * @version $Id$
+ */
+public enum EvictionPolicy {
+
+	/**
+	 * Least Recently Used, see {@linkplain LightLRUCache}.  Not thread-safe.
+	 */
+	LRU {
+		@Override
+		public <K,V> Cache<K,V> newCache(int size) {
+			return new LightLRUCache<K,V>(size);
+		}
+	},
+
+	/**
+	 * Least Recently Used per segment, see {@linkplain ConcurrentLRUCache}.
+	 * Thread-safe.
+	 */
+	CONCURRENT_LRU {
+		@Override
+		public <K,V> Cache<K,V> newCache(int size) {
+			return new ConcurrentLRUCache<K,V>(size);
+		}
+	},
+
+	/**
+	 * Frequency-based admission, see {@linkplain TinyLFUCache}.
+	 * Not thread-safe.
+	 */
+	TINY_LFU {
+		@Override
+		public <K,V> Cache<K,V> newCache(int size) {
+			return new TinyLFUCache<K,V>(size);
+		}
+	},
+
+	/**
+	 * Scan-resistant 2Q, see {@linkplain TwoQueueCache}.  Not thread-safe.
+	 */
+	TWO_QUEUE {
+		@Override
+		public <K,V> Cache<K,V> newCache(int size) {
+			return new TwoQueueCache<K,V>(size);
+		}
+	};
+
+	/**
+	 * Creates an empty cache applying this policy.
+	 * @param size the maximum number of entries kept in the cache
+	 * @return a new cache
+	 */
+	public abstract <K,V> Cache<K,V> newCache(int size);
+}
@@ -0,0 +1,110 @@
+/*
+   This file is part of the JTemporal framework (http://jtemporal.sf.net).
+   Copyright (C) 2002 by the author(s).
+   Distributable under LGPL license version 2.1 or later,
+   with no warranties given or implied.
+   See terms of license at gnu.org or www.opensource.org/licenses  */
+
+package net.sf.jtemporal.util;
+
+/**
+ * Estimates the access frequency of the keys, within a fixed amount of
+ * memory: a count-min sketch of 4-bit counters, 16 counters per long. <br>
+ * Each key is counted by 4 counters picked by 4 hash functions, its
+ * frequency is estimated by the lowest of them (at most 15). <br>
+ * When the number of increments reaches 10 times the sampled capacity,
+ * all the counters are halved, so that the old accesses fade out. <br>
+ * Not thread-safe.
+ * @author Thomas A Beck
+ * @version $Id$
+ */
+final class FrequencySketch {
+
+	private static final long[] SEEDS = {
+		0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L
+	};
+	private static final long RESET_MASK = 0x7777777777777777L;
+
+	private final long[] table;
+	private final int tableMask;
+	private final int sampleSize;
+	private int additions = 0;
+
+	/**
+	 * @param capacity the number of keys whose frequency is to be told apart
+	 */
+	FrequencySketch(int capacity) {
+		int length = 1;
+		while (length < capacity) {
+			length <<= 1;
+		}
+		this.table = new long[length];
+		this.tableMask = length - 1;
+		this.sampleSize = 10 * Math.max(capacity, 1);
+	}
+
+	private static int spread(Object key) {
+		int h = key.hashCode() * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	private int indexOf(int hash, int i) {
+		long h = (hash + SEEDS[i]) * SEEDS[i];
+		h += h >>> 32;
+		return ((int) h) & this.tableMask;
+	}
+
+	/**
+	 * Returns the estimated number of accesses to the key, from 0 to 15.
+	 */
+	int frequency(Object key) {
+		int hash = spread(key);
+		int start = (hash & 3) << 2;
+		int frequency = 15;
+		for (int i = 0; i < 4; i++) {
+			int offset = (start + i) << 2;
+			int count = (int) ((this.table[this.indexOf(hash, i)] >>> offset) & 0xfL);
+			frequency = Math.min(frequency, count);
+		}
+		return frequency;
+	}
+
+	/**
+	 * Records an access to the key.
+	 */
+	void increment(Object key) {
+		int hash = spread(key);
+		int start = (hash & 3) << 2;
+		boolean added = false;
+		for (int i = 0; i < 4; i++) {
+			int index = this.indexOf(hash, i);
+			int offset = (start + i) << 2;
+			long mask = 0xfL << offset;
+			if ((this.table[index] & mask) != mask) {
+				this.table[index] += 1L << offset;
+				added = true;
+			}
+		}
+		if (added && ++this.additions == this.sampleSize) {
+			this.reset();
+		}
+	}
+
+	/**
+	 * Halves all the counters.
+	 */
+	private void reset() {
+		for (int i = 0; i < this.table.length; i++) {
+			this.table[i] = (this.table[i] >>> 1) & RESET_MASK;
+		}
+		this.additions /= 2;
+	}
+
+	/**
+	 * Forgets all the accesses.
+	 */
+	void clear() {
+		java.util.Arrays.fill(this.table, 0L);
+		this.additions = 0;
+	}
+}
@@ -21,8 +21,9 @@ import java.util.*;
  * @version $Id: LightLRUCache.java,v 1.8 2008/12/14 13:30:58 tabeck Exp $
  * @param <K> the type of the key
  * @param <V> the type of the value
+ * @see ConcurrentLRUCache
  */
-public class LightLRUCache <K,V>{
+public class LightLRUCache <K,V> implements Cache<K,V> {
 
 	private final int maxSize;
 	
@@ -164,6 +165,16 @@ public class LightLRUCache <K,V>{
 		return mapEntry.value;	
 	}
 	
+	/* (non-Javadoc)
+	 * @see net.sf.jtemporal.util.Cache#containsKey(java.lang.Object)
+	 */
+	public boolean containsKey(Object key) {
+		if (key == null) {
+            throw new IllegalArgumentException("null key");
+		}
+		return this.map.containsKey(key);
+	}
+	
 	/**
 	 * Removes an entry.
 	 * @param key
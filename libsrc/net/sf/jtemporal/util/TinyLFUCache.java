@@ -0,0 +1,192 @@
+/*
+   This file is part of the JTemporal framework (http://jtemporal.sf.net).
+   Copyright (C) 2002 by the author(s).
+   Distributable under LGPL license version 2.1 or later,
+   with no warranties given or implied.
+   See terms of license at gnu.org or www.opensource.org/licenses  */
+
+package net.sf.jtemporal.util;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A cache that admits the new entries according to their access frequency
+ * (Window TinyLFU). <br>
+ * The new entries first go to a small LRU window (1% of the size).
+ * The entry leaving the window is admitted in the main LRU space only if
+ * its key has been accessed more often than the key of the entry it would
+ * evict; otherwise the newcomer itself is dropped.
+ * The access frequencies, including those of keys no longer in the cache,
+ * are estimated by a compact sketch, which slowly forgets the old accesses. <br>
+ * A one-time scan over many keys thus does not flush the frequently used
+ * entries, as it would with a plain LRU cache. <br>
+ * This class is NOT thread-safe.
+ * @author Thomas A Beck
+ * @version $Id$
+ * @param <K> the type of the key
+ * @param <V> the type of the value
+ * @see LightLRUCache
+ * @see TwoQueueCache
+ */
+public class TinyLFUCache<K,V> implements Cache<K,V> {
+
+	private final int maxSize;
+	private final int windowSize;
+	private final int mainSize;
+	private final LinkedHashMap<K,V> window;
+	private final LinkedHashMap<K,V> main;
+	private final FrequencySketch sketch;
+	private long evictions = 0;
+
+	/**
+	 * Creates a new cache of the given size.
+	 * @param size the maximum number of entries kept in this cache
+	 */
+	public TinyLFUCache(int size) {
+		if (size < 1) {
+			throw new IllegalArgumentException("size < 1");
+		}
+		this.maxSize = size;
+		this.windowSize = Math.max(1, size / 100);
+		this.mainSize = size - this.windowSize;
+		this.window = new LinkedHashMap<K,V>(this.windowSize * 4 / 3 + 2, 0.75f, true);
+		this.main = new LinkedHashMap<K,V>(this.mainSize * 4 / 3 + 2, 0.75f, true);
+		this.sketch = new FrequencySketch(size);
+	}
+
+	/**
+	 * Adds an new entry to this cache.  If the window is full, its
+	 * Least Recently Used entry competes with the Least Recently Used
+	 * entry of the main space, and the least frequently used of them
+	 * is evicted.
+	 * @see net.sf.jtemporal.util.Cache#put(java.lang.Object, java.lang.Object)
+	 */
+	public V put(K key, V value) {
+		if (key == null) {
+			throw new IllegalArgumentException("null key");
+		}
+		if (value == null) {
+			throw new IllegalArgumentException("null value");
+		}
+		if (this.sketch.frequency(key) == 0) {
+			// a get() has usually just missed and counted the key
+			this.sketch.increment(key);
+		}
+		if (this.main.containsKey(key)) {
+			return this.main.put(key, value);
+		}
+		V previous = this.window.put(key, value);
+		if (previous == null && this.window.size() > this.windowSize) {
+			this.admit();
+		}
+		return previous;
+	}
+
+	/**
+	 * Moves the lru of the window to the main space, if it wins against
+	 * the lru of the main space.
+	 */
+	private void admit() {
+		Iterator<Map.Entry<K,V>> it = this.window.entrySet().iterator();
+		Map.Entry<K,V> candidate = it.next();
+		it.remove();
+		if (this.main.size() < this.mainSize) {
+			this.main.put(candidate.getKey(), candidate.getValue());
+			return;
+		}
+		this.evictions++;
+		if (this.mainSize == 0) {
+			return;
+		}
+		Iterator<K> victims = this.main.keySet().iterator();
+		K victim = victims.next();
+		if (this.sketch.frequency(candidate.getKey()) > this.sketch.frequency(victim)) {
+			victims.remove();
+			this.main.put(candidate.getKey(), candidate.getValue());
+		}
+	}
+
+	/**
+	 * Retrieves an entry, and records the access to its key, even if
+	 * not found.
+	 * @see net.sf.jtemporal.util.Cache#get(java.lang.Object)
+	 */
+	public V get(Object key) {
+		if (key == null) {
+			throw new IllegalArgumentException("null key");
+		}
+		this.sketch.increment(key);
+		V value = this.main.get(key);
+		if (value == null) {
+			value = this.window.get(key);
+		}
+		return value;
+	}
+
+	/* (non-Javadoc)
+	 * @see net.sf.jtemporal.util.Cache#containsKey(java.lang.Object)
+	 */
+	public boolean containsKey(Object key) {
+		if (key == null) {
+			throw new IllegalArgumentException("null key");
+		}
+		return this.main.containsKey(key) || this.window.containsKey(key);
+	}
+
+	/* (non-Javadoc)
+	 * @see net.sf.jtemporal.util.Cache#remove(java.lang.Object)
+	 */
+	public V remove(Object key) {
+		if (key == null) {
+			throw new IllegalArgumentException("null key");
+		}
+		V value = this.main.remove(key);
+		if (value == null) {
+			value = this.window.remove(key);
+		}
+		return value;
+	}
+
+	/**
+	 * Empties the cache and forgets the access frequencies.
+	 * @see net.sf.jtemporal.util.Cache#clear()
+	 */
+	public void clear() {
+		this.window.clear();
+		this.main.clear();
+		this.sketch.clear();
+	}
+
+	/* (non-Javadoc)
+	 * @see net.sf.jtemporal.util.Cache#currentSize()
+	 */
+	public int currentSize() {
+		return this.window.size() + this.main.size();
+	}
+
+	/* (non-Javadoc)
+	 * @see net.sf.jtemporal.util.Cache#maxSize()
+	 */
+	public int maxSize() {
+		return this.maxSize;
+	}
+
+	/**
+	 * The number of entries evicted or not admitted, to make room for
+	 * new entries.  The explicit removals are not counted.
+	 * @return The number of evictions since the creation of this cache.
+	 */
+	public long evictionCount() {
+		return this.evictions;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "window=" + this.window + " main=" + this.main;
+	}
+}
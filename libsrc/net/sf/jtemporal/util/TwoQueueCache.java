@@ -0,0 +1,197 @@
+/*
+   This file is part of the JTemporal framework (http://jtemporal.sf.net).
+   Copyright (C) 2002 by the author(s).
+   Distributable under LGPL license version 2.1 or later,
+   with no warranties given or implied.
+   See terms of license at gnu.org or www.opensource.org/licenses  */
+
+package net.sf.jtemporal.util;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+
+/**
+ * A scan-resistant cache, implementing the 2Q replacement policy. <br>
+ * The new entries go to a FIFO queue (a quarter of the size).
+ * The keys of the entries leaving this queue are remembered, without
+ * their values, in a ghost queue (half of the size).  Only the entries
+ * read again while in the FIFO queue, and the keys put again while
+ * still remembered, are promoted to the main LRU space. <br>
+ * The entries read only once, as during a scan, thus never evict the
+ * entries of the main space. <br>
+ * This class is NOT thread-safe.
+ * @author Thomas A Beck
+ * @version $Id$
+ * @param <K> the type of the key
+ * @param <V> the type of the value
+ * @see LightLRUCache
+ * @see TinyLFUCache
+ */
+public class TwoQueueCache<K,V> implements Cache<K,V> {
+
+	private final int maxSize;
+	private final int inSize;
+	private final int ghostSize;
+	private final LinkedHashMap<K,V> in;      // A1in, insertion-ordered
+	private final LinkedHashSet<K> ghosts;    // A1out, keys only
+	private final LinkedHashMap<K,V> main;    // Am, access-ordered
+	private long evictions = 0;
+
+	/**
+	 * Creates a new cache of the given size.
+	 * @param size the maximum number of entries kept in this cache
+	 */
+	public TwoQueueCache(int size) {
+		if (size < 1) {
+			throw new IllegalArgumentException("size < 1");
+		}
+		this.maxSize = size;
+		this.inSize = Math.max(1, size / 4);
+		this.ghostSize = Math.max(1, size / 2);
+		this.in = new LinkedHashMap<K,V>(this.inSize * 4 / 3 + 2);
+		this.ghosts = new LinkedHashSet<K>(this.ghostSize * 4 / 3 + 2);
+		this.main = new LinkedHashMap<K,V>(size * 4 / 3 + 2, 0.75f, true);
+	}
+
+	/**
+	 * Adds an new entry to this cache.  A key remembered in the ghost queue
+	 * goes to the main space, any other new key goes to the FIFO queue.
+	 * @see net.sf.jtemporal.util.Cache#put(java.lang.Object, java.lang.Object)
+	 */
+	public V put(K key, V value) {
+		if (key == null) {
+			throw new IllegalArgumentException("null key");
+		}
+		if (value == null) {
+			throw new IllegalArgumentException("null value");
+		}
+		if (this.main.containsKey(key)) {
+			return this.main.put(key, value);
+		}
+		if (this.in.containsKey(key)) {
+			return this.in.put(key, value);
+		}
+		if (this.currentSize() >= this.maxSize) {
+			this.reclaim();
+		}
+		if (this.ghosts.remove(key)) {
+			this.main.put(key, value);
+		}
+		else {
+			this.in.put(key, value);
+		}
+		return null;
+	}
+
+	/**
+	 * Evicts an entry: the head of the FIFO queue if the queue is beyond
+	 * its share, the lru of the main space otherwise.
+	 */
+	private void reclaim() {
+		this.evictions++;
+		if (this.in.size() > this.inSize || this.main.isEmpty()) {
+			Iterator<K> it = this.in.keySet().iterator();
+			K key = it.next();
+			it.remove();
+			this.ghosts.add(key);
+			if (this.ghosts.size() > this.ghostSize) {
+				Iterator<K> oldest = this.ghosts.iterator();
+				oldest.next();
+				oldest.remove();
+			}
+		}
+		else {
+			Iterator<Map.Entry<K,V>> it = this.main.entrySet().iterator();
+			it.next();
+			it.remove();
+		}
+	}
+
+	/**
+	 * Retrieves an entry.  The retrieved entry becomes the mru of the
+	 * main space, being promoted from the FIFO queue if needed.
+	 * @see net.sf.jtemporal.util.Cache#get(java.lang.Object)
+	 */
+	@SuppressWarnings("unchecked") // the key is in the queue, thus a K
+	public V get(Object key) {
+		if (key == null) {
+			throw new IllegalArgumentException("null key");
+		}
+		V value = this.main.get(key);
+		if (value == null) {
+			value = this.in.remove(key);
+			if (value != null) {
+				// read again: not a scan
+				this.main.put((K) key, value);
+			}
+		}
+		return value;
+	}
+
+	/* (non-Javadoc)
+	 * @see net.sf.jtemporal.util.Cache#containsKey(java.lang.Object)
+	 */
+	public boolean containsKey(Object key) {
+		if (key == null) {
+			throw new IllegalArgumentException("null key");
+		}
+		return this.main.containsKey(key) || this.in.containsKey(key);
+	}
+
+	/* (non-Javadoc)
+	 * @see net.sf.jtemporal.util.Cache#remove(java.lang.Object)
+	 */
+	public V remove(Object key) {
+		if (key == null) {
+			throw new IllegalArgumentException("null key");
+		}
+		V value = this.main.remove(key);
+		if (value == null) {
+			value = this.in.remove(key);
+		}
+		return value;
+	}
+
+	/**
+	 * Empties the cache and forgets the ghost keys.
+	 * @see net.sf.jtemporal.util.Cache#clear()
+	 */
+	public void clear() {
+		this.in.clear();
+		this.ghosts.clear();
+		this.main.clear();
+	}
+
+	/* (non-Javadoc)
+	 * @see net.sf.jtemporal.util.Cache#currentSize()
+	 */
+	public int currentSize() {
+		return this.in.size() + this.main.size();
+	}
+
+	/* (non-Javadoc)
+	 * @see net.sf.jtemporal.util.Cache#maxSize()
+	 */
+	public int maxSize() {
+		return this.maxSize;
+	}
+
+	/**
+	 * The number of entries evicted to make room for new entries.
+	 * The explicit removals are not counted.
+	 * @return The number of evictions since the creation of this cache.
+	 */
+	public long evictionCount() {
+		return this.evictions;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "in=" + this.in + " main=" + this.main;
+	}
+}
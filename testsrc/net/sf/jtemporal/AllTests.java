@@ -37,12 +37,18 @@ public class AllTests {
 		suite.addTestSuite(TemporalAttributeEntrySetTest.class);
 		suite.addTestSuite(TimeNodeTest.class);
 		suite.addTestSuite(TemporalSetTest.class);
+		suite.addTestSuite(LongInstantTest.class);
+		suite.addTestSuite(ConcurrentTemporalAttributeTest.class);
+		suite.addTestSuite(TemporalJoinIteratorTest.class);
+		suite.addTestSuite(TemporalZipIteratorTest.class);
 		//$JUnit-END$
 
 		// util package
 		suite.addTest(net.sf.jtemporal.util.AllTests.suite());
 		// spi package
 		suite.addTest(net.sf.jtemporal.spi.AllTests.suite());
+		// io package
+		suite.addTest(net.sf.jtemporal.io.AllTests.suite());
 
 		return suite;
 	}
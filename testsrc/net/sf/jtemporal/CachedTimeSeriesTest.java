@@ -10,6 +10,8 @@ package net.sf.jtemporal;
 import java.util.*;
 
 import junit.framework.TestCase;
+import net.sf.jtemporal.util.ConcurrentLRUCache;
+import net.sf.jtemporal.util.EvictionPolicy;
 
 /**
  * @author Thomas A Beck
@@ -188,7 +190,153 @@ public class CachedTimeSeriesTest extends TestCase implements TestConstants {
 		assertTrue(this.physReads == 8);
 	}
 
-	private class Handler 
+	/**
+	 * The same cycle, with a shared cache.
+	 */
+	public void testConcurrentCache() {
+		Handler h = new Handler();
+		ConcurrentLRUCache<Instant,Object> cache = new ConcurrentLRUCache<Instant,Object>(3, 1);
+		TimeSeries<String> ts = new CachedTimeSeries<String>(cache, h, h);
+		assertTrue(ts.get(i1) == s1);
+		assertTrue(ts.get(i7) == s7);
+		assertTrue(ts.get(i1) == s1);
+		assertTrue(this.physReads == 1);
+		assertNull(ts.get(infinite));
+		assertNull(ts.get(infinite));
+		assertTrue(this.physReads == 2);
+		assertEquals(3, cache.hitCount());
+		assertEquals(2, cache.missCount());
+	}
+
+	/**
+	 * The requested value is returned, even if the handler 
+	 * populates more entries than the cache can hold.
+	 */
+	public void testPopulateOverflow() {
+		Handler h = new Handler() {
+			public void populateElement(CachedTimeSeries<String> ts, Instant i) {
+				ts.putInCache(i, storage.get(i));
+				ts.putInCache(i5, storage.get(i5));
+				ts.putInCache(i6, storage.get(i6));
+				physReads++;
+			}
+		};
+		TimeSeries<String> ts = new CachedTimeSeries<String>(2, h, h);
+		assertTrue(ts.get(i1) == s1);
+		assertTrue(this.physReads == 1);
+	}
+
+	/**
+	 * The same reads, whatever the eviction policy.
+	 */
+	public void testEvictionPolicies() {
+		for (EvictionPolicy policy : EvictionPolicy.values()) {
+			Handler h = new Handler();
+			TimeSeries<String> ts = new CachedTimeSeries<String>(3, policy, h, h);
+			for (int r = 0; r < 2; r++) {
+				assertTrue(ts.get(i1) == s1);
+				assertTrue(ts.get(i2) == s2);
+				assertTrue(ts.get(i3) == s3);
+				assertTrue(ts.get(i7) == s7);
+				assertNull(ts.get(infinite));
+			}
+			assertNull(ts.put(i8, s1));
+			assertTrue(ts.get(i8) == s1);
+			assertTrue(ts.remove(i8) == s1);
+		}
+	}
+
+	/**
+	 * Removing a period invalidates only the instants within the period.
+	 */
+	public void testRemovePeriod() {
+		RangeHandler h = new RangeHandler();
+		CachedTimeSeries<String> ts = new CachedTimeSeries<String>(10, h, h);
+		assertTrue(ts.get(i1) == s1);
+		assertTrue(ts.get(i5) == s5);
+		assertTrue(ts.get(i2) == s2);
+		assertTrue(this.physReads == 3);
+		ts.remove(p23);
+		assertTrue(this.physDeletes == 1);
+		assertTrue(ts.get(i1) == s1);
+		assertTrue(ts.get(i5) == s5);
+		assertTrue(this.physReads == 3);
+		assertNull(ts.get(i2));
+		assertTrue(this.physReads == 4);
+	}
+
+	/**
+	 * The ascending misses are loaded by range, with a growing read-ahead.
+	 */
+	public void testSequentialPrefetch() {
+		this.storage.put(i8, s1);
+		this.storage.put(i9, s2);
+		RangeHandler h = new RangeHandler();
+		CachedTimeSeries<String> ts = new CachedTimeSeries<String>(20, h, h);
+		assertTrue(ts.get(i1) == s1);  // isolated
+		assertTrue(ts.get(i2) == s2);  // isolated
+		assertTrue(ts.get(i3) == s3);  // depth 1
+		assertTrue(ts.get(i4) == s4);  // depth 2 : i4, i5
+		assertTrue(ts.get(i5) == s5);
+		assertTrue(ts.get(i6) == s6);  // depth 4 : i6 .. i9
+		assertTrue(ts.get(i7) == s7);
+		assertTrue(ts.get(i8) == s1);
+		assertTrue(ts.get(i9) == s2);
+		assertTrue(this.physReads == 5);
+		assertEquals(3, h.ranges);
+		// not sequential anymore
+		ts.clearCache();
+		assertTrue(ts.get(i5) == s5);
+		assertTrue(ts.get(i1) == s1);
+		assertEquals(3, h.ranges);
+		ts.prefetch(p68);
+		assertEquals(4, h.ranges);
+		assertTrue(ts.get(i7) == s7);
+		assertTrue(this.physReads == 8);
+	}
+
+	/**
+	 * The misses of another thread do not break the sequence of the current one.
+	 */
+	public void testSequencePerThread() throws InterruptedException {
+		RangeHandler h = new RangeHandler();
+		final CachedTimeSeries<String> ts = new CachedTimeSeries<String>(20, h, h);
+		assertTrue(ts.get(i3) == s3);  // isolated
+		assertTrue(ts.get(i4) == s4);  // isolated
+		Thread other = new Thread() {
+			@Override
+			public void run() {
+				ts.get(i1);  // descending, but in another thread
+			}
+		};
+		other.start();
+		other.join();
+		assertTrue(ts.containsInstant(i1));
+		assertEquals(0, h.ranges);
+		assertTrue(ts.get(i5) == s5);  // depth 1
+		assertEquals(1, h.ranges);
+	}
+
+	/**
+	 * The evicted instants are forgotten, the other ones are still invalidated.
+	 */
+	public void testRemovePeriodAfterEvictions() {
+		RangeHandler h = new RangeHandler();
+		CachedTimeSeries<String> ts = new CachedTimeSeries<String>(2, h, h);
+		for (int r = 0; r < 10; r++) {
+			assertTrue(ts.get(i1) == s1);
+			assertTrue(ts.get(i5) == s5);
+			assertTrue(ts.get(i2) == s2);
+		}
+		int reads = this.physReads;
+		ts.remove(p23);
+		assertTrue(ts.get(i5) == s5);
+		assertTrue(this.physReads == reads);
+		assertNull(ts.get(i2));
+		assertTrue(this.physReads == reads + 1);
+	}
+
+	private class Handler 
 	implements CachedTimeSeries.ChangeHandler<String>, CachedTimeSeries.MissingElementHandler<String> {
 		boolean readAhead;
 		Map<Instant,String> storage = CachedTimeSeriesTest.this.storage; 
@@ -216,4 +364,35 @@ public class CachedTimeSeriesTest extends TestCase implements TestConstants {
 			CachedTimeSeriesTest.this.physReads++;
 		}
 	}
+
+	/**
+	 * Loads by range, on an instant scale of 100 per step.
+	 */
+	private class RangeHandler extends Handler 
+	implements CachedTimeSeries.RangeElementHandler<String> {
+		int ranges = 0;
+
+		public void populateElement(CachedTimeSeries<String> ts, Instant i) {
+			ts.putInCache(i, storage.get(i));
+			CachedTimeSeriesTest.this.physReads++;
+		}
+
+		public Period prefetchPeriod(Instant i, int depth) {
+			int start = ((IntInstant) i).toIntValue();
+			return new Period(i, new IntInstant(start + 100 * depth));
+		}
+
+		public void populateRange(CachedTimeSeries<String> ts, Period p) {
+			for (Map.Entry<Instant,String> e : ((SortedMap<Instant,String>) storage).subMap(p.getStart(), p.getEnd()).entrySet()) {
+				ts.putInCache(e.getKey(), e.getValue());
+			}
+			this.ranges++;
+			CachedTimeSeriesTest.this.physReads++;
+		}
+
+		public void remove(CachedTimeSeries<String> source, Period p) {
+			((SortedMap<Instant,String>) storage).subMap(p.getStart(), p.getEnd()).clear();
+			CachedTimeSeriesTest.this.physDeletes++;
+		}
+	}
 }
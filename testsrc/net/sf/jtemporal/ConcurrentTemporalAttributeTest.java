@@ -0,0 +1,158 @@
+/* This file is part of the JTemporal framework (http://jtemporal.sf.net).
+   Copyright (C) 2002 by the author(s).
+   Distributable under LGPL license version 2.1 or later, 
+   with NO WARRANTIES given or implied.
+   See terms of license at gnu.org or www.opensource.org/licenses  */
+
+package net.sf.jtemporal;
+
+import java.util.Iterator;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+/**
+ * @author Thomas A Beck
+ * @version $Id$
+ */
+public class ConcurrentTemporalAttributeTest extends TestCase implements TestConstants
+{
+  private ConcurrentTemporalAttribute<String> map;
+
+  public ConcurrentTemporalAttributeTest(String testName) {
+    super(testName);
+  }
+
+  public void setUp() {
+    map = new ConcurrentTemporalAttribute<String>();
+  }
+
+  public void testPutGet() {
+    assertTrue(map.isEmpty());
+    assertFalse(map.put(p13, s1));
+    assertFalse(map.put(p34, s1));  // merged
+    assertTrue(map.put(p24, s2));
+    assertEquals(2, map.size());
+    assertEquals(s1, map.get(i1));
+    assertEquals(s2, map.get(i3));
+    assertEquals(p12, map.getPeriod(i1));
+    assertEquals(new SimpleTimedObject<String>(p24, s2), map.getEntry(i2));
+    assertEquals(p14, map.extent());
+
+    assertTrue(map.remove(p23));
+    assertNull(map.get(i2));
+    assertEquals(s2, map.get(i3));
+    assertFalse(map.remove(p56));
+
+    map.clear();
+    assertTrue(map.isEmpty());
+  }
+
+  public void testSnapshotViews() {
+    map.put(p13, s1);
+    Set<Period> periods = map.periodSet();
+    map.put(p34, s2);
+    assertEquals(1, periods.size());  // the view is not affected
+    assertEquals(2, map.periodSet().size());
+
+    Iterator<Period> i = map.periodSet().iterator();
+    i.next();
+    try {
+      i.remove();
+      fail();
+    }
+    catch (UnsupportedOperationException e) {
+      // read-only
+    }
+  }
+
+  public void testSubMap() {
+    map.put(p13, s1);
+    map.put(p35, s2);
+    TemporalAttribute<String> sub = map.subMap(p24);
+    map.put(p34, s3);
+    // the view is not affected
+    assertEquals(2, sub.size());
+    assertEquals(p23, sub.getPeriod(i2));
+    assertEquals(s2, sub.get(i3));
+    assertEquals(p24, sub.extent());
+    assertEquals(s3, map.subMap(p24).get(i3));
+    assertEquals(1, sub.subMap(p34).size());
+
+    try {
+      sub.put(p23, s3);
+      fail();
+    }
+    catch (UnsupportedOperationException e) {
+      // read-only
+    }
+    try {
+      sub.entrySet().clear();
+      fail();
+    }
+    catch (UnsupportedOperationException e) {
+      // read-only
+    }
+    assertEquals(3, map.size());
+  }
+
+  public void testSnapshot() {
+    map.put(p13, s1);
+    TemporalAttribute<String> snapshot = map.snapshot();
+    map.put(p34, s2);
+    snapshot.put(p56, s3);
+    assertEquals(2, snapshot.size());
+    assertNull(snapshot.get(i3));
+    assertEquals(s2, map.get(i3));
+    assertNull(map.get(i5));
+  }
+
+  public void testEdit() {
+    map.put(p12, s1);
+    assertTrue(map.edit().put(p23, s1).put(p45, s2).remove(p12).apply());
+    assertEquals(2, map.size());
+    assertEquals(p23, map.getPeriod(i2));
+    assertEquals(s2, map.get(i4));
+  }
+
+  public void testPutAll() {
+    TemporalAttribute<String> ta = new TemporalAttributeImpl<String>(
+      new net.sf.jtemporal.spi.TreeTemporalAttributeStorage<String>()
+    );
+    ta.put(p12, s1);
+    ta.put(p34, s2);
+    ConcurrentTemporalAttribute<String> copy = new ConcurrentTemporalAttribute<String>(ta);
+    assertEquals(ta, copy);
+  }
+
+  /**
+   * Readers must never see the intermediate states of a write.
+   */
+  public void testConcurrentReaders() throws Exception {
+    final Period always = new Period(i0, i9);
+    map.put(always, s1);
+    final boolean[] failed = new boolean[1];
+    Thread[] readers = new Thread[4];
+    for (int t = 0; t < readers.length; t++) {
+      readers[t] = new Thread() {
+        public void run() {
+          for (int k = 0; k < 20000 && !failed[0]; k++) {
+            // the writer keeps covering [i0, i9) with a single entry
+            Period p = map.getPeriod(i5);
+            if (p == null || !p.contains(i1) || map.get(i8) == null) {
+              failed[0] = true;
+            }
+          }
+        }
+      };
+      readers[t].start();
+    }
+    for (int k = 0; k < 2000; k++) {
+      map.put(always, (k % 2 == 0) ? s2 : s1);
+    }
+    for (int t = 0; t < readers.length; t++) {
+      readers[t].join();
+    }
+    assertFalse(failed[0]);
+  }
+}
@@ -0,0 +1,102 @@
+/* This file is part of the JTemporal framework (http://jtemporal.sf.net).
+   Copyright (C) 2002 by the author(s).
+   Distributable under LGPL license version 2.1 or later, 
+   with NO WARRANTIES given or implied.
+   See terms of license at gnu.org or www.opensource.org/licenses  */
+
+package net.sf.jtemporal;
+
+import java.io.*;
+
+import net.sf.jtemporal.spi.StartComparator;
+import net.sf.jtemporal.spi.TreeTemporalAttributeStorage;
+import junit.framework.TestCase;
+
+/**
+ * @author Thomas A Beck
+ * @version $Id$
+ */
+public class LongInstantTest extends TestCase {
+
+  private final LongInstant l1 = LongInstant.valueOf(100L);
+  private final LongInstant l1bis = LongInstant.valueOf(100L);
+  private final LongInstant l2 = LongInstant.valueOf(200L);
+  private final LongInstant l3 = LongInstant.valueOf(300L);
+
+  public LongInstantTest(String name) {
+    super(name);
+  }
+
+  public void testCompare() {
+    assertTrue(l1.compareTo(l1bis) == 0);
+    assertTrue(l1.equals(l1bis));
+    assertTrue(l1.hashCode() == l1bis.hashCode());
+    assertTrue(l1.compareTo(l2) < 0);
+    assertTrue(l2.compareTo(l1) > 0);
+    assertTrue(LongInstant.compare(l1, l2) < 0);
+    assertTrue(LongInstant.compare(l2, l1) > 0);
+    assertTrue(LongInstant.compare(l1, l1bis) == 0);
+    // no overflow on extreme values
+    assertTrue(LongInstant.NEGATIVE_INFINITY.compareTo(LongInstant.POSITIVE_INFINITY) < 0);
+    assertTrue(LongInstant.POSITIVE_INFINITY.compareTo(LongInstant.NEGATIVE_INFINITY) > 0);
+  }
+
+  public void testCompareOtherInstants() {
+    // falls back to Instant.compareTo
+    assertTrue(LongInstant.compare(TestConstants.i1, TestConstants.i2) < 0);
+    try {
+      LongInstant.compare(l1, TestConstants.i1);
+    } catch (ClassCastException e) {
+      return;
+    }
+    fail("Missed exception");
+  }
+
+  public void testInfinity() {
+    assertSame(LongInstant.POSITIVE_INFINITY, LongInstant.valueOf(Long.MAX_VALUE));
+    assertSame(LongInstant.NEGATIVE_INFINITY, LongInstant.valueOf(Long.MIN_VALUE));
+    assertTrue(LongInstant.POSITIVE_INFINITY.isPositiveInfinity());
+    assertTrue(LongInstant.NEGATIVE_INFINITY.isNegativeInfinity());
+    assertFalse(l1.isPositiveInfinity());
+    assertFalse(l1.isNegativeInfinity());
+    assertTrue(LongInstant.ALWAYS.contains(LongInstant.POSITIVE_INFINITY));
+    assertEquals("+INF", LongInstant.POSITIVE_INFINITY.toString());
+    assertEquals("100", l1.toString());
+  }
+
+  public void testSerialization() throws Exception {
+    assertSame(LongInstant.POSITIVE_INFINITY, this.cloneBySerialization(LongInstant.POSITIVE_INFINITY));
+    assertSame(LongInstant.NEGATIVE_INFINITY, this.cloneBySerialization(LongInstant.NEGATIVE_INFINITY));
+    assertEquals(l1, this.cloneBySerialization(l1));
+  }
+
+  public void testPeriodAndComparator() {
+    Period p12 = new Period(l1, l2);
+    Period p23 = new Period(l2, l3);
+    assertTrue(p12.precedes(p23));
+    assertTrue(p12.meetsBefore(p23));
+    assertTrue(p12.contains(l1bis));
+    assertFalse(p12.contains(l2));
+    assertTrue(p12.compareTo(p23) < 0);
+    assertTrue(StartComparator.COMPARATOR.compare(p23, l2) == 0);
+    assertTrue(StartComparator.COMPARATOR.compare(l1, p23) < 0);
+    
+    TreeTemporalAttributeStorage<String> storage = new TreeTemporalAttributeStorage<String>();
+    storage.put(p12, "a");
+    storage.put(p23, "b");
+    assertEquals("a", storage.getValue(LongInstant.valueOf(150L)));
+    assertEquals("b", storage.getValue(LongInstant.valueOf(200L)));
+    assertNull(storage.getValue(l3));
+  }
+
+  private Object cloneBySerialization(Serializable o) throws Exception {
+    ByteArrayOutputStream aos = new ByteArrayOutputStream();
+    ObjectOutputStream oos = new ObjectOutputStream(aos);
+    oos.writeObject(o);
+    oos.close();
+    ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(aos.toByteArray()));
+    Object clone = ois.readObject();
+    ois.close();
+    return clone;
+  }
+}
@@ -511,6 +511,178 @@ public class TemporalAttributeImplTest extends TestCase implements TestConstants
 
   
   
+  public void testBulkLoad() {
+    List entries = Arrays.asList(new TimedObject[] {
+      new SimpleTimedObject(p12, s1),
+      new SimpleTimedObject(p23, s1),
+      new SimpleTimedObject(p34, s2),
+      new SimpleTimedObject(p56, s2),
+    });
+    TemporalAttributeImpl ta = (TemporalAttributeImpl) map;
+    ta.bulkLoad(entries.iterator());
+    // the storage receives the entries already merged
+    assertEquals(3, this.putCounterStorage.putCount);
+    assertEquals(3, map.size());
+    assertEquals(p13, map.getPeriod(i2));
+    assertEquals(p56, map.getPeriod(i5));
+
+    // same content as put()
+    for (Iterator i = entries.iterator(); i.hasNext();) {
+      TimedObject to = (TimedObject) i.next();
+      map2.put(to.getPeriod(), to.getValue());
+    }
+    assertEquals(map2, map);
+
+    // merged with the last entry
+    ta.bulkLoad(Collections.singletonList(new SimpleTimedObject(p68, s2)).iterator());
+    assertEquals(3, map.size());
+    assertEquals(new Period(i5, i8), map.getPeriod(i7));
+
+    // bulk loadable storage
+    TemporalAttributeImpl ta3 = new TemporalAttributeImpl(new ArrayTemporalAttributeStorage());
+    ta3.bulkLoad(entries.iterator());
+    assertEquals(map2, ta3);
+
+    try {
+      ta.bulkLoad(Collections.singletonList(new SimpleTimedObject(p45, s3)).iterator());
+      fail();
+    }
+    catch (IllegalArgumentException e) {
+      // precedes the last instant
+    }
+    assertEquals(3, map.size());
+
+    // a faulty entry leaves the attribute unchanged, whatever the storage
+    TemporalAttributeStorage[] storages = {
+      new TreeTemporalAttributeStorage(),
+      new ArrayTemporalAttributeStorage(),
+      new PersistentTemporalAttributeStorage(),
+    };
+    for (int k = 0; k < storages.length; k++) {
+      TemporalAttributeImpl ta4 = new TemporalAttributeImpl(storages[k]);
+      ta4.put(p13, s1);
+      try {
+        ta4.bulkLoad(Arrays.asList(new TimedObject[] {
+          new SimpleTimedObject(p35, s1),
+          new SimpleTimedObject(p68, s2),
+          new SimpleTimedObject(new Period(i7, i9), s3),
+        }).iterator());
+        fail();
+      }
+      catch (IllegalArgumentException e) {
+        // overlap
+      }
+      assertEquals(1, ta4.size());
+      assertEquals(p13, ta4.getPeriod(i2));
+      assertEquals(s1, ta4.get(i2));
+      assertNull(ta4.get(i6));
+    }
+  }
+
+  public void testCoalesce() {
+    // fragmented, as loaded by a storage
+    putCounterStorage.put(p12, s1);
+    putCounterStorage.put(p23, s1);
+    putCounterStorage.put(p34, s1);
+    putCounterStorage.put(p45, s2);
+    putCounterStorage.put(p56, s2);
+    putCounterStorage.put(p78, s2);   // not adjacent
+    putCounterStorage.put(p89, s3);
+    TemporalAttributeImpl ta = (TemporalAttributeImpl) map;
+    assertEquals(7, map.size());
+
+    // the view
+    Set view = ta.coalescedEntrySet();
+    assertEquals(4, view.size());
+    Iterator it = view.iterator();
+    assertEquals(new SimpleTimedObject(new Period(i1, i4), s1), it.next());
+    assertEquals(new SimpleTimedObject(new Period(i4, i6), s2), it.next());
+    assertEquals(new SimpleTimedObject(p78, s2), it.next());
+    assertEquals(new SimpleTimedObject(p89, s3), it.next());
+    assertFalse(it.hasNext());
+    assertEquals(7, map.size());
+
+    // in place
+    int puts = this.putCounterStorage.putCount;
+    assertEquals(3, ta.coalesce());
+    assertEquals(puts + 2, this.putCounterStorage.putCount);
+    assertEquals(4, map.size());
+    assertEquals(new ArrayList(view), new ArrayList(map.entrySet()));
+    assertEquals(0, ta.coalesce());
+    assertEquals(4, view.size());
+  }
+
+  public void testEdit() {
+    map.put(p12, s1);
+    map.put(p78, s1);
+    int initialCount = this.putCounterStorage.putCount;
+
+    TemporalAttributeBatch batch = map.edit();
+    assertTrue(batch.put(p23, s1).put(p34, s1).put(p45, s1).remove(p78).size() == 4);
+    assertTrue(batch.apply());
+    assertEquals(0, batch.size());
+    // 3 puts, plus the put of the merged period
+    assertEquals(initialCount + 4, this.putCounterStorage.putCount);
+    assertEquals(1, map.size());
+    assertEquals(new Period(i1, i5), map.getPeriod(i3));
+
+    assertFalse(batch.apply());
+    try {
+      batch.put(p12, null);
+      fail();
+    }
+    catch (IllegalArgumentException e) {
+    }
+  }
+
+  /**
+   * A batch merges only the entries meeting the periods put.
+   */
+  public void testEditMergesNeighboursOnly() {
+    // fragmented, as loaded by a storage
+    putCounterStorage.put(p45, s2);
+    putCounterStorage.put(p56, s2);
+    map.put(p89, s1);
+    int initialCount = this.putCounterStorage.putCount;
+
+    TemporalAttributeBatch batch = map.edit();
+    batch.put(p12, s2).put(p34, s2).put(p78, s1).apply();
+    // 3 puts, plus the put of [i3, i5) and [i7, i9)
+    assertEquals(initialCount + 5, this.putCounterStorage.putCount);
+    assertEquals(new Period(i3, i5), map.getPeriod(i4));
+    assertEquals(p56, map.getPeriod(i5));
+    assertEquals(new Period(i7, i9), map.getPeriod(i8));
+    assertEquals(p12, map.getPeriod(i1));
+    assertEquals(4, map.size());
+  }
+
+  /**
+   * A batch must give the same result as the successive puts and removes.
+   */
+  public void testEditRandom() {
+    Random random = new Random(7);
+    String[] values = {s1, s2, s3};
+    for (int round = 0; round < 50; round++) {
+      TemporalAttributeBatch batch = map.edit();
+      for (int k = 0; k < 20; k++) {
+        int start = random.nextInt(100);
+        Period p = new Period(new IntInstant(start), new IntInstant(start + 1 + random.nextInt(10)));
+        if (random.nextInt(5) == 0) {
+          batch.remove(p);
+          map2.remove(p);
+        }
+        else {
+          String value = values[random.nextInt(values.length)];
+          batch.put(p, value);
+          map2.put(p, value);
+        }
+      }
+      batch.apply();
+      assertEquals(map2, map);
+      checkConsistency(map);
+    }
+  }
+
   /**
    * Checks invariants on a TemporalAttribute
    * @throws IllegalStateException
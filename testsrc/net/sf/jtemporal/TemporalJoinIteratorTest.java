@@ -0,0 +1,121 @@
+/* This file is part of the JTemporal framework (http://jtemporal.sf.net).
+   Copyright (C) 2002 by the author(s).
+   Distributable under LGPL license version 2.1 or later,
+   with NO WARRANTIES given or implied.
+   See terms of license at gnu.org or www.opensource.org/licenses  */
+
+package net.sf.jtemporal;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import junit.framework.TestCase;
+import net.sf.jtemporal.spi.TreeTemporalAttributeStorage;
+
+/**
+ * @author Thomas A Beck
+ * @version $Id$
+ */
+public class TemporalJoinIteratorTest extends TestCase implements TestConstants {
+
+  private TemporalAttribute<Integer> salary;
+  private TemporalAttribute<String> department;
+
+  public void setUp() {
+    this.salary = new TemporalAttributeImpl<Integer>(new TreeTemporalAttributeStorage<Integer>());
+    this.department = new TemporalAttributeImpl<String>(new TreeTemporalAttributeStorage<String>());
+    this.salary.put(p13, 1000);
+    this.salary.put(p35, 1200);
+    this.salary.put(p68, 1500);
+    this.department.put(p24, s1);
+    this.department.put(new Period(i4, i7), s2);
+  }
+
+  private static <L, R> List<TimedPair<L, R>> list(Iterator<TimedPair<L, R>> it) {
+    List<TimedPair<L, R>> list = new ArrayList<TimedPair<L, R>>();
+    while (it.hasNext()) {
+      list.add(it.next());
+    }
+    return list;
+  }
+
+  private static <L, R> TimedPair<L, R> pair(Period p, L left, R right) {
+    return new TimedPair<L, R>(p, left, right);
+  }
+
+  public void testInnerJoin() {
+    TemporalJoinIterator<Integer, String> it =
+      new TemporalJoinIterator<Integer, String>(this.salary, this.department);
+    assertEquals(Arrays.asList(
+      pair(p23, 1000, s1),
+      pair(p34, 1200, s1),
+      pair(p45, 1200, s2),
+      pair(new Period(i6, i7), 1500, s2)
+    ), list(it));
+    assertFalse(it.isOpen());
+
+    // nested lookups give the same result
+    for (TimedPair<Integer, String> pair : list(new TemporalJoinIterator<Integer, String>(this.salary, this.department))) {
+      Instant start = pair.getPeriod().getStart();
+      assertEquals(this.salary.get(start), pair.getLeft());
+      assertEquals(this.department.get(start), pair.getRight());
+    }
+  }
+
+  public void testOuterJoin() {
+    assertEquals(Arrays.asList(
+      pair(p12, 1000, null),
+      pair(p23, 1000, s1),
+      pair(p34, 1200, s1),
+      pair(p45, 1200, s2),
+      pair(p56, null, s2),
+      pair(new Period(i6, i7), 1500, s2),
+      pair(p78, 1500, null)
+    ), list(new TemporalJoinIterator<Integer, String>(this.salary, this.department, true)));
+
+    // the gaps are skipped
+    this.department.clear();
+    this.department.put(new Period(i9, infinite), s3);
+    assertEquals(Arrays.asList(
+      pair(p13, 1000, null),
+      pair(p35, 1200, null),
+      pair(p68, 1500, null),
+      pair(new Period(i9, infinite), null, s3)
+    ), list(new TemporalJoinIterator<Integer, String>(this.salary, this.department, true)));
+    assertTrue(list(new TemporalJoinIterator<Integer, String>(this.salary, this.department)).isEmpty());
+  }
+
+  public void testMaximalPeriods() {
+    // fragmented entries, as in some storages
+    List<TimedObject<Integer>> left = new ArrayList<TimedObject<Integer>>();
+    left.add(new SimpleTimedObject<Integer>(p12, 1));
+    left.add(new SimpleTimedObject<Integer>(p23, 1));
+    left.add(new SimpleTimedObject<Integer>(p34, 2));
+    List<TimedObject<String>> right = new ArrayList<TimedObject<String>>();
+    right.add(new SimpleTimedObject<String>(p13, s1));
+    right.add(new SimpleTimedObject<String>(p35, s1));
+    assertEquals(Arrays.asList(
+      pair(p13, 1, s1),
+      pair(p34, 2, s1),
+      pair(p45, null, s1)
+    ), list(new TemporalJoinIterator<Integer, String>(left.iterator(), right.iterator(), true)));
+  }
+
+  public void testWrongInput() {
+    List<TimedObject<Integer>> left = new ArrayList<TimedObject<Integer>>();
+    left.add(new SimpleTimedObject<Integer>(p13, 1));
+    left.add(new SimpleTimedObject<Integer>(p24, 2));
+    Iterator<TimedPair<Integer, String>> it = new TemporalJoinIterator<Integer, String>(
+      left.iterator(), this.department.entrySet().iterator(), false
+    );
+    try {
+      list(it);
+      fail();
+    }
+    catch (IllegalArgumentException e) {
+      // overlap
+    }
+  }
+}
@@ -127,6 +127,47 @@ public class TemporalSetTest extends TestCase implements TestConstants
     assertTrue (!snapShot.contains("two"));
   }
 
+  public void testValueSetDeltas() {
+    map.put(p14, s1);
+    map.put(p34, s2);
+    map.put(p35, s1);
+    map.put(p23, s3);
+    map.put(p24, s4);
+    map.put(p12, s5);
+    map.put(new IntPeriod(i5, IntInstant.POSITIVE_INFINITY), s6);
+
+    // the entries ending at +INF are valid at +INF
+    List instants = Arrays.asList(new Instant[] {i0, i1, i2, i2, i3, i4, i5, i6, IntInstant.POSITIVE_INFINITY});
+    Set running = new HashSet();
+    Iterator i = map.valueSetDeltas(instants.iterator());
+    for (Iterator j = instants.iterator(); j.hasNext(); ) {
+      Instant instant = (Instant) j.next();
+      assertTrue(i.hasNext());
+      ValueSetDelta delta = (ValueSetDelta) i.next();
+      assertEquals(instant, delta.getInstant());
+      delta.applyTo(running);
+      assertEquals(new HashSet(map.valueSet(instant)), running);
+    }
+    assertFalse(i.hasNext());
+
+    i = map.valueSetDeltas(Arrays.asList(new Instant[] {i1, i4}).iterator());
+    ValueSetDelta delta = (ValueSetDelta) i.next();
+    assertEquals(2, delta.getAdded().size());  // s1, s5
+    delta = (ValueSetDelta) i.next();
+    assertEquals(Collections.singleton(s5), delta.getRemoved()); // s3, s4 and s2 came and went
+    assertTrue(delta.getAdded().isEmpty());
+
+    i = map.valueSetDeltas(Arrays.asList(new Instant[] {i3, i2}).iterator());
+    i.next();
+    try {
+      i.next();
+      fail();
+    }
+    catch (IllegalArgumentException e) {
+      // the instants are not sorted
+    }
+  }
+
   public void testRemovePeriod() {
       map.put(p18, s1);
       map.put(p35, s1);
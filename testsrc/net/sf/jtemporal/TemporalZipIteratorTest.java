@@ -0,0 +1,133 @@
+/* This file is part of the JTemporal framework (http://jtemporal.sf.net).
+   Copyright (C) 2002 by the author(s).
+   Distributable under LGPL license version 2.1 or later,
+   with NO WARRANTIES given or implied.
+   See terms of license at gnu.org or www.opensource.org/licenses  */
+
+package net.sf.jtemporal;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import net.sf.jtemporal.spi.TreeTemporalAttributeStorage;
+
+/**
+ * @author Thomas A Beck
+ * @version $Id$
+ */
+public class TemporalZipIteratorTest extends TestCase implements TestConstants {
+
+  private static TemporalAttribute<String> newAttribute() {
+    return new TemporalAttributeImpl<String>(new TreeTemporalAttributeStorage<String>());
+  }
+
+  private static List<TimedRow> list(Iterator<TimedRow> it) {
+    List<TimedRow> list = new ArrayList<TimedRow>();
+    while (it.hasNext()) {
+      list.add(it.next().copy());
+    }
+    return list;
+  }
+
+  private static TimedRow row(Period p, Object... values) {
+    TimedRow row = new TimedRow(values);
+    row.setPeriod(p.getStart(), p.getEnd());
+    return row;
+  }
+
+  public void testZip() {
+    TemporalAttribute<String> a = newAttribute();
+    TemporalAttribute<String> b = newAttribute();
+    TemporalAttribute<String> c = newAttribute();
+    a.put(p13, s1);
+    a.put(p35, s2);
+    b.put(p24, s3);
+    c.put(p78, s1);
+
+    TemporalZipIterator it = new TemporalZipIterator(a, b, c);
+    assertEquals(Arrays.asList(
+      row(p12, s1, null, null),
+      row(p23, s1, s3, null),
+      row(p34, s2, s3, null),
+      row(p45, s2, null, null),
+      row(p78, null, null, s1)
+    ), list(it));
+    assertFalse(it.isOpen());
+    assertFalse(it.hasNext());
+  }
+
+  public void testReusedRow() {
+    TemporalAttribute<String> a = newAttribute();
+    a.put(p12, s1);
+    a.put(p23, s2);
+    TemporalZipIterator it = new TemporalZipIterator(a);
+    TimedRow first = it.next();
+    assertEquals(p12, first.getPeriod());
+    assertEquals(s1, first.get(0));
+    TimedRow second = it.next();
+    assertSame(first, second);
+    assertEquals(p23, second.getPeriod());
+    assertEquals(s2, second.get(0));
+    assertEquals(1, second.size());
+  }
+
+  public void testMaximalPeriods() {
+    // fragmented entries, as in some storages
+    List<TimedObject<String>> fragmented = new ArrayList<TimedObject<String>>();
+    fragmented.add(new SimpleTimedObject<String>(p12, s1));
+    fragmented.add(new SimpleTimedObject<String>(p23, s1));
+    fragmented.add(new SimpleTimedObject<String>(p34, s1));
+    TemporalAttribute<String> b = newAttribute();
+    b.put(p24, s2);
+    List<Iterator<? extends TimedObject<?>>> entries = new ArrayList<Iterator<? extends TimedObject<?>>>();
+    entries.add(fragmented.iterator());
+    entries.add(b.entrySet().iterator());
+    assertEquals(Arrays.asList(
+      row(p12, s1, null),
+      row(p24, s1, s2)
+    ), list(new TemporalZipIterator(entries)));
+  }
+
+  public void testEmpty() {
+    assertFalse(new TemporalZipIterator().hasNext());
+    assertFalse(new TemporalZipIterator(newAttribute(), newAttribute()).hasNext());
+  }
+
+  /**
+   * The rows must give the same values as get(Instant).
+   */
+  public void testRandom() {
+    Random random = new Random(11);
+    String[] values = {s1, s2, s3};
+    TemporalAttribute<?>[] attributes = new TemporalAttribute<?>[20];
+    for (int k = 0; k < attributes.length; k++) {
+      TemporalAttribute<String> ta = newAttribute();
+      for (int e = 0; e < 10; e++) {
+        int start = random.nextInt(100);
+        ta.put(
+          new Period(new IntInstant(start), new IntInstant(start + 1 + random.nextInt(10))),
+          values[random.nextInt(values.length)]
+        );
+      }
+      attributes[k] = ta;
+    }
+
+    TimedRow previous = null;
+    for (TimedRow row : list(new TemporalZipIterator(attributes))) {
+      for (int t = ((IntInstant) row.getStart()).toIntValue(); t < ((IntInstant) row.getEnd()).toIntValue(); t++) {
+        for (int k = 0; k < attributes.length; k++) {
+          assertEquals(attributes[k].get(new IntInstant(t)), row.get(k));
+        }
+      }
+      if (previous != null && previous.getEnd().equals(row.getStart())) {
+        // maximal
+        assertFalse(previous.copy().equals(row));
+      }
+      previous = row;
+    }
+  }
+}
@@ -0,0 +1,32 @@
+/* This file is part of the JTemporal framework (http://jtemporal.sf.net).
+ Copyright (C) 2002 by the author(s).
+ Distributable under LGPL license version 2.1 or later, 
+ with NO WARRANTIES given or implied.
+ See terms of license at gnu.org or www.opensource.org/licenses  */
+
+package net.sf.jtemporal.io;
+
+import junit.framework.*;
+
+/**
+ * Test suite for the io package
+ * @author Thomas A Beck
+ * @version $Id$
+ */
+public class AllTests
+{
+	public static void main(String[] args) {
+		junit.textui.TestRunner.run(suite());
+	}
+
+	public static Test suite() {
+		TestSuite suite = new TestSuite("Test for net.sf.jtemporal.io");
+		//$JUnit-BEGIN$
+		suite.addTestSuite(TemporalCodecTest.class);
+		suite.addTestSuite(DurableTemporalAttributeStorageTest.class);
+		suite.addTestSuite(DurableTemporalSetStorageTest.class);
+		suite.addTestSuite(AttributeSnapshotTest.class);
+		//$JUnit-END$
+		return suite;
+	}
+}
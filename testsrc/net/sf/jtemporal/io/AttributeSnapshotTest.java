@@ -0,0 +1,159 @@
+/*
+   This file is part of the JTemporal framework (http://jtemporal.sf.net).
+   Copyright (C) 2002 by the author(s).
+   Distributable under LGPL license version 2.1 or later,
+   with no warranties given or implied.
+   See terms of license at gnu.org or www.opensource.org/licenses  */
+
+package net.sf.jtemporal.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+import junit.framework.TestCase;
+import net.sf.jtemporal.LongInstant;
+import net.sf.jtemporal.Period;
+import net.sf.jtemporal.TemporalAttribute;
+import net.sf.jtemporal.TemporalAttributeImpl;
+import net.sf.jtemporal.spi.TemporalAttributeStorage;
+import net.sf.jtemporal.spi.TreeTemporalAttributeStorage;
+
+/**
+ * @author Thomas A Beck
+ * @version $Id$
+ */
+public class AttributeSnapshotTest extends TestCase {
+
+	private final AttributeSnapshot<Integer, String> snapshot = new AttributeSnapshot<Integer, String>(
+		LongInstantCodec.INSTANCE, new SerializedValueCodec<Integer>(), new SerializedValueCodec<String>()
+	);
+
+	private final AttributeSnapshot.StorageFactory<Integer, String> trees =
+		new AttributeSnapshot.StorageFactory<Integer, String>() {
+			public TemporalAttributeStorage<String> newStorage(Integer key) {
+				return new TreeTemporalAttributeStorage<String>();
+			}
+		};
+
+	private ForkJoinPool pool;
+
+	private static Period p(long start, long end) {
+		return new Period(LongInstant.valueOf(start), LongInstant.valueOf(end));
+	}
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		this.pool = new ForkJoinPool(4);
+	}
+
+	protected void tearDown() throws Exception {
+		this.pool.shutdown();
+		super.tearDown();
+	}
+
+	private static Map<Integer, TemporalAttribute<String>> attributes(int count) {
+		Map<Integer, TemporalAttribute<String>> attributes = new LinkedHashMap<Integer, TemporalAttribute<String>>();
+		for (int k = 0; k < count; k++) {
+			TemporalAttribute<String> ta = new TemporalAttributeImpl<String>(new TreeTemporalAttributeStorage<String>());
+			for (int e = 0; e < k % 10; e++) {
+				ta.put(p(e * 10, e * 10 + 5), "v" + (k + e) % 4);
+			}
+			attributes.put(Integer.valueOf(count - k), ta); // not sorted
+		}
+		return attributes;
+	}
+
+	private byte[] write(Map<Integer, TemporalAttribute<String>> attributes) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		this.snapshot.writeTo(attributes, out);
+		return out.toByteArray();
+	}
+
+	public void testParallelLoad() throws IOException {
+		Map<Integer, TemporalAttribute<String>> attributes = attributes(1000);
+		final List<AttributeSnapshot.Progress> progresses = new ArrayList<AttributeSnapshot.Progress>();
+		AttributeSnapshot.ProgressListener listener = new AttributeSnapshot.ProgressListener() {
+			public void progress(AttributeSnapshot.Progress progress) {
+				progresses.add(progress);
+			}
+		};
+		Map<Integer, TemporalAttribute<String>> loaded = this.snapshot.readFrom(
+			new ByteArrayInputStream(this.write(attributes)), this.trees, this.pool, listener
+		);
+
+		assertEquals(new ArrayList<Integer>(attributes.keySet()), new ArrayList<Integer>(loaded.keySet()));
+		for (Integer key : attributes.keySet()) {
+			assertEquals(attributes.get(key).entrySet(), loaded.get(key).entrySet());
+		}
+
+		assertTrue(progresses.size() > 1);
+		AttributeSnapshot.Progress previous = null;
+		for (Iterator<AttributeSnapshot.Progress> it = progresses.iterator(); it.hasNext();) {
+			AttributeSnapshot.Progress progress = it.next();
+			assertEquals(1000, progress.getTotal());
+			if (previous != null) {
+				assertTrue(progress.getLoaded() >= previous.getLoaded());
+				assertTrue(progress.getEntries() >= previous.getEntries());
+			}
+			previous = progress;
+		}
+		assertTrue(previous.isDone());
+		assertEquals(4500, previous.getEntries());
+		assertTrue(previous.getEntriesPerSecond() > 0);
+	}
+
+	public void testEmpty() throws IOException {
+		final List<AttributeSnapshot.Progress> progresses = new ArrayList<AttributeSnapshot.Progress>();
+		AttributeSnapshot.ProgressListener listener = new AttributeSnapshot.ProgressListener() {
+			public void progress(AttributeSnapshot.Progress progress) {
+				progresses.add(progress);
+			}
+		};
+		byte[] bytes = this.write(new LinkedHashMap<Integer, TemporalAttribute<String>>());
+		assertTrue(this.snapshot.readFrom(
+			new ByteArrayInputStream(bytes), this.trees, this.pool, listener
+		).isEmpty());
+		assertEquals(1, progresses.size());
+		assertTrue(progresses.get(0).isDone());
+	}
+
+	public void testCommonPool() throws IOException {
+		Map<Integer, TemporalAttribute<String>> attributes = attributes(50);
+		Map<Integer, TemporalAttribute<String>> loaded = this.snapshot.readFrom(
+			new ByteArrayInputStream(this.write(attributes)), this.trees
+		);
+		assertEquals(50, loaded.size());
+		assertEquals(attributes.get(Integer.valueOf(41)).entrySet(), loaded.get(Integer.valueOf(41)).entrySet());
+	}
+
+	public void testCorrupted() throws IOException {
+		byte[] bytes = this.write(attributes(100));
+		// the kind of the first attribute
+		int k = 4;
+		while (bytes[k] != 'J' || bytes[k + 1] != 'T' || bytes[k + 2] != 'A') {
+			k++;
+		}
+		bytes[k + 2] = 'X';
+		try {
+			this.snapshot.readFrom(new ByteArrayInputStream(bytes), this.trees, this.pool, null);
+			fail();
+		}
+		catch (IOException expected) {
+		}
+
+		try {
+			this.snapshot.readFrom(new ByteArrayInputStream(new byte[] {'J', 'T', 'A', 1}), this.trees);
+			fail();
+		}
+		catch (StreamCorruptedException expected) {
+		}
+	}
+}
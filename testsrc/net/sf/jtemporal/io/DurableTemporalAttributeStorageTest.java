@@ -0,0 +1,257 @@
+/*
+   This file is part of the JTemporal framework (http://jtemporal.sf.net).
+   Copyright (C) 2002 by the author(s).
+   Distributable under LGPL license version 2.1 or later,
+   with no warranties given or implied.
+   See terms of license at gnu.org or www.opensource.org/licenses  */
+
+package net.sf.jtemporal.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import junit.framework.TestCase;
+import net.sf.jtemporal.LongInstant;
+import net.sf.jtemporal.Period;
+import net.sf.jtemporal.TemporalAttribute;
+import net.sf.jtemporal.TemporalAttributeImpl;
+import net.sf.jtemporal.TimedObject;
+import net.sf.jtemporal.spi.TreeTemporalAttributeStorage;
+
+/**
+ * @author Thomas A Beck
+ * @version $Id$
+ */
+public class DurableTemporalAttributeStorageTest extends TestCase {
+
+	private File directory;
+	private DurableTemporalAttributeStorage<String> storage;
+
+	private static LongInstant i(long value) {
+		return LongInstant.valueOf(value);
+	}
+
+	private static Period p(long start, long end) {
+		return new Period(i(start), i(end));
+	}
+
+	static File newDirectory() throws IOException {
+		File directory = File.createTempFile("jtemporal", ".log");
+		directory.delete();
+		return directory;
+	}
+
+	static void delete(File directory) {
+		File[] files = directory.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				file.delete();
+			}
+		}
+		directory.delete();
+	}
+
+	/**
+	 * Appends garbage to the log, like a group torn by a crash.
+	 */
+	static void tear(File directory, int length) throws IOException {
+		RandomAccessFile log = new RandomAccessFile(new File(directory, DurableLog.LOG), "rw");
+		try {
+			log.seek(log.length());
+			log.writeByte(length);
+			log.write(new byte[length / 2]);
+		}
+		finally {
+			log.close();
+		}
+	}
+
+	private DurableTemporalAttributeStorage<String> open() throws IOException {
+		return new DurableTemporalAttributeStorage<String>(
+			this.directory, new TreeTemporalAttributeStorage<String>(),
+			LongInstantCodec.INSTANCE, new SerializedValueCodec<String>()
+		);
+	}
+
+	private void reopen() throws IOException {
+		this.storage.close();
+		this.storage = this.open();
+	}
+
+	private List<TimedObject<String>> entries() {
+		List<TimedObject<String>> entries = new ArrayList<TimedObject<String>>();
+		Iterator<TimedObject<String>> it = this.storage.entryIterator();
+		while (it.hasNext()) {
+			entries.add(it.next());
+		}
+		return entries;
+	}
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		this.directory = newDirectory();
+		this.storage = this.open();
+	}
+
+	protected void tearDown() throws Exception {
+		this.storage.close();
+		delete(this.directory);
+		super.tearDown();
+	}
+
+	public void testReplay() throws IOException {
+		this.storage.put(p(10, 20), "one");
+		this.storage.put(p(20, 30), "two");
+		this.storage.put(new Period(i(30), LongInstant.POSITIVE_INFINITY), "three");
+		this.storage.put(p(-50, -40), "minus");
+		this.storage.removeEntry(p(20, 30));
+		assertEquals(0, this.storage.removeRange(p(-30, -20)));
+		List<TimedObject<String>> expected = this.entries();
+
+		this.reopen();
+		assertEquals(expected, this.entries());
+		assertEquals(3, this.storage.size());
+
+		this.storage.clear();
+		this.storage.put(p(1, 2), "x");
+		this.reopen();
+		assertEquals(1, this.storage.size());
+		assertEquals("x", this.storage.getValue(i(1)));
+	}
+
+	public void testIteratorRemove() throws IOException {
+		this.storage.put(p(10, 20), "one");
+		this.storage.put(p(20, 30), "two");
+		this.storage.put(p(30, 40), "three");
+		Iterator<Period> it = this.storage.periodIterator(p(15, 25));
+		it.next();
+		it.remove();
+		this.reopen();
+		assertEquals(2, this.storage.size());
+		assertNull(this.storage.getValue(i(15)));
+	}
+
+	public void testAtomicOperations() throws IOException {
+		TemporalAttribute<String> ta = new TemporalAttributeImpl<String>(this.storage);
+		ta.put(p(10, 50), "a");
+		long size = this.storage.logSize();
+		this.storage.beginAtomicOperation();
+		ta.put(p(20, 30), "b");  // splits the entry
+		assertEquals(size, this.storage.logSize());
+		this.storage.endAtomicOperation();
+		assertTrue(this.storage.logSize() > size);
+
+		this.reopen();
+		ta = new TemporalAttributeImpl<String>(this.storage);
+		assertEquals(3, ta.size());
+		assertEquals(p(10, 20), ta.getPeriod(i(15)));
+		assertEquals("b", ta.get(i(25)));
+		assertEquals(p(30, 50), ta.getPeriod(i(35)));
+	}
+
+	public void testTornLog() throws IOException {
+		this.storage.put(p(10, 20), "one");
+		this.storage.put(p(20, 30), "two");
+		long size = this.storage.logSize();
+		this.storage.close();
+		tear(this.directory, 40);
+
+		this.storage = this.open();
+		assertEquals(2, this.storage.size());
+		assertEquals(size, this.storage.logSize());
+		// appended after the torn group, which is discarded
+		this.storage.put(p(30, 40), "three");
+		this.reopen();
+		assertEquals(3, this.storage.size());
+		assertEquals("three", this.storage.getValue(i(30)));
+	}
+
+	public void testSnapshot() throws IOException {
+		for (int k = 0; k < 100; k++) {
+			this.storage.put(p(k * 10, k * 10 + 10), "v" + (k % 3));
+		}
+		this.storage.removeRange(p(0, 100));
+		long size = this.storage.logSize();
+		this.storage.snapshot();
+		assertTrue(this.storage.logSize() < size);
+		this.storage.put(p(-10, 0), "minus");
+		this.reopen();
+		assertEquals(91, this.storage.size());
+		assertEquals("minus", this.storage.getValue(i(-5)));
+		assertEquals("v1", this.storage.getValue(i(105)));
+		assertEquals(p(990, 1000), this.storage.lastPeriod());
+
+		// within an atomic operation
+		this.storage.beginAtomicOperation();
+		try {
+			this.storage.snapshot();
+			fail();
+		}
+		catch (IllegalStateException expected) {
+		}
+		finally {
+			this.storage.endAtomicOperation();
+		}
+	}
+
+	public void testSnapshotThreshold() throws IOException {
+		this.storage.setSnapshotThreshold(1000);
+		for (int k = 0; k < 500; k++) {
+			this.storage.put(p(k * 10, k * 10 + 10), "v" + (k % 3));
+			assertTrue(this.storage.logSize() <= 1000);
+		}
+		this.reopen();
+		assertEquals(500, this.storage.size());
+		assertEquals("v1", this.storage.getValue(i(4990)));
+	}
+
+	public void testLogOlderThanSnapshot() throws IOException {
+		this.storage.put(p(10, 20), "one");
+		File log = new File(this.directory, DurableLog.LOG);
+		File saved = new File(this.directory, "saved");
+		this.storage.force();
+		copy(log, saved);
+		this.storage.snapshot();
+		this.storage.close();
+		// as if the crash happened before the log was emptied
+		log.delete();
+		assertTrue(saved.renameTo(log));
+
+		this.storage = this.open();
+		assertEquals(1, this.storage.size());
+		this.storage.put(p(20, 30), "two");
+		this.reopen();
+		assertEquals(2, this.storage.size());
+	}
+
+	private static void copy(File from, File to) throws IOException {
+		RandomAccessFile in = new RandomAccessFile(from, "r");
+		RandomAccessFile out = new RandomAccessFile(to, "rw");
+		try {
+			byte[] bytes = new byte[(int) in.length()];
+			in.readFully(bytes);
+			out.write(bytes);
+		}
+		finally {
+			in.close();
+			out.close();
+		}
+	}
+
+	public void testNotEmpty() throws IOException {
+		TreeTemporalAttributeStorage<String> tree = new TreeTemporalAttributeStorage<String>();
+		tree.put(p(10, 20), "one");
+		try {
+			new DurableTemporalAttributeStorage<String>(
+				this.directory, tree, LongInstantCodec.INSTANCE, new SerializedValueCodec<String>()
+			);
+			fail();
+		}
+		catch (IllegalArgumentException expected) {
+		}
+	}
+}
@@ -0,0 +1,120 @@
+/*
+   This file is part of the JTemporal framework (http://jtemporal.sf.net).
+   Copyright (C) 2002 by the author(s).
+   Distributable under LGPL license version 2.1 or later,
+   with no warranties given or implied.
+   See terms of license at gnu.org or www.opensource.org/licenses  */
+
+package net.sf.jtemporal.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+
+import junit.framework.TestCase;
+import net.sf.jtemporal.LongInstant;
+import net.sf.jtemporal.Period;
+import net.sf.jtemporal.TemporalSet;
+import net.sf.jtemporal.TemporalSetImpl;
+import net.sf.jtemporal.TimedObject;
+import net.sf.jtemporal.spi.CompactTemporalSetStorage;
+
+/**
+ * @author Thomas A Beck
+ * @version $Id$
+ */
+public class DurableTemporalSetStorageTest extends TestCase {
+
+	private File directory;
+	private DurableTemporalSetStorage<String> storage;
+
+	private static LongInstant i(long value) {
+		return LongInstant.valueOf(value);
+	}
+
+	private static Period p(long start, long end) {
+		return new Period(i(start), i(end));
+	}
+
+	private DurableTemporalSetStorage<String> open() throws IOException {
+		return new DurableTemporalSetStorage<String>(
+			this.directory, new CompactTemporalSetStorage<String>(),
+			LongInstantCodec.INSTANCE, new SerializedValueCodec<String>()
+		);
+	}
+
+	private void reopen() throws IOException {
+		this.storage.close();
+		this.storage = this.open();
+	}
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		this.directory = DurableTemporalAttributeStorageTest.newDirectory();
+		this.storage = this.open();
+	}
+
+	protected void tearDown() throws Exception {
+		this.storage.close();
+		DurableTemporalAttributeStorageTest.delete(this.directory);
+		super.tearDown();
+	}
+
+	public void testReplay() throws IOException {
+		TemporalSet<String> ts = new TemporalSetImpl<String>(this.storage);
+		ts.put(p(10, 20), "a");
+		ts.put(p(15, 30), "b");
+		ts.put(p(20, 40), "a");   // merged
+		ts.put(p(50, 60), "c");
+		ts.remove(p(55, 60), "c");
+		this.storage.removeValue("b");
+		assertFalse(this.storage.removeValue("unknown"));
+
+		this.reopen();
+		ts = new TemporalSetImpl<String>(this.storage);
+		assertEquals(2, ts.size());
+		assertEquals(p(10, 40), ts.getPeriod(i(25), "a"));
+		assertEquals(p(50, 55), ts.getPeriod(i(50), "c"));
+		assertFalse(ts.containsValue("b"));
+	}
+
+	public void testIteratorRemove() throws IOException {
+		this.storage.put(p(10, 20), "a");
+		this.storage.put(p(30, 40), "a");
+		this.storage.put(p(10, 20), "b");
+		this.storage.put(p(10, 20), "c");
+
+		Iterator<TimedObject<String>> entries = this.storage.entryIterator();
+		while (entries.hasNext()) {
+			TimedObject<String> entry = entries.next();
+			if ("a".equals(entry.getValue()) && entry.getPeriod().equals(p(10, 20))) {
+				entries.remove();
+			}
+		}
+		Iterator<String> values = this.storage.valueIterator();
+		while (values.hasNext()) {
+			if ("b".equals(values.next())) {
+				values.remove();
+			}
+		}
+		this.reopen();
+		assertEquals(2, this.storage.size());
+		assertEquals(p(30, 40), this.storage.firstPeriod("a"));
+		assertFalse(this.storage.containsValue("b"));
+		assertTrue(this.storage.containsValue(i(15), "c"));
+	}
+
+	public void testTornLogAndSnapshot() throws IOException {
+		this.storage.put(p(10, 20), "a");
+		this.storage.snapshot();
+		this.storage.put(p(30, 40), "b");
+		this.storage.close();
+		DurableTemporalAttributeStorageTest.tear(this.directory, 20);
+
+		this.storage = this.open();
+		assertEquals(2, this.storage.size());
+		this.storage.clear();
+		this.reopen();
+		assertTrue(this.storage.isEmpty());
+	}
+}
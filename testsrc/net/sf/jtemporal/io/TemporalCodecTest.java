@@ -0,0 +1,175 @@
+/*
+   This file is part of the JTemporal framework (http://jtemporal.sf.net).
+   Copyright (C) 2002 by the author(s).
+   Distributable under LGPL license version 2.1 or later,
+   with no warranties given or implied.
+   See terms of license at gnu.org or www.opensource.org/licenses  */
+
+package net.sf.jtemporal.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+import net.sf.jtemporal.LongInstant;
+import net.sf.jtemporal.Period;
+import net.sf.jtemporal.TemporalAttribute;
+import net.sf.jtemporal.TemporalAttributeImpl;
+import net.sf.jtemporal.TemporalSet;
+import net.sf.jtemporal.TemporalSetImpl;
+import net.sf.jtemporal.TimedObject;
+import net.sf.jtemporal.spi.CompactTemporalSetStorage;
+import net.sf.jtemporal.spi.TreeTemporalAttributeStorage;
+
+/**
+ * @author Thomas A Beck
+ * @version $Id$
+ */
+public class TemporalCodecTest extends TestCase {
+
+	private final TemporalCodec<String> codec = new TemporalCodec<String>(
+		LongInstantCodec.INSTANCE, new SerializedValueCodec<String>()
+	);
+
+	private static LongInstant i(long value) {
+		return LongInstant.valueOf(value);
+	}
+
+	private static Period p(long start, long end) {
+		return new Period(i(start), i(end));
+	}
+
+	private static TemporalAttribute<String> newAttribute() {
+		return new TemporalAttributeImpl<String>(new TreeTemporalAttributeStorage<String>());
+	}
+
+	private static List<TimedObject<String>> entries(TemporalAttribute<String> ta) {
+		return new ArrayList<TimedObject<String>>(ta.entrySet());
+	}
+
+	private TemporalAttribute<String> copy(TemporalAttribute<String> ta) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		this.codec.writeTo(ta, out);
+		TemporalAttribute<String> copy = newAttribute();
+		this.codec.readFrom(new ByteArrayInputStream(out.toByteArray()), copy);
+		return copy;
+	}
+
+	public void testAttribute() throws IOException {
+		TemporalAttribute<String> ta = newAttribute();
+		ta.put(p(-50, 10), "a");
+		ta.put(p(20, 30), "b");
+		ta.put(p(30, 45), "a");
+		ta.put(p(1000000, 1000001), "c");
+		assertEquals(entries(ta), entries(this.copy(ta)));
+	}
+
+	public void testInfinities() throws IOException {
+		TemporalAttribute<String> ta = newAttribute();
+		ta.put(LongInstant.ALWAYS, "always");
+		assertEquals(entries(ta), entries(this.copy(ta)));
+
+		ta.put(p(10, 20), "x");
+		TemporalAttribute<String> copy = this.copy(ta);
+		assertEquals(entries(ta), entries(copy));
+		assertEquals(LongInstant.NEGATIVE_INFINITY, copy.firstInstant());
+		assertEquals(LongInstant.POSITIVE_INFINITY, copy.lastPeriod().getEnd());
+
+		ta.clear();
+		assertTrue(this.copy(ta).isEmpty());
+	}
+
+	public void testCompactness() throws IOException {
+		TemporalAttribute<String> ta = newAttribute();
+		for (int k = 0; k < 1000; k++) {
+			ta.put(p(20000 + k, 20001 + k), "rate" + (k % 3));
+		}
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		this.codec.writeTo(ta, out);
+		// 3 bytes per entry, plus the dictionary
+		assertTrue(out.size() < 3000 + 500);
+		assertEquals(entries(ta), entries(this.copy(ta)));
+	}
+
+	public void testSeveralInStream() throws IOException {
+		TemporalAttribute<String> ta1 = newAttribute();
+		ta1.put(p(10, 20), "one");
+		TemporalAttribute<String> ta2 = newAttribute();
+		ta2.put(p(30, 40), "two");
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		this.codec.writeTo(ta1, out);
+		this.codec.writeTo(ta2, out);
+
+		ByteArrayInputStream in = new ByteArrayInputStream(out.toByteArray());
+		TemporalAttribute<String> copy1 = newAttribute();
+		TemporalAttribute<String> copy2 = newAttribute();
+		this.codec.readFrom(in, copy1);
+		this.codec.readFrom(in, copy2);
+		assertEquals(entries(ta1), entries(copy1));
+		assertEquals(entries(ta2), entries(copy2));
+		assertEquals(-1, in.read());
+	}
+
+	public void testSet() throws IOException {
+		TemporalSet<String> ts = new TemporalSetImpl<String>(new CompactTemporalSetStorage<String>());
+		ts.put(p(10, 20), "a");
+		ts.put(p(15, 30), "b");
+		ts.put(p(40, 50), "a");
+		ts.put(new Period(i(60), LongInstant.POSITIVE_INFINITY), "b");
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		this.codec.writeTo(ts, out);
+		TemporalSet<String> copy = new TemporalSetImpl<String>(new CompactTemporalSetStorage<String>());
+		this.codec.readFrom(new ByteArrayInputStream(out.toByteArray()), copy);
+
+		assertEquals(ts.entrySet(), copy.entrySet());
+		assertEquals(4, copy.size());
+	}
+
+	public void testWrongInput() throws IOException {
+		TemporalAttribute<String> ta = newAttribute();
+		ta.put(p(10, 20), "a");
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		this.codec.writeTo(ta, out);
+		byte[] bytes = out.toByteArray();
+
+		// not a set
+		try {
+			TemporalSet<String> ts = new TemporalSetImpl<String>(new CompactTemporalSetStorage<String>());
+			this.codec.readFrom(new ByteArrayInputStream(bytes), ts);
+			fail();
+		}
+		catch (StreamCorruptedException expected) {
+		}
+
+		// a future version
+		bytes[3] = (byte) (TemporalCodec.VERSION + 1);
+		try {
+			this.codec.readFrom(new ByteArrayInputStream(bytes), newAttribute());
+			fail();
+		}
+		catch (StreamCorruptedException expected) {
+		}
+	}
+
+	public void testVarLong() throws IOException {
+		long[] values = {0, 1, -1, 127, 128, Long.MAX_VALUE, Long.MIN_VALUE};
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		java.io.DataOutputStream out = new java.io.DataOutputStream(bytes);
+		for (long v : values) {
+			TemporalCodec.writeVarLong(out, v);
+			TemporalCodec.writeSignedVarLong(out, v);
+		}
+		java.io.DataInputStream in = new java.io.DataInputStream(
+			new ByteArrayInputStream(bytes.toByteArray())
+		);
+		for (long v : values) {
+			assertEquals(v, TemporalCodec.readVarLong(in));
+			assertEquals(v, TemporalCodec.readSignedVarLong(in));
+		}
+	}
+}
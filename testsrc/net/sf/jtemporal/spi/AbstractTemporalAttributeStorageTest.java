@@ -7,6 +7,7 @@
 
 package net.sf.jtemporal.spi;
 
+import java.util.Arrays;
 import java.util.NoSuchElementException;
 import java.util.TreeMap;
 
@@ -497,6 +498,38 @@ public abstract class AbstractTemporalAttributeStorageTest extends TestCase impl
 
 	}
 
+	public void testBulkLoad() {
+		if (!(map instanceof BulkLoadableStorage)) {
+			return;
+		}
+		BulkLoadableStorage loader = (BulkLoadableStorage) map;
+		loader.bulkLoad(Arrays.asList(new TimedObject[] {
+			new SimpleTimedObject(p12, s1),
+			new SimpleTimedObject(p24, s1),  // not merged by the storage
+			new SimpleTimedObject(p56, s2)
+		}).iterator());
+		assertEquals(3, map.size());
+		assertEquals(p24, map.getPeriod(i3));
+		assertEquals(s2, map.getValue(i5));
+
+		loader.bulkLoad(Arrays.asList(new TimedObject[] {
+			new SimpleTimedObject(p68, s3)
+		}).iterator());
+		assertEquals(4, map.size());
+		assertEquals(p68, map.lastPeriod());
+
+		try {
+			loader.bulkLoad(Arrays.asList(new TimedObject[] {
+				new SimpleTimedObject(p34, s4)
+			}).iterator());
+			fail();
+		}
+		catch (IllegalArgumentException e) {
+			// overlaps the last entry
+		}
+		assertEquals(4, map.size());
+	}
+
 	public void testConstructor_SortedMap() {
 		new TreeTemporalAttributeStorage(
 			new TreeMap(StartComparator.COMPARATOR)
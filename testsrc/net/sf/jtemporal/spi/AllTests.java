@@ -10,10 +10,17 @@ public class AllTests {
         //$JUnit-BEGIN$
         suite.addTestSuite(LazyTemporalAttributeStorageTest.class);
         suite.addTestSuite(TreeTemporalAttributeStorageTest.class);
+        suite.addTestSuite(ArrayTemporalAttributeStorageTest.class);
+        suite.addTestSuite(LongTemporalAttributeStorageTest.class);
+        suite.addTestSuite(MappedTemporalAttributeStorageTest.class);
+        suite.addTestSuite(LockingTemporalAttributeStorageTest.class);
+        suite.addTestSuite(PersistentTemporalAttributeStorageTest.class);
         suite.addTestSuite(PeriodStorageTest.class);
         suite.addTestSuite(ORMTemporalAttributeStorageTest.class);
         suite.addTestSuite(CompactTemporalSetStorageTest.class);
+        suite.addTestSuite(IntervalTreeTemporalSetStorageTest.class);
         suite.addTestSuite(LazyTemporalAttibuteStorageIFTest.class);
+        suite.addTestSuite(BoundedLazyTemporalAttributeStorageIFTest.class);
         //$JUnit-END$
         return suite;
     }
@@ -0,0 +1,68 @@
+/*
+   This file is part of the JTemporal framework (http://jtemporal.sf.net).
+   Copyright (C) 2002 by the author(s).
+   Distributable under LGPL license version 2.1 or later, 
+   with no warranties given or implied.
+   See terms of license at gnu.org or www.opensource.org/licenses  */
+
+package net.sf.jtemporal.spi;
+
+import net.sf.jtemporal.TestConstants;
+import net.sf.jtemporal.util.CloseableIterator;
+
+
+/**
+ * @author Thomas A Beck
+ * @version $Id$
+ */
+public class ArrayTemporalAttributeStorageTest extends AbstractTemporalAttributeStorageTest 
+{
+	public final TemporalAttributeStorage newStorage() {
+		return new ArrayTemporalAttributeStorage(0);
+	}
+	
+	/**
+	 * Constructor for ArrayTemporalAttributeStorageTest.
+	 * @param name
+	 */
+	public ArrayTemporalAttributeStorageTest(String name) {
+		super(name);
+	}
+
+	public void testInsertInTheMiddle() {
+		ArrayTemporalAttributeStorage s = new ArrayTemporalAttributeStorage(1);
+		s.put(TestConstants.p78, TestConstants.s7);
+		s.put(TestConstants.p12, TestConstants.s1);
+		s.put(TestConstants.p56, TestConstants.s5);
+		s.put(TestConstants.p34, TestConstants.s3);
+		assertEquals(4, s.size());
+		assertEquals(TestConstants.p12, s.firstPeriod());
+		assertEquals(TestConstants.p78, s.lastPeriod());
+		assertSame(TestConstants.s3, s.getValue(TestConstants.i3));
+		assertSame(TestConstants.s5, s.getValue(TestConstants.i5));
+		assertNull(s.getValue(TestConstants.i4));
+
+		s.removeEntry(TestConstants.p34);
+		s.trimToSize();
+		assertEquals(3, s.size());
+		assertNull(s.getValue(TestConstants.i3));
+		assertSame(TestConstants.s5, s.getValue(TestConstants.i5));
+	}
+
+	public void testIteratorRemove() {
+		ArrayTemporalAttributeStorage s = new ArrayTemporalAttributeStorage();
+		s.put(TestConstants.p12, TestConstants.s1);
+		s.put(TestConstants.p34, TestConstants.s3);
+		s.put(TestConstants.p56, TestConstants.s5);
+		CloseableIterator it = s.periodIterator();
+		assertEquals(TestConstants.p12, it.next());
+		assertEquals(TestConstants.p34, it.next());
+		it.remove();
+		assertEquals(TestConstants.p56, it.next());
+		assertFalse(it.hasNext());
+		assertFalse(it.isOpen());
+		assertEquals(2, s.size());
+		assertNull(s.getValue(TestConstants.i3));
+	}
+
+}
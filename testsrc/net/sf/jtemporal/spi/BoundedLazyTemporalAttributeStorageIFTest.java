@@ -0,0 +1,17 @@
+package net.sf.jtemporal.spi;
+
+/**
+ * The same tests, with a cache so small that the loaded ranges
+ * are evicted and loaded again all the time.
+ */
+public class BoundedLazyTemporalAttributeStorageIFTest extends
+		LazyTemporalAttibuteStorageIFTest {
+
+	public BoundedLazyTemporalAttributeStorageIFTest(String name) {
+		super(name);
+	}
+
+	protected TemporalAttributeStorage newStorage() {
+		return this.newStorage(1);
+	}
+}
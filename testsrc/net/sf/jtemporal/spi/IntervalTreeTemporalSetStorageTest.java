@@ -0,0 +1,152 @@
+/*
+   This file is part of the JTemporal framework (http://jtemporal.sf.net).
+   Copyright (C) 2006 by the author(s).
+   Distributable under LGPL license version 2.1 or later, 
+   with no warranties given or implied.
+   See terms of license at gnu.org or www.opensource.org/licenses  */
+
+package net.sf.jtemporal.spi;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import net.sf.jtemporal.IntInstant;
+import net.sf.jtemporal.IntPeriod;
+import net.sf.jtemporal.Period;
+import net.sf.jtemporal.SimpleTimedObject;
+import net.sf.jtemporal.TemporalSetImpl;
+import net.sf.jtemporal.TimedObject;
+import net.sf.jtemporal.ValueSetDelta;
+import net.sf.jtemporal.util.CloseableIterator;
+
+/**
+ * @author Thomas A Beck
+ * @version $Id$
+ */
+public class IntervalTreeTemporalSetStorageTest extends AbstractTemporalSetStorageTest {
+
+    protected TemporalSetStorage newStorage() {
+        return new IntervalTreeTemporalSetStorage();
+    }
+
+    public void testEntryIteratorAtInstant() {
+        TemporalSetStorage s = this.newStorage();
+        s.put(p13, s1);
+        s.put(p13, s2);
+        s.put(p34, s1);
+        s.put(p24, s3);
+
+        Set<TimedObject> found = new HashSet<TimedObject>();
+        CloseableIterator i = s.entryIterator(i2);
+        while (i.hasNext()) {
+            found.add((TimedObject) i.next());
+        }
+        assertEquals(3, found.size());
+        assertTrue(found.contains(new SimpleTimedObject(p13, s1)));
+        assertTrue(found.contains(new SimpleTimedObject(p13, s2)));
+        assertTrue(found.contains(new SimpleTimedObject(p24, s3)));
+
+        i = s.entryIterator(i3);
+        while (i.hasNext()) {
+            TimedObject to = (TimedObject) i.next();
+            if (to.getValue() == s1) i.remove();
+        }
+        assertEquals(3, s.size());
+        assertEquals(1, s.sizeAt(i3));
+        assertTrue(s.isEmpty(i4));
+
+        i = s.entryIterator(p24);
+        int cnt = 0;
+        while (i.hasNext()) {
+            i.next();
+            cnt++;
+        }
+        assertEquals(3, cnt);
+    }
+
+    public void testValueIteratorAtInstant() {
+        TemporalSetStorage s = this.newStorage();
+        s.put(p13, s1);
+        s.put(p34, s1);
+        s.put(p24, s3);
+        Set found = new HashSet();
+        for (CloseableIterator i = s.valueIterator(i3); i.hasNext(); ) {
+            found.add(i.next());
+        }
+        assertEquals(2, found.size());
+        assertTrue(found.contains(s1));
+        assertTrue(found.contains(s3));
+
+        s.removeValue(s1);
+        assertEquals(1, s.sizeAt(i3));
+        assertTrue(s.isEmpty(i1));
+    }
+
+    public void testValueSetDeltaIterator() {
+        TemporalSetStorage s = this.newStorage();
+        s.put(p13, s1);
+        s.put(p34, s1);
+        s.put(p24, s3);
+        Iterator i = new TemporalSetImpl(s).valueSetDeltas(
+            Arrays.asList(new IntInstant[] {i0, i1, i3, i4}).iterator()
+        );
+        assertTrue(((ValueSetDelta) i.next()).isEmpty());
+        assertEquals(Collections.singleton(s1), ((ValueSetDelta) i.next()).getAdded());
+        assertEquals(Collections.singleton(s3), ((ValueSetDelta) i.next()).getAdded());
+        ValueSetDelta delta = (ValueSetDelta) i.next();
+        assertEquals(new HashSet(Arrays.asList(new String[] {s1, s3})), delta.getRemoved());
+        assertFalse(i.hasNext());
+        assertFalse(((CloseableIterator) i).isOpen());
+    }
+
+    /**
+     * Compares the interval tree with a brute force scan.
+     */
+    public void testRandom() {
+        Random random = new Random(42);
+        IntervalTreeTemporalSetStorage<Integer> s = new IntervalTreeTemporalSetStorage<Integer>();
+        List<TimedObject<Integer>> all = new ArrayList<TimedObject<Integer>>();
+        for (int v = 0; v < 200; v++) {
+            int start = random.nextInt(1000);
+            int end = start + 1 + random.nextInt(100);
+            Period p = new IntPeriod(new IntInstant(start),
+                v % 10 == 0 ? IntInstant.POSITIVE_INFINITY : new IntInstant(end)
+            );
+            s.put(p, v);
+            all.add(new SimpleTimedObject<Integer>(p, v));
+        }
+        for (int k = 0; k < 100; k++) {
+            TimedObject<Integer> to = all.remove(random.nextInt(all.size()));
+            s.remove(to.getPeriod(), to.getValue());
+        }
+        assertEquals(all.size(), s.size());
+
+        List<IntInstant> instants = new ArrayList<IntInstant>();
+        for (int t = -1; t < 1101; t += 7) {
+            instants.add(new IntInstant(t));
+        }
+        // contained by the periods ending at +INF, as in Period.contains()
+        instants.add(IntInstant.POSITIVE_INFINITY);
+        for (IntInstant instant : instants) {
+            int expected = 0;
+            for (TimedObject<Integer> to : all) {
+                if (to.getPeriod().contains(instant)) expected++;
+            }
+            assertEquals(expected, s.sizeAt(instant));
+            assertEquals(expected == 0, s.isEmpty(instant));
+            int cnt = 0;
+            for (CloseableIterator<TimedObject<Integer>> i = s.entryIterator(instant); i.hasNext(); ) {
+                assertTrue(i.next().getPeriod().contains(instant));
+                cnt++;
+            }
+            assertEquals(expected, cnt);
+        }
+    }
+
+}
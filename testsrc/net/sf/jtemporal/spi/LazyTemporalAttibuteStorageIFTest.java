@@ -15,12 +15,16 @@ public class LazyTemporalAttibuteStorageIFTest extends
 	}
 
 	protected TemporalAttributeStorage newStorage() {
+		return this.newStorage(Integer.MAX_VALUE);
+	}
+
+	protected TemporalAttributeStorage newStorage(int maxCachedEntries) {
 		// the physical storage where the cache takes de data from
 		TemporalAttributeStorage db = new TreeTemporalAttributeStorage();
 		//System.err.println("Created " +db.hashCode());
 		TemporalAttributeStorage ret 
 		   = new LazyTemporalAttributeStorage<String>(
-				new Reader(db), new Writer(db)
+				new Reader(db), new Writer(db), maxCachedEntries
 		);
 		//System.err.println("Created @" +ret.hashCode());
 		return ret;
@@ -1,9 +1,18 @@
 package net.sf.jtemporal.spi;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
 import junit.framework.TestCase;
 import net.sf.jtemporal.Instant;
+import net.sf.jtemporal.IntInstant;
 import net.sf.jtemporal.Period;
+import net.sf.jtemporal.TemporalAttributeImpl;
 import net.sf.jtemporal.TestConstants;
 import net.sf.jtemporal.TimedObject;
 import net.sf.jtemporal.spi.LazyTemporalAttributeStorage.MissingRangeHandler;
@@ -77,6 +86,307 @@ extends TestCase implements TestConstants {
 	}
 
 
+	/*
+	 * Test method for 'net.sf.jtemporal.spi.LazyTemporalAttributeStorage.loadAsync(Instant)'
+	 */
+	public void testLoadAsync() throws Exception {
+		AsyncLoader loader = new AsyncLoader();
+		LazyTemporalAttributeStorage<String> lazy = new LazyTemporalAttributeStorage<String>(loader);
+		CompletableFuture<String> f5 = lazy.getValueAsync(i5);
+		CompletableFuture<String> f7 = lazy.getValueAsync(i7); // coalesced
+		assertEquals(1, loader.ranges.size());
+		assertEquals(i5, loader.ranges.get(0).getStart());
+		assertFalse(f5.isDone());
+		
+		CompletableFuture<TimedObject<String>> f3 = lazy.getEntryAsync(i3);
+		CompletableFuture<String> f4 = lazy.getValueAsync(i4); // coalesced
+		assertEquals(2, loader.ranges.size());
+		assertEquals(new Period(i3, i5), loader.ranges.get(1));
+		
+		// in any order
+		loader.complete(1);
+		assertEquals(p35, f3.get().getPeriod());
+		assertEquals(s2, f4.get());
+		assertFalse(f5.isDone());
+		assertEquals(Arrays.asList(new Period(i3, i5)), loadedRanges(lazy));
+		loader.complete(0);
+		assertEquals(s3, f5.get());
+		assertEquals(s4, f7.get());
+		assertEquals(
+			Arrays.asList(new Period(i3, i5), new Period(i5, ALWAYS.getEnd())), loadedRanges(lazy)
+		);
+		
+		// already in cache
+		assertTrue(lazy.loadAsync(i4).isDone());
+		assertEquals(s2, lazy.getValue(i3));
+		assertEquals(2, loader.ranges.size());
+		assertEquals(0, physReads);
+	}
+
+	public void testLoadAsyncFailure() throws Exception {
+		AsyncLoader loader = new AsyncLoader();
+		LazyTemporalAttributeStorage<String> lazy = new LazyTemporalAttributeStorage<String>(loader);
+		CompletableFuture<String> f5 = lazy.getValueAsync(i5);
+		loader.futures.get(0).completeExceptionally(new IllegalStateException("down"));
+		assertTrue(f5.isCompletedExceptionally());
+		assertTrue(loadedRanges(lazy).isEmpty());
+		// not coalesced with the failed load
+		lazy.getValueAsync(i5);
+		assertEquals(2, loader.ranges.size());
+		// the blocking methods still work
+		assertEquals(s3, lazy.getValue(i5));
+		assertEquals(1, physReads);
+		loader.complete(1);
+		assertEquals(s3, lazy.getValue(i5));
+	}
+
+	public void testLoadAsyncAfterClearCache() throws Exception {
+		AsyncLoader loader = new AsyncLoader();
+		LazyTemporalAttributeStorage<String> lazy = new LazyTemporalAttributeStorage<String>(loader);
+		CompletableFuture<String> f5 = lazy.getValueAsync(i5);
+		lazy.clearCache();
+		loader.complete(0);
+		// the load is ignored, the value is then loaded again
+		assertFalse(f5.isDone());
+		assertEquals(2, loader.ranges.size());
+		loader.complete(1);
+		assertEquals(s3, f5.get());
+		assertEquals(0, physReads);
+	}
+
+	/**
+	 * Neither the loader nor the callbacks hold the monitor of the storage.
+	 */
+	public void testLoadAsyncOutsideMonitor() throws Exception {
+		AsyncLoader loader = new AsyncLoader();
+		final LazyTemporalAttributeStorage<String> lazy = new LazyTemporalAttributeStorage<String>(loader);
+		loader.monitor = lazy;
+		CompletableFuture<Boolean> locked = lazy.getValueAsync(i5).thenApply(
+			new Function<String,Boolean>() {
+				public Boolean apply(String value) {
+					assertEquals(s3, value);
+					return Boolean.valueOf(Thread.holdsLock(lazy));
+				}
+			}
+		);
+		assertFalse(loader.locked);
+		loader.complete(0);
+		assertEquals(Boolean.FALSE, locked.get());
+	}
+
+	/*
+	 * Test method for 'net.sf.jtemporal.spi.LazyTemporalAttributeStorage(MissingRangeHandler, ChangeHandler, int)'
+	 */
+	public void testEviction() {
+		LazyTemporalAttributeStorage<String> lazy = 
+			new LazyTemporalAttributeStorage<String>(new AsyncLoader(), null, 2);
+		assertEquals(s5, lazy.getValue(i8));
+		assertEquals(1, lazy.cachedEntryCount());
+		assertEquals(s3, lazy.getValue(i5));
+		// p89 is evicted with the least recently used range
+		assertEquals(Arrays.asList(new Period(i5, i8)), loadedRanges(lazy));
+		assertEquals(2, lazy.cachedEntryCount());
+		assertEquals(s4, lazy.getValue(i7));
+		assertEquals(2, physReads);
+		// loaded again
+		assertEquals(s5, lazy.getValue(i8));
+		assertEquals(3, physReads);
+		assertEquals(Arrays.asList(new Period(i8, ALWAYS.getEnd())), loadedRanges(lazy));
+		assertEquals(1, lazy.cachedEntryCount());
+		// the ranges of a single operation are kept
+		assertEquals(5, lazy.size());
+		assertEquals(5, lazy.cachedEntryCount());
+	}
+
+	/*
+	 * Test method for 'net.sf.jtemporal.spi.LazyTemporalAttributeStorage.getEntryEndingAt(Instant)'
+	 */
+	public void testNoEntryEndingAtEviction() {
+		AsyncLoader loader = new AsyncLoader();
+		loader.chunk = 100;
+		LazyTemporalAttributeStorage<String> lazy = 
+			new LazyTemporalAttributeStorage<String>(loader, null, 1);
+		assertEquals(s2, lazy.getValue(i3));
+		assertNull(lazy.getEntryEndingAt(i3));
+		assertNull(lazy.getEntryEndingAt(i3));
+		assertEquals(1, loader.endingAt);
+		// the range starting at i3 is evicted, and what is known at i3 with it
+		assertEquals(s5, lazy.getValue(i8));
+		assertEquals(Arrays.asList(new Period(i8, i9)), loadedRanges(lazy));
+		assertNull(lazy.getEntryEndingAt(i3));
+		assertEquals(2, loader.endingAt);
+	}
+
+	/*
+	 * Test method for 'net.sf.jtemporal.spi.LazyTemporalAttributeStorage.populated(Period)'
+	 */
+	public void testPopulatedOverlapping() {
+		LazyTemporalAttributeStorage<String> lazy = 
+			new LazyTemporalAttributeStorage<String>(new AsyncLoader());
+		lazy.populated(p35);
+		lazy.populated(p78);
+		lazy.populated(new Period(i4, i8));
+		lazy.populated(p23);
+		assertEquals(
+			Arrays.asList(new Period(i2, i3), p35, new Period(i5, i8)), loadedRanges(lazy)
+		);
+	}
+
+	/*
+	 * Test method for 'net.sf.jtemporal.spi.LazyTemporalAttributeStorage.populateRange()'
+	 */
+	public void testGapLoading() {
+		AsyncLoader loader = new AsyncLoader();
+		LazyTemporalAttributeStorage<String> lazy = new LazyTemporalAttributeStorage<String>(loader);
+		assertEquals(s5, lazy.getValue(i8));
+		assertEquals(1, lazy.size(p13));
+		assertFalse(lazy.isEmpty(new Period(i2, i9)));
+		assertEquals(
+			Arrays.asList(new Period(i8, ALWAYS.getEnd()), p13, new Period(i3, i8)),
+			loader.requested
+		);
+		assertEquals(5, lazy.size());
+		assertEquals(4, loader.requested.size());
+		assertEquals(new Period(ALWAYS.getStart(), i1), loader.requested.get(3));
+	}
+
+	public void testPartialLoading() {
+		AsyncLoader loader = new AsyncLoader();
+		loader.chunk = 100;
+		LazyTemporalAttributeStorage<String> lazy = new LazyTemporalAttributeStorage<String>(loader);
+		assertEquals(s5, lazy.getValue(i8));
+		assertEquals(s1, lazy.getValue(i1));
+		// [i1, i8) requested, only [i1, i2) loaded
+		assertEquals(new Period(i1, i8), loader.requested.get(1));
+		assertEquals(
+			Arrays.asList(p12, new Period(i8, i9)), loadedRanges(lazy)
+		);
+		assertEquals(s2, lazy.getValue(i4));
+		assertEquals(new Period(i4, i8), loader.requested.get(2));
+		assertEquals(
+			Arrays.asList(p12, new Period(i4, i5), new Period(i8, i9)), loadedRanges(lazy)
+		);
+	}
+
+	public void testWriteBehind() {
+		BatchWriter writer = new BatchWriter();
+		LazyTemporalAttributeStorage<String> lazy = 
+			new LazyTemporalAttributeStorage<String>(new AsyncLoader(), writer);
+		assertEquals(5, lazy.size()); // all loaded
+		TemporalAttributeImpl<String> attribute = new TemporalAttributeImpl<String>(lazy);
+
+		// a single batch for the whole put
+		attribute.put(p25, "x");
+		assertEquals(1, writer.batches);
+		assertEquals(0, physInserts + physDeletes);
+		assertEquals(s1, storage.getValue(i1));
+		assertEquals("x", storage.getValue(i2));
+		assertEquals("x", storage.getValue(i4));
+		assertEquals(p25, storage.getPeriod(i3));
+
+		// put then removed: never written
+		lazy.beginAtomicOperation();
+		lazy.put(new Period(i6, i7), "y");
+		lazy.removeEntry(new Period(i6, i7));
+		lazy.removeEntry(p78);
+		assertEquals(s4, storage.getValue(i7)); // not yet
+		lazy.endAtomicOperation();
+		assertEquals(2, writer.batches);
+		assertEquals(Arrays.asList(p78), writer.lastRemoved);
+		assertTrue(writer.lastPut.isEmpty());
+		assertNull(storage.getValue(i6));
+		assertNull(storage.getValue(i7));
+
+		// outside an atomic operation: immediate
+		lazy.put(new Period(i6, i7), "z");
+		assertEquals(2, writer.batches);
+		assertEquals(1, physInserts);
+		assertEquals("z", storage.getValue(i6));
+	}
+
+	public void testWriteBehindFailure() {
+		BatchWriter writer = new BatchWriter();
+		LazyTemporalAttributeStorage<String> lazy = 
+			new LazyTemporalAttributeStorage<String>(new AsyncLoader(), writer);
+		lazy.beginAtomicOperation();
+		lazy.removeEntry(p35);
+		writer.failures = 1;
+		lazy.endAtomicOperation(); // must not throw
+		assertEquals(s2, storage.getValue(i3));
+		assertNull(lazy.getValue(i3));
+		assertTrue(lazy.hasPendingChanges());
+
+		// reported by the next change, which is cancelled
+		try {
+			lazy.put(p12, "y");
+			fail();
+		}
+		catch (IllegalStateException expected) {
+			assertEquals("unavailable", expected.getCause().getMessage());
+		}
+		assertEquals(s1, lazy.getValue(i1));
+		assertEquals(0, physInserts);
+
+		// the changes are kept until applied
+		writer.failures = 1;
+		try {
+			lazy.flush();
+			fail();
+		}
+		catch (IllegalStateException expected) {
+		}
+		lazy.flush();
+		assertNull(storage.getValue(i3));
+		assertEquals(1, writer.batches);
+		lazy.flush(); // nothing left
+		assertEquals(1, writer.batches);
+		assertFalse(lazy.hasPendingChanges());
+		lazy.put(new Period(i6, i7), "y"); // the failure has been reported by flush()
+		assertEquals("y", storage.getValue(i6));
+	}
+
+	/**
+	 * A change made outside of an atomic operation must not be written
+	 * before the pending changes of a failed batch.
+	 */
+	public void testWriteBehindFailureThenPut() {
+		BatchWriter writer = new BatchWriter();
+		LazyTemporalAttributeStorage<String> lazy = 
+			new LazyTemporalAttributeStorage<String>(new AsyncLoader(), writer);
+		lazy.beginAtomicOperation();
+		lazy.removeEntry(p35);
+		writer.failures = 1;
+		lazy.endAtomicOperation();
+		try {
+			lazy.put(p12, "x");
+			fail();
+		}
+		catch (IllegalStateException reported) {
+		}
+
+		// the pending remove is applied before the put
+		lazy.put(p35, "y");
+		assertFalse(lazy.hasPendingChanges());
+		assertEquals(1, writer.batches);
+		assertEquals(1, physInserts);
+		assertEquals("y", storage.getValue(i3));
+		lazy.flush();
+		assertEquals("y", storage.getValue(i3));
+		assertEquals("y", lazy.getValue(i3));
+	}
+
+	private static int start(Period p) {
+		return ((IntInstant) p.getStart()).toIntValue();
+	}
+
+	private static List<Period> loadedRanges(LazyTemporalAttributeStorage lazy) {
+		List<Period> ranges = new ArrayList<Period>();
+		for (Iterator<Period> it = lazy.loadedRangeIterator(); it.hasNext();) {
+			ranges.add(it.next());
+		}
+		return ranges;
+	}
+
 	private class Loader implements  MissingRangeHandler {
 		public Period getAlwaysPeriod() {
 			return ALWAYS;
@@ -91,4 +401,106 @@ extends TestCase implements TestConstants {
 			throw new UnsupportedOperationException("not implemented yet");
 		}
 	}
+
+	/**
+	 * Applies the changes to the physical storage, 
+	 * counting the immediate ones as physical operations.
+	 */
+	private class BatchWriter implements LazyTemporalAttributeStorage.BatchChangeHandler<String> {
+		int batches = 0;
+		int failures = 0;
+		List<Period> lastRemoved;
+		List<TimedObject<String>> lastPut;
+
+		public void apply(
+			LazyTemporalAttributeStorage<String> source, 
+			Collection<Period> removed, 
+			Collection<TimedObject<String>> put
+		) {
+			if (this.failures > 0) {
+				this.failures--;
+				throw new IllegalStateException("unavailable");
+			}
+			for (Period p : removed) {
+				storage.removeEntry(p);
+			}
+			for (TimedObject<String> to : put) {
+				storage.put(to.getPeriod(), to.getValue());
+			}
+			this.lastRemoved = new ArrayList<Period>(removed);
+			this.lastPut = new ArrayList<TimedObject<String>>(put);
+			this.batches++;
+		}
+		public void put(LazyTemporalAttributeStorage<String> source, Period p, Object value) {
+			storage.put(p, value);
+			physInserts++;
+		}
+		public void remove(LazyTemporalAttributeStorage<String> source, Period p) {
+			storage.removeEntry(p);
+			physDeletes++;
+		}
+		public void clear(LazyTemporalAttributeStorage<String> source) {
+			storage.clear();
+		}
+	}
+
+	/**
+	 * Completes the loads on demand, 
+	 * and counts the blocking loads as physical reads.
+	 */
+	private class AsyncLoader implements LazyTemporalAttributeStorage.AsyncRangeHandler<String> {
+		final List<Period> ranges = new ArrayList<Period>();
+		// the blocking loads
+		final List<Period> requested = new ArrayList<Period>();
+		// the maximum length of the blocking loads, 0 if unbounded
+		int chunk = 0;
+		// the calls to populateEntryEndingAt
+		int endingAt = 0;
+		// whether loadRange is called holding the monitor
+		Object monitor = null;
+		boolean locked = false;
+		final List<CompletableFuture<List<TimedObject<String>>>> futures = 
+			new ArrayList<CompletableFuture<List<TimedObject<String>>>>();
+
+		public CompletableFuture<List<TimedObject<String>>> loadRange(Period range) {
+			CompletableFuture<List<TimedObject<String>>> f = 
+				new CompletableFuture<List<TimedObject<String>>>();
+			this.ranges.add(range);
+			this.futures.add(f);
+			this.locked |= this.monitor != null && Thread.holdsLock(this.monitor);
+			return f;
+		}
+
+		void complete(int k) {
+			List<TimedObject<String>> entries = new ArrayList<TimedObject<String>>();
+			for (Iterator i = storage.entryIterator(this.ranges.get(k)); i.hasNext();) {
+				entries.add((TimedObject<String>) i.next());
+			}
+			this.futures.get(k).complete(entries);
+		}
+
+		public Period getAlwaysPeriod() {
+			return ALWAYS;
+		}
+		public void populateRange(LazyTemporalAttributeStorage<String> target, Period range) {
+			this.requested.add(range);
+			if (this.chunk > 0 && range.getEnd().compareTo(new IntInstant(start(range) + chunk)) > 0) {
+				// loads only the beginning
+				range = new Period(range.getStart(), new IntInstant(start(range) + chunk));
+			}
+			for (Iterator i = storage.entryIterator(range); i.hasNext();) {
+				TimedObject to = (TimedObject) i.next();
+				target.putInCache(to.getPeriod(), (String) to.getValue());
+			}
+			target.populated(range);
+			physReads++;
+		}
+		public void populateEntryEndingAt(LazyTemporalAttributeStorage<String> target, Instant instant) {
+			TimedObject to = storage.getEntryEndingAt(instant);
+			if (to != null) {
+				target.putInCache(to.getPeriod(), (String) to.getValue());
+			}
+			this.endingAt++;
+		}
+	}
 }
@@ -0,0 +1,83 @@
+/*
+   This file is part of the JTemporal framework (http://jtemporal.sf.net).
+   Copyright (C) 2002 by the author(s).
+   Distributable under LGPL license version 2.1 or later, 
+   with no warranties given or implied.
+   See terms of license at gnu.org or www.opensource.org/licenses  */
+
+package net.sf.jtemporal.spi;
+
+import net.sf.jtemporal.Period;
+import net.sf.jtemporal.TemporalAttribute;
+import net.sf.jtemporal.TemporalAttributeImpl;
+import net.sf.jtemporal.TestConstants;
+
+
+/**
+ * @author Thomas A Beck
+ * @version $Id$
+ */
+public class LockingTemporalAttributeStorageTest extends AbstractTemporalAttributeStorageTest 
+{
+	public final TemporalAttributeStorage newStorage() {
+		return new LockingTemporalAttributeStorage(new TreeTemporalAttributeStorage());
+	}
+	
+	/**
+	 * Constructor for LockingTemporalAttributeStorageTest.
+	 * @param name
+	 */
+	public LockingTemporalAttributeStorageTest(String name) {
+		super(name);
+	}
+
+	/**
+	 * Readers must never see the intermediate states of TemporalAttributeImpl.put()
+	 */
+	public void testAtomicPut() throws Exception {
+		this.atomicPut(new TreeTemporalAttributeStorage<String>());
+		// optimistic reads
+		this.atomicPut(new PersistentTemporalAttributeStorage<String>());
+	}
+
+	private void atomicPut(TemporalAttributeStorage<String> delegate) throws Exception {
+		final LockingTemporalAttributeStorage<String> storage = 
+			new LockingTemporalAttributeStorage<String>(delegate);
+		final Period always = new Period(TestConstants.i0, TestConstants.i9);
+		final TemporalAttribute<String> reader = new TemporalAttributeImpl<String>(storage);
+		reader.put(always, TestConstants.s1);
+
+		final boolean[] failed = new boolean[1];
+		Thread[] threads = new Thread[4];
+		for (int t = 0; t < threads.length; t++) {
+			final boolean isWriter = (t % 2 == 0);
+			threads[t] = new Thread() {
+				public void run() {
+					// each writer uses its own TemporalAttributeImpl
+					TemporalAttribute<String> ta = isWriter 
+						? new TemporalAttributeImpl<String>(storage) : reader
+					;
+					for (int k = 0; k < 5000 && !failed[0]; k++) {
+						if (isWriter) {
+							ta.put(TestConstants.p35, TestConstants.s2);
+							ta.put(always, TestConstants.s1);
+						}
+						else {
+							Period p = ta.getPeriod(TestConstants.i4);
+							if (p == null || !p.contains(TestConstants.i1) && !p.equals(TestConstants.p35)) {
+								failed[0] = true;
+							}
+						}
+					}
+				}
+			};
+			threads[t].start();
+		}
+		for (int t = 0; t < threads.length; t++) {
+			threads[t].join();
+		}
+		assertFalse(failed[0]);
+		assertEquals(1, storage.size());
+	}
+
+}
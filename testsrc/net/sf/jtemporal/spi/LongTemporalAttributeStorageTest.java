@@ -0,0 +1,158 @@
+/*
+   This file is part of the JTemporal framework (http://jtemporal.sf.net).
+   Copyright (C) 2002 by the author(s).
+   Distributable under LGPL license version 2.1 or later, 
+   with no warranties given or implied.
+   See terms of license at gnu.org or www.opensource.org/licenses  */
+
+package net.sf.jtemporal.spi;
+
+import java.util.NoSuchElementException;
+
+import junit.framework.TestCase;
+import net.sf.jtemporal.LongInstant;
+import net.sf.jtemporal.Period;
+import net.sf.jtemporal.TemporalAttribute;
+import net.sf.jtemporal.TemporalAttributeImpl;
+import net.sf.jtemporal.TimedObject;
+import net.sf.jtemporal.util.CloseableIterator;
+
+/**
+ * The periods of AbstractTemporalAttributeStorageTest are not made of
+ * LongInstants, hence this specific test.
+ * @author Thomas A Beck
+ * @version $Id$
+ */
+public class LongTemporalAttributeStorageTest extends TestCase 
+{
+	private LongTemporalAttributeStorage<String> storage;
+
+	private static LongInstant i(long value) {
+		return LongInstant.valueOf(value);
+	}
+
+	private static Period p(long start, long end) {
+		return new Period(i(start), i(end));
+	}
+
+	/**
+	 * Constructor for LongTemporalAttributeStorageTest.
+	 * @param name
+	 */
+	public LongTemporalAttributeStorageTest(String name) {
+		super(name);
+	}
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		this.storage = new LongTemporalAttributeStorage<String>(0);
+		this.storage.put(p(10, 20), "one");
+		this.storage.put(p(30, 40), "three");
+		this.storage.put(p(20, 30), "two");   // in the middle
+		this.storage.put(p(50, 60), "five");
+	}
+
+	public void testGet() {
+		assertEquals(4, this.storage.size());
+		assertNull(this.storage.getValue(i(9)));
+		assertEquals("one", this.storage.getValue(i(10)));
+		assertEquals("one", this.storage.getValue(i(19)));
+		assertEquals("two", this.storage.getValue(i(20)));
+		assertEquals("three", this.storage.getValue(i(39)));
+		assertNull(this.storage.getValue(i(40)));
+		assertEquals("five", this.storage.getValue(i(55)));
+		assertNull(this.storage.getValue(LongInstant.POSITIVE_INFINITY));
+
+		assertEquals(p(20, 30), this.storage.getPeriod(i(25)));
+		assertEquals(p(10, 20), this.storage.firstPeriod());
+		assertEquals(p(50, 60), this.storage.lastPeriod());
+
+		// like Period.contains(), an entry ending at +INF contains +INF
+		Period open = new Period(i(70), LongInstant.POSITIVE_INFINITY);
+		this.storage.put(open, "seven");
+		assertEquals("seven", this.storage.getValue(LongInstant.POSITIVE_INFINITY));
+		assertEquals(open, this.storage.getPeriod(LongInstant.POSITIVE_INFINITY));
+		this.storage.put(p(60, 65), "six");
+		assertEquals("seven", this.storage.getValue(LongInstant.POSITIVE_INFINITY));
+		assertEquals("five", this.storage.getValue(i(55)));
+	}
+
+	public void testStartingEndingAt() {
+		TimedObject<String> to = this.storage.getEntryEndingAt(i(40));
+		assertEquals(p(30, 40), to.getPeriod());
+		assertEquals("three", to.getValue());
+		assertNull(this.storage.getEntryEndingAt(i(50)));
+		assertNull(this.storage.getEntryEndingAt(i(35)));
+
+		to = this.storage.getEntryStartingAt(i(50));
+		assertEquals(p(50, 60), to.getPeriod());
+		assertEquals("five", to.getValue());
+		assertNull(this.storage.getEntryStartingAt(i(40)));
+		assertNull(this.storage.getEntryStartingAt(i(35)));
+	}
+
+	public void testRange() {
+		Period range = p(15, 35);
+		assertEquals(3, this.storage.size(range));
+		assertEquals(p(10, 20), this.storage.firstPeriod(range));
+		assertEquals(p(30, 40), this.storage.lastPeriod(range));
+		assertTrue(this.storage.containsValue("two", range));
+		assertFalse(this.storage.containsValue("five", range));
+		assertTrue(this.storage.isEmpty(p(40, 50)));
+
+		CloseableIterator<Period> it = this.storage.periodIterator(p(40, 51));
+		assertEquals(p(50, 60), it.next());
+		assertFalse(it.hasNext());
+
+		assertEquals(3, this.storage.removeRange(range));
+		assertEquals(1, this.storage.size());
+		assertEquals("five", this.storage.getValue(i(50)));
+	}
+
+	public void testPutRemove() {
+		try {
+			this.storage.put(p(20, 25), "twice");
+			fail();
+		}
+		catch (IllegalStateException e) {}
+
+		try {
+			this.storage.removeEntry(p(20, 25));
+			fail();
+		}
+		catch (NoSuchElementException e) {}
+
+		this.storage.removeEntry(p(20, 30));
+		assertNull(this.storage.getValue(i(25)));
+		assertEquals(3, this.storage.size());
+
+		this.storage.clear();
+		assertTrue(this.storage.isEmpty());
+	}
+
+	public void testNotLongInstant() {
+		try {
+			this.storage.getValue(new net.sf.jtemporal.IntInstant(10));
+			fail();
+		}
+		catch (IllegalArgumentException e) {}
+	}
+
+	public void testWithTemporalAttribute() {
+		TemporalAttribute<String> ta = new TemporalAttributeImpl<String>(
+			new LongTemporalAttributeStorage<String>()
+		);
+		ta.put(p(10, 20), "a");
+		ta.put(p(20, 30), "a");  // merged
+		ta.put(p(40, 50), "b");
+		ta.put(p(30, 40), "b");  // merged
+		assertEquals(2, ta.size());
+		assertEquals(p(10, 30), ta.getPeriod(i(15)));
+		assertEquals(p(30, 50), ta.getPeriod(i(45)));
+
+		ta.remove(p(25, 35));
+		assertEquals(p(10, 25), ta.getPeriod(i(15)));
+		assertEquals(p(35, 50), ta.getPeriod(i(45)));
+	}
+
+}
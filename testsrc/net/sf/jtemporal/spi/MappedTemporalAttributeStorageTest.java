@@ -0,0 +1,251 @@
+/*
+   This file is part of the JTemporal framework (http://jtemporal.sf.net).
+   Copyright (C) 2002 by the author(s).
+   Distributable under LGPL license version 2.1 or later,
+   with no warranties given or implied.
+   See terms of license at gnu.org or www.opensource.org/licenses  */
+
+package net.sf.jtemporal.spi;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.NoSuchElementException;
+
+import junit.framework.TestCase;
+import net.sf.jtemporal.LongInstant;
+import net.sf.jtemporal.Period;
+import net.sf.jtemporal.TemporalAttribute;
+import net.sf.jtemporal.TemporalAttributeImpl;
+import net.sf.jtemporal.TimedObject;
+import net.sf.jtemporal.util.CloseableIterator;
+
+/**
+ * Like LongTemporalAttributeStorageTest, plus the persistence.
+ * @author Thomas A Beck
+ * @version $Id$
+ */
+public class MappedTemporalAttributeStorageTest extends TestCase
+{
+	private File file;
+	private MappedTemporalAttributeStorage<String> storage;
+
+	private static LongInstant i(long value) {
+		return LongInstant.valueOf(value);
+	}
+
+	private static Period p(long start, long end) {
+		return new Period(i(start), i(end));
+	}
+
+	/**
+	 * Constructor for MappedTemporalAttributeStorageTest.
+	 * @param name
+	 */
+	public MappedTemporalAttributeStorageTest(String name) {
+		super(name);
+	}
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		this.file = File.createTempFile("jtemporal", ".map");
+		this.file.delete();
+		this.storage = new MappedTemporalAttributeStorage<String>(this.file);
+		this.storage.put(p(10, 20), "one");
+		this.storage.put(p(30, 40), "three");
+		this.storage.put(p(20, 30), "two");   // in the middle
+		this.storage.put(p(50, 60), "five");
+	}
+
+	protected void tearDown() throws Exception {
+		this.storage.close();
+		this.file.delete();
+		new File(this.file.getPath() + MappedTemporalAttributeStorage.VALUES_SUFFIX).delete();
+		super.tearDown();
+	}
+
+	private void reopen() throws IOException {
+		this.storage.close();
+		this.storage = new MappedTemporalAttributeStorage<String>(this.file);
+	}
+
+	public void testGet() {
+		assertEquals(4, this.storage.size());
+		assertNull(this.storage.getValue(i(9)));
+		assertEquals("one", this.storage.getValue(i(10)));
+		assertEquals("one", this.storage.getValue(i(19)));
+		assertEquals("two", this.storage.getValue(i(20)));
+		assertEquals("three", this.storage.getValue(i(39)));
+		assertNull(this.storage.getValue(i(40)));
+		assertEquals("five", this.storage.getValue(i(55)));
+		assertNull(this.storage.getValue(LongInstant.POSITIVE_INFINITY));
+
+		assertEquals(p(20, 30), this.storage.getPeriod(i(25)));
+		assertEquals(p(10, 20), this.storage.firstPeriod());
+		assertEquals(p(50, 60), this.storage.lastPeriod());
+	}
+
+	public void testPositiveInfinity() throws IOException {
+		// like Period.contains(), an entry ending at +INF contains +INF
+		Period open = new Period(i(1000), LongInstant.POSITIVE_INFINITY);
+		this.storage.put(open, "z");
+		assertEquals("z", this.storage.getValue(LongInstant.POSITIVE_INFINITY));
+		assertEquals(open, this.storage.getPeriod(LongInstant.POSITIVE_INFINITY));
+		this.reopen();
+		assertEquals("z", this.storage.getValue(LongInstant.POSITIVE_INFINITY));
+		assertEquals("five", this.storage.getValue(i(55)));
+	}
+
+	public void testStartingEndingAt() {
+		TimedObject<String> to = this.storage.getEntryEndingAt(i(40));
+		assertEquals(p(30, 40), to.getPeriod());
+		assertEquals("three", to.getValue());
+		assertNull(this.storage.getEntryEndingAt(i(50)));
+		assertNull(this.storage.getEntryEndingAt(i(35)));
+
+		to = this.storage.getEntryStartingAt(i(50));
+		assertEquals(p(50, 60), to.getPeriod());
+		assertEquals("five", to.getValue());
+		assertNull(this.storage.getEntryStartingAt(i(40)));
+	}
+
+	public void testRange() {
+		Period range = p(15, 35);
+		assertEquals(3, this.storage.size(range));
+		assertEquals(p(10, 20), this.storage.firstPeriod(range));
+		assertEquals(p(30, 40), this.storage.lastPeriod(range));
+		assertTrue(this.storage.containsValue("two", range));
+		assertFalse(this.storage.containsValue("five", range));
+		assertFalse(this.storage.containsValue("unknown"));
+		assertTrue(this.storage.isEmpty(p(40, 50)));
+
+		CloseableIterator<Period> it = this.storage.periodIterator(p(40, 51));
+		assertEquals(p(50, 60), it.next());
+		assertFalse(it.hasNext());
+
+		assertEquals(3, this.storage.removeRange(range));
+		assertEquals(1, this.storage.size());
+		assertEquals("five", this.storage.getValue(i(50)));
+	}
+
+	public void testPutRemove() {
+		try {
+			this.storage.put(p(20, 25), "twice");
+			fail();
+		}
+		catch (IllegalStateException e) {}
+
+		try {
+			this.storage.removeEntry(p(20, 25));
+			fail();
+		}
+		catch (NoSuchElementException e) {}
+
+		this.storage.removeEntry(p(20, 30));
+		assertNull(this.storage.getValue(i(25)));
+		assertEquals("three", this.storage.getValue(i(30)));
+		assertEquals(3, this.storage.size());
+
+		this.storage.clear();
+		assertTrue(this.storage.isEmpty());
+		assertEquals(0, this.storage.valueCount());
+	}
+
+	public void testNotLongInstant() {
+		try {
+			this.storage.getValue(new net.sf.jtemporal.IntInstant(10));
+			fail();
+		}
+		catch (IllegalArgumentException e) {}
+	}
+
+	public void testReopen() throws IOException {
+		this.storage.removeEntry(p(20, 30));
+		this.reopen();
+		assertEquals(3, this.storage.size());
+		assertEquals("one", this.storage.getValue(i(15)));
+		assertEquals("three", this.storage.getValue(i(35)));
+		assertEquals(p(50, 60), this.storage.lastPeriod());
+		// the dictionary is kept, even for the removed values
+		assertEquals(4, this.storage.valueCount());
+		this.storage.put(p(20, 30), "two");
+		assertEquals(4, this.storage.valueCount());
+		assertEquals("two", this.storage.getValue(i(25)));
+	}
+
+	public void testDictionary() {
+		this.storage.clear();
+		for (int k = 0; k < 1000; k++) {
+			this.storage.put(p(k * 10, k * 10 + 10), k % 2 == 0 ? "even" : "odd");
+		}
+		assertEquals(2, this.storage.valueCount());
+		assertEquals("odd", this.storage.getValue(i(9995)));
+	}
+
+	public void testGrowth() throws IOException {
+		this.storage.clear();
+		// inserted backwards: each put moves all the records
+		for (int k = 3000; k > 0; k--) {
+			this.storage.put(p(k * 10, k * 10 + 10), "v" + (k % 7));
+		}
+		this.reopen();
+		assertEquals(3000, this.storage.size());
+		assertEquals(p(10, 20), this.storage.firstPeriod());
+		assertEquals(p(30000, 30010), this.storage.lastPeriod());
+		assertEquals("v6", this.storage.getValue(i(17005)));
+		assertEquals(2000, this.storage.removeRange(p(5000, 25000)));
+		assertEquals(p(25000, 25010), this.storage.getPeriod(i(25000)));
+		assertEquals(p(4990, 5000), this.storage.getPeriod(i(4999)));
+	}
+
+	/**
+	 * A growth adds a large chunk of records, not a few ones.
+	 */
+	public void testGrowthByChunk() {
+		long initial = this.file.length();
+		for (int k = 0; k < 1100; k++) {
+			this.storage.put(p(100 + k * 10, 110 + k * 10), "v");
+		}
+		long grown = this.file.length();
+		assertTrue(grown >= initial + 64 * 1024 * 20L);
+		for (int k = 1100; k < 3000; k++) {
+			this.storage.put(p(100 + k * 10, 110 + k * 10), "v");
+		}
+		assertEquals(grown, this.file.length());
+		assertEquals(3004, this.storage.size());
+	}
+
+	public void testNotAStorage() throws IOException {
+		File other = File.createTempFile("jtemporal", ".map");
+		RandomAccessFile raf = new RandomAccessFile(other, "rw");
+		raf.write(new byte[36]);
+		raf.close();
+		try {
+			new MappedTemporalAttributeStorage<String>(other);
+			fail();
+		}
+		catch (IOException expected) {
+		}
+		finally {
+			other.delete();
+			new File(other.getPath() + MappedTemporalAttributeStorage.VALUES_SUFFIX).delete();
+		}
+	}
+
+	public void testWithTemporalAttribute() {
+		this.storage.clear();
+		TemporalAttribute<String> ta = new TemporalAttributeImpl<String>(this.storage);
+		ta.put(p(10, 20), "a");
+		ta.put(p(20, 30), "a");  // merged
+		ta.put(p(40, 50), "b");
+		ta.put(p(30, 40), "b");  // merged
+		assertEquals(2, ta.size());
+		assertEquals(p(10, 30), ta.getPeriod(i(15)));
+		assertEquals(p(30, 50), ta.getPeriod(i(45)));
+
+		ta.remove(p(25, 35));
+		assertEquals(p(10, 25), ta.getPeriod(i(15)));
+		assertEquals(p(35, 50), ta.getPeriod(i(45)));
+	}
+
+}
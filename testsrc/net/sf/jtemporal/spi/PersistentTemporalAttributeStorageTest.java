@@ -0,0 +1,113 @@
+/*
+   This file is part of the JTemporal framework (http://jtemporal.sf.net).
+   Copyright (C) 2002 by the author(s).
+   Distributable under LGPL license version 2.1 or later,
+   with no warranties given or implied.
+   See terms of license at gnu.org or www.opensource.org/licenses  */
+
+package net.sf.jtemporal.spi;
+
+import java.util.Random;
+
+import net.sf.jtemporal.IntInstant;
+import net.sf.jtemporal.Period;
+import net.sf.jtemporal.TemporalAttribute;
+import net.sf.jtemporal.TemporalAttributeImpl;
+import net.sf.jtemporal.TestConstants;
+import net.sf.jtemporal.util.CloseableIterator;
+
+
+/**
+ * @author Thomas A Beck
+ * @version $Id$
+ */
+public class PersistentTemporalAttributeStorageTest extends AbstractTemporalAttributeStorageTest
+{
+	public final TemporalAttributeStorage newStorage() {
+		return new PersistentTemporalAttributeStorage();
+	}
+
+	/**
+	 * Constructor for PersistentTemporalAttributeStorageTest.
+	 * @param name
+	 */
+	public PersistentTemporalAttributeStorageTest(String name) {
+		super(name);
+	}
+
+	public void testSnapshot() {
+		PersistentTemporalAttributeStorage<String> storage =
+			new PersistentTemporalAttributeStorage<String>();
+		TemporalAttribute<String> ta = new TemporalAttributeImpl<String>(storage);
+		ta.put(TestConstants.p12, TestConstants.s1);
+		ta.put(TestConstants.p34, TestConstants.s2);
+
+		PersistentTemporalAttributeStorage<String> snapshot = storage.snapshot();
+		ta.put(TestConstants.p23, TestConstants.s1);
+		ta.remove(TestConstants.p34);
+
+		assertEquals(1, storage.size());
+		assertEquals(new Period(TestConstants.i1, TestConstants.i3), storage.firstPeriod());
+
+		// the snapshot is not affected
+		assertEquals(2, snapshot.size());
+		assertEquals(TestConstants.p12, snapshot.firstPeriod());
+		assertEquals(TestConstants.s2, snapshot.getValue(TestConstants.i3));
+
+		// and can be updated independently
+		TemporalAttribute<String> snapshotTa = new TemporalAttributeImpl<String>(snapshot);
+		snapshotTa.put(TestConstants.p78, TestConstants.s3);
+		assertEquals(3, snapshot.size());
+		assertNull(storage.getValue(TestConstants.i7));
+	}
+
+	public void testIteratorIsolation() {
+		PersistentTemporalAttributeStorage<String> storage =
+			new PersistentTemporalAttributeStorage<String>();
+		storage.put(TestConstants.p12, TestConstants.s1);
+		storage.put(TestConstants.p34, TestConstants.s2);
+		storage.put(TestConstants.p56, TestConstants.s3);
+
+		CloseableIterator<Period> i = storage.periodIterator();
+		assertEquals(TestConstants.p12, i.next());
+		storage.put(TestConstants.p78, TestConstants.s4);
+		i.remove();
+		assertEquals(TestConstants.p34, i.next());
+		assertEquals(TestConstants.p56, i.next());
+		assertFalse(i.hasNext());
+		assertEquals(3, storage.size());
+		assertEquals(TestConstants.p34, storage.firstPeriod());
+	}
+
+	/**
+	 * Compares the tree with a TreeTemporalAttributeStorage,
+	 * with random puts and removes.
+	 */
+	public void testRandom() {
+		Random random = new Random(42);
+		PersistentTemporalAttributeStorage<Integer> storage =
+			new PersistentTemporalAttributeStorage<Integer>();
+		TemporalAttribute<Integer> ta = new TemporalAttributeImpl<Integer>(storage);
+		TreeTemporalAttributeStorage<Integer> expectedStorage =
+			new TreeTemporalAttributeStorage<Integer>();
+		TemporalAttribute<Integer> expected = new TemporalAttributeImpl<Integer>(expectedStorage);
+
+		for (int k = 0; k < 2000; k++) {
+			int start = random.nextInt(1000);
+			Period p = new Period(new IntInstant(start), new IntInstant(start + 1 + random.nextInt(20)));
+			if (random.nextInt(4) == 0) {
+				assertEquals(expected.remove(p), ta.remove(p));
+			}
+			else {
+				Integer value = new Integer(random.nextInt(5));
+				assertEquals(expected.put(p, value), ta.put(p, value));
+			}
+		}
+		assertEquals(expected.size(), storage.size());
+		assertEquals(expected.entrySet(), ta.entrySet());
+		Period range = new Period(new IntInstant(250), new IntInstant(750));
+		assertEquals(expectedStorage.size(range), storage.size(range));
+		assertEquals(expectedStorage.firstPeriod(range), storage.firstPeriod(range));
+		assertEquals(expectedStorage.lastPeriod(range), storage.lastPeriod(range));
+	}
+}
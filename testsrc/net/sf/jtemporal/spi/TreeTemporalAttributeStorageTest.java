@@ -7,6 +7,12 @@
 
 package net.sf.jtemporal.spi;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import net.sf.jtemporal.IsTime;
 
 /**
  * @author Thomas A Beck
@@ -26,5 +32,40 @@ public class TreeTemporalAttributeStorageTest extends AbstractTemporalAttributeS
 		super(name);
 	}
 
+	/**
+	 * The views of the sorted entries built by bulkLoad.
+	 */
+	public void testSortedEntries() {
+		TreeTemporalAttributeStorage.SortedEntries<String> sorted = 
+			new TreeTemporalAttributeStorage.SortedEntries<String>(StartComparator.COMPARATOR);
+		sorted.add(p12, s1);
+		sorted.add(p23, s2);
+		sorted.add(p34, s3);
+		sorted.add(p56, s4);
+		SortedMap<IsTime, String> sub = sorted.subMap(p23, p56);
+		assertEquals(Arrays.asList(p23, p34), new ArrayList<IsTime>(sub.keySet()));
+		assertEquals(p34, sub.lastKey());
+		assertEquals(Arrays.asList(p12, p23), new ArrayList<IsTime>(sorted.headMap(p34).keySet()));
+		assertEquals(Arrays.asList(p34, p56), new ArrayList<IsTime>(sorted.tailMap(p34).keySet()));
+		assertEquals(Arrays.asList(p23), new ArrayList<IsTime>(sub.headMap(p34).keySet()));
+		assertTrue(sub.tailMap(p56).isEmpty());
+		try {
+			sub.tailMap(p12);
+			fail("out of range");
+		}
+		catch (IllegalArgumentException e) {
+		}
+		try {
+			sorted.subMap(p34, p23);
+			fail("fromKey > toKey");
+		}
+		catch (IllegalArgumentException e) {
+		}
+		TreeMap<IsTime, String> copy = new TreeMap<IsTime, String>(StartComparator.COMPARATOR);
+		copy.putAll(sub);
+		assertEquals(sub, copy);
+		assertEquals(s3, copy.get(p34));
+	}
+
 
 }
@@ -24,6 +24,9 @@ public class AllTests //extends TestCase
 		//$JUnit-BEGIN$
 		suite.addTestSuite(SerializableSingletonTest.class);
 		suite.addTestSuite(LRUCacheTest.class);
+		suite.addTestSuite(ConcurrentLRUCacheTest.class);
+		suite.addTestSuite(TinyLFUCacheTest.class);
+		suite.addTestSuite(TwoQueueCacheTest.class);
 		suite.addTestSuite(HashSetTest.class);
 		suite.addTestSuite(SimpleCloseableIteratorTest.class);
 		//$JUnit-END$
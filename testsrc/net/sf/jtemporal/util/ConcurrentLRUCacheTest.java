@@ -0,0 +1,131 @@
+/*
+   This file is part of the JTemporal framework (http://jtemporal.sf.net).
+   Copyright (C) 2002 by the author(s).
+   Distributable under LGPL license version 2.1 or later,
+   with no warranties given or implied.
+   See terms of license at gnu.org or www.opensource.org/licenses  */
+
+package net.sf.jtemporal.util;
+
+import junit.framework.TestCase;
+
+/**
+ * @author Thomas A Beck
+ * @version $Id$
+ */
+public class ConcurrentLRUCacheTest extends TestCase {
+
+	private ConcurrentLRUCache<String,String> cache;
+
+	/**
+	 * Constructor for ConcurrentLRUCacheTest.
+	 * @param name
+	 */
+	public ConcurrentLRUCacheTest(String name) {
+		super(name);
+	}
+
+	/*
+	 * @see TestCase#setUp()
+	 */
+	protected void setUp() throws Exception {
+		super.setUp();
+		// a single segment behaves like LightLRUCache
+		this.cache = new ConcurrentLRUCache<String,String>(3, 1);
+		this.cache.put("A", "a");
+		this.cache.put("B", "b");
+	}
+
+	public void testLRUCycle() {
+		this.cache.put("C", "c");
+		this.cache.put("D", "d");
+		assertNull(cache.get("A"));
+		assertEquals("b", cache.get("B"));
+		assertEquals("c", cache.get("C"));
+		assertEquals("d", cache.get("D")); // B,C,D
+		assertEquals("b", cache.get("B")); // C,D,B
+		assertEquals("c", cache.get("C")); // D,B,C
+		this.cache.put("E", "e");
+		assertNull(cache.get("D"));
+		assertEquals("b", cache.get("B"));
+		assertEquals("e", cache.get("E"));
+	}
+
+	public void testCounters() {
+		assertEquals("a", cache.get("A"));
+		assertNull(cache.get("X"));
+		this.cache.put("C", "c");
+		this.cache.put("D", "d");
+		this.cache.remove("C");
+		assertEquals(1, cache.hitCount());
+		assertEquals(1, cache.missCount());
+		assertEquals(1, cache.evictionCount());
+		cache.clear();
+		assertEquals(0, cache.currentSize());
+		assertEquals(1, cache.hitCount());
+	}
+
+	public void testSegments() {
+		ConcurrentLRUCache<Integer,Integer> striped = new ConcurrentLRUCache<Integer,Integer>(100, 8);
+		assertEquals(8, striped.segmentCount());
+		assertEquals(100, striped.maxSize());
+		for (int i = 0; i < 1000; i++) {
+			striped.put(Integer.valueOf(i), Integer.valueOf(i));
+		}
+		assertTrue(striped.currentSize() <= 100);
+		assertEquals(1000 - striped.currentSize(), striped.evictionCount());
+		// never more segments than entries
+		assertEquals(2, new ConcurrentLRUCache<String,String>(3, 16).segmentCount());
+	}
+
+	public void testNull() {
+		try {
+			cache.put(null, "a");
+			fail();
+		}
+		catch (IllegalArgumentException e) {
+		}
+		try {
+			cache.put("A", null);
+			fail();
+		}
+		catch (IllegalArgumentException e) {
+		}
+		try {
+			cache.get(null);
+			fail();
+		}
+		catch (IllegalArgumentException e) {
+		}
+	}
+
+	public void testConcurrentAccess() throws Exception {
+		final ConcurrentLRUCache<Integer,Integer> shared = new ConcurrentLRUCache<Integer,Integer>(64);
+		final boolean[] failed = new boolean[1];
+		Thread[] threads = new Thread[4];
+		for (int t = 0; t < threads.length; t++) {
+			final int seed = t;
+			threads[t] = new Thread() {
+				public void run() {
+					for (int k = 0; k < 20000; k++) {
+						Integer key = Integer.valueOf((k * 31 + seed) % 200);
+						Integer value = shared.get(key);
+						if (value == null) {
+							shared.put(key, key);
+						}
+						else if (!value.equals(key)) {
+							failed[0] = true;
+						}
+					}
+				}
+			};
+			threads[t].start();
+		}
+		for (int t = 0; t < threads.length; t++) {
+			threads[t].join();
+		}
+		assertFalse(failed[0]);
+		assertTrue(shared.currentSize() <= 64);
+		assertEquals(4 * 20000, shared.hitCount() + shared.missCount());
+	}
+}
@@ -0,0 +1,131 @@
+/*
+   This file is part of the JTemporal framework (http://jtemporal.sf.net).
+   Copyright (C) 2002 by the author(s).
+   Distributable under LGPL license version 2.1 or later,
+   with no warranties given or implied.
+   See terms of license at gnu.org or www.opensource.org/licenses  */
+
+package net.sf.jtemporal.util;
+
+import junit.framework.TestCase;
+
+/**
+ * @author Thomas A Beck
+ * @version $Id$
+ */
+public class TinyLFUCacheTest extends TestCase {
+
+	private TinyLFUCache<String,String> cache;
+
+	/**
+	 * Constructor for TinyLFUCacheTest.
+	 * @param name
+	 */
+	public TinyLFUCacheTest(String name) {
+		super(name);
+	}
+
+	/*
+	 * @see TestCase#setUp()
+	 */
+	protected void setUp() throws Exception {
+		super.setUp();
+		this.cache = new TinyLFUCache<String,String>(3);
+		this.cache.put("A", "a");
+		this.cache.put("B", "b");
+	}
+
+	public void testBasics() {
+		assertEquals("a", cache.get("A"));
+		assertNull(cache.get("X"));
+		assertEquals("a", cache.put("A", "a2"));
+		assertEquals("a2", cache.get("A"));
+		assertEquals(2, cache.currentSize());
+		assertEquals(3, cache.maxSize());
+		assertEquals("b", cache.remove("B"));
+		assertNull(cache.remove("B"));
+		assertEquals(1, cache.currentSize());
+		cache.clear();
+		assertEquals(0, cache.currentSize());
+		assertNull(cache.get("A"));
+	}
+
+	public void testBounded() {
+		for (int i = 0; i < 100; i++) {
+			String key = String.valueOf(i);
+			if (cache.get(key) == null) {
+				cache.put(key, key);
+			}
+			assertTrue(cache.currentSize() <= 3);
+		}
+		assertEquals(3, cache.currentSize());
+		assertEquals(99, cache.evictionCount());
+	}
+
+	public void testNulls() {
+		try {
+			cache.put(null, "a");
+			fail();
+		}
+		catch (IllegalArgumentException expected) {}
+		try {
+			cache.put("A", null);
+			fail();
+		}
+		catch (IllegalArgumentException expected) {}
+		try {
+			cache.get(null);
+			fail();
+		}
+		catch (IllegalArgumentException expected) {}
+	}
+
+	/**
+	 * The frequently used entries survive a scan, unlike with LightLRUCache.
+	 */
+	public void testScanResistance() {
+		Cache<Integer,Integer> lru = new LightLRUCache<Integer,Integer>(100);
+		TinyLFUCache<Integer,Integer> resistant = new TinyLFUCache<Integer,Integer>(100);
+		for (int r = 0; r < 10; r++) {
+			for (int k = 0; k < 50; k++) {
+				access(lru, k);
+				access(resistant, k);
+			}
+		}
+		for (int k = 1000; k < 1300; k++) {
+			access(lru, k);
+			access(resistant, k);
+		}
+		for (int k = 0; k < 50; k++) {
+			assertNull(lru.get(Integer.valueOf(k)));
+			assertEquals(Integer.valueOf(k), resistant.get(Integer.valueOf(k)));
+		}
+	}
+
+	public void testFrequentEntriesAdmitted() {
+		// window of 1, main space of 9
+		TinyLFUCache<Integer,Integer> lfu = new TinyLFUCache<Integer,Integer>(10);
+		for (int k = 0; k < 9; k++) {
+			lfu.put(Integer.valueOf(k), Integer.valueOf(k));
+		}
+		lfu.put(Integer.valueOf(9), Integer.valueOf(9));  // fills the window
+		for (int r = 0; r < 3; r++) {
+			assertNull(lfu.get(Integer.valueOf(10)));
+		}
+		lfu.put(Integer.valueOf(10), Integer.valueOf(10)); // 9 loses against 0
+		assertEquals(10, lfu.currentSize());
+		assertNull(lfu.get(Integer.valueOf(9)));
+		lfu.put(Integer.valueOf(11), Integer.valueOf(11)); // 10 wins against 0
+		assertEquals(Integer.valueOf(10), lfu.get(Integer.valueOf(10)));
+		assertNull(lfu.get(Integer.valueOf(0)));
+		assertEquals(Integer.valueOf(1), lfu.get(Integer.valueOf(1)));
+		assertEquals(2, lfu.evictionCount());
+	}
+
+	private static void access(Cache<Integer,Integer> c, int k) {
+		Integer key = Integer.valueOf(k);
+		if (c.get(key) == null) {
+			c.put(key, key);
+		}
+	}
+}
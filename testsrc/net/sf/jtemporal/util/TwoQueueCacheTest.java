@@ -0,0 +1,128 @@
+/*
+   This file is part of the JTemporal framework (http://jtemporal.sf.net).
+   Copyright (C) 2002 by the author(s).
+   Distributable under LGPL license version 2.1 or later,
+   with no warranties given or implied.
+   See terms of license at gnu.org or www.opensource.org/licenses  */
+
+package net.sf.jtemporal.util;
+
+import junit.framework.TestCase;
+
+/**
+ * @author Thomas A Beck
+ * @version $Id$
+ */
+public class TwoQueueCacheTest extends TestCase {
+
+	private TwoQueueCache<String,String> cache;
+
+	/**
+	 * Constructor for TwoQueueCacheTest.
+	 * @param name
+	 */
+	public TwoQueueCacheTest(String name) {
+		super(name);
+	}
+
+	/*
+	 * @see TestCase#setUp()
+	 */
+	protected void setUp() throws Exception {
+		super.setUp();
+		this.cache = new TwoQueueCache<String,String>(3);
+		this.cache.put("A", "a");
+		this.cache.put("B", "b");
+	}
+
+	public void testBasics() {
+		assertEquals("a", cache.get("A"));
+		assertNull(cache.get("X"));
+		assertEquals("a", cache.put("A", "a2"));
+		assertEquals("a2", cache.get("A"));
+		assertEquals(2, cache.currentSize());
+		assertEquals(3, cache.maxSize());
+		assertEquals("b", cache.remove("B"));
+		assertNull(cache.remove("B"));
+		assertEquals(1, cache.currentSize());
+		cache.clear();
+		assertEquals(0, cache.currentSize());
+		assertNull(cache.get("A"));
+	}
+
+	public void testBounded() {
+		for (int i = 0; i < 100; i++) {
+			String key = String.valueOf(i);
+			if (cache.get(key) == null) {
+				cache.put(key, key);
+			}
+			assertTrue(cache.currentSize() <= 3);
+		}
+		assertEquals(3, cache.currentSize());
+		assertEquals(99, cache.evictionCount());
+	}
+
+	public void testNulls() {
+		try {
+			cache.put(null, "a");
+			fail();
+		}
+		catch (IllegalArgumentException expected) {}
+		try {
+			cache.put("A", null);
+			fail();
+		}
+		catch (IllegalArgumentException expected) {}
+		try {
+			cache.get(null);
+			fail();
+		}
+		catch (IllegalArgumentException expected) {}
+	}
+
+	/**
+	 * The frequently used entries survive a scan, unlike with LightLRUCache.
+	 */
+	public void testScanResistance() {
+		Cache<Integer,Integer> lru = new LightLRUCache<Integer,Integer>(100);
+		TwoQueueCache<Integer,Integer> resistant = new TwoQueueCache<Integer,Integer>(100);
+		for (int r = 0; r < 10; r++) {
+			for (int k = 0; k < 50; k++) {
+				access(lru, k);
+				access(resistant, k);
+			}
+		}
+		for (int k = 1000; k < 1300; k++) {
+			access(lru, k);
+			access(resistant, k);
+		}
+		for (int k = 0; k < 50; k++) {
+			assertNull(lru.get(Integer.valueOf(k)));
+			assertEquals(Integer.valueOf(k), resistant.get(Integer.valueOf(k)));
+		}
+	}
+
+	public void testGhostPromotion() {
+		// FIFO queue of 2, ghost queue of 4
+		TwoQueueCache<Integer,Integer> twoQ = new TwoQueueCache<Integer,Integer>(8);
+		for (int k = 0; k < 8; k++) {
+			twoQ.put(Integer.valueOf(k), Integer.valueOf(k));
+		}
+		twoQ.put(Integer.valueOf(8), Integer.valueOf(8));  // 0 becomes a ghost
+		assertNull(twoQ.get(Integer.valueOf(0)));
+		twoQ.put(Integer.valueOf(0), Integer.valueOf(0));  // promoted, 1 becomes a ghost
+		for (int k = 100; k < 200; k++) {
+			twoQ.put(Integer.valueOf(k), Integer.valueOf(k));
+		}
+		assertEquals(Integer.valueOf(0), twoQ.get(Integer.valueOf(0)));
+		assertNull(twoQ.get(Integer.valueOf(1)));
+		assertEquals(8, twoQ.currentSize());
+	}
+
+	private static void access(Cache<Integer,Integer> c, int k) {
+		Integer key = Integer.valueOf(k);
+		if (c.get(key) == null) {
+			c.put(key, key);
+		}
+	}
+}